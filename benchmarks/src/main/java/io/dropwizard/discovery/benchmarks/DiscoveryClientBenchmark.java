@@ -0,0 +1,134 @@
+package io.dropwizard.discovery.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+import org.apache.curator.x.discovery.ProviderStrategy;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.strategies.RandomStrategy;
+import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
+import org.apache.curator.x.discovery.strategies.StickyStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.strategies.PowerOfTwoChoicesStrategy;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+/**
+ * Measures the per-request cost of looking up instances through a
+ * {@link DiscoveryClient} backed by an in-process ZooKeeper ensemble.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class DiscoveryClientBenchmark {
+
+    /**
+     * The {@link ProviderStrategy} implementations that can be passed to
+     * {@link io.dropwizard.discovery.AbstractDiscoveryBundle#newDiscoveryClient(String, ProviderStrategy)}.
+     */
+    public enum Strategy {
+        ROUND_ROBIN {
+            @Override
+            ProviderStrategy<InstanceMetadata> build() {
+                return new RoundRobinStrategy<InstanceMetadata>();
+            }
+        },
+        RANDOM {
+            @Override
+            ProviderStrategy<InstanceMetadata> build() {
+                return new RandomStrategy<InstanceMetadata>();
+            }
+        },
+        STICKY {
+            @Override
+            ProviderStrategy<InstanceMetadata> build() {
+                return new StickyStrategy<InstanceMetadata>(
+                        new RoundRobinStrategy<InstanceMetadata>());
+            }
+        },
+        P2C {
+            @Override
+            ProviderStrategy<InstanceMetadata> build() {
+                return new PowerOfTwoChoicesStrategy<InstanceMetadata>();
+            }
+        };
+
+        abstract ProviderStrategy<InstanceMetadata> build();
+    }
+
+    @Param({ "3", "100", "1000", "10000" })
+    public int instanceCount;
+
+    @Param
+    public Strategy strategy;
+
+    private DiscoveryFixture fixture;
+    private DiscoveryClient<InstanceMetadata> client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new DiscoveryFixture(instanceCount);
+        client = new DiscoveryClient<InstanceMetadata>(
+                DiscoveryFixture.SERVICE_NAME, fixture.getDiscovery(),
+                new DownInstancePolicy(), strategy.build());
+        client.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        fixture.close();
+    }
+
+    @Benchmark
+    public ServiceInstance<InstanceMetadata> getInstance() throws Exception {
+        return client.getInstance();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ServiceInstance<InstanceMetadata> getInstanceContended()
+            throws Exception {
+        return client.getInstance();
+    }
+
+    /**
+     * A lookup followed by reporting the outcome of the call, which is what
+     * latency-aware strategies see per request.
+     */
+    @Benchmark
+    public ServiceInstance<InstanceMetadata> getInstanceAndNoteSuccess()
+            throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = client
+                .getInstance();
+        client.noteSuccess(instance, 1, TimeUnit.MILLISECONDS);
+        return instance;
+    }
+
+    @Benchmark
+    public Collection<ServiceInstance<InstanceMetadata>> getInstances() {
+        return client.getInstances();
+    }
+
+    @Benchmark
+    public void forEachInstance(final Blackhole blackhole) {
+        client.forEachInstance(blackhole::consume);
+    }
+}
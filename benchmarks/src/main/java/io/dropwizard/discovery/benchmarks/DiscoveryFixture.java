@@ -0,0 +1,107 @@
+package io.dropwizard.discovery.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.discovery.core.InstanceMetadata;
+import io.dropwizard.discovery.core.JacksonInstanceSerializer;
+import io.dropwizard.jackson.Jackson;
+
+/**
+ * An in-process ZooKeeper ensemble with a {@link ServiceDiscovery} that has a
+ * configurable number of instances registered for a single service.
+ */
+public class DiscoveryFixture implements Closeable {
+
+    public static final String SERVICE_NAME = "benchmark-service";
+    public static final String BASE_PATH = "service";
+
+    private final TestingServer server;
+    private final CuratorFramework framework;
+    private final ServiceDiscovery<InstanceMetadata> discovery;
+
+    /**
+     * Constructor
+     *
+     * @param instanceCount
+     *            number of instances to register for {@link #SERVICE_NAME}
+     * @throws Exception
+     *             if the ensemble could not be started
+     */
+    public DiscoveryFixture(final int instanceCount) throws Exception {
+        server = new TestingServer();
+        framework = CuratorFrameworkFactory.builder()
+                .connectString(server.getConnectString())
+                .retryPolicy(new RetryOneTime(100)).namespace("dropwizard")
+                .build();
+        framework.start();
+        framework.blockUntilConnected();
+
+        discovery = ServiceDiscoveryBuilder.builder(InstanceMetadata.class)
+                .basePath(BASE_PATH).client(framework)
+                .serializer(newSerializer()).build();
+        discovery.start();
+
+        for (int i = 0; i < instanceCount; i++) {
+            discovery.registerService(newInstance(i));
+        }
+    }
+
+    public ServiceDiscovery<InstanceMetadata> getDiscovery() {
+        return discovery;
+    }
+
+    /**
+     * Return a serializer configured the same way as
+     * {@link io.dropwizard.discovery.AbstractDiscoveryBundle} configures it
+     * by default.
+     *
+     * @return {@link InstanceSerializer}
+     */
+    public static InstanceSerializer<InstanceMetadata> newSerializer() {
+        final ObjectMapper mapper = Jackson.newObjectMapper();
+        return JacksonInstanceSerializer.forPayload(mapper,
+                InstanceMetadata.class);
+    }
+
+    /**
+     * Build a representative {@link ServiceInstance}, matching what
+     * {@link io.dropwizard.discovery.core.DefaultServiceInstanceFactory}
+     * advertises.
+     *
+     * @param ordinal
+     *            used to derive a unique address for the instance
+     * @return {@link ServiceInstance}
+     * @throws Exception
+     *             if the instance could not be built
+     */
+    public static ServiceInstance<InstanceMetadata> newInstance(
+            final int ordinal) throws Exception {
+        final UUID id = UUID.randomUUID();
+        final String address = "10." + ((ordinal >> 16) & 0xff) + "."
+                + ((ordinal >> 8) & 0xff) + "." + (ordinal & 0xff);
+        final InstanceMetadata metadata = new InstanceMetadata(id, address,
+                8080, Optional.of(8081));
+        return ServiceInstance.<InstanceMetadata>builder().name(SERVICE_NAME)
+                .address(address).port(8080).id(id.toString())
+                .payload(metadata).build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        CloseableUtils.closeQuietly(discovery);
+        CloseableUtils.closeQuietly(framework);
+        server.close();
+    }
+}
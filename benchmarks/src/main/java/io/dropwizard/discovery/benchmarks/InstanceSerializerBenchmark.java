@@ -0,0 +1,87 @@
+package io.dropwizard.discovery.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import io.dropwizard.discovery.core.InstanceMetadata;
+import io.dropwizard.discovery.core.InstanceMetadataSerializer;
+import io.dropwizard.discovery.core.JacksonInstanceSerializer;
+import io.dropwizard.discovery.core.PayloadFormat;
+import io.dropwizard.jackson.Jackson;
+
+/**
+ * Measures the cost of converting a {@link ServiceInstance} to and from the
+ * bytes stored in its znode, which every watching client pays on each change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class InstanceSerializerBenchmark {
+
+    /**
+     * The serializers available for {@link InstanceMetadata} payloads.
+     */
+    public enum Codec {
+        JACKSON {
+            @Override
+            InstanceSerializer<InstanceMetadata> build(
+                    final PayloadFormat format) {
+                return JacksonInstanceSerializer.forPayload(
+                        Jackson.newObjectMapper(), InstanceMetadata.class,
+                        format);
+            }
+        },
+        STREAMING {
+            @Override
+            InstanceSerializer<InstanceMetadata> build(
+                    final PayloadFormat format) {
+                return new InstanceMetadataSerializer(format);
+            }
+        };
+
+        abstract InstanceSerializer<InstanceMetadata> build(
+                PayloadFormat format);
+    }
+
+    @Param
+    public Codec codec;
+
+    @Param
+    public PayloadFormat format;
+
+    private InstanceSerializer<InstanceMetadata> serializer;
+    private ServiceInstance<InstanceMetadata> instance;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        serializer = codec.build(format);
+        instance = DiscoveryFixture.newInstance(1);
+        bytes = serializer.serialize(instance);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return serializer.serialize(instance);
+    }
+
+    @Benchmark
+    public ServiceInstance<InstanceMetadata> deserialize() throws Exception {
+        return serializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,84 @@
+package io.dropwizard.discovery.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.strategies.ConsistentHashStrategy;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+/**
+ * Measures {@link DiscoveryClient#getInstance(String)} with a
+ * {@link ConsistentHashStrategy}, cycling through a fixed set of keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class KeyedLookupBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param({ "3", "100", "1000" })
+    public int instanceCount;
+
+    private DiscoveryFixture fixture;
+    private DiscoveryClient<InstanceMetadata> client;
+    private final String[] keys = new String[KEY_COUNT];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new DiscoveryFixture(instanceCount);
+        client = new DiscoveryClient<InstanceMetadata>(
+                DiscoveryFixture.SERVICE_NAME, fixture.getDiscovery(),
+                new DownInstancePolicy(),
+                new ConsistentHashStrategy<InstanceMetadata>());
+        client.start();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "user-" + i;
+            // String#hashCode is computed once per key, as it would be for a
+            // key that is looked up repeatedly
+            keys[i].hashCode();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        fixture.close();
+    }
+
+    @Benchmark
+    public ServiceInstance<InstanceMetadata> getInstanceByKey(
+            final Cursor cursor) throws Exception {
+        return client.getInstance(keys[cursor.next++ & (KEY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ServiceInstance<InstanceMetadata> getInstanceByKeyContended(
+            final Cursor cursor) throws Exception {
+        return client.getInstance(keys[cursor.next++ & (KEY_COUNT - 1)]);
+    }
+}
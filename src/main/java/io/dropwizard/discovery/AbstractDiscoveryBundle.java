@@ -2,31 +2,71 @@ package io.dropwizard.discovery;
 
 import io.dropwizard.Configuration;
 import io.dropwizard.ConfiguredBundle;
+import io.dropwizard.discovery.admin.MembershipServlet;
+import io.dropwizard.discovery.client.CacheEventExecutor;
 import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.EventCoalescer;
+import io.dropwizard.discovery.client.InstanceSnapshotStore;
+import io.dropwizard.discovery.client.ServiceCacheRegistry;
+import io.dropwizard.discovery.core.CompressingInstanceSerializer;
 import io.dropwizard.discovery.core.CuratorAdvertisementListener;
 import io.dropwizard.discovery.core.CuratorAdvertiser;
 import io.dropwizard.discovery.core.CuratorFactory;
 import io.dropwizard.discovery.core.JacksonInstanceSerializer;
+import io.dropwizard.discovery.core.LoadReporter;
+import io.dropwizard.discovery.core.ReRegistrationListener;
+import io.dropwizard.discovery.core.SessionAwareServiceDiscovery;
+import io.dropwizard.discovery.manage.ConnectionStateListenerManager;
 import io.dropwizard.discovery.manage.CuratorAdvertiserManager;
+import io.dropwizard.discovery.manage.LoadReporterManager;
 import io.dropwizard.discovery.manage.ServiceDiscoveryManager;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.DoubleSupplier;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.servlet.ServletRegistration;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.x.discovery.DownInstancePolicy;
 import org.apache.curator.x.discovery.ProviderStrategy;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
 import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
-import com.fasterxml.jackson.core.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public abstract class AbstractDiscoveryBundle<T extends Configuration, V>
         implements ConfiguredBundle<T>, DiscoveryConfiguration<T, V> {
 
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(AbstractDiscoveryBundle.class);
+
     private ServiceDiscovery<V> discovery;
+    @Nullable
+    private ServiceCacheRegistry<V> caches;
+    @Nullable
+    private CuratorAdvertisementListener<V> advertisementListener;
     private ObjectMapper mapper;
+    @Nullable
+    private OutlierDetectionFactory outlierDetection;
+    @Nullable
+    private MembershipServlet membership;
+    private final Map<EnsembleFactory, ServiceCacheRegistry<V>> remoteCaches = new LinkedHashMap<>();
+    @Nullable
+    private ScheduledExecutorService ensembleExecutor;
 
     public abstract Class<V> getPayloadClass();
 
@@ -45,37 +85,229 @@ public abstract class AbstractDiscoveryBundle<T extends Configuration, V>
             return;
         }
 
+        outlierDetection = discoveryConfig.getOutlierDetection();
+
         final CuratorFactory factory = new CuratorFactory(environment);
         final CuratorFramework framework = factory.build(discoveryConfig);
 
-        final JacksonInstanceSerializer<V> serializer = new JacksonInstanceSerializer<V>(
-                mapper, new TypeReference<ServiceInstance<V>>() {
-                });
+        // compressed instances are always read, but only written once
+        // configured, as older readers cannot decode them
+        final Size compressionThreshold = discoveryConfig
+                .getCompressionThreshold();
+        final InstanceSerializer<V> serializer = compressionThreshold == null
+                ? new CompressingInstanceSerializer<V>(
+                        getInstanceSerializer(discoveryConfig, mapper))
+                : new CompressingInstanceSerializer<V>(
+                        getInstanceSerializer(discoveryConfig, mapper),
+                        discoveryConfig.getCompressionProvider(),
+                        (int) compressionThreshold.toBytes());
         discovery = ServiceDiscoveryBuilder.builder(getPayloadClass())
                 .basePath(discoveryConfig.getBasePath()).client(framework)
                 .serializer(serializer).build();
+        final String snapshotDirectory = discoveryConfig.getSnapshotDirectory();
+        final CacheEventExecutor events = buildCacheEventExecutor(
+                discoveryConfig, environment);
+        final Duration coalesceDelay = discoveryConfig.getCoalesceDelay();
+        final EventCoalescer coalescer = coalesceDelay == null ? null
+                : new EventCoalescer(environment.lifecycle()
+                        .scheduledExecutorService("discovery-coalescing-%d",
+                                true)
+                        .threads(1).build(), coalesceDelay,
+                        discoveryConfig.getCoalesceMaxBatch());
+        // snapshots are written in the background, the latest one of each
+        // burst of changes only
+        final InstanceSnapshotStore<V> store = snapshotDirectory == null
+                ? null
+                : new InstanceSnapshotStore<V>(Paths.get(snapshotDirectory),
+                        serializer,
+                        environment.lifecycle()
+                                .scheduledExecutorService(
+                                        "discovery-snapshots-%d", true)
+                                .threads(1).build(),
+                        discoveryConfig.getSnapshotInterval());
+        caches = new ServiceCacheRegistry<V>(discovery, environment.metrics(),
+                store, events, coalescer);
+
+        // instances of remote ensembles are only watched: this service is
+        // registered with the local ensemble alone
+        if (!discoveryConfig.getRemoteEnsembles().isEmpty()) {
+            ensembleExecutor = environment.lifecycle()
+                    .scheduledExecutorService("discovery-ensembles-%d", true)
+                    .threads(1).build();
+        }
+        for (final EnsembleFactory ensemble : discoveryConfig
+                .getRemoteEnsembles()) {
+            final ServiceDiscovery<V> remoteDiscovery = ServiceDiscoveryBuilder
+                    .builder(getPayloadClass())
+                    .basePath(discoveryConfig.getBasePath())
+                    .client(factory.build(discoveryConfig, ensemble))
+                    .serializer(serializer).build();
+            environment.lifecycle().manage(
+                    new ServiceDiscoveryManager<V>(remoteDiscovery));
+            remoteCaches.put(ensemble, new ServiceCacheRegistry<V>(
+                    remoteDiscovery, environment.metrics(), null, events,
+                    coalescer, ensemble.getName()));
+        }
 
+        // the advertiser writes its own node rather than letting Curator
+        // re-create it on every reconnection, see ReRegistrationListener
         final CuratorAdvertiser<V> advertiser = getCuratorAdvertiser(
-                discoveryConfig, discovery);
+                discoveryConfig,
+                new SessionAwareServiceDiscovery<V>(discovery, framework,
+                        discoveryConfig.getBasePath(), serializer));
+        advertiser.setMetricRegistry(environment.metrics());
+
+        // this servlet serves the membership of the services watched by this
+        // application to other processes on the host
+        if (discoveryConfig.isServeMembership()) {
+            final MembershipServlet membershipServlet = new MembershipServlet(
+                    environment.getObjectMapper());
+            final ServletRegistration.Dynamic registration = environment
+                    .admin()
+                    .addServlet("discovery-membership", membershipServlet);
+            registration.setAsyncSupported(true);
+            registration.addMapping("/discovery/membership");
+            membership = membershipServlet;
+        }
 
         // this listener is used to get the actual HTTP port this server is
-        // listening on and uses that to register the service with ZK.
-        environment.lifecycle().addServerLifecycleListener(
-                new CuratorAdvertisementListener<V>(advertiser));
+        // listening on and uses that to register the service with ZK, off the
+        // server's startup thread.
+        final ScheduledExecutorService registrationExecutor = environment
+                .lifecycle()
+                .scheduledExecutorService("discovery-registration-%d", true)
+                .threads(1).build();
+        advertisementListener = new CuratorAdvertisementListener<V>(advertiser,
+                registrationExecutor, environment.metrics(),
+                discoveryConfig.getRegistrationAttempts(),
+                discoveryConfig.getBaseSleepTime());
+        environment.lifecycle()
+                .addServerLifecycleListener(advertisementListener);
+
+        // this task publishes the load of the service, for clients using a
+        // weighted strategy
+        final Duration loadReportInterval = discoveryConfig
+                .getLoadReportInterval();
+        if (loadReportInterval != null) {
+            environment.lifecycle().manage(new LoadReporterManager(
+                    new LoadReporter(advertiser, getLoadSource(),
+                            environment.metrics(),
+                            discoveryConfig.getLoadReportThreshold(),
+                            discoveryConfig.getLoadUpdateMinInterval()),
+                    registrationExecutor, loadReportInterval));
+        }
+
+        // this listener registers the service again after its session has
+        // expired, spread over time to avoid overwhelming the ensemble.
+        environment.lifecycle().manage(new ConnectionStateListenerManager(
+                framework,
+                new ReRegistrationListener(advertiser, registrationExecutor,
+                        environment.metrics(),
+                        discoveryConfig.getReRegistrationJitter(),
+                        discoveryConfig.getBaseSleepTime(),
+                        discoveryConfig.getRegistrationAttempts())));
 
         // this managed service is used to register the shutdown handler to
         // de-advertise the service from ZK on shutdown.
         environment.lifecycle().manage(
-                new CuratorAdvertiserManager<V>(advertiser));
+                new CuratorAdvertiserManager<V>(advertiser,
+                        advertisementListener));
 
         // this managed service is used to start and stop the service discovery
         environment.lifecycle().manage(
                 new ServiceDiscoveryManager<V>(discovery));
     }
 
+    /**
+     * Return the executor shared by the caches to process their events, or
+     * null to leave each cache its own thread, as configured.
+     */
+    @Nullable
+    private static CacheEventExecutor buildCacheEventExecutor(
+            final DiscoveryFactory discoveryConfig,
+            final Environment environment) {
+        if (discoveryConfig.isVirtualCacheEventThreads()) {
+            final Optional<ExecutorService> virtual = CacheEventExecutor
+                    .newVirtualThreadPerTaskExecutor();
+            if (virtual.isPresent()) {
+                environment.lifecycle().manage(new ExecutorServiceManager(
+                        virtual.get(), Duration.seconds(5),
+                        "discovery-cache-events"));
+                return new CacheEventExecutor(virtual.get(),
+                        environment.metrics());
+            }
+            LOGGER.warn("Virtual threads are not supported by this JDK, "
+                    + "processing cache events on a pool of threads");
+        }
+        final int threads = discoveryConfig.isVirtualCacheEventThreads()
+                ? Math.max(1, discoveryConfig.getCacheEventThreads())
+                : discoveryConfig.getCacheEventThreads();
+        if (threads == 0) {
+            return null;
+        }
+        return new CacheEventExecutor(environment.lifecycle()
+                .executorService("discovery-cache-events-%d")
+                .minThreads(threads).maxThreads(threads).build(),
+                environment.metrics());
+    }
+
+    /**
+     * Return a future that completes with the registered instance once this
+     * service has been registered with ZooKeeper, or exceptionally if it could
+     * not be registered or discovery is disabled.
+     * 
+     * @return {@link CompletableFuture}
+     */
+    public CompletableFuture<ServiceInstance<V>> getRegistration() {
+        final CuratorAdvertisementListener<V> listener = advertisementListener;
+        if (listener == null) {
+            final CompletableFuture<ServiceInstance<V>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException(
+                    "Discovery is disabled or not running"));
+            return future;
+        }
+        return listener.getRegistration();
+    }
+
+    /**
+     * Return the {@link InstanceSerializer} used to convert instances to and
+     * from the data stored in ZooKeeper, before any compression is applied.
+     * Defaults to a
+     * {@link JacksonInstanceSerializer} for the {@link #getPayloadClass()
+     * payload class}, writing the configured
+     * {@link DiscoveryFactory#getPayloadFormat() payload format}.
+     * 
+     * @param discoveryConfig
+     *            {@link DiscoveryFactory}
+     * @param mapper
+     *            {@link ObjectMapper} from the {@link Bootstrap}
+     * @return {@link InstanceSerializer}
+     */
+    public InstanceSerializer<V> getInstanceSerializer(
+            @Nonnull final DiscoveryFactory discoveryConfig,
+            @Nonnull final ObjectMapper mapper) {
+        return JacksonInstanceSerializer.forPayload(mapper, getPayloadClass(),
+                discoveryConfig.getPayloadFormat());
+    }
+
+    /**
+     * Return the load published by this service when
+     * {@link DiscoveryFactory#getLoadReportInterval() load reporting} is
+     * enabled, as the share of its capacity in use. Defaults to the
+     * {@link LoadReporter#systemLoad() system load}; services whose capacity
+     * is bounded by something else, such as a connection pool, should
+     * override it.
+     * 
+     * @return load source
+     */
+    public DoubleSupplier getLoadSource() {
+        return LoadReporter.systemLoad();
+    }
+
     /**
      * Return a new {@link DiscoveryClient} instance that uses a
      * {@link RoundRobinStrategy} when selecting a instance to return and the
+     * configured {@link OutlierDetectionFactory outlier detection}, or else the
      * default {@link DownInstancePolicy}.
      * 
      * @param serviceName
@@ -88,9 +320,16 @@ public abstract class AbstractDiscoveryBundle<T extends Configuration, V>
     }
 
     /**
-     * Return a new {@link DiscoveryClient} instance uses a default
-     * {@link DownInstancePolicy} and the provided {@link ProviderStrategy} for
-     * selecting an instance.
+     * Return a new {@link DiscoveryClient} instance uses the configured
+     * {@link OutlierDetectionFactory outlier detection}, or else a default
+     * {@link DownInstancePolicy}, and the provided {@link ProviderStrategy} for
+     * selecting an instance. Clients of the same service share a single
+     * {@link ServiceCacheRegistry cache} of its instances, whose membership
+     * is also served on the admin port at <code>/discovery/membership</code>
+     * if {@link DiscoveryFactory#isServeMembership() enabled}. Clients fail
+     * over to the instances of the configured
+     * {@link DiscoveryFactory#getRemoteEnsembles() remote ensembles} when none
+     * of the local ones are available.
      * 
      * @param serviceName
      *            name of the service to monitor
@@ -98,11 +337,36 @@ public abstract class AbstractDiscoveryBundle<T extends Configuration, V>
      *            {@link ProviderStrategy} to use when selecting an instance to
      *            return.
      * @return {@link DiscoveryClient}
+     * @throws IllegalStateException
+     *             if discovery is disabled or the bundle has not been run
      */
     public DiscoveryClient<V> newDiscoveryClient(
             @Nonnull final String serviceName,
             @Nonnull final ProviderStrategy<V> providerStrategy) {
-        return new DiscoveryClient<V>(serviceName, discovery,
-                new DownInstancePolicy(), providerStrategy);
+        final ServiceCacheRegistry<V> registry = caches;
+        if (registry == null) {
+            throw new IllegalStateException(
+                    "Discovery is disabled or not running");
+        }
+        final OutlierDetectionFactory outliers = outlierDetection;
+        final DiscoveryClient<V> client = outliers == null
+                ? new DiscoveryClient<V>(serviceName, registry,
+                        new DownInstancePolicy(), providerStrategy)
+                : new DiscoveryClient<V>(serviceName, registry,
+                        outliers.build(), providerStrategy);
+        for (final Map.Entry<EnsembleFactory, ServiceCacheRegistry<V>> entry : remoteCaches
+                .entrySet()) {
+            client.addEnsemble(entry.getKey().getName(),
+                    entry.getKey().getPriority(), entry.getValue());
+        }
+        final ScheduledExecutorService executor = ensembleExecutor;
+        if (executor != null) {
+            client.setEnsembleExecutor(executor);
+        }
+        final MembershipServlet servlet = membership;
+        if (servlet != null) {
+            servlet.register(client);
+        }
+        return client;
     }
 }
@@ -4,8 +4,11 @@ import io.dropwizard.Configuration;
 import io.dropwizard.discovery.core.CuratorAdvertiser;
 import io.dropwizard.discovery.core.DefaultServiceInstanceFactory;
 import io.dropwizard.discovery.core.InstanceMetadata;
+import io.dropwizard.discovery.core.InstanceMetadataSerializer;
 import io.dropwizard.discovery.core.ServiceInstanceFactory;
 import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * <code>DiscoveryBundle</code> provides a more completed implementation of
@@ -33,6 +36,13 @@ public abstract class DiscoveryBundle<T extends Configuration> extends
                 discovery, serviceInstanceFactory);
     }
 
+    @Override
+    public InstanceSerializer<InstanceMetadata> getInstanceSerializer(
+            DiscoveryFactory discoveryConfig, ObjectMapper mapper) {
+        return new InstanceMetadataSerializer(
+                discoveryConfig.getPayloadFormat());
+    }
+
     @Override
     public Class<InstanceMetadata> getPayloadClass() {
         return serviceInstanceFactory.getPayloadClass();
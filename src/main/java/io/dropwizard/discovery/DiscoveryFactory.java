@@ -1,8 +1,14 @@
 package io.dropwizard.discovery;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -14,9 +20,14 @@ import org.hibernate.validator.constraints.NotEmpty;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Joiner;
+import io.dropwizard.discovery.core.NoCompressionProvider;
+import io.dropwizard.discovery.core.PayloadFormat;
+import io.dropwizard.discovery.core.SnappyCompressionProvider;
 import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 import io.dropwizard.validation.MinDuration;
 import io.dropwizard.validation.PortRange;
+import io.dropwizard.validation.ValidationMethod;
 
 public class DiscoveryFactory {
 
@@ -27,14 +38,28 @@ public class DiscoveryFactory {
      * @see #getCompressionProvider()
      * @see CompressionProvider
      */
-    enum CompressionCodec {
+    public enum CompressionCodec {
+
+        /**
+         * No compression.
+         * 
+         * @see NoCompressionProvider
+         */
+        NONE(new NoCompressionProvider()),
 
         /**
          * GZIP compression.
          * 
          * @see GzipCompressionProvider
          */
-        GZIP(new GzipCompressionProvider());
+        GZIP(new GzipCompressionProvider()),
+
+        /**
+         * Snappy compression, faster than GZIP at a lower compression ratio.
+         * 
+         * @see SnappyCompressionProvider
+         */
+        SNAPPY(new SnappyCompressionProvider());
 
         final private CompressionProvider provider;
 
@@ -64,6 +89,28 @@ public class DiscoveryFactory {
     @NotNull
     private String listenAddress = "";
 
+    @Nullable
+    private String zone;
+
+    @Nullable
+    private String region;
+
+    @NotNull
+    private Boolean isDetectLocation = false;
+
+    @Nullable
+    @Min(1)
+    private Integer capacity;
+
+    @Nullable
+    private Duration loadReportInterval;
+
+    @Min(0)
+    private double loadReportThreshold = 0.1;
+
+    @NotNull
+    private Duration loadUpdateMinInterval = Duration.seconds(30);
+
     @NotEmpty
     private String namespace = "dropwizard";
 
@@ -78,6 +125,16 @@ public class DiscoveryFactory {
     @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
     private Duration sessionTimeout = Duration.seconds(6);
 
+    @Nullable
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration startupTimeout;
+
+    @NotNull
+    private Boolean isBackgroundStartup = false;
+
+    @NotNull
+    private Boolean isSharedConnection = false;
+
     @NotNull
     @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
     private Duration baseSleepTime = Duration.seconds(1);
@@ -86,9 +143,54 @@ public class DiscoveryFactory {
     @Max(29)
     private int maxRetries = 5;
 
+    @Min(1)
+    private int registrationAttempts = 3;
+
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration namespaceVerifyInterval = Duration.seconds(30);
+
+    @NotNull
+    private Duration reRegistrationJitter = Duration.seconds(5);
+
     @NotNull
     private CompressionCodec compression = CompressionCodec.GZIP;
 
+    @Nullable
+    private Size compressionThreshold;
+
+    @NotNull
+    private PayloadFormat payloadFormat = PayloadFormat.JSON;
+
+    @Nullable
+    private String snapshotDirectory;
+
+    @NotNull
+    private Duration snapshotInterval = Duration.seconds(1);
+
+    @Min(0)
+    private int cacheEventThreads = 0;
+
+    @NotNull
+    private Boolean isVirtualCacheEventThreads = false;
+
+    @NotNull
+    private Boolean isServeMembership = false;
+
+    @Nullable
+    private Duration coalesceDelay;
+
+    @Min(1)
+    private int coalesceMaxBatch = 100;
+
+    @Valid
+    @Nullable
+    private OutlierDetectionFactory outlierDetection;
+
+    @Valid
+    @NotNull
+    private List<EnsembleFactory> remoteEnsembles = Collections.emptyList();
+
     @NotNull
     private Boolean isReadOnly = false;
 
@@ -159,6 +261,127 @@ public class DiscoveryFactory {
         this.listenAddress = checkNotNull(listenAddress);
     }
 
+    /**
+     * Returns the availability zone this service runs in, published with its
+     * instance.
+     * 
+     * @return the configured zone, or null to detect it or leave it out.
+     */
+    @Nullable
+    @JsonProperty
+    public String getZone() {
+        return zone;
+    }
+
+    @JsonProperty
+    public void setZone(@Nullable final String zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Returns the region this service runs in, published with its instance.
+     * 
+     * @return the configured region, or null to detect it or leave it out.
+     */
+    @Nullable
+    @JsonProperty
+    public String getRegion() {
+        return region;
+    }
+
+    @JsonProperty
+    public void setRegion(@Nullable final String region) {
+        this.region = region;
+    }
+
+    /**
+     * Returns whether to take the zone and region that are not configured
+     * from the <code>DISCOVERY_ZONE</code>, <code>DISCOVERY_REGION</code>,
+     * <code>AWS_REGION</code> or <code>AWS_DEFAULT_REGION</code> environment
+     * variables. Disabled by default.
+     * 
+     * @return true to detect the zone and region
+     */
+    @JsonProperty
+    public boolean isDetectLocation() {
+        return isDetectLocation;
+    }
+
+    @JsonProperty("isDetectLocation")
+    public void setIsDetectLocation(final boolean isDetectLocation) {
+        this.isDetectLocation = isDetectLocation;
+    }
+
+    /**
+     * Returns the capacity of this service relative to the other instances
+     * of the service, such as its number of cores, which weighted strategies
+     * use to send it a proportional share of the traffic.
+     * 
+     * @return the configured capacity, or null if unknown. Only published
+     *         when {@link #getLoadReportInterval() load reporting} is on.
+     */
+    @Nullable
+    @JsonProperty
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    @JsonProperty
+    public void setCapacity(@Nullable final Integer capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns how often the load of this service is sampled to be published
+     * in its instance, along with its {@link #getCapacity() capacity}, or
+     * null not to publish either.
+     * 
+     * @return the interval between load samples.
+     */
+    @Nullable
+    @JsonProperty
+    public Duration getLoadReportInterval() {
+        return loadReportInterval;
+    }
+
+    @JsonProperty
+    public void setLoadReportInterval(
+            @Nullable final Duration loadReportInterval) {
+        this.loadReportInterval = loadReportInterval;
+    }
+
+    /**
+     * Returns by how much the sampled load must differ from the published
+     * load for it to be published again.
+     * 
+     * @return the change in load, as a share of capacity.
+     */
+    @JsonProperty
+    public double getLoadReportThreshold() {
+        return loadReportThreshold;
+    }
+
+    @JsonProperty
+    public void setLoadReportThreshold(final double loadReportThreshold) {
+        this.loadReportThreshold = loadReportThreshold;
+    }
+
+    /**
+     * Returns the minimum time between two writes of the load to ZooKeeper.
+     * 
+     * @return the minimum interval between load updates.
+     */
+    @JsonProperty
+    public Duration getLoadUpdateMinInterval() {
+        return loadUpdateMinInterval;
+    }
+
+    @JsonProperty
+    public void setLoadUpdateMinInterval(
+            @Nonnull final Duration loadUpdateMinInterval) {
+        this.loadUpdateMinInterval = checkNotNull(loadUpdateMinInterval);
+    }
+
     @JsonProperty
     public Duration getConnectionTimeout() {
         return connectionTimeout;
@@ -180,6 +403,22 @@ public class DiscoveryFactory {
         this.sessionTimeout = checkNotNull(sessionTimeout);
     }
 
+    /**
+     * Returns the {@link PayloadFormat} used when writing instances to
+     * ZooKeeper. Instances in any format can always be read.
+     * 
+     * @return the format used to write instances.
+     */
+    @JsonProperty
+    public PayloadFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    @JsonProperty
+    public void setPayloadFormat(@Nonnull final PayloadFormat payloadFormat) {
+        this.payloadFormat = checkNotNull(payloadFormat);
+    }
+
     @JsonProperty
     public boolean isDisabled() {
         return isDisabled;
@@ -190,6 +429,180 @@ public class DiscoveryFactory {
         this.isDisabled = isDisabled;
     }
 
+    /**
+     * Returns the directory in which the instances of every discovered
+     * service are kept, so that clients can use them as soon as they start
+     * and while ZooKeeper cannot be reached.
+     * 
+     * @return the snapshot directory, or null if snapshots are disabled.
+     */
+    @Nullable
+    @JsonProperty
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    @JsonProperty
+    public void setSnapshotDirectory(@Nullable final String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * Returns how long the snapshot of a service waits for further changes
+     * before it is written, so that a burst of changes is written once, in
+     * the background.
+     * 
+     * @return the snapshot interval
+     */
+    @JsonProperty
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    @JsonProperty
+    public void setSnapshotInterval(@Nonnull final Duration snapshotInterval) {
+        this.snapshotInterval = checkNotNull(snapshotInterval);
+    }
+
+    /**
+     * Returns the number of threads shared by the caches of every discovered
+     * service to process their events, or 0 to give every cache its own
+     * thread. The events waiting for the threads are queued without bound.
+     * 
+     * @return the number of cache event threads
+     */
+    @JsonProperty
+    public int getCacheEventThreads() {
+        return cacheEventThreads;
+    }
+
+    @JsonProperty
+    public void setCacheEventThreads(final int cacheEventThreads) {
+        this.cacheEventThreads = cacheEventThreads;
+    }
+
+    /**
+     * Returns whether to process the events of the caches on a virtual
+     * thread per event rather than on {@link #getCacheEventThreads() a pool of
+     * threads}. Falls back to the pool on JDKs without virtual threads.
+     * 
+     * @return true to use virtual threads
+     */
+    @JsonProperty
+    public boolean isVirtualCacheEventThreads() {
+        return isVirtualCacheEventThreads;
+    }
+
+    @JsonProperty("isVirtualCacheEventThreads")
+    public void setIsVirtualCacheEventThreads(
+            final boolean isVirtualCacheEventThreads) {
+        this.isVirtualCacheEventThreads = isVirtualCacheEventThreads;
+    }
+
+    /**
+     * Returns whether to serve the membership of the services watched by the
+     * {@link io.dropwizard.discovery.client.DiscoveryClient}s of the bundle on
+     * the admin port, at <code>/discovery/membership</code>, to other
+     * processes on the host.
+     * 
+     * @return true to serve the membership
+     */
+    @JsonProperty
+    public boolean isServeMembership() {
+        return isServeMembership;
+    }
+
+    @JsonProperty("isServeMembership")
+    public void setIsServeMembership(final boolean isServeMembership) {
+        this.isServeMembership = isServeMembership;
+    }
+
+    /**
+     * Returns how long a change to the instances of a discovered service may
+     * wait for other changes, such as those of a rolling deploy, so that they
+     * are handled together.
+     * 
+     * @return the coalescing delay, or null to handle every change at once.
+     */
+    @Nullable
+    @JsonProperty
+    public Duration getCoalesceDelay() {
+        return coalesceDelay;
+    }
+
+    @JsonProperty
+    public void setCoalesceDelay(@Nullable final Duration coalesceDelay) {
+        this.coalesceDelay = coalesceDelay;
+    }
+
+    /**
+     * Returns the number of changes to the instances of a discovered service
+     * handled together without waiting for the
+     * {@link #getCoalesceDelay() coalescing delay}.
+     * 
+     * @return the maximum number of changes coalesced
+     */
+    @JsonProperty
+    public int getCoalesceMaxBatch() {
+        return coalesceMaxBatch;
+    }
+
+    @JsonProperty
+    public void setCoalesceMaxBatch(final int coalesceMaxBatch) {
+        this.coalesceMaxBatch = coalesceMaxBatch;
+    }
+
+    /**
+     * Returns how long to wait for a connection to ZooKeeper on startup, or
+     * null to wait for as long as it takes.
+     * 
+     * @return startup timeout
+     */
+    @Nullable
+    @JsonProperty
+    public Duration getStartupTimeout() {
+        return startupTimeout;
+    }
+
+    @JsonProperty
+    public void setStartupTimeout(@Nullable final Duration startupTimeout) {
+        this.startupTimeout = startupTimeout;
+    }
+
+    /**
+     * Returns whether to connect to ZooKeeper and create the namespace in the
+     * background, while the rest of the application starts, rather than
+     * before it.
+     * 
+     * @return true to start in the background
+     */
+    @JsonProperty
+    public boolean isBackgroundStartup() {
+        return isBackgroundStartup;
+    }
+
+    @JsonProperty("isBackgroundStartup")
+    public void setIsBackgroundStartup(final boolean isBackgroundStartup) {
+        this.isBackgroundStartup = isBackgroundStartup;
+    }
+
+    /**
+     * Returns whether to share the ZooKeeper connection with the other
+     * bundles of the process that use the same ensemble and session
+     * settings, each through its own namespace. Disabled by default.
+     * 
+     * @return true to share the connection
+     */
+    @JsonProperty
+    public boolean isSharedConnection() {
+        return isSharedConnection;
+    }
+
+    @JsonProperty("isSharedConnection")
+    public void setIsSharedConnection(final boolean isSharedConnection) {
+        this.isSharedConnection = isSharedConnection;
+    }
+
     @JsonProperty
     public boolean isReadOnly() {
         return isReadOnly;
@@ -210,6 +623,59 @@ public class DiscoveryFactory {
         this.maxRetries = maxRetries;
     }
 
+    /**
+     * Returns the number of times registering this service is attempted
+     * before giving up. Attempts are spaced by the
+     * {@link #getBaseSleepTime() initial back-off}, doubled after each one.
+     * 
+     * @return the maximum number of registration attempts.
+     */
+    @JsonProperty
+    public int getRegistrationAttempts() {
+        return registrationAttempts;
+    }
+
+    @JsonProperty
+    public void setRegistrationAttempts(final int registrationAttempts) {
+        this.registrationAttempts = registrationAttempts;
+    }
+
+    /**
+     * Returns how often the health check verifies that the namespace exists
+     * in ZooKeeper. Health polls in between answer from the last
+     * verification and the connection state.
+     * 
+     * @return the interval between namespace verifications.
+     */
+    @JsonProperty
+    public Duration getNamespaceVerifyInterval() {
+        return namespaceVerifyInterval;
+    }
+
+    @JsonProperty
+    public void setNamespaceVerifyInterval(
+            @Nonnull final Duration namespaceVerifyInterval) {
+        this.namespaceVerifyInterval = checkNotNull(namespaceVerifyInterval);
+    }
+
+    /**
+     * Returns the maximum random delay before this service registers itself
+     * again after reconnecting to ZooKeeper, which keeps a fleet of instances
+     * from all writing to the ensemble at the same moment after an outage.
+     * 
+     * @return the maximum delay before re-registering.
+     */
+    @JsonProperty
+    public Duration getReRegistrationJitter() {
+        return reRegistrationJitter;
+    }
+
+    @JsonProperty
+    public void setReRegistrationJitter(
+            @Nonnull final Duration reRegistrationJitter) {
+        this.reRegistrationJitter = checkNotNull(reRegistrationJitter);
+    }
+
     @JsonProperty
     public Duration getBaseSleepTime() {
         return baseSleepTime;
@@ -249,4 +715,80 @@ public class DiscoveryFactory {
     public CompressionProvider getCompressionProvider() {
         return compression.getProvider();
     }
+
+    @JsonProperty
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    @JsonProperty
+    public void setCompression(@Nonnull final CompressionCodec compression) {
+        this.compression = checkNotNull(compression);
+    }
+
+    /**
+     * Returns the size from which service instances written to ZooKeeper are
+     * compressed with the configured {@link CompressionCodec}. Smaller
+     * instances are written uncompressed, as compressing them costs more than
+     * it saves.
+     * 
+     * @return the size from which instances are compressed, or null to write
+     *         them uncompressed.
+     */
+    @Nullable
+    @JsonProperty
+    public Size getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @JsonProperty
+    public void setCompressionThreshold(
+            @Nullable final Size compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Returns the configuration of the outlier detection used by discovery
+     * clients, or null to mark instances down with the default
+     * {@link org.apache.curator.x.discovery.DownInstancePolicy}.
+     * 
+     * @return the outlier detection configuration.
+     */
+    @JsonProperty
+    @Nullable
+    public OutlierDetectionFactory getOutlierDetection() {
+        return outlierDetection;
+    }
+
+    @JsonProperty
+    public void setOutlierDetection(
+            @Nullable final OutlierDetectionFactory outlierDetection) {
+        this.outlierDetection = outlierDetection;
+    }
+
+    /**
+     * Returns the remote ZooKeeper ensembles whose instances clients fall back
+     * to when the local ensemble has none available.
+     * 
+     * @return the remote ensembles
+     */
+    @JsonProperty
+    public List<EnsembleFactory> getRemoteEnsembles() {
+        return remoteEnsembles;
+    }
+
+    @JsonProperty
+    public void setRemoteEnsembles(
+            @Nonnull final List<EnsembleFactory> remoteEnsembles) {
+        this.remoteEnsembles = checkNotNull(remoteEnsembles);
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "remoteEnsembles must have unique names other than 'local'")
+    public boolean isRemoteEnsembleNamesUnique() {
+        final Set<String> names = new HashSet<>();
+        names.add("local");
+        return remoteEnsembles.stream()
+                .allMatch(ensemble -> names.add(ensemble.getName()));
+    }
 }
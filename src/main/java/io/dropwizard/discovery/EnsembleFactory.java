@@ -0,0 +1,98 @@
+package io.dropwizard.discovery;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import javax.annotation.Nonnull;
+import javax.validation.constraints.Min;
+import org.hibernate.validator.constraints.NotEmpty;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Joiner;
+import io.dropwizard.validation.PortRange;
+
+/**
+ * Configuration of a remote ZooKeeper ensemble, such as the one of another
+ * datacenter, whose instances {@link io.dropwizard.discovery.client.DiscoveryClient
+ * clients} fall back to when the ensembles with a higher priority have none
+ * available. Services are only registered with the local ensemble, which has
+ * priority 0.
+ */
+public class EnsembleFactory {
+
+    @NotEmpty
+    private String name = "";
+
+    @NotEmpty
+    private String[] hosts = new String[0];
+
+    @PortRange
+    private int port = 2181;
+
+    @Min(1)
+    private int priority = 1;
+
+    /**
+     * Returns the name of the ensemble, used in logs and metric names.
+     *
+     * @return the name of the ensemble.
+     */
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty
+    public void setName(@Nonnull final String name) {
+        this.name = checkNotNull(name);
+    }
+
+    @JsonProperty
+    public String[] getHosts() {
+        return hosts;
+    }
+
+    @JsonProperty
+    public void setHosts(@Nonnull final String[] hosts) {
+        this.hosts = checkNotNull(hosts);
+    }
+
+    @JsonProperty
+    public int getPort() {
+        return port;
+    }
+
+    @JsonProperty
+    public void setPort(final int port) {
+        this.port = port;
+    }
+
+    /**
+     * Returns the priority of the ensemble: clients use the instances of the
+     * ensembles with the lowest priority that have any available, and merge
+     * the instances of ensembles with the same priority. It is at least 1,
+     * after the local ensemble.
+     *
+     * @return the priority of the ensemble.
+     */
+    @JsonProperty
+    public int getPriority() {
+        return priority;
+    }
+
+    @JsonProperty
+    public void setPriority(final int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Retrieves a formatted specification of the ZooKeeper quorum, formatted
+     * as: host1:port,host2:port[,hostN:port]
+     *
+     * @return a specification of the ZooKeeper quorum, formatted as a String
+     */
+    @JsonIgnore
+    public String getQuorumSpec() {
+        return Joiner.on(":" + getPort() + ",").skipNulls()
+                .appendTo(new StringBuilder(), getHosts()).append(':')
+                .append(getPort()).toString();
+    }
+}
@@ -0,0 +1,191 @@
+package io.dropwizard.discovery;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.discovery.client.OutlierDetector;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the {@link OutlierDetector} that
+ * {@link io.dropwizard.discovery.client.DiscoveryClient clients} use to eject
+ * failing instances, in place of the fixed
+ * {@link org.apache.curator.x.discovery.DownInstancePolicy}.
+ */
+public class OutlierDetectionFactory {
+
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration window = Duration.seconds(10);
+
+    @Min(1)
+    @Max(1000)
+    private int windowBuckets = 10;
+
+    @Min(1)
+    private int minimumRequests = 10;
+
+    @Min(1)
+    @Max(100)
+    private int failureRateThreshold = 50;
+
+    @Nullable
+    private Duration slowCallThreshold;
+
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration baseEjectionTime = Duration.seconds(30);
+
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration maxEjectionTime = Duration.minutes(5);
+
+    @Min(0)
+    @Max(100)
+    private int maxEjectionPercent = 10;
+
+    /**
+     * Returns the length of the sliding window over which the error rate of
+     * each instance is computed.
+     *
+     * @return the length of the window.
+     */
+    @JsonProperty
+    public Duration getWindow() {
+        return window;
+    }
+
+    @JsonProperty
+    public void setWindow(@Nonnull final Duration window) {
+        this.window = checkNotNull(window);
+    }
+
+    /**
+     * Returns the number of buckets the window is divided into; the window
+     * slides by one bucket at a time.
+     *
+     * @return the number of buckets.
+     */
+    @JsonProperty
+    public int getWindowBuckets() {
+        return windowBuckets;
+    }
+
+    @JsonProperty
+    public void setWindowBuckets(final int windowBuckets) {
+        this.windowBuckets = windowBuckets;
+    }
+
+    /**
+     * Returns the number of calls an instance must have received within the
+     * window before it can be ejected.
+     *
+     * @return the minimum number of calls.
+     */
+    @JsonProperty
+    public int getMinimumRequests() {
+        return minimumRequests;
+    }
+
+    @JsonProperty
+    public void setMinimumRequests(final int minimumRequests) {
+        this.minimumRequests = minimumRequests;
+    }
+
+    /**
+     * Returns the percentage of failed calls within the window from which an
+     * instance is ejected.
+     *
+     * @return the failure rate, in percent.
+     */
+    @JsonProperty
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    @JsonProperty
+    public void setFailureRateThreshold(final int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * Returns the latency from which a successful call counts as a failure,
+     * or null if latency is not taken into account.
+     *
+     * @return the latency of a slow call.
+     */
+    @JsonProperty
+    @Nullable
+    public Duration getSlowCallThreshold() {
+        return slowCallThreshold;
+    }
+
+    @JsonProperty
+    public void setSlowCallThreshold(
+            @Nullable final Duration slowCallThreshold) {
+        this.slowCallThreshold = slowCallThreshold;
+    }
+
+    /**
+     * Returns how long an instance is ejected the first time. Each
+     * consecutive ejection doubles it, up to the
+     * {@link #getMaxEjectionTime() maximum}.
+     *
+     * @return the duration of the first ejection.
+     */
+    @JsonProperty
+    public Duration getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    @JsonProperty
+    public void setBaseEjectionTime(@Nonnull final Duration baseEjectionTime) {
+        this.baseEjectionTime = checkNotNull(baseEjectionTime);
+    }
+
+    /**
+     * Returns the longest an instance is ejected for. An instance that has
+     * not been ejected for this long starts again from the base ejection
+     * time.
+     *
+     * @return the maximum duration of an ejection.
+     */
+    @JsonProperty
+    public Duration getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    @JsonProperty
+    public void setMaxEjectionTime(@Nonnull final Duration maxEjectionTime) {
+        this.maxEjectionTime = checkNotNull(maxEjectionTime);
+    }
+
+    /**
+     * Returns the largest share of the instances of a service that can be
+     * ejected at the same time. One instance can always be ejected, unless
+     * this is 0, which disables ejection.
+     *
+     * @return the share of ejected instances, in percent.
+     */
+    @JsonProperty
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    @JsonProperty
+    public void setMaxEjectionPercent(final int maxEjectionPercent) {
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    /**
+     * Build a new {@link OutlierDetector}. Each client needs its own, as the
+     * share of ejected instances is tracked per service.
+     *
+     * @return {@link OutlierDetector}
+     */
+    public OutlierDetector build() {
+        return new OutlierDetector(this);
+    }
+}
@@ -0,0 +1,318 @@
+package io.dropwizard.discovery.admin;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.primitives.Longs;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.MembershipFeed;
+import io.dropwizard.discovery.client.MembershipFeed.Delta;
+
+/**
+ * Serves the membership of the services watched by {@link DiscoveryClient}s
+ * to other processes on the host, such as sidecars and scripts, so that they
+ * do not each open a ZooKeeper session.
+ *
+ * <p>
+ * <code>GET ?service=name&amp;version=N&amp;wait=ms</code> returns the
+ * changes to the service since version N as JSON:
+ * <code>{"service", "version", "reset", "instances", "removed"}</code>. When
+ * nothing changed since N, the request waits up to <code>wait</code>
+ * milliseconds for a change before returning an empty delta. Without a
+ * version, or when N is too old, <code>reset</code> is true and
+ * <code>instances</code> holds every instance. Without a service, the
+ * current version of every service is returned.
+ * </p>
+ *
+ * <p>
+ * Each service is fed by one of its registered clients at a time. When that
+ * client is closed, the feed is handed over to another client of the
+ * service, or removed along with the service once its last client is closed.
+ * </p>
+ */
+@ThreadSafe
+public class MembershipServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(MembershipServlet.class);
+    private static final String CONTENT_TYPE = "application/json";
+    public static final long DEFAULT_MAX_WAIT_MILLIS = TimeUnit.SECONDS
+            .toMillis(60);
+
+    private final transient ObjectMapper mapper;
+    private final long maxWaitMillis;
+    private final transient ConcurrentMap<String, MembershipFeed<?>> feeds = new ConcurrentHashMap<>();
+    @GuardedBy("this")
+    private final transient Map<String, Source<?>> sources = new HashMap<>();
+
+    /**
+     * The feed of a service, and its clients, the first of which feeds it.
+     */
+    private static final class Source<T> {
+        private final MembershipFeed<T> feed;
+        private final List<DiscoveryClient<T>> clients = new ArrayList<>();
+
+        Source(final MembershipFeed<T> feed) {
+            this.feed = feed;
+        }
+    }
+
+    /**
+     * Constructor letting requests wait up to 60 seconds
+     *
+     * @param mapper
+     *            {@link ObjectMapper} to write the instances with
+     */
+    public MembershipServlet(@Nonnull final ObjectMapper mapper) {
+        this(mapper, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            {@link ObjectMapper} to write the instances with
+     * @param maxWaitMillis
+     *            longest a request may wait for a change
+     */
+    public MembershipServlet(@Nonnull final ObjectMapper mapper,
+            final long maxWaitMillis) {
+        checkArgument(maxWaitMillis >= 0, "maxWaitMillis cannot be negative");
+        this.mapper = checkNotNull(mapper);
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Serve the membership of the service watched by the given client, until
+     * it is {@link #unregister(DiscoveryClient) unregistered} or closed. Only
+     * one client of each service feeds it at a time, as all clients of a
+     * service share the same cache.
+     *
+     * @param client
+     *            {@link DiscoveryClient}
+     * @param <T>
+     *            payload class
+     */
+    public synchronized <T> void register(
+            @Nonnull final DiscoveryClient<T> client) {
+        final String name = client.getServiceName();
+        @SuppressWarnings("unchecked")
+        Source<T> source = (Source<T>) sources.get(name);
+        if (source == null) {
+            source = new Source<>(new MembershipFeed<>(name));
+            sources.put(name, source);
+            feeds.put(name, source.feed);
+        } else if (source.clients.contains(client)) {
+            return;
+        }
+        source.clients.add(client);
+        if (source.clients.size() == 1) {
+            follow(source.feed, client);
+        }
+        client.addCloseListener(() -> unregister(client));
+    }
+
+    /**
+     * Stop serving the membership of the service watched by the given
+     * client, handing its feed over to another client of the service if there
+     * is one, or else removing the service.
+     *
+     * @param client
+     *            {@link DiscoveryClient}
+     * @param <T>
+     *            payload class
+     */
+    public synchronized <T> void unregister(
+            @Nonnull final DiscoveryClient<T> client) {
+        final String name = client.getServiceName();
+        @SuppressWarnings("unchecked")
+        final Source<T> source = (Source<T>) sources.get(name);
+        if (source == null) {
+            return;
+        }
+        final int index = source.clients.indexOf(client);
+        if (index < 0) {
+            return;
+        }
+        source.clients.remove(index);
+        if (index > 0) {
+            return;
+        }
+        client.removeListener(source.feed);
+        if (source.clients.isEmpty()) {
+            sources.remove(name);
+            feeds.remove(name);
+        } else {
+            follow(source.feed, source.clients.get(0));
+        }
+    }
+
+    private static <T> void follow(final MembershipFeed<T> feed,
+            final DiscoveryClient<T> client) {
+        client.addListener(feed);
+        feed.accept(client.getSnapshot());
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        final String service = req.getParameter("service");
+        if (service == null) {
+            writeVersions(resp);
+            return;
+        }
+        final MembershipFeed<?> feed = feeds.get(service);
+        if (feed == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND,
+                    "Unknown service: " + service);
+            return;
+        }
+        final Long version = parse(req.getParameter("version"));
+        final Long wait = parse(req.getParameter("wait"));
+        if (version == null || wait == null || wait <= 0 || maxWaitMillis == 0
+                || !req.isAsyncSupported()) {
+            write(resp, feed.since(version == null ? 0 : version));
+            return;
+        }
+        poll(req, resp, feed, version, Math.min(wait, maxWaitMillis));
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored")
+    private <T> void poll(final HttpServletRequest req,
+            final HttpServletResponse resp, final MembershipFeed<T> feed,
+            final long version, final long waitMillis) throws IOException {
+        final CompletableFuture<Delta<T>> future = feed.await(version);
+        final Delta<T> ready = future.getNow(null);
+        if (ready != null) {
+            write(resp, ready);
+            return;
+        }
+
+        final AsyncContext context = req.startAsync();
+        context.setTimeout(waitMillis);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(final AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    feed.cancel(future);
+                    finish(context, feed.since(version));
+                }
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) {
+                done.set(true);
+                feed.cancel(future);
+            }
+
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                feed.cancel(future);
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+                // nothing to do
+            }
+        });
+        // completed on the thread that updated the feed: hand the write over
+        // to the container, which reports its own errors
+        future.thenAccept(delta -> {
+            try {
+                context.start(() -> {
+                    if (done.compareAndSet(false, true)) {
+                        try {
+                            finish(context, delta);
+                        } catch (final IOException e) {
+                            LOGGER.debug("Unable to write membership", e);
+                        }
+                    }
+                });
+            } catch (final IllegalStateException e) {
+                // timed out in the meantime
+            }
+        });
+    }
+
+    private void finish(final AsyncContext context, final Delta<?> delta)
+            throws IOException {
+        try {
+            write((HttpServletResponse) context.getResponse(), delta);
+        } finally {
+            context.complete();
+        }
+    }
+
+    private void write(final HttpServletResponse resp, final Delta<?> delta)
+            throws IOException {
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(CONTENT_TYPE);
+        try (JsonGenerator gen = mapper.getFactory()
+                .createGenerator(resp.getOutputStream())) {
+            gen.writeStartObject();
+            gen.writeStringField("service", delta.getServiceName());
+            gen.writeNumberField("version", delta.getVersion());
+            gen.writeBooleanField("reset", delta.isReset());
+            gen.writeArrayFieldStart("instances");
+            for (final ServiceInstance<?> instance : delta.getInstances()) {
+                mapper.writeValue(gen, instance);
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("removed");
+            for (final String id : delta.getRemoved()) {
+                gen.writeString(id);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private void writeVersions(final HttpServletResponse resp)
+            throws IOException {
+        final Map<String, Long> versions = new TreeMap<>();
+        feeds.forEach((name, feed) -> versions.put(name, feed.getVersion()));
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(CONTENT_TYPE);
+        try (JsonGenerator gen = mapper.getFactory()
+                .createGenerator(resp.getOutputStream())) {
+            gen.writeStartObject();
+            for (final Map.Entry<String, Long> entry : versions.entrySet()) {
+                gen.writeNumberField(entry.getKey(), entry.getValue());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    @Nullable
+    private static Long parse(@Nullable final String value) {
+        return value == null ? null : Longs.tryParse(value);
+    }
+}
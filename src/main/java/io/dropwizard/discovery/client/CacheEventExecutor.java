@@ -0,0 +1,233 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Processes the events of every {@link SharedServiceCache} on one shared pool
+ * of threads, rather than on a thread per cache.
+ *
+ * <p>
+ * Each cache gets its own {@link #forCache(String) executor}, which runs its
+ * events one at a time and in order, as Curator expects, but hands the thread
+ * back to the pool after every event: a cache with a slow listener only delays
+ * its own events, as long as the pool has other threads. The number of events
+ * waiting is reported by a <code>queue-depth</code> gauge, and the time they
+ * waited by a <code>lag</code> timer.
+ * </p>
+ *
+ * <p>
+ * Only the threads are bounded, by the pool. The events waiting for a cache
+ * are not: dropping or reordering them would leave the cache out of step
+ * with ZooKeeper, and running them on the thread delivering them would block
+ * the ZooKeeper event thread. A cache falling behind shows up in the
+ * <code>queue-depth</code> gauge instead.
+ * </p>
+ */
+@ThreadSafe
+public class CacheEventExecutor {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(CacheEventExecutor.class);
+
+    private final ExecutorService workers;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Timer lag;
+
+    /**
+     * Constructor
+     *
+     * @param workers
+     *            {@link ExecutorService} to run the events of every cache on
+     * @param metrics
+     *            {@link MetricRegistry} to report the queue depth and lag in
+     */
+    public CacheEventExecutor(@Nonnull final ExecutorService workers,
+            @Nonnull final MetricRegistry metrics) {
+        this.workers = checkNotNull(workers);
+        final String queueDepth = MetricRegistry.name(CacheEventExecutor.class,
+                "queue-depth");
+        metrics.remove(queueDepth);
+        metrics.register(queueDepth, (Gauge<Integer>) queued::get);
+        this.lag = metrics
+                .timer(MetricRegistry.name(CacheEventExecutor.class, "lag"));
+    }
+
+    /**
+     * Return an {@link ExecutorService} starting a virtual thread per task,
+     * if the JDK supports them.
+     *
+     * @return {@link ExecutorService}, or empty on JDKs without virtual
+     *         threads
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null));
+        } catch (final ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Return a new executor for the events of one cache, running them in
+     * order on the shared pool. Shutting it down does not shut down the pool.
+     *
+     * @param serviceName
+     *            name of the service of the cache, used in logs
+     * @return {@link ExecutorService}
+     */
+    public ExecutorService forCache(@Nonnull final String serviceName) {
+        return new SerialExecutor(checkNotNull(serviceName));
+    }
+
+    /**
+     * Return the number of events waiting to be processed, across all caches.
+     *
+     * @return number of events
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    private final class SerialExecutor extends AbstractExecutorService {
+        private final String serviceName;
+        @GuardedBy("this")
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        @GuardedBy("this")
+        private boolean running = false;
+        @GuardedBy("this")
+        private boolean shutdown = false;
+
+        SerialExecutor(final String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        @Override
+        public void execute(@Nonnull final Runnable command) {
+            checkNotNull(command);
+            final long submitted = System.nanoTime();
+            synchronized (this) {
+                if (shutdown) {
+                    throw new RejectedExecutionException(
+                            "Events of " + serviceName + " are shut down");
+                }
+                queued.incrementAndGet();
+                tasks.add(() -> {
+                    lag.update(System.nanoTime() - submitted,
+                            TimeUnit.NANOSECONDS);
+                    command.run();
+                });
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                workers.execute(this::runNext);
+            } catch (final RejectedExecutionException e) {
+                // the pool is shutting down: drop the pending events
+                synchronized (this) {
+                    queued.addAndGet(-tasks.size());
+                    tasks.clear();
+                    running = false;
+                    notifyAll();
+                }
+                LOGGER.debug("Dropping the events of {}", serviceName, e);
+            }
+        }
+
+        /**
+         * Run one event, and reschedule for the next one rather than looping,
+         * to let the events of other caches through.
+         */
+        private void runNext() {
+            final Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    // cleared by shutdownNow()
+                    running = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            queued.decrementAndGet();
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Unable to process an event of {}", serviceName,
+                        e);
+            }
+            synchronized (this) {
+                if (tasks.isEmpty()) {
+                    running = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public synchronized List<Runnable> shutdownNow() {
+            shutdown = true;
+            queued.addAndGet(-tasks.size());
+            final List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            return pending;
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return shutdown && !running;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(final long timeout,
+                @Nonnull final TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -2,28 +2,116 @@ package io.dropwizard.discovery.client;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import java.io.Closeable;
-import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.curator.x.discovery.DownInstancePolicy;
 import org.apache.curator.x.discovery.ProviderStrategy;
 import org.apache.curator.x.discovery.ServiceCache;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceInstance;
-import org.apache.curator.x.discovery.ServiceProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 
+/**
+ * Client for a single service. {@link #getInstances()}, {@link #getInstance()}
+ * and {@link #noteError(ServiceInstance)} are all served from one
+ * {@link ServiceCache}, which is shared with the other clients of the service
+ * through a {@link ServiceCacheRegistry}; no Curator
+ * {@link org.apache.curator.x.discovery.ServiceProvider} (and therefore no
+ * second cache) is created.
+ *
+ * @param <T>
+ *            payload class
+ */
 @ThreadSafe
 public class DiscoveryClient<T> implements Closeable {
 
+    /**
+     * Only one in this many lookups is timed, so that timing stays cheap
+     * enough to leave on.
+     */
+    private static final int LOOKUP_SAMPLE_RATE = 64;
+
+    /**
+     * The priority of the ensemble of the {@link ServiceCacheRegistry} the
+     * client is built with.
+     */
+    public static final int LOCAL_PRIORITY = 0;
+
+    private static final long ENSEMBLE_RETRY_MILLIS = TimeUnit.SECONDS
+            .toMillis(30);
     private static final Logger LOGGER = LoggerFactory
             .getLogger(DiscoveryClient.class);
+
+    /**
+     * The cache of the service in one ensemble.
+     */
+    private static final class Ensemble<T> {
+        private final String name;
+        private final int priority;
+        private final ServiceCacheRegistry<T> caches;
+        @Nullable
+        private volatile SharedServiceCache<T> cache;
+        /** The pending attempt to watch a remote ensemble, under the client. */
+        @Nullable
+        private Future<?> watching;
+
+        Ensemble(final String name, final int priority,
+                final ServiceCacheRegistry<T> caches) {
+            this.name = name;
+            this.priority = priority;
+            this.caches = caches;
+        }
+    }
+
+    private final String serviceName;
     private final ServiceDiscovery<T> discovery;
-    private final ServiceProvider<T> provider;
-    private final ServiceCache<T> cache;
+    private final ServiceCacheRegistry<T> caches;
+    private final ProviderStrategy<T> providerStrategy;
+    @Nullable
+    private final FeedbackProviderStrategy<T> feedback;
+    @Nullable
+    private final KeyedProviderStrategy<T> keyed;
+    private final InstanceHealthTracker downInstances;
+    private final Timer lookups;
+    private final Meter markedDown;
+    private final Runnable listener = this::rebuildSnapshot;
+    private final List<Consumer<? super InstanceSnapshot<T>>> snapshotListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private final Ensemble<T> local;
+    /** Sorted by priority, the local ensemble first among equals. */
+    private final List<Ensemble<T>> ensembles = new CopyOnWriteArrayList<>();
+    private volatile InstanceSnapshot<T> snapshot = InstanceSnapshot.empty();
+    @Nullable
+    private volatile ScheduledExecutorService ensembleExecutor;
+    @GuardedBy("this")
+    @Nullable
+    private ScheduledExecutorService ownEnsembleExecutor;
+    @GuardedBy("this")
+    private boolean closed = false;
+    @GuardedBy("this")
+    private int servingPriority = LOCAL_PRIORITY;
 
     /**
      * Constructor
@@ -42,18 +130,174 @@ public class DiscoveryClient<T> implements Closeable {
             @Nonnull final ServiceDiscovery<T> discovery,
             @Nonnull final DownInstancePolicy downInstancePolicy,
             @Nonnull final ProviderStrategy<T> providerStrategy) {
+        this(serviceName, new ServiceCacheRegistry<T>(discovery),
+                downInstancePolicy, providerStrategy);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param serviceName
+     *            name of the service to monitor
+     * @param caches
+     *            {@link ServiceCacheRegistry} holding the cache shared with
+     *            other clients of the same service
+     * @param downInstancePolicy
+     *            {@link DownInstancePolicy} to use when marking instances as
+     *            down
+     * @param providerStrategy
+     *            {@link ProviderStrategy} to use when selecting an instance
+     */
+    public DiscoveryClient(@Nonnull final String serviceName,
+            @Nonnull final ServiceCacheRegistry<T> caches,
+            @Nonnull final DownInstancePolicy downInstancePolicy,
+            @Nonnull final ProviderStrategy<T> providerStrategy) {
+        this(serviceName, caches, new DownInstanceTracker(downInstancePolicy),
+                providerStrategy);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param serviceName
+     *            name of the service to monitor
+     * @param caches
+     *            {@link ServiceCacheRegistry} holding the cache shared with
+     *            other clients of the same service
+     * @param outlierDetector
+     *            {@link OutlierDetector} deciding which instances to eject,
+     *            not shared with other clients
+     * @param providerStrategy
+     *            {@link ProviderStrategy} to use when selecting an instance
+     */
+    public DiscoveryClient(@Nonnull final String serviceName,
+            @Nonnull final ServiceCacheRegistry<T> caches,
+            @Nonnull final OutlierDetector outlierDetector,
+            @Nonnull final ProviderStrategy<T> providerStrategy) {
+        this(serviceName, caches, (InstanceHealthTracker) outlierDetector,
+                providerStrategy);
+    }
+
+    private DiscoveryClient(@Nonnull final String serviceName,
+            @Nonnull final ServiceCacheRegistry<T> caches,
+            @Nonnull final InstanceHealthTracker downInstances,
+            @Nonnull final ProviderStrategy<T> providerStrategy) {
         checkNotNull(serviceName);
         checkArgument(!serviceName.isEmpty(), "serviceName cannot be empty");
-        checkNotNull(providerStrategy);
 
-        this.discovery = checkNotNull(discovery);
+        this.serviceName = serviceName;
+        this.caches = checkNotNull(caches);
+        this.discovery = caches.getDiscovery();
+        this.providerStrategy = checkNotNull(providerStrategy);
+        this.feedback = providerStrategy instanceof FeedbackProviderStrategy
+                ? (FeedbackProviderStrategy<T>) providerStrategy
+                : null;
+        this.keyed = providerStrategy instanceof KeyedProviderStrategy
+                ? (KeyedProviderStrategy<T>) providerStrategy
+                : null;
+        this.downInstances = checkNotNull(downInstances);
+        this.lookups = caches.getMetrics()
+                .timer(ServiceCacheRegistry.name(serviceName, "lookups"));
+        this.markedDown = caches.getMetrics()
+                .meter(ServiceCacheRegistry.name(serviceName, "marked-down"));
+        this.local = new Ensemble<>("local", LOCAL_PRIORITY, caches);
+        this.ensembles.add(local);
+    }
+
+    /**
+     * Return the name of the service this client monitors
+     * 
+     * @return name of the service
+     */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Add a listener that is called with every new snapshot of the
+     * instances, after a change to the cache or to the instances marked down.
+     * Listeners are called on the thread that rebuilt the snapshot, usually
+     * the event thread of the cache, and should return quickly.
+     * 
+     * @param snapshotListener
+     *            listener to add
+     */
+    public void addListener(
+            @Nonnull final Consumer<? super InstanceSnapshot<T>> snapshotListener) {
+        snapshotListeners.add(checkNotNull(snapshotListener));
+    }
+
+    /**
+     * Remove a listener added with {@link #addListener(Consumer)}.
+     * 
+     * @param snapshotListener
+     *            listener to remove
+     */
+    public void removeListener(
+            @Nonnull final Consumer<? super InstanceSnapshot<T>> snapshotListener) {
+        snapshotListeners.remove(snapshotListener);
+    }
+
+    /**
+     * Add a listener that is called once the client is {@link #close()
+     * closed}, after it has stopped watching the service.
+     * 
+     * @param closeListener
+     *            listener to add
+     */
+    public void addCloseListener(@Nonnull final Runnable closeListener) {
+        closeListeners.add(checkNotNull(closeListener));
+    }
 
-        this.provider = discovery.serviceProviderBuilder()
-                .serviceName(serviceName)
-                .downInstancePolicy(downInstancePolicy)
-                .providerStrategy(providerStrategy).build();
+    /**
+     * Remove a listener added with {@link #addCloseListener(Runnable)}.
+     * 
+     * @param closeListener
+     *            listener to remove
+     */
+    public void removeCloseListener(@Nonnull final Runnable closeListener) {
+        closeListeners.remove(closeListener);
+    }
 
-        this.cache = discovery.serviceCacheBuilder().name(serviceName).build();
+    /**
+     * Set the executor on which remote ensembles are watched, and watching
+     * them is retried when it fails. Must be called before {@link #start()}.
+     * Without one, a client with {@link #addEnsemble remote ensembles} starts
+     * a thread of its own, which it stops when closed.
+     * 
+     * @param executor
+     *            {@link ScheduledExecutorService}, not shut down by the client
+     */
+    public void setEnsembleExecutor(
+            @Nonnull final ScheduledExecutorService executor) {
+        this.ensembleExecutor = checkNotNull(executor);
+    }
+
+    /**
+     * Also watch the service in another ZooKeeper ensemble, such as the one of
+     * another datacenter. Instances are deduplicated by ID, keeping the copy
+     * from the ensemble with the lowest priority, and only the instances of
+     * the ensembles with the lowest priority that have any available are
+     * returned by {@link #getInstance()}: the client fails over to ensembles
+     * with a higher priority when those are depleted, and merges ensembles
+     * with the same priority. The local ensemble has priority
+     * {@value #LOCAL_PRIORITY}. Must be called before {@link #start()}.
+     * 
+     * @param name
+     *            name of the ensemble, used in logs
+     * @param priority
+     *            priority of the ensemble
+     * @param remoteCaches
+     *            {@link ServiceCacheRegistry} of the ensemble
+     */
+    public void addEnsemble(@Nonnull final String name, final int priority,
+            @Nonnull final ServiceCacheRegistry<T> remoteCaches) {
+        checkState(local.cache == null,
+                "Ensembles must be added before the client is started");
+        ensembles.add(new Ensemble<>(checkNotNull(name), priority,
+                checkNotNull(remoteCaches)));
+        // stable, so the local ensemble stays ahead of those with its priority
+        ensembles.sort(Comparator.comparingInt(ensemble -> ensemble.priority));
     }
 
     /**
@@ -78,20 +322,92 @@ public class DiscoveryClient<T> implements Closeable {
     /**
      * Return a cached list of the running instances for the service.
      * 
-     * @return Collection of service instances
+     * @return unmodifiable Collection of service instances
      */
     public Collection<ServiceInstance<T>> getInstances() {
-        return cache.getInstances();
+        return snapshot.getAllInstances();
+    }
+
+    /**
+     * Return the current immutable snapshot of the instances for the service,
+     * which supports indexed reads without copying.
+     * 
+     * @return {@link InstanceSnapshot}
+     */
+    public InstanceSnapshot<T> getSnapshot() {
+        return currentSnapshot();
     }
 
     /**
-     * Return an instance of this service.
+     * Perform the given action on each cached instance of the service.
+     * 
+     * @param action
+     *            action to perform
+     */
+    public void forEachInstance(
+            @Nonnull final Consumer<? super ServiceInstance<T>> action) {
+        snapshot.forEach(action);
+    }
+
+    /**
+     * Return an instance of this service. One in every 64 lookups is recorded
+     * in the <code>lookups</code> timer of the service.
      * 
      * @return ServiceInstance
      * @throws Exception
      */
     public ServiceInstance<T> getInstance() throws Exception {
-        return provider.getInstance();
+        if (ThreadLocalRandom.current().nextInt(LOOKUP_SAMPLE_RATE) != 0) {
+            return providerStrategy.getInstance(currentSnapshot());
+        }
+        try (Timer.Context context = lookups.time()) {
+            return providerStrategy.getInstance(currentSnapshot());
+        }
+    }
+
+    /**
+     * Return the instance of this service that the given key maps to, so that
+     * requests for the same key keep going to the same instance. Requires a
+     * {@link KeyedProviderStrategy}, such as
+     * {@link io.dropwizard.discovery.client.strategies.ConsistentHashStrategy}.
+     * 
+     * @param key
+     *            key of the request
+     * @return ServiceInstance, or null if there is none available
+     * @throws UnsupportedOperationException
+     *             if the strategy of this client does not support keys
+     * @throws Exception
+     */
+    @Nullable
+    public ServiceInstance<T> getInstance(@Nonnull final String key)
+            throws Exception {
+        if (keyed == null) {
+            throw new UnsupportedOperationException(
+                    providerStrategy.getClass().getSimpleName()
+                            + " does not select instances by key");
+        }
+        if (ThreadLocalRandom.current().nextInt(LOOKUP_SAMPLE_RATE) != 0) {
+            return keyed.getInstance(currentSnapshot(), key);
+        }
+        try (Timer.Context context = lookups.time()) {
+            return keyed.getInstance(currentSnapshot(), key);
+        }
+    }
+
+    /**
+     * Note a successful call to a service instance. With an
+     * {@link OutlierDetector}, a call that was too slow counts as an error.
+     * 
+     * @param instance
+     *            {@link ServiceInstance} that was called.
+     * @param latency
+     *            duration of the call
+     * @param unit
+     *            {@link TimeUnit} of the duration
+     */
+    public void noteSuccess(@Nonnull final ServiceInstance<T> instance,
+            final long latency, @Nonnull final TimeUnit unit) {
+        noteOutcome(instance, unit.toNanos(latency), true);
     }
 
     /**
@@ -101,33 +417,234 @@ public class DiscoveryClient<T> implements Closeable {
      *            {@link ServiceInstance} that is causing the error.
      */
     public void noteError(@Nonnull final ServiceInstance<T> instance) {
-        provider.noteError(instance);
+        noteError(instance, 0, TimeUnit.NANOSECONDS);
     }
 
     /**
-     * Start the internal {@link ServiceProvider} and {@link ServiceCache}
+     * Note an error when calling a service instance.
+     * 
+     * @param instance
+     *            {@link ServiceInstance} that is causing the error.
+     * @param latency
+     *            time spent before the call failed
+     * @param unit
+     *            {@link TimeUnit} of the duration
+     */
+    public void noteError(@Nonnull final ServiceInstance<T> instance,
+            final long latency, @Nonnull final TimeUnit unit) {
+        noteOutcome(instance, unit.toNanos(latency), false);
+    }
+
+    /**
+     * Start watching the service, sharing the {@link ServiceCache} of any
+     * other client of the same service.
      * 
      * @throws Exception
      */
     public void start() throws Exception {
-        provider.start();
-        cache.start();
+        synchronized (this) {
+            closed = false;
+        }
+        watch(local);
+        rebuildSnapshot();
+        if (ensembles.size() == 1) {
+            return;
+        }
+        // remote ensembles may be slow or unreachable: watch them without
+        // holding up the caller
+        synchronized (this) {
+            final ScheduledExecutorService executor = ensembleExecutor();
+            for (final Ensemble<T> ensemble : ensembles) {
+                if (ensemble != local) {
+                    ensemble.watching = executor
+                            .submit(() -> watchRemote(ensemble, executor));
+                }
+            }
+        }
     }
 
     /**
-     * Stop the internal {@link ServiceProvider} and {@link ServiceCache}
+     * Stop watching the service, closing the {@link ServiceCache} if no other
+     * client is using it.
      */
     @Override
     public void close() {
-        try {
-            cache.close();
-        } catch (final IOException e) {
-            LOGGER.error("Unable to close cache", e);
+        synchronized (this) {
+            closed = true;
+            for (final Ensemble<T> ensemble : ensembles) {
+                final Future<?> watching = ensemble.watching;
+                if (watching != null) {
+                    ensemble.watching = null;
+                    watching.cancel(true);
+                }
+            }
+            if (ownEnsembleExecutor != null) {
+                ownEnsembleExecutor.shutdownNow();
+                ownEnsembleExecutor = null;
+            }
+        }
+        for (final Ensemble<T> ensemble : ensembles) {
+            final SharedServiceCache<T> shared = ensemble.cache;
+            if (shared != null) {
+                ensemble.cache = null;
+                shared.removeListener(listener);
+                ensemble.caches.release(shared);
+            }
+        }
+        for (final Runnable closeListener : closeListeners) {
+            closeListener.run();
+        }
+    }
+
+    @GuardedBy("this")
+    private ScheduledExecutorService ensembleExecutor() {
+        final ScheduledExecutorService executor = ensembleExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        if (ownEnsembleExecutor == null) {
+            ownEnsembleExecutor = Executors
+                    .newSingleThreadScheduledExecutor(runnable -> {
+                        final Thread thread = new Thread(runnable,
+                                "discovery-" + serviceName + "-ensembles");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
         }
+        return ownEnsembleExecutor;
+    }
+
+    /**
+     * Start watching the service in a remote ensemble, trying again later
+     * until it succeeds or the client is closed.
+     */
+    private void watchRemote(final Ensemble<T> ensemble,
+            final ScheduledExecutorService executor) {
         try {
-            provider.close();
-        } catch (final IOException e) {
-            LOGGER.error("Unable to close provider", e);
+            watch(ensemble);
+            rebuildSnapshot();
+            return;
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to watch {} in ensemble {}", serviceName,
+                    ensemble.name, e);
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                ensemble.watching = executor.schedule(
+                        () -> watchRemote(ensemble, executor),
+                        ENSEMBLE_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                LOGGER.debug("Stopped watching {} in ensemble {}",
+                        serviceName, ensemble.name, e);
+            }
+        }
+    }
+
+    private void watch(final Ensemble<T> ensemble) throws Exception {
+        final SharedServiceCache<T> shared = ensemble.caches
+                .acquire(serviceName);
+        synchronized (this) {
+            if (!closed) {
+                shared.addListener(listener);
+                ensemble.cache = shared;
+                return;
+            }
+        }
+        ensemble.caches.release(shared);
+    }
+
+    private void noteOutcome(final ServiceInstance<T> instance,
+            final long latencyNanos, final boolean success) {
+        if (feedback != null) {
+            feedback.noteOutcome(instance, latencyNanos, success);
+        }
+        if (downInstances.noteOutcome(instance.getId(), latencyNanos, success,
+                snapshot.size(), System.nanoTime())) {
+            markedDown.mark();
+            rebuildSnapshot();
+        }
+    }
+
+    private InstanceSnapshot<T> currentSnapshot() {
+        final InstanceSnapshot<T> current = snapshot;
+        if (current.isExpired()) {
+            return rebuildSnapshot();
+        }
+        return current;
+    }
+
+    /**
+     * Replace the snapshot with one reflecting the current contents of the
+     * shared cache and the instances that are down. Only writers synchronize, so that
+     * the last snapshot published is always built from the latest state.
+     * 
+     * @return the new {@link InstanceSnapshot}
+     */
+    private synchronized InstanceSnapshot<T> rebuildSnapshot() {
+        final long now = System.nanoTime();
+        final long expiresAt = downInstances.purge(now);
+        final InstanceSnapshot<T> current = ensembles.size() == 1
+                ? localSnapshot(now, expiresAt)
+                : mergedSnapshot(now, expiresAt);
+        snapshot = current;
+        if (feedback != null) {
+            feedback.instancesChanged(current);
+        }
+        for (final Consumer<? super InstanceSnapshot<T>> snapshotListener : snapshotListeners) {
+            snapshotListener.accept(current);
+        }
+        return current;
+    }
+
+    private InstanceSnapshot<T> localSnapshot(final long now,
+            final long expiresAt) {
+        final SharedServiceCache<T> shared = local.cache;
+        return InstanceSnapshot.of(
+                shared == null ? Collections.emptyList()
+                        : shared.getInstances(),
+                instance -> !downInstances.isDown(instance.getId(), now),
+                expiresAt);
+    }
+
+    /**
+     * Merge the instances of every ensemble, only making available those of
+     * the ensembles with the lowest priority that have any available.
+     */
+    @GuardedBy("this")
+    private InstanceSnapshot<T> mergedSnapshot(final long now,
+            final long expiresAt) {
+        final Map<String, ServiceInstance<T>> merged = new LinkedHashMap<>();
+        final Map<String, Integer> priorities = new HashMap<>();
+        int preferred = Integer.MAX_VALUE;
+        for (final Ensemble<T> ensemble : ensembles) {
+            final SharedServiceCache<T> shared = ensemble.cache;
+            if (shared == null) {
+                continue;
+            }
+            for (final ServiceInstance<T> instance : shared.getInstances()) {
+                if (merged.putIfAbsent(instance.getId(), instance) != null) {
+                    continue;
+                }
+                priorities.put(instance.getId(), ensemble.priority);
+                if (ensemble.priority < preferred && instance.isEnabled()
+                        && !downInstances.isDown(instance.getId(), now)) {
+                    preferred = ensemble.priority;
+                }
+            }
+        }
+        if (preferred != Integer.MAX_VALUE && preferred != servingPriority) {
+            LOGGER.info("Serving {} from ensembles with priority {}",
+                    serviceName, preferred);
+            servingPriority = preferred;
         }
+        final int serving = preferred;
+        return InstanceSnapshot.of(merged.values(), instance -> {
+            final Integer priority = priorities.get(instance.getId());
+            return priority != null && priority == serving
+                    && !downInstances.isDown(instance.getId(), now);
+        }, expiresAt);
     }
 }
@@ -0,0 +1,92 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+
+/**
+ * Tracks errors reported against instances and decides, according to a
+ * {@link DownInstancePolicy}, which instances are down. Mirrors the semantics
+ * of Curator's internal <code>DownInstanceManager</code>: an instance is down
+ * once it has reached the error threshold, until the policy timeout has
+ * elapsed since its first error.
+ */
+@ThreadSafe
+class DownInstanceTracker implements InstanceHealthTracker {
+
+    private static final class Status {
+        private final long expiresAtNanos;
+        private final AtomicInteger errorCount = new AtomicInteger(0);
+
+        Status(final long expiresAtNanos) {
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(final long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+    private final ConcurrentMap<String, Status> statuses = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+    private final int errorThreshold;
+
+    /**
+     * Constructor
+     *
+     * @param policy
+     *            {@link DownInstancePolicy}
+     */
+    DownInstanceTracker(@Nonnull final DownInstancePolicy policy) {
+        checkNotNull(policy);
+        this.timeoutNanos = TimeUnit.MILLISECONDS
+                .toNanos(policy.getTimeoutMs());
+        this.errorThreshold = Math.max(1, policy.getErrorThreshold());
+    }
+
+    /**
+     * Record an error against an instance; successes are ignored.
+     */
+    @Override
+    public boolean noteOutcome(@Nonnull final String instanceId,
+            final long latencyNanos, final boolean success, final int poolSize,
+            final long now) {
+        if (success) {
+            return false;
+        }
+        final Status status = statuses.compute(instanceId,
+                (id, existing) -> existing == null || existing.isExpired(now)
+                        ? new Status(now + timeoutNanos) : existing);
+        return status.errorCount.incrementAndGet() == errorThreshold;
+    }
+
+    @Override
+    public boolean isDown(@Nonnull final String instanceId, final long nowNanos) {
+        final Status status = statuses.get(instanceId);
+        return status != null && !status.isExpired(nowNanos)
+                && status.errorCount.get() >= errorThreshold;
+    }
+
+    @Override
+    public long purge(final long nowNanos) {
+        long next = Long.MAX_VALUE;
+        final Iterator<Status> it = statuses.values().iterator();
+        while (it.hasNext()) {
+            final Status status = it.next();
+            if (status.isExpired(nowNanos)) {
+                it.remove();
+            } else if (status.errorCount.get() >= errorThreshold
+                    && (next == Long.MAX_VALUE
+                            || status.expiresAtNanos - next < 0)) {
+                next = status.expiresAtNanos;
+            }
+        }
+        return next;
+    }
+}
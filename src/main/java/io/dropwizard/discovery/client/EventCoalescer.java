@@ -0,0 +1,160 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import com.codahale.metrics.Histogram;
+import io.dropwizard.util.Duration;
+
+/**
+ * Collapses bursts of changes to a {@link SharedServiceCache}, such as those of
+ * a rolling deploy, into a single refresh of its instances and a single
+ * notification of its clients.
+ *
+ * <p>
+ * The first change of a burst schedules a refresh after the maximum delay,
+ * and the changes arriving in the meantime join it. A burst reaching the
+ * maximum batch size is refreshed at once, on the thread of its last change.
+ * The scheduler only hands delayed refreshes over to the executor of the
+ * cache, so that one slow cache does not hold up the others.
+ * </p>
+ */
+@ThreadSafe
+public class EventCoalescer {
+
+    private final ScheduledExecutorService scheduler;
+    private final Duration maxDelay;
+    private final int maxBatchSize;
+
+    /**
+     * Constructor
+     *
+     * @param scheduler
+     *            {@link ScheduledExecutorService} timing delayed refreshes
+     * @param maxDelay
+     *            how long a change may wait for others to join it
+     * @param maxBatchSize
+     *            number of changes refreshed at once without waiting
+     */
+    public EventCoalescer(@Nonnull final ScheduledExecutorService scheduler,
+            @Nonnull final Duration maxDelay, final int maxBatchSize) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.scheduler = checkNotNull(scheduler);
+        this.maxDelay = checkNotNull(maxDelay);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Return a new batch running the given action once per burst of calls to
+     * {@link Batch#run()}.
+     *
+     * @param action
+     *            action to run
+     * @param batchSizes
+     *            {@link Histogram} recording the number of calls coalesced
+     *            into each run of the action
+     * @param executor
+     *            {@link Executor} to run the action on once delayed, usually
+     *            the one processing the events of the cache
+     * @return {@link Batch}
+     */
+    Batch newBatch(final Runnable action, final Histogram batchSizes,
+            final Executor executor) {
+        return new Batch(checkNotNull(action), checkNotNull(batchSizes),
+                checkNotNull(executor));
+    }
+
+    final class Batch implements Runnable {
+        private final Runnable action;
+        private final Histogram batchSizes;
+        private final Executor executor;
+        /** Serializes the runs of the action, so the latest always wins. */
+        private final Object flushLock = new Object();
+        @GuardedBy("this")
+        private int pending = 0;
+        @GuardedBy("this")
+        @Nullable
+        private ScheduledFuture<?> scheduled;
+        @GuardedBy("this")
+        private boolean closed = false;
+
+        private Batch(final Runnable action, final Histogram batchSizes,
+                final Executor executor) {
+            this.action = action;
+            this.batchSizes = batchSizes;
+            this.executor = executor;
+        }
+
+        /**
+         * Note a change, running the action if the batch is full.
+         */
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                pending++;
+                if (pending < maxBatchSize) {
+                    if (scheduled == null) {
+                        scheduled = scheduler.schedule(this::submit,
+                                maxDelay.toNanoseconds(),
+                                TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+            }
+            flush();
+        }
+
+        /**
+         * Drop the pending changes and stop accepting new ones.
+         */
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending = 0;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this::flush);
+            } catch (final RejectedExecutionException e) {
+                // the cache is closing
+            }
+        }
+
+        private void flush() {
+            synchronized (flushLock) {
+                final int batched;
+                synchronized (this) {
+                    batched = pending;
+                    pending = 0;
+                    if (scheduled != null) {
+                        scheduled.cancel(false);
+                        scheduled = null;
+                    }
+                }
+                // already run by a full batch
+                if (batched == 0) {
+                    return;
+                }
+                batchSizes.update(batched);
+                action.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.dropwizard.discovery.client;
+
+import javax.annotation.Nonnull;
+import org.apache.curator.x.discovery.ProviderStrategy;
+import org.apache.curator.x.discovery.ServiceInstance;
+
+/**
+ * A {@link ProviderStrategy} that selects instances based on the outcome of
+ * the calls made to them. A {@link DiscoveryClient} using such a strategy
+ * forwards every outcome reported through
+ * {@link DiscoveryClient#noteSuccess(ServiceInstance, long, java.util.concurrent.TimeUnit)}
+ * and {@link DiscoveryClient#noteError(ServiceInstance)}, and notifies it
+ * whenever the instances of the service change.
+ *
+ * @param <T>
+ *            payload class
+ */
+public interface FeedbackProviderStrategy<T> extends ProviderStrategy<T> {
+
+    /**
+     * Record the outcome of a call to an instance previously returned by
+     * {@link #getInstance(org.apache.curator.x.discovery.details.InstanceProvider)}.
+     *
+     * @param instance
+     *            instance that was called
+     * @param latencyNanos
+     *            duration of the call in nanoseconds, or 0 if unknown
+     * @param success
+     *            whether the call succeeded
+     */
+    void noteOutcome(@Nonnull ServiceInstance<T> instance, long latencyNanos,
+            boolean success);
+
+    /**
+     * Called after the instances of the service have changed, so that any
+     * state kept for instances that have left can be released.
+     *
+     * @param snapshot
+     *            the new {@link InstanceSnapshot}
+     */
+    void instancesChanged(@Nonnull InstanceSnapshot<T> snapshot);
+}
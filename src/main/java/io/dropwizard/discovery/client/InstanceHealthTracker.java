@@ -0,0 +1,50 @@
+package io.dropwizard.discovery.client;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides, from the outcome of the calls made to them, which instances of a
+ * service are down. All times are {@link System#nanoTime()} values.
+ */
+interface InstanceHealthTracker {
+
+    /**
+     * Record the outcome of a call to an instance.
+     *
+     * @param instanceId
+     *            ID of the instance
+     * @param latencyNanos
+     *            duration of the call
+     * @param success
+     *            whether the call succeeded
+     * @param poolSize
+     *            number of instances of the service
+     * @param nowNanos
+     *            current {@link System#nanoTime()}
+     * @return true if this outcome caused the instance to be marked down
+     */
+    boolean noteOutcome(@Nonnull String instanceId, long latencyNanos,
+            boolean success, int poolSize, long nowNanos);
+
+    /**
+     * Return whether an instance is currently down.
+     *
+     * @param instanceId
+     *            ID of the instance
+     * @param nowNanos
+     *            current {@link System#nanoTime()}
+     * @return true if the instance is down
+     */
+    boolean isDown(@Nonnull String instanceId, long nowNanos);
+
+    /**
+     * Forget stale entries and return the earliest time at which an instance
+     * that is currently down will come back.
+     *
+     * @param nowNanos
+     *            current {@link System#nanoTime()}
+     * @return {@link System#nanoTime()} value, or {@link Long#MAX_VALUE} if no
+     *         instance is down
+     */
+    long purge(long nowNanos);
+}
@@ -0,0 +1,202 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+import com.google.common.base.MoreObjects;
+
+/**
+ * An immutable, point-in-time view of the instances of a service.
+ *
+ * <p>
+ * A snapshot is built whenever the underlying cache changes or an instance is
+ * marked down, and is then shared by every reader without any locking. None of
+ * the accessors allocate: {@link #getInstances()} and
+ * {@link #getAllInstances()} return views that are built once along with the
+ * snapshot.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@Immutable
+public final class InstanceSnapshot<T> implements InstanceProvider<T> {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final InstanceSnapshot<?> EMPTY = new InstanceSnapshot<>(
+            new ServiceInstance<?>[0], new ServiceInstance<?>[0], Long.MAX_VALUE);
+
+    private final ServiceInstance<T>[] all;
+    private final ServiceInstance<T>[] available;
+    private final List<ServiceInstance<T>> allView;
+    private final List<ServiceInstance<T>> availableView;
+    private final long expiresAtNanos;
+    private final long version;
+
+    @SuppressWarnings("unchecked")
+    private InstanceSnapshot(final ServiceInstance<?>[] all,
+            final ServiceInstance<?>[] available, final long expiresAtNanos) {
+        this.all = (ServiceInstance<T>[]) all;
+        this.available = (ServiceInstance<T>[]) available;
+        this.allView = Collections.unmodifiableList(Arrays.asList(this.all));
+        this.availableView = Collections
+                .unmodifiableList(Arrays.asList(this.available));
+        this.expiresAtNanos = expiresAtNanos;
+        this.version = VERSIONS.getAndIncrement();
+    }
+
+    /**
+     * Return an empty snapshot.
+     *
+     * @return an empty {@link InstanceSnapshot}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> InstanceSnapshot<T> empty() {
+        return (InstanceSnapshot<T>) EMPTY;
+    }
+
+    /**
+     * Build a new snapshot.
+     *
+     * @param instances
+     *            all known instances of the service
+     * @param isAvailable
+     *            predicate selecting the instances that may be returned by
+     *            {@link #getInstances()}
+     * @param expiresAtNanos
+     *            {@link System#nanoTime()} value after which the availability
+     *            of the instances must be re-evaluated, or
+     *            {@link Long#MAX_VALUE} if it never needs to be.
+     * @return {@link InstanceSnapshot}
+     */
+    public static <T> InstanceSnapshot<T> of(
+            @Nonnull final Collection<ServiceInstance<T>> instances,
+            @Nonnull final Predicate<ServiceInstance<T>> isAvailable,
+            final long expiresAtNanos) {
+        checkNotNull(isAvailable);
+        final ServiceInstance<?>[] all = instances
+                .toArray(new ServiceInstance<?>[0]);
+        int count = 0;
+        final ServiceInstance<?>[] available = new ServiceInstance<?>[all.length];
+        for (final ServiceInstance<?> instance : all) {
+            @SuppressWarnings("unchecked")
+            final ServiceInstance<T> typed = (ServiceInstance<T>) instance;
+            if (typed.isEnabled() && isAvailable.test(typed)) {
+                available[count++] = instance;
+            }
+        }
+        return new InstanceSnapshot<>(all,
+                count == all.length ? all : Arrays.copyOf(available, count),
+                expiresAtNanos);
+    }
+
+    /**
+     * Return the instances that are enabled and not marked down. This is the
+     * list that {@link org.apache.curator.x.discovery.ProviderStrategy}
+     * implementations select from.
+     *
+     * @return unmodifiable list of available instances
+     */
+    @Override
+    public List<ServiceInstance<T>> getInstances() {
+        return availableView;
+    }
+
+    /**
+     * Return every known instance, including the ones marked down.
+     *
+     * @return unmodifiable list of all instances
+     */
+    public List<ServiceInstance<T>> getAllInstances() {
+        return allView;
+    }
+
+    /**
+     * Return the number of known instances.
+     *
+     * @return number of instances
+     */
+    public int size() {
+        return all.length;
+    }
+
+    /**
+     * Return the known instance at the given position.
+     *
+     * @param index
+     *            position of the instance, between 0 and {@link #size()}
+     * @return {@link ServiceInstance}
+     */
+    public ServiceInstance<T> get(final int index) {
+        return all[index];
+    }
+
+    /**
+     * Return the number of available instances.
+     *
+     * @return number of available instances
+     */
+    public int availableSize() {
+        return available.length;
+    }
+
+    /**
+     * Return the available instance at the given position.
+     *
+     * @param index
+     *            position of the instance, between 0 and
+     *            {@link #availableSize()}
+     * @return {@link ServiceInstance}
+     */
+    public ServiceInstance<T> getAvailable(final int index) {
+        return available[index];
+    }
+
+    /**
+     * Perform the given action on every known instance.
+     *
+     * @param action
+     *            action to perform
+     */
+    public void forEach(@Nonnull final Consumer<? super ServiceInstance<T>> action) {
+        for (final ServiceInstance<T> instance : all) {
+            action.accept(instance);
+        }
+    }
+
+    /**
+     * Return whether the availability of the instances must be re-evaluated,
+     * i.e. whether an instance that was marked down is due to come back.
+     *
+     * @return true if this snapshot is out of date
+     */
+    boolean isExpired() {
+        return expiresAtNanos != Long.MAX_VALUE
+                && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Return the version of this snapshot. Snapshots built later have higher
+     * versions, so that a holder of several can tell which is the newest.
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("instances", all.length)
+                .add("available", available.length).toString();
+    }
+}
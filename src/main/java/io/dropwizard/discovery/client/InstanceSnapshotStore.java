@@ -0,0 +1,338 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.dropwizard.util.Duration;
+
+/**
+ * Keeps the last known instances of each service in a file on local disk, so
+ * that a {@link SharedServiceCache} can serve them as soon as it starts, even
+ * while ZooKeeper cannot be reached.
+ *
+ * <p>
+ * Each service has one file holding a small header followed by every instance
+ * as written by the {@link InstanceSerializer}. Files are replaced by writing
+ * a temporary file next to them and atomically renaming it, so a reader never
+ * sees a partially written snapshot, and are memory-mapped when read.
+ * </p>
+ *
+ * <p>
+ * Given a {@link ScheduledExecutorService}, {@link #writeLater} writes the
+ * snapshots on it rather than on the caller's thread, at most once per
+ * interval per service: the changes made in the meantime only replace the
+ * pending snapshot, so only the latest one is written.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class InstanceSnapshotStore<T> {
+
+    private static final int MAGIC = 0x44574453; // "DWDS"
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 1 + 8 + 4;
+    private static final String SUFFIX = ".snapshot";
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(InstanceSnapshotStore.class);
+
+    private final Path directory;
+    private final InstanceSerializer<T> serializer;
+    @Nullable
+    private final ScheduledExecutorService writer;
+    private final Duration interval;
+    private final ConcurrentMap<String, Pending<T>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * A snapshot waiting to be written.
+     */
+    private static final class Pending<T> {
+        private final Collection<ServiceInstance<T>> instances;
+        private final LongConsumer written;
+
+        Pending(final Collection<ServiceInstance<T>> instances,
+                final LongConsumer written) {
+            this.instances = instances;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory
+     *            directory to keep the snapshots in, created if it does not
+     *            exist
+     * @param serializer
+     *            {@link InstanceSerializer} used to write the instances
+     */
+    public InstanceSnapshotStore(@Nonnull final Path directory,
+            @Nonnull final InstanceSerializer<T> serializer) {
+        this.directory = checkNotNull(directory);
+        this.serializer = checkNotNull(serializer);
+        this.writer = null;
+        this.interval = Duration.milliseconds(0);
+    }
+
+    /**
+     * Constructor writing snapshots in the background
+     *
+     * @param directory
+     *            directory to keep the snapshots in, created if it does not
+     *            exist
+     * @param serializer
+     *            {@link InstanceSerializer} used to write the instances
+     * @param writer
+     *            {@link ScheduledExecutorService} to write the snapshots on
+     * @param interval
+     *            how long a snapshot waits for further changes before it is
+     *            written
+     */
+    public InstanceSnapshotStore(@Nonnull final Path directory,
+            @Nonnull final InstanceSerializer<T> serializer,
+            @Nonnull final ScheduledExecutorService writer,
+            @Nonnull final Duration interval) {
+        this.directory = checkNotNull(directory);
+        this.serializer = checkNotNull(serializer);
+        this.writer = checkNotNull(writer);
+        this.interval = checkNotNull(interval);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Replace the snapshot of a service.
+     *
+     * @param serviceName
+     *            name of the service
+     * @param instances
+     *            instances of the service
+     * @return the time the snapshot was written, in milliseconds since the
+     *         epoch
+     * @throws IOException
+     *             if the snapshot could not be written
+     */
+    public long write(@Nonnull final String serviceName,
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws IOException {
+        final List<byte[]> entries = new ArrayList<>(instances.size());
+        int size = HEADER_BYTES;
+        for (final ServiceInstance<T> instance : instances) {
+            final byte[] bytes;
+            try {
+                bytes = serializer.serialize(instance);
+            } catch (final Exception e) {
+                throw new IOException("Unable to serialize " + instance.getId(),
+                        e);
+            }
+            entries.add(bytes);
+            size += 4 + bytes.length;
+        }
+
+        final long writtenAt = System.currentTimeMillis();
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).put(VERSION).putLong(writtenAt)
+                .putInt(entries.size());
+        for (final byte[] bytes : entries) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        buffer.flip();
+
+        Files.createDirectories(directory);
+        final Path target = pathFor(serviceName);
+        final Path temp = Files.createTempFile(directory,
+                target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return writtenAt;
+    }
+
+    /**
+     * Replace the snapshot of a service once the interval has elapsed, in the
+     * background, unless a later call replaces it first. Writes it at once
+     * if this store has no executor to write on. Failures are logged.
+     *
+     * @param serviceName
+     *            name of the service
+     * @param instances
+     *            instances of the service
+     * @param written
+     *            called with the time the snapshot was written, in
+     *            milliseconds since the epoch
+     */
+    @SuppressWarnings("FutureReturnValueIgnored")
+    public void writeLater(@Nonnull final String serviceName,
+            @Nonnull final Collection<ServiceInstance<T>> instances,
+            @Nonnull final LongConsumer written) {
+        final Pending<T> next = new Pending<>(checkNotNull(instances),
+                checkNotNull(written));
+        if (writer == null) {
+            flush(serviceName, next);
+            return;
+        }
+        if (pending.put(serviceName, next) != null) {
+            // joins the write already scheduled
+            return;
+        }
+        try {
+            // never cancelled: pending writes still run on shutdown
+            writer.schedule(() -> flush(serviceName),
+                    interval.toNanoseconds(), TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException e) {
+            flush(serviceName);
+        }
+    }
+
+    private void flush(final String serviceName) {
+        final Pending<T> latest = pending.remove(serviceName);
+        if (latest != null) {
+            flush(serviceName, latest);
+        }
+    }
+
+    private void flush(final String serviceName, final Pending<T> snapshot) {
+        try {
+            snapshot.written.accept(write(serviceName, snapshot.instances));
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write snapshot of {}", serviceName, e);
+        }
+    }
+
+    /**
+     * Read the snapshot of a service.
+     *
+     * @param serviceName
+     *            name of the service
+     * @return the stored instances, or null if there is no snapshot of the
+     *         service
+     * @throws IOException
+     *             if the snapshot could not be read or is corrupt
+     */
+    @Nullable
+    public Entry<T> read(@Nonnull final String serviceName)
+            throws IOException {
+        final Path path = pathFor(serviceName);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            final long writtenAt = buffer.getLong();
+            final int count = buffer.getInt();
+            final List<ServiceInstance<T>> instances = new ArrayList<>(
+                    Math.min(count, buffer.remaining() / 4));
+            for (int i = 0; i < count; i++) {
+                final byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                try {
+                    instances.add(serializer.deserialize(bytes));
+                } catch (final Exception e) {
+                    throw new IOException("Corrupt snapshot: " + path, e);
+                }
+            }
+            return new Entry<>(Collections.unmodifiableList(instances),
+                    writtenAt);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final BufferUnderflowException
+                | NegativeArraySizeException e) {
+            throw new IOException("Truncated snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Return the file holding the snapshot of a service.
+     *
+     * @param serviceName
+     *            name of the service
+     * @return {@link Path} of the snapshot
+     */
+    Path pathFor(final String serviceName) {
+        try {
+            return directory.resolve(
+                    URLEncoder.encode(serviceName, StandardCharsets.UTF_8.name())
+                            + SUFFIX);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The instances of a service read back from disk.
+     *
+     * @param <T>
+     *            payload class
+     */
+    @Immutable
+    public static final class Entry<T> {
+        private final List<ServiceInstance<T>> instances;
+        private final long writtenAt;
+
+        Entry(final List<ServiceInstance<T>> instances, final long writtenAt) {
+            this.instances = instances;
+            this.writtenAt = writtenAt;
+        }
+
+        public List<ServiceInstance<T>> getInstances() {
+            return instances;
+        }
+
+        /**
+         * Return the time the snapshot was written.
+         *
+         * @return milliseconds since the epoch
+         */
+        public long getWrittenAt() {
+            return writtenAt;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.dropwizard.discovery.client;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+
+/**
+ * A {@link FeedbackProviderStrategy} that can also select an instance for a
+ * key, returning the same instance for the same key for as long as the
+ * instances of the service do not change. Used by
+ * {@link DiscoveryClient#getInstance(String)}.
+ *
+ * @param <T>
+ *            payload class
+ */
+public interface KeyedProviderStrategy<T> extends FeedbackProviderStrategy<T> {
+
+    /**
+     * Return the instance that the given key maps to.
+     *
+     * @param instanceProvider
+     *            provider of the instances to select from
+     * @param key
+     *            key of the request
+     * @return {@link ServiceInstance}, or null if there is none available
+     * @throws Exception
+     *             if the instances could not be obtained
+     */
+    @Nullable
+    ServiceInstance<T> getInstance(InstanceProvider<T> instanceProvider,
+            @Nonnull String key) throws Exception;
+}
@@ -0,0 +1,312 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+
+/**
+ * A versioned history of the instances of a service, fed with the snapshots
+ * of a {@link DiscoveryClient}, so that many local consumers can follow the
+ * membership of the service from one watched cache.
+ *
+ * <p>
+ * Every change to the set of instances, or to any instance, increments the
+ * version. A consumer asks for the changes {@link #since(long)} the version
+ * it last saw and receives only the instances that were added or updated and
+ * the IDs of those that were removed; if that version is too old to be in the
+ * history, or from another process, it receives every instance instead. The
+ * first version is the time the feed was created in milliseconds, so that
+ * versions keep increasing across restarts.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class MembershipFeed<T> implements Consumer<InstanceSnapshot<T>> {
+
+    public static final int DEFAULT_HISTORY = 256;
+
+    /**
+     * The changes a consumer has not seen yet.
+     *
+     * @param <T>
+     *            payload class
+     */
+    @Immutable
+    public static final class Delta<T> {
+        private final String serviceName;
+        private final long version;
+        private final boolean reset;
+        private final List<ServiceInstance<T>> instances;
+        private final List<String> removed;
+
+        Delta(final String serviceName, final long version,
+                final boolean reset, final List<ServiceInstance<T>> instances,
+                final List<String> removed) {
+            this.serviceName = serviceName;
+            this.version = version;
+            this.reset = reset;
+            this.instances = instances;
+            this.removed = removed;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        /**
+         * Return the version of the membership after applying this delta.
+         *
+         * @return version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Return whether {@link #getInstances()} holds every instance, in
+         * which case the consumer should drop what it knew before.
+         *
+         * @return true if this delta replaces the membership
+         */
+        public boolean isReset() {
+            return reset;
+        }
+
+        /**
+         * Return the instances that were added or updated, or every instance
+         * if this delta {@link #isReset() is a reset}.
+         *
+         * @return instances
+         */
+        public List<ServiceInstance<T>> getInstances() {
+            return instances;
+        }
+
+        /**
+         * Return the IDs of the instances that were removed.
+         *
+         * @return instance IDs
+         */
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Return whether nothing changed.
+         *
+         * @return true if the delta is empty
+         */
+        public boolean isEmpty() {
+            return !reset && instances.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    @Immutable
+    private static final class Change<T> {
+        private final long version;
+        private final List<ServiceInstance<T>> upserted;
+        private final List<String> removed;
+
+        Change(final long version, final List<ServiceInstance<T>> upserted,
+                final List<String> removed) {
+            this.version = version;
+            this.upserted = upserted;
+            this.removed = removed;
+        }
+    }
+
+    private final String serviceName;
+    private final int history;
+
+    @GuardedBy("this")
+    private long version;
+
+    @GuardedBy("this")
+    private Map<String, ServiceInstance<T>> members = Collections.emptyMap();
+
+    @GuardedBy("this")
+    private final Deque<Change<T>> changes = new ArrayDeque<>();
+
+    @GuardedBy("this")
+    private final Map<CompletableFuture<Delta<T>>, Long> waiters = new HashMap<>();
+
+    /**
+     * Constructor keeping the last {@value #DEFAULT_HISTORY} changes
+     *
+     * @param serviceName
+     *            name of the service
+     */
+    public MembershipFeed(@Nonnull final String serviceName) {
+        this(serviceName, DEFAULT_HISTORY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param serviceName
+     *            name of the service
+     * @param history
+     *            number of changes to keep; consumers further behind receive
+     *            every instance
+     */
+    public MembershipFeed(@Nonnull final String serviceName,
+            final int history) {
+        checkArgument(history > 0, "history must be positive");
+        this.serviceName = checkNotNull(serviceName);
+        this.history = history;
+        this.version = System.currentTimeMillis();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Return the current version of the membership.
+     *
+     * @return version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void accept(final InstanceSnapshot<T> snapshot) {
+        update(snapshot.getAllInstances());
+    }
+
+    /**
+     * Replace the membership, recording a new version if anything changed and
+     * completing the consumers waiting for it.
+     *
+     * @param instances
+     *            every instance of the service
+     */
+    public void update(@Nonnull final Collection<ServiceInstance<T>> instances) {
+        final Map<CompletableFuture<Delta<T>>, Delta<T>> completed = new HashMap<>();
+        synchronized (this) {
+            final Map<String, ServiceInstance<T>> next = new LinkedHashMap<>(
+                    instances.size() * 2);
+            final List<ServiceInstance<T>> upserted = new ArrayList<>();
+            for (final ServiceInstance<T> instance : instances) {
+                next.put(instance.getId(), instance);
+                if (!instance.equals(members.get(instance.getId()))) {
+                    upserted.add(instance);
+                }
+            }
+            final List<String> removed = new ArrayList<>();
+            for (final String id : members.keySet()) {
+                if (!next.containsKey(id)) {
+                    removed.add(id);
+                }
+            }
+            if (upserted.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            members = next;
+            version++;
+            changes.addLast(new Change<>(version,
+                    Collections.unmodifiableList(upserted),
+                    Collections.unmodifiableList(removed)));
+            while (changes.size() > history) {
+                changes.removeFirst();
+            }
+            for (final Map.Entry<CompletableFuture<Delta<T>>, Long> waiter : waiters
+                    .entrySet()) {
+                completed.put(waiter.getKey(), since(waiter.getValue()));
+            }
+            waiters.clear();
+        }
+        // outside the lock, as completing runs the consumers' callbacks
+        completed.forEach(CompletableFuture::complete);
+    }
+
+    /**
+     * Return the changes since the given version.
+     *
+     * @param since
+     *            last version the consumer saw, or 0 if none
+     * @return {@link Delta}
+     */
+    public synchronized Delta<T> since(final long since) {
+        if (since == version) {
+            return new Delta<>(serviceName, version, false,
+                    Collections.emptyList(), Collections.emptyList());
+        }
+        final Change<T> oldest = changes.peekFirst();
+        if (since > version || oldest == null || since < oldest.version - 1) {
+            return new Delta<>(serviceName, version, true,
+                    Collections.unmodifiableList(
+                            new ArrayList<>(members.values())),
+                    Collections.emptyList());
+        }
+
+        final Map<String, ServiceInstance<T>> upserted = new LinkedHashMap<>();
+        final Set<String> removed = new LinkedHashSet<>();
+        for (final Change<T> change : changes) {
+            if (change.version <= since) {
+                continue;
+            }
+            for (final ServiceInstance<T> instance : change.upserted) {
+                removed.remove(instance.getId());
+                upserted.put(instance.getId(), instance);
+            }
+            for (final String id : change.removed) {
+                upserted.remove(id);
+                removed.add(id);
+            }
+        }
+        return new Delta<>(serviceName, version, false,
+                Collections.unmodifiableList(new ArrayList<>(upserted.values())),
+                Collections.unmodifiableList(new ArrayList<>(removed)));
+    }
+
+    /**
+     * Return a future completed with the changes since the given version:
+     * immediately if there are some, otherwise on the next change. A consumer
+     * that stops waiting should {@link #cancel(CompletableFuture)} it.
+     *
+     * @param since
+     *            last version the consumer saw, or 0 if none
+     * @return {@link CompletableFuture} of the {@link Delta}
+     */
+    public synchronized CompletableFuture<Delta<T>> await(final long since) {
+        if (since != version) {
+            return CompletableFuture.completedFuture(since(since));
+        }
+        final CompletableFuture<Delta<T>> future = new CompletableFuture<>();
+        waiters.put(future, since);
+        return future;
+    }
+
+    /**
+     * Stop waiting for changes.
+     *
+     * @param future
+     *            future returned by {@link #await(long)}
+     */
+    public synchronized void cancel(
+            @Nonnull final CompletableFuture<Delta<T>> future) {
+        waiters.remove(future);
+    }
+}
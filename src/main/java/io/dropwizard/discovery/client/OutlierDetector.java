@@ -0,0 +1,259 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import io.dropwizard.discovery.OutlierDetectionFactory;
+
+/**
+ * Ejects instances whose error rate over a sliding window is too high, as an
+ * alternative to the fixed error count and timeout of a
+ * {@link org.apache.curator.x.discovery.DownInstancePolicy}.
+ *
+ * <p>
+ * Each instance has a window of buckets counting its calls and failures; a
+ * call fails if it reported an error, or if it was slower than the slow call
+ * threshold. Once an instance has received enough calls within the window
+ * and too many of them failed, it is ejected for the base ejection time,
+ * doubled for each consecutive ejection up to the maximum ejection time. An
+ * instance comes back with an empty window, and is forgiven once it has gone
+ * a whole maximum ejection time without being ejected. No more than the
+ * configured share of the instances of the service are ejected at once,
+ * though one instance can always be ejected unless the share is 0, which
+ * disables ejection; concurrent ejections may exceed it by one.
+ * </p>
+ *
+ * <p>
+ * All state is updated with compare-and-set operations, so recording an
+ * outcome never blocks and only allocates when an instance is first seen or
+ * is ejected.
+ * </p>
+ */
+@ThreadSafe
+public class OutlierDetector implements InstanceHealthTracker {
+
+    private static final int MAX_COUNT = 0xFFFF;
+
+    /**
+     * When an instance is ejected until, and how many consecutive times it
+     * has been ejected.
+     */
+    @Immutable
+    private static final class Ejection {
+        private static final Ejection NONE = new Ejection(0, 0);
+
+        private final long untilNanos;
+        private final int level;
+
+        Ejection(final long untilNanos, final int level) {
+            this.untilNanos = untilNanos;
+            this.level = level;
+        }
+
+        boolean isActive(final long nowNanos) {
+            return this != NONE && untilNanos - nowNanos > 0;
+        }
+    }
+
+    /**
+     * Each bucket packs the bucket number it counts for in its upper 32 bits,
+     * and its failures and calls in the lower two 16 bits.
+     */
+    private static final class Stats {
+        private static final AtomicReferenceFieldUpdater<Stats, Ejection> EJECTION = AtomicReferenceFieldUpdater
+                .newUpdater(Stats.class, Ejection.class, "ejection");
+
+        private final AtomicLongArray buckets;
+        private volatile Ejection ejection = Ejection.NONE;
+        private volatile long lastSeenNanos;
+
+        Stats(final int bucketCount) {
+            this.buckets = new AtomicLongArray(bucketCount);
+        }
+
+        void record(final long epoch, final boolean failure) {
+            final int index = (int) Math.floorMod(epoch,
+                    (long) buckets.length());
+            final long tag = epoch << 32;
+            while (true) {
+                final long current = buckets.get(index);
+                long calls = 0;
+                long failures = 0;
+                if ((current & 0xFFFFFFFF00000000L) == tag) {
+                    calls = current & MAX_COUNT;
+                    failures = (current >>> 16) & MAX_COUNT;
+                }
+                if (calls < MAX_COUNT) {
+                    calls++;
+                    if (failure) {
+                        failures++;
+                    }
+                }
+                if (buckets.compareAndSet(index, current,
+                        tag | failures << 16 | calls)) {
+                    return;
+                }
+            }
+        }
+
+        boolean eject(final Ejection previous, final Ejection next) {
+            return EJECTION.compareAndSet(this, previous, next);
+        }
+
+        void clear() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private final long bucketNanos;
+    private final int bucketCount;
+    private final long windowNanos;
+    private final int minimumRequests;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final int maxEjectionPercent;
+
+    /**
+     * Constructor
+     *
+     * @param configuration
+     *            {@link OutlierDetectionFactory}
+     */
+    public OutlierDetector(
+            @Nonnull final OutlierDetectionFactory configuration) {
+        checkNotNull(configuration);
+        checkArgument(configuration.getWindowBuckets() > 0,
+                "windowBuckets must be positive");
+        this.bucketCount = configuration.getWindowBuckets();
+        this.bucketNanos = Math.max(1,
+                configuration.getWindow().toNanoseconds() / bucketCount);
+        this.windowNanos = bucketNanos * bucketCount;
+        this.minimumRequests = Math.max(1, configuration.getMinimumRequests());
+        this.failureRateThreshold = configuration.getFailureRateThreshold();
+        this.slowCallNanos = configuration.getSlowCallThreshold() == null ? 0
+                : configuration.getSlowCallThreshold().toNanoseconds();
+        this.baseEjectionNanos = configuration.getBaseEjectionTime()
+                .toNanoseconds();
+        this.maxEjectionNanos = Math.max(baseEjectionNanos,
+                configuration.getMaxEjectionTime().toNanoseconds());
+        this.maxEjectionPercent = configuration.getMaxEjectionPercent();
+    }
+
+    @Override
+    public boolean noteOutcome(@Nonnull final String instanceId,
+            final long latencyNanos, final boolean success, final int poolSize,
+            final long nowNanos) {
+        final Stats stat = stats.computeIfAbsent(instanceId,
+                id -> new Stats(bucketCount));
+        stat.lastSeenNanos = nowNanos;
+        final boolean failure = !success
+                || (slowCallNanos > 0 && latencyNanos >= slowCallNanos);
+        final long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        stat.record(epoch, failure);
+        if (!failure) {
+            return false;
+        }
+
+        final Ejection previous = stat.ejection;
+        if (previous.isActive(nowNanos) || !isOutlier(stat, epoch)
+                || !mayEject(poolSize, nowNanos)) {
+            return false;
+        }
+        final int level = previous == Ejection.NONE
+                || nowNanos - previous.untilNanos >= maxEjectionNanos ? 0
+                        : previous.level;
+        final Ejection next = new Ejection(nowNanos + ejectionNanos(level),
+                level + 1);
+        if (!stat.eject(previous, next)) {
+            // ejected by another thread
+            return false;
+        }
+        stat.clear();
+        return true;
+    }
+
+    @Override
+    public boolean isDown(@Nonnull final String instanceId,
+            final long nowNanos) {
+        final Stats stat = stats.get(instanceId);
+        return stat != null && stat.ejection.isActive(nowNanos);
+    }
+
+    /**
+     * Forget the instances that have not been called within the window and
+     * whose last ejection has been forgiven.
+     */
+    @Override
+    public long purge(final long nowNanos) {
+        long next = Long.MAX_VALUE;
+        final Iterator<Stats> it = stats.values().iterator();
+        while (it.hasNext()) {
+            final Stats stat = it.next();
+            final Ejection ejection = stat.ejection;
+            if (ejection.isActive(nowNanos)) {
+                if (next == Long.MAX_VALUE
+                        || ejection.untilNanos - next < 0) {
+                    next = ejection.untilNanos;
+                }
+            } else if (nowNanos - stat.lastSeenNanos >= windowNanos
+                    && (ejection == Ejection.NONE || nowNanos
+                            - ejection.untilNanos >= maxEjectionNanos)) {
+                it.remove();
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Return how long an instance is ejected for after the given number of
+     * consecutive previous ejections.
+     */
+    long ejectionNanos(final int level) {
+        if (level >= Long.numberOfLeadingZeros(baseEjectionNanos) - 1) {
+            return maxEjectionNanos;
+        }
+        return Math.min(baseEjectionNanos << level, maxEjectionNanos);
+    }
+
+    private boolean isOutlier(final Stats stat, final long epoch) {
+        long calls = 0;
+        long failures = 0;
+        final int current = (int) epoch;
+        for (int i = 0; i < bucketCount; i++) {
+            final long bucket = stat.buckets.get(i);
+            final int age = current - (int) (bucket >>> 32);
+            if (age >= 0 && age < bucketCount) {
+                calls += bucket & MAX_COUNT;
+                failures += (bucket >>> 16) & MAX_COUNT;
+            }
+        }
+        return calls >= minimumRequests
+                && failures * 100 >= failureRateThreshold * calls;
+    }
+
+    private boolean mayEject(final int poolSize, final long nowNanos) {
+        if (maxEjectionPercent <= 0) {
+            return false;
+        }
+        int ejected = 0;
+        for (final Stats stat : stats.values()) {
+            if (stat.ejection.isActive(nowNanos)) {
+                ejected++;
+            }
+        }
+        return ejected == 0
+                || ejected * 100 < maxEjectionPercent * Math.max(1, poolSize);
+    }
+}
@@ -0,0 +1,385 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Hands out one {@link SharedServiceCache} per service name, so that every
+ * {@link DiscoveryClient} of the same service shares a single set of ZooKeeper
+ * watches and a single copy of its instances. Caches are reference counted:
+ * the first {@link #acquire(String)} starts the cache and the last
+ * {@link #release(SharedServiceCache)} closes it.
+ *
+ * <p>
+ * Given an {@link InstanceSnapshotStore}, the caches keep a copy of their
+ * instances on disk and start from it, and a <code>snapshot-age</code> gauge
+ * reports how old that copy is.
+ * </p>
+ *
+ * <p>
+ * Every change to a cache marks its <code>events</code> meter, and every
+ * refresh of its instances updates its <code>refresh</code> timer and, with
+ * the number of changes it handled, its <code>batch-size</code> histogram.
+ * Given an {@link EventCoalescer}, bursts of changes share one refresh.
+ * The metrics of the caches of a remote ensemble are named after it, so that
+ * they can share a {@link MetricRegistry} with those of the local ensemble.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class ServiceCacheRegistry<T> {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ServiceCacheRegistry.class);
+    private final ServiceDiscovery<T> discovery;
+    private final MetricRegistry metrics;
+    @Nullable
+    private final InstanceSnapshotStore<T> store;
+    @Nullable
+    private final CacheEventExecutor events;
+    @Nullable
+    private final EventCoalescer coalescer;
+    @Nullable
+    private final String ensemble;
+    @GuardedBy("this")
+    private final Map<String, SharedServiceCache<T>> caches = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<String, CompletableFuture<SharedServiceCache<T>>> starting = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery) {
+        this(discovery, new MetricRegistry());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     * @param metrics
+     *            {@link MetricRegistry} for the metrics of the caches and of
+     *            the clients using them
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery,
+            @Nonnull final MetricRegistry metrics) {
+        this(discovery, metrics, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     * @param metrics
+     *            {@link MetricRegistry} for the metrics of the caches and of
+     *            the clients using them
+     * @param store
+     *            {@link InstanceSnapshotStore} to keep the instances of every
+     *            service in, or null to keep them in memory only
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final InstanceSnapshotStore<T> store) {
+        this(discovery, metrics, store, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     * @param metrics
+     *            {@link MetricRegistry} for the metrics of the caches and of
+     *            the clients using them
+     * @param store
+     *            {@link InstanceSnapshotStore} to keep the instances of every
+     *            service in, or null to keep them in memory only
+     * @param events
+     *            {@link CacheEventExecutor} to process the events of every
+     *            cache on, or null to give each cache its own thread
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final InstanceSnapshotStore<T> store,
+            @Nullable final CacheEventExecutor events) {
+        this(discovery, metrics, store, events, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     * @param metrics
+     *            {@link MetricRegistry} for the metrics of the caches and of
+     *            the clients using them
+     * @param store
+     *            {@link InstanceSnapshotStore} to keep the instances of every
+     *            service in, or null to keep them in memory only
+     * @param events
+     *            {@link CacheEventExecutor} to process the events of every
+     *            cache on, or null to give each cache its own thread
+     * @param coalescer
+     *            {@link EventCoalescer} collapsing bursts of changes to a
+     *            cache, or null to refresh the cache on every change
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final InstanceSnapshotStore<T> store,
+            @Nullable final CacheEventExecutor events,
+            @Nullable final EventCoalescer coalescer) {
+        this(discovery, metrics, store, events, coalescer, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link ServiceDiscovery}
+     * @param metrics
+     *            {@link MetricRegistry} for the metrics of the caches and of
+     *            the clients using them
+     * @param store
+     *            {@link InstanceSnapshotStore} to keep the instances of every
+     *            service in, or null to keep them in memory only
+     * @param events
+     *            {@link CacheEventExecutor} to process the events of every
+     *            cache on, or null to give each cache its own thread
+     * @param coalescer
+     *            {@link EventCoalescer} collapsing bursts of changes to a
+     *            cache, or null to refresh the cache on every change
+     * @param ensemble
+     *            name of the remote ensemble the caches watch, used in the
+     *            names of their metrics, or null for the local ensemble
+     */
+    public ServiceCacheRegistry(@Nonnull final ServiceDiscovery<T> discovery,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final InstanceSnapshotStore<T> store,
+            @Nullable final CacheEventExecutor events,
+            @Nullable final EventCoalescer coalescer,
+            @Nullable final String ensemble) {
+        this.discovery = checkNotNull(discovery);
+        this.metrics = checkNotNull(metrics);
+        this.store = store;
+        this.events = events;
+        this.coalescer = coalescer;
+        this.ensemble = ensemble;
+    }
+
+    public ServiceDiscovery<T> getDiscovery() {
+        return discovery;
+    }
+
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the started cache for a service, starting it if no other client
+     * is using it. Every call must be matched by a call to
+     * {@link #release(SharedServiceCache)}. Caches are started without holding
+     * the lock of the registry, so a slow start only holds up the clients of
+     * the same service, which wait for it and share its outcome.
+     *
+     * @param serviceName
+     *            name of the service
+     * @return {@link SharedServiceCache}
+     * @throws Exception
+     *             if the cache could not be started
+     */
+    public SharedServiceCache<T> acquire(@Nonnull final String serviceName)
+            throws Exception {
+        while (true) {
+            final CompletableFuture<SharedServiceCache<T>> pending;
+            final boolean starter;
+            synchronized (this) {
+                final SharedServiceCache<T> cache = caches.get(serviceName);
+                if (cache != null) {
+                    cache.retain();
+                    return cache;
+                }
+                final CompletableFuture<SharedServiceCache<T>> current = starting
+                        .get(serviceName);
+                starter = current == null;
+                if (current == null) {
+                    pending = new CompletableFuture<>();
+                    starting.put(serviceName, pending);
+                } else {
+                    pending = current;
+                }
+            }
+            if (starter) {
+                return start(serviceName, pending);
+            }
+            try {
+                pending.get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            // look again: the cache may have been released in the meantime
+        }
+    }
+
+    private SharedServiceCache<T> start(final String serviceName,
+            final CompletableFuture<SharedServiceCache<T>> pending)
+            throws Exception {
+        final SharedServiceCache<T> cache;
+        try {
+            cache = newCache(serviceName);
+        } catch (final Throwable e) {
+            synchronized (this) {
+                starting.remove(serviceName);
+            }
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            starting.remove(serviceName);
+            caches.put(serviceName, cache);
+            metrics.remove(cacheMetric(serviceName, "instances"));
+            metrics.register(cacheMetric(serviceName, "instances"),
+                    (Gauge<Integer>) () -> cache.getInstances().size());
+            if (store != null) {
+                metrics.remove(cacheMetric(serviceName, "snapshot-age"));
+                metrics.register(cacheMetric(serviceName, "snapshot-age"),
+                        (Gauge<Long>) cache::getSnapshotAge);
+            }
+            cache.retain();
+        }
+        pending.complete(cache);
+        return cache;
+    }
+
+    /**
+     * Build and start the cache of a service, closing it and shutting down
+     * its executor if it cannot be started.
+     */
+    private SharedServiceCache<T> newCache(final String serviceName)
+            throws Exception {
+        final ServiceCacheBuilder<T> builder = discovery.serviceCacheBuilder()
+                .name(serviceName);
+        // delayed refreshes run on the executor of the cache, so it needs one
+        // of its own when coalescing
+        final ExecutorService executor;
+        if (events != null) {
+            executor = events.forCache(serviceName);
+        } else if (coalescer != null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "discovery-cache-" + serviceName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+        final SharedServiceCache<T> cache;
+        try {
+            if (executor != null) {
+                builder.executorService(executor);
+            }
+            cache = new SharedServiceCache<T>(serviceName, builder.build(),
+                    metrics.meter(cacheMetric(serviceName, "events")),
+                    metrics.timer(cacheMetric(serviceName, "refresh")),
+                    metrics.histogram(cacheMetric(serviceName, "batch-size")),
+                    store, executor, coalescer);
+        } catch (final RuntimeException e) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            throw e;
+        }
+        try {
+            cache.start();
+        } catch (final Exception e) {
+            try {
+                cache.close();
+            } catch (final Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Release a cache obtained from {@link #acquire(String)}, closing it if no
+     * other client is using it.
+     *
+     * @param cache
+     *            {@link SharedServiceCache}
+     */
+    public synchronized void release(
+            @Nonnull final SharedServiceCache<T> cache) {
+        if (cache.release() > 0) {
+            return;
+        }
+        caches.remove(cache.getServiceName(), cache);
+        metrics.remove(cacheMetric(cache.getServiceName(), "instances"));
+        metrics.remove(cacheMetric(cache.getServiceName(), "snapshot-age"));
+        try {
+            cache.close();
+        } catch (final Exception e) {
+            LOGGER.error("Unable to close cache for {}",
+                    cache.getServiceName(), e);
+        }
+    }
+
+    /**
+     * Return the name of a metric of a service.
+     *
+     * @param serviceName
+     *            name of the service
+     * @param name
+     *            name of the metric
+     * @return metric name
+     */
+    static String name(final String serviceName, final String name) {
+        return MetricRegistry.name(DiscoveryClient.class, serviceName, name);
+    }
+
+    /**
+     * Return the name of a metric of the cache of a service, prefixed with
+     * the name of the ensemble if it is a remote one.
+     */
+    private String cacheMetric(final String serviceName, final String name) {
+        return ensemble == null ? name(serviceName, name)
+                : MetricRegistry.name(DiscoveryClient.class, "ensembles",
+                        ensemble, serviceName, name);
+    }
+
+    /**
+     * Return the number of services with an open cache.
+     *
+     * @return number of caches
+     */
+    public synchronized int size() {
+        return caches.size();
+    }
+}
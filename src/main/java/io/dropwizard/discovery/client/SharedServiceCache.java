@@ -0,0 +1,249 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link ServiceCache} shared by every {@link DiscoveryClient} of a service,
+ * obtained from a {@link ServiceCacheRegistry}. The instances are read from
+ * the cache once per change and the same list is handed to every client.
+ *
+ * <p>
+ * If an {@link InstanceSnapshotStore} is given, the instances are written to
+ * it after every change, in the background, and read back from it on start, so that clients can
+ * route requests before the cache has loaded, and keep doing so if ZooKeeper
+ * cannot be reached at all.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public final class SharedServiceCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(SharedServiceCache.class);
+    private final String serviceName;
+    private final ServiceCache<T> cache;
+    private final Meter events;
+    private final Timer refreshes;
+    private final Histogram batchSizes;
+    @Nullable
+    private final InstanceSnapshotStore<T> store;
+    @Nullable
+    private final ExecutorService executor;
+    @Nullable
+    private final EventCoalescer.Batch batch;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile List<ServiceInstance<T>> instances = Collections
+            .emptyList();
+    private volatile long snapshotWrittenAt = -1;
+
+    // guarded by the owning ServiceCacheRegistry
+    private int references;
+
+    private final ServiceCacheListener listener = new ServiceCacheListener() {
+        @Override
+        public void cacheChanged() {
+            events.mark();
+            if (batch == null) {
+                batchSizes.update(1);
+                refresh();
+            } else {
+                batch.run();
+            }
+        }
+
+        @Override
+        public void stateChanged(final CuratorFramework client,
+                final ConnectionState newState) {
+            // the cache keeps serving its last known instances
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param serviceName
+     *            name of the service
+     * @param cache
+     *            {@link ServiceCache} for the service, not yet started
+     * @param events
+     *            {@link Meter} marked on every change to the cache
+     * @param refreshes
+     *            {@link Timer} recording how long it takes to refresh the
+     *            instances and notify the listeners
+     * @param batchSizes
+     *            {@link Histogram} recording the number of changes handled by
+     *            each refresh
+     * @param store
+     *            {@link InstanceSnapshotStore} to keep the instances in, or
+     *            null to keep them in memory only
+     * @param executor
+     *            {@link ExecutorService} processing the events of the cache,
+     *            shut down when the cache is closed, or null if the cache
+     *            has its own
+     * @param coalescer
+     *            {@link EventCoalescer} collapsing bursts of changes into one
+     *            refresh, or null to refresh on every change; requires an
+     *            executor to refresh on
+     */
+    SharedServiceCache(@Nonnull final String serviceName,
+            @Nonnull final ServiceCache<T> cache, @Nonnull final Meter events,
+            @Nonnull final Timer refreshes,
+            @Nonnull final Histogram batchSizes,
+            @Nullable final InstanceSnapshotStore<T> store,
+            @Nullable final ExecutorService executor,
+            @Nullable final EventCoalescer coalescer) {
+        this.serviceName = checkNotNull(serviceName);
+        this.cache = checkNotNull(cache);
+        this.events = checkNotNull(events);
+        this.refreshes = checkNotNull(refreshes);
+        this.batchSizes = checkNotNull(batchSizes);
+        this.store = store;
+        this.executor = executor;
+        if (coalescer == null) {
+            this.batch = null;
+        } else if (executor == null) {
+            throw new IllegalArgumentException(
+                    "coalescing requires an executor");
+        } else {
+            this.batch = coalescer.newBatch(this::refresh, batchSizes,
+                    executor);
+        }
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Return the instances currently in the cache.
+     *
+     * @return unmodifiable list of instances
+     */
+    public List<ServiceInstance<T>> getInstances() {
+        return instances;
+    }
+
+    /**
+     * Return how long ago the on-disk snapshot of the instances was written,
+     * which is how stale the instances are while ZooKeeper cannot be reached.
+     *
+     * @return age of the snapshot in milliseconds, or -1 if there is none
+     */
+    public long getSnapshotAge() {
+        final long writtenAt = snapshotWrittenAt;
+        return writtenAt < 0 ? -1 : System.currentTimeMillis() - writtenAt;
+    }
+
+    /**
+     * Register a listener that is called after the instances have changed.
+     *
+     * @param listener
+     *            listener to call
+     */
+    public void addListener(@Nonnull final Runnable listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * Unregister a listener.
+     *
+     * @param listener
+     *            listener to remove
+     */
+    public void removeListener(@Nonnull final Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    void start() throws Exception {
+        loadSnapshot();
+        cache.addListener(listener);
+        try {
+            cache.start();
+        } catch (final Exception e) {
+            if (instances.isEmpty()) {
+                throw e;
+            }
+            // the cache loads the instances once the connection is back
+            LOGGER.warn("Unable to load instances of {}, using {} from the "
+                    + "snapshot", serviceName, instances.size(), e);
+            return;
+        }
+        // the initial load does not notify listeners
+        refresh();
+    }
+
+    void close() throws Exception {
+        try {
+            if (batch != null) {
+                batch.close();
+            }
+            cache.removeListener(listener);
+            cache.close();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    int retain() {
+        return ++references;
+    }
+
+    int release() {
+        return --references;
+    }
+
+    // synchronized so that the refresh at the end of start() and those of
+    // changes cannot publish the instances they read out of order
+    private synchronized void refresh() {
+        final List<ServiceInstance<T>> current;
+        try (Timer.Context context = refreshes.time()) {
+            current = Collections.unmodifiableList(cache.getInstances());
+            instances = current;
+            for (final Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        if (store != null) {
+            store.writeLater(serviceName, current,
+                    writtenAt -> snapshotWrittenAt = writtenAt);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (store == null) {
+            return;
+        }
+        try {
+            final InstanceSnapshotStore.Entry<T> entry = store
+                    .read(serviceName);
+            if (entry != null) {
+                instances = entry.getInstances();
+                snapshotWrittenAt = entry.getWrittenAt();
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read snapshot of {}", serviceName, e);
+        }
+    }
+}
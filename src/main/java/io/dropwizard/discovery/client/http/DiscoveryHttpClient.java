@@ -0,0 +1,393 @@
+package io.dropwizard.discovery.client.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.annotations.VisibleForTesting;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+
+/**
+ * HTTP client for a single service: every request is sent to the instance
+ * returned by {@link DiscoveryClient#getInstance()}, and its outcome is
+ * reported back to the {@link DiscoveryClient}. Requests are given relative
+ * to the instance, e.g. <code>new HttpGet("/ping")</code>.
+ *
+ * <p>
+ * Each instance has its own connection pool. When the
+ * {@link DiscoveryClient} sees a new instance, connections to it are opened
+ * in the background, so that the first requests do not pay for the TCP and
+ * TLS handshakes; when an instance leaves, its pool is closed. Build with a
+ * {@link DiscoveryHttpClientBuilder}.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class DiscoveryHttpClient<T> implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(DiscoveryHttpClient.class);
+
+    /**
+     * The client and connection pool of one instance.
+     */
+    static final class InstancePool {
+        private final HttpHost host;
+        private final CloseableHttpClient client;
+        @Nullable
+        private final HttpClientConnectionManager manager;
+
+        InstancePool(final HttpHost host, final CloseableHttpClient client,
+                @Nullable final HttpClientConnectionManager manager) {
+            this.host = host;
+            this.client = client;
+            this.manager = manager;
+        }
+    }
+
+    private final DiscoveryClient<T> discovery;
+    private final BiFunction<String, HttpHost, InstancePool> poolFactory;
+    private final ExecutorService executor;
+    private final int warmConnections;
+    private final long connectTimeoutMillis;
+    private final long keepAliveMillis;
+    private final ConcurrentMap<String, InstancePool> pools = new ConcurrentHashMap<>();
+    private final AtomicReference<InstanceSnapshot<T>> pending = new AtomicReference<>();
+    private final Consumer<InstanceSnapshot<T>> listener = this::instancesChanged;
+
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param discovery
+     *            {@link DiscoveryClient} to select instances with
+     * @param poolFactory
+     *            builds the pool of an instance from its ID and address
+     * @param executor
+     *            executor to open and close connections on, shut down with
+     *            this client
+     * @param warmConnections
+     *            number of connections to open to each new instance
+     * @param connectTimeoutMillis
+     *            timeout when opening connections ahead of requests
+     * @param keepAliveMillis
+     *            how long connections opened ahead of requests are kept
+     */
+    DiscoveryHttpClient(@Nonnull final DiscoveryClient<T> discovery,
+            @Nonnull final BiFunction<String, HttpHost, InstancePool> poolFactory,
+            @Nonnull final ExecutorService executor, final int warmConnections,
+            final long connectTimeoutMillis, final long keepAliveMillis) {
+        checkArgument(warmConnections >= 0,
+                "warmConnections cannot be negative");
+        this.discovery = checkNotNull(discovery);
+        this.poolFactory = checkNotNull(poolFactory);
+        this.executor = checkNotNull(executor);
+        this.warmConnections = warmConnections;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        discovery.addListener(listener);
+        instancesChanged(discovery.getSnapshot());
+    }
+
+    /**
+     * Return the {@link DiscoveryClient} requests are routed with.
+     *
+     * @return {@link DiscoveryClient}
+     */
+    public DiscoveryClient<T> getDiscoveryClient() {
+        return discovery;
+    }
+
+    /**
+     * Send a request to an instance of the service. Errors and responses with
+     * a 5xx status are reported to the {@link DiscoveryClient} as errors,
+     * other responses as successes. The response must be closed.
+     *
+     * @param request
+     *            request, relative to the instance
+     * @return {@link CloseableHttpResponse}
+     * @throws IOException
+     *             if no instance is available, or the request failed
+     */
+    public CloseableHttpResponse execute(@Nonnull final HttpRequest request)
+            throws IOException {
+        final ServiceInstance<T> instance = selectInstance();
+        final HttpHost host = hostOf(instance);
+        if (host == null) {
+            throw new IOException("Instance " + instance.getId() + " of "
+                    + discovery.getServiceName() + " has no address");
+        }
+        final InstancePool pool = getPool(instance.getId(), host);
+        final long start = System.nanoTime();
+        final CloseableHttpResponse response;
+        try {
+            response = pool.client.execute(host, request);
+        } catch (final IOException e) {
+            discovery.noteError(instance, System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        final long latency = System.nanoTime() - start;
+        if (response.getStatusLine().getStatusCode() >= 500) {
+            discovery.noteError(instance, latency, TimeUnit.NANOSECONDS);
+        } else {
+            discovery.noteSuccess(instance, latency, TimeUnit.NANOSECONDS);
+        }
+        return response;
+    }
+
+    /**
+     * Send a request to an instance of the service and handle its response,
+     * which is then consumed and closed.
+     *
+     * @param request
+     *            request, relative to the instance
+     * @param handler
+     *            {@link ResponseHandler}
+     * @param <R>
+     *            result class
+     * @return result of the handler
+     * @throws IOException
+     *             if no instance is available, the request failed or the
+     *             handler threw
+     */
+    public <R> R execute(@Nonnull final HttpRequest request,
+            @Nonnull final ResponseHandler<? extends R> handler)
+            throws IOException {
+        try (CloseableHttpResponse response = execute(request)) {
+            final R result = handler.handleResponse(response);
+            EntityUtils.consume(response.getEntity());
+            return result;
+        }
+    }
+
+    /**
+     * Stop following the instances of the service and close every connection
+     * pool. The {@link DiscoveryClient} is left open.
+     */
+    @Override
+    public void close() {
+        discovery.removeListener(listener);
+        executor.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            pools.values().forEach(this::closePool);
+            pools.clear();
+        }
+    }
+
+    /**
+     * Return the IDs of the instances that currently have a connection pool.
+     *
+     * @return instance IDs
+     */
+    @VisibleForTesting
+    Iterable<String> getPooledInstances() {
+        return pools.keySet();
+    }
+
+    /**
+     * Return the address to send requests for an instance to, preferring its
+     * TLS port.
+     *
+     * @param instance
+     *            {@link ServiceInstance}
+     * @return {@link HttpHost}, or null if the instance has no address or port
+     */
+    @Nullable
+    static HttpHost hostOf(final ServiceInstance<?> instance) {
+        if (instance.getAddress() == null) {
+            return null;
+        }
+        if (instance.getSslPort() != null) {
+            return new HttpHost(instance.getAddress(), instance.getSslPort(),
+                    "https");
+        }
+        if (instance.getPort() != null) {
+            return new HttpHost(instance.getAddress(), instance.getPort(),
+                    "http");
+        }
+        return null;
+    }
+
+    private ServiceInstance<T> selectInstance() throws IOException {
+        final ServiceInstance<T> instance;
+        try {
+            instance = discovery.getInstance();
+        } catch (final IOException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException(e);
+        }
+        if (instance == null) {
+            throw new IOException("No instance of "
+                    + discovery.getServiceName() + " is available");
+        }
+        return instance;
+    }
+
+    private InstancePool getPool(final String id, final HttpHost host) {
+        final InstancePool pool = pools.get(id);
+        if (pool != null && pool.host.equals(host)) {
+            return pool;
+        }
+        return replacePool(id, host);
+    }
+
+    /**
+     * Return the pool of an instance, replacing it if the instance has moved
+     * to another address.
+     */
+    private synchronized InstancePool replacePool(final String id,
+            final HttpHost host) {
+        if (closed) {
+            throw new IllegalStateException("Client is closed");
+        }
+        final InstancePool current = pools.get(id);
+        if (current != null && current.host.equals(host)) {
+            return current;
+        }
+        final InstancePool pool = poolFactory.apply(id, host);
+        pools.put(id, pool);
+        if (current != null) {
+            closePool(current);
+        }
+        return pool;
+    }
+
+    /**
+     * Called with every new snapshot, on whichever thread built it: only the
+     * latest snapshot is kept, and applied on the executor.
+     */
+    private void instancesChanged(final InstanceSnapshot<T> snapshot) {
+        if (pending.getAndSet(snapshot) != null) {
+            // already scheduled
+            return;
+        }
+        try {
+            executor.execute(this::updatePools);
+        } catch (final RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    private void updatePools() {
+        final InstanceSnapshot<T> snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        // down instances keep their pool, as they are expected back
+        final Map<String, HttpHost> hosts = new HashMap<>();
+        for (final ServiceInstance<T> instance : snapshot.getAllInstances()) {
+            final HttpHost host = hostOf(instance);
+            if (host != null) {
+                hosts.put(instance.getId(), host);
+            }
+        }
+        final List<InstancePool> added = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pools.entrySet().removeIf(entry -> {
+                if (hosts.containsKey(entry.getKey())) {
+                    return false;
+                }
+                closePool(entry.getValue());
+                return true;
+            });
+            for (final Map.Entry<String, HttpHost> entry : hosts.entrySet()) {
+                final InstancePool current = pools.get(entry.getKey());
+                final InstancePool pool = replacePool(entry.getKey(),
+                        entry.getValue());
+                if (pool != current) {
+                    added.add(pool);
+                }
+            }
+        }
+        added.forEach(this::warm);
+    }
+
+    /**
+     * Open connections to a new instance and return them to its pool, so
+     * that they are ready for the first requests.
+     */
+    private void warm(final InstancePool pool) {
+        final HttpClientConnectionManager manager = pool.manager;
+        if (manager == null || warmConnections == 0) {
+            return;
+        }
+        final HttpRoute route = new HttpRoute(pool.host, null,
+                "https".equalsIgnoreCase(pool.host.getSchemeName()));
+        final HttpClientContext context = HttpClientContext.create();
+        final List<HttpClientConnection> connections = new ArrayList<>(
+                warmConnections);
+        try {
+            // lease them all at once, so that each one is a new connection
+            for (int i = 0; i < warmConnections; i++) {
+                final HttpClientConnection connection = manager
+                        .requestConnection(route, null)
+                        .get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                connections.add(connection);
+                if (!connection.isOpen()) {
+                    manager.connect(connection, route,
+                            (int) connectTimeoutMillis, context);
+                    manager.routeComplete(connection, route, context);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final IOException | ExecutionException
+                | IllegalStateException e) {
+            LOGGER.debug("Unable to open connections to {}", pool.host, e);
+        } finally {
+            for (final HttpClientConnection connection : connections) {
+                manager.releaseConnection(connection, null, keepAliveMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void closePool(final InstancePool pool) {
+        try {
+            pool.client.close();
+        } catch (final IOException e) {
+            LOGGER.debug("Unable to close connections to {}", pool.host, e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.dropwizard.discovery.client.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.httpclient.HttpClientMetricNameStrategies;
+import com.codahale.metrics.httpclient.HttpClientMetricNameStrategy;
+import com.codahale.metrics.httpclient.InstrumentedHttpClientConnectionManager;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.client.HttpClientBuilder;
+import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.discovery.client.http.DiscoveryHttpClient.InstancePool;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.setup.Environment;
+
+/**
+ * Builds {@link DiscoveryHttpClient}s, whose per-instance clients are built
+ * with Dropwizard's {@link HttpClientBuilder} from one
+ * {@link HttpClientConfiguration}.
+ *
+ * <p>
+ * The request metrics of all the instances of a service are recorded
+ * together, under the name of the client; each connection pool reports its
+ * own gauges under the name of the client and the ID of the instance, which
+ * are removed when the pool is closed. Connections are only opened ahead of
+ * requests when the configuration keeps connections alive.
+ * </p>
+ */
+public class DiscoveryHttpClientBuilder {
+
+    public static final int DEFAULT_WARM_CONNECTIONS = 1;
+
+    /**
+     * Captures the connection manager of the client it builds, so that
+     * connections can be opened ahead of requests.
+     */
+    private static final class InstanceClientBuilder extends HttpClientBuilder {
+        private final String clientName;
+        @Nullable
+        private HttpClientConnectionManager manager;
+
+        InstanceClientBuilder(final MetricRegistry metrics,
+                final String clientName) {
+            super(metrics);
+            this.clientName = clientName;
+        }
+
+        @Override
+        protected String createUserAgent(final String name) {
+            return super.createUserAgent(clientName);
+        }
+
+        @Override
+        protected InstrumentedHttpClientConnectionManager configureConnectionManager(
+                final InstrumentedHttpClientConnectionManager connectionManager) {
+            final InstrumentedHttpClientConnectionManager configured = super.configureConnectionManager(
+                    connectionManager);
+            manager = configured;
+            return configured;
+        }
+    }
+
+    private final MetricRegistry metrics;
+    @Nullable
+    private final Environment environment;
+    private HttpClientConfiguration configuration = new HttpClientConfiguration();
+    private int warmConnections = DEFAULT_WARM_CONNECTIONS;
+
+    /**
+     * Constructor for clients that are closed with the application
+     *
+     * @param environment
+     *            {@link Environment}
+     */
+    public DiscoveryHttpClientBuilder(@Nonnull final Environment environment) {
+        this.environment = checkNotNull(environment);
+        this.metrics = environment.metrics();
+    }
+
+    /**
+     * Constructor for clients that the caller closes
+     *
+     * @param metrics
+     *            {@link MetricRegistry}
+     */
+    public DiscoveryHttpClientBuilder(@Nonnull final MetricRegistry metrics) {
+        this.environment = null;
+        this.metrics = checkNotNull(metrics);
+    }
+
+    /**
+     * Use the given configuration for the client of every instance.
+     *
+     * @param configuration
+     *            {@link HttpClientConfiguration}
+     * @return this builder
+     */
+    public DiscoveryHttpClientBuilder using(
+            @Nonnull final HttpClientConfiguration configuration) {
+        this.configuration = checkNotNull(configuration);
+        return this;
+    }
+
+    /**
+     * Open the given number of connections to each new instance, or none to
+     * only open them on demand. Defaults to
+     * {@value #DEFAULT_WARM_CONNECTIONS}.
+     *
+     * @param warmConnections
+     *            number of connections
+     * @return this builder
+     */
+    public DiscoveryHttpClientBuilder warmConnections(
+            final int warmConnections) {
+        checkArgument(warmConnections >= 0,
+                "warmConnections cannot be negative");
+        this.warmConnections = warmConnections;
+        return this;
+    }
+
+    /**
+     * Build a client sending requests to the instances returned by the given
+     * {@link DiscoveryClient}, which must be started and closed separately.
+     *
+     * @param name
+     *            name of the client, used in its metrics
+     * @param discovery
+     *            {@link DiscoveryClient}
+     * @param <T>
+     *            payload class
+     * @return {@link DiscoveryHttpClient}
+     */
+    public <T> DiscoveryHttpClient<T> build(@Nonnull final String name,
+            @Nonnull final DiscoveryClient<T> discovery) {
+        checkNotNull(name);
+        final HttpClientConfiguration config = configuration;
+        final ExecutorService executor = Executors
+                .newSingleThreadExecutor(new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("discovery-http-" + name + "-%d")
+                        .build());
+        final long keepAliveMillis = config.getKeepAlive().toMilliseconds();
+        final DiscoveryHttpClient<T> client = new DiscoveryHttpClient<T>(
+                discovery, (id, host) -> buildPool(config, name, id, host),
+                executor,
+                // connections that are not kept alive cannot be reused
+                keepAliveMillis == 0 ? 0 : warmConnections,
+                config.getConnectionTimeout().toMilliseconds(),
+                keepAliveMillis);
+        if (environment != null) {
+            environment.lifecycle().manage(new Managed() {
+                @Override
+                public void start() {
+                    // started when built
+                }
+
+                @Override
+                public void stop() {
+                    client.close();
+                }
+            });
+        }
+        return client;
+    }
+
+    private InstancePool buildPool(final HttpClientConfiguration config,
+            final String name, final String instanceId, final HttpHost host) {
+        final InstanceClientBuilder builder = new InstanceClientBuilder(
+                metrics, name);
+        final CloseableHttpClient client = builder.using(config)
+                .using(sharedMetricNames(name))
+                .build(MetricRegistry.name(name, instanceId));
+        return new InstancePool(host, client, builder.manager);
+    }
+
+    /**
+     * Name the request metrics after the client rather than the instance,
+     * so that they outlive the instances.
+     */
+    private static HttpClientMetricNameStrategy sharedMetricNames(
+            final String name) {
+        return new HttpClientMetricNameStrategy() {
+            @Override
+            public String getNameFor(final String instanceName,
+                    final HttpRequest request) {
+                return HttpClientMetricNameStrategies.METHOD_ONLY
+                        .getNameFor(name, request);
+            }
+
+            @Override
+            public String getNameFor(final String instanceName,
+                    final Exception exception) {
+                return MetricRegistry.name(HttpClient.class, name,
+                        exception.getClass().getSimpleName());
+            }
+        };
+    }
+}
@@ -0,0 +1,451 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+import io.dropwizard.discovery.client.KeyedProviderStrategy;
+
+/**
+ * A consistent-hashing strategy: every instance owns a number of points on a
+ * hash ring, and a key maps to the owner of the first point at or after the
+ * hash of the key. Adding or removing one of N instances only moves about 1/N
+ * of the keys.
+ *
+ * <p>
+ * The ring is updated incrementally whenever the instances change: only the
+ * points of instances that joined are hashed, and they are merged into the
+ * points that remain. Instances that are disabled or marked down keep their
+ * points, and their keys go to the next available owner along the ring until
+ * they come back. Lookups hash the key with MurmurHash3, as the points are,
+ * and binary-search an immutable array. Without a key, {@link #getInstance(InstanceProvider)} returns a
+ * random available instance.
+ * </p>
+ *
+ * <p>
+ * With a load factor, the strategy also bounds the load of every instance,
+ * as in consistent hashing with bounded loads: every instance returned is
+ * counted as in flight until its outcome is reported to the
+ * {@link io.dropwizard.discovery.client.DiscoveryClient}, and an instance
+ * with more than the load factor times the average number of calls in
+ * flight is passed over for the next available owner along the ring. A hot
+ * key then spills over to a few neighbours instead of overloading its
+ * owner.
+ * </p>
+ *
+ * <p>
+ * The ring and the loads belong to the newest instances the strategy was
+ * given, so each {@link io.dropwizard.discovery.client.DiscoveryClient}
+ * needs an instance of its own. A lookup with an older
+ * {@link InstanceSnapshot}, still held by a caller, uses the newer ring.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class ConsistentHashStrategy<T> implements KeyedProviderStrategy<T> {
+
+    public static final int DEFAULT_POINTS_PER_INSTANCE = 100;
+    private static final HashFunction POINT_HASH = Hashing.murmur3_128();
+
+    /**
+     * The points of the instances, which never change once built, and the
+     * number of calls in flight to each instance.
+     */
+    @ThreadSafe
+    private static final class Ring<T> {
+        @Nullable
+        private final InstanceProvider<T> source;
+        /** Version of the snapshot the ring was built from, or -1. */
+        private final long version;
+        private final ServiceInstance<T>[] members;
+        private final Map<String, Integer> indexes;
+        private final boolean[] available;
+        private final int availableCount;
+        private final AtomicInteger[] loads;
+        private final long[] points;
+        private final int[] owners;
+
+        Ring(@Nullable final InstanceProvider<T> source, final long version,
+                final ServiceInstance<T>[] members,
+                final Map<String, Integer> indexes, final boolean[] available,
+                final AtomicInteger[] loads, final long[] points,
+                final int[] owners) {
+            this.source = source;
+            this.version = version;
+            this.members = members;
+            this.indexes = indexes;
+            this.available = available;
+            this.loads = loads;
+            this.points = points;
+            this.owners = owners;
+            int count = 0;
+            for (final boolean up : available) {
+                if (up) {
+                    count++;
+                }
+            }
+            this.availableCount = count;
+        }
+    }
+
+    private final int pointsPerInstance;
+    private final double loadFactor;
+    private final boolean bounded;
+    /** Number of calls in flight, across all instances. */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private volatile Ring<T> ring;
+
+    @GuardedBy("this")
+    private final Map<String, long[]> pointsById = new HashMap<>();
+
+    /**
+     * Constructor using {@value #DEFAULT_POINTS_PER_INSTANCE} points per
+     * instance.
+     */
+    public ConsistentHashStrategy() {
+        this(DEFAULT_POINTS_PER_INSTANCE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pointsPerInstance
+     *            number of points each instance owns on the ring; more
+     *            points spread the keys more evenly
+     */
+    public ConsistentHashStrategy(final int pointsPerInstance) {
+        this(pointsPerInstance, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Constructor bounding the load of every instance.
+     *
+     * @param pointsPerInstance
+     *            number of points each instance owns on the ring; more
+     *            points spread the keys more evenly
+     * @param loadFactor
+     *            how many times the average number of calls in flight an
+     *            instance may have before its keys spill over, at least 1;
+     *            lower values balance the load better but move more keys
+     */
+    @SuppressWarnings("unchecked")
+    public ConsistentHashStrategy(final int pointsPerInstance,
+            final double loadFactor) {
+        checkArgument(pointsPerInstance > 0,
+                "pointsPerInstance must be positive");
+        checkArgument(loadFactor >= 1, "loadFactor must be at least 1");
+        this.pointsPerInstance = pointsPerInstance;
+        this.loadFactor = loadFactor;
+        this.bounded = !Double.isInfinite(loadFactor);
+        this.ring = new Ring<>(null, -1, new ServiceInstance[0],
+                Collections.emptyMap(), new boolean[0], new AtomicInteger[0],
+                new long[0], new int[0]);
+    }
+
+    @Override
+    @Nullable
+    public ServiceInstance<T> getInstance(
+            final InstanceProvider<T> instanceProvider) throws Exception {
+        final Ring<T> current = ring(instanceProvider);
+        final int size = current.members.length;
+        if (current.availableCount == 0) {
+            return null;
+        }
+        int index = ThreadLocalRandom.current().nextInt(size);
+        while (!current.available[index]) {
+            index = index + 1 == size ? 0 : index + 1;
+        }
+        return acquire(current, index);
+    }
+
+    @Override
+    @Nullable
+    public ServiceInstance<T> getInstance(
+            final InstanceProvider<T> instanceProvider,
+            @Nonnull final String key) throws Exception {
+        return lookup(ring(instanceProvider), hash(key));
+    }
+
+    @Override
+    public void noteOutcome(@Nonnull final ServiceInstance<T> instance,
+            final long latencyNanos, final boolean success) {
+        // availability comes from the snapshot, only the load is tracked
+        if (!bounded) {
+            return;
+        }
+        final Ring<T> current = ring;
+        final Integer index = current.indexes.get(instance.getId());
+        // an instance that has left the service is no longer tracked
+        if (index == null) {
+            return;
+        }
+        if (current.loads[index].getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Return the number of calls in flight to an instance, for monitoring.
+     *
+     * @param instanceId
+     *            ID of the instance
+     * @return number of calls, always 0 without a load factor
+     */
+    public int getLoad(@Nonnull final String instanceId) {
+        final Ring<T> current = ring;
+        final Integer index = current.indexes.get(instanceId);
+        return index == null ? 0 : current.loads[index].get();
+    }
+
+    @Override
+    public void instancesChanged(@Nonnull final InstanceSnapshot<T> snapshot) {
+        update(snapshot, snapshot.getVersion(), snapshot.getAllInstances(),
+                snapshot.getInstances());
+    }
+
+    /**
+     * Hash a key onto the ring. All the bits of the key are hashed, so keys
+     * whose {@link String#hashCode()} collide still land apart.
+     *
+     * @param key
+     *            key of the request
+     * @return position on the ring
+     */
+    static long hash(final String key) {
+        return POINT_HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    private Ring<T> ring(final InstanceProvider<T> provider) throws Exception {
+        final Ring<T> current = ring;
+        if (current.source == provider) {
+            return current;
+        }
+        if (provider instanceof InstanceSnapshot) {
+            final InstanceSnapshot<T> snapshot = (InstanceSnapshot<T>) provider;
+            if (snapshot.getVersion() < current.version) {
+                return current;
+            }
+            return update(snapshot, snapshot.getVersion(),
+                    snapshot.getAllInstances(), snapshot.getInstances());
+        }
+        final List<ServiceInstance<T>> instances = provider.getInstances();
+        return update(null, -1, instances, instances);
+    }
+
+    /**
+     * Return the first available owner at or after the hash, skipping those
+     * at capacity. Should they all be, as calls complete concurrently, the
+     * first available owner is returned anyway.
+     */
+    @Nullable
+    private ServiceInstance<T> lookup(final Ring<T> ring, final long hash) {
+        if (ring.availableCount == 0) {
+            return null;
+        }
+        final long[] points = ring.points;
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        final int capacity = capacity(ring);
+        int first = -1;
+        for (int step = 0; step < points.length; step++, index++) {
+            if (index == points.length) {
+                index = 0;
+            }
+            final int owner = ring.owners[index];
+            if (!ring.available[owner]) {
+                continue;
+            }
+            if (ring.loads[owner].get() < capacity) {
+                return acquire(ring, owner);
+            }
+            if (first < 0) {
+                first = owner;
+            }
+        }
+        return acquire(ring, first);
+    }
+
+    /**
+     * Return the number of calls in flight an instance may have, counting
+     * the call being placed.
+     */
+    private int capacity(final Ring<T> ring) {
+        if (!bounded) {
+            return Integer.MAX_VALUE;
+        }
+        final int calls = Math.max(0, inFlight.get()) + 1;
+        return (int) Math.ceil(loadFactor * calls / ring.availableCount);
+    }
+
+    private ServiceInstance<T> acquire(final Ring<T> ring, final int member) {
+        if (bounded) {
+            ring.loads[member].incrementAndGet();
+            inFlight.incrementAndGet();
+        }
+        return ring.members[member];
+    }
+
+    /**
+     * Replace the ring with one for the given instances, reusing the points
+     * of the instances that are already on it, unless it was built from a
+     * newer snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized Ring<T> update(
+            @Nullable final InstanceProvider<T> source, final long version,
+            final List<ServiceInstance<T>> all,
+            final List<ServiceInstance<T>> available) {
+        final Ring<T> previous = ring;
+        if (source != null
+                && (previous.source == source || version < previous.version)) {
+            return previous;
+        }
+
+        final ServiceInstance<T>[] members = all
+                .toArray(new ServiceInstance[all.size()]);
+        final Map<String, Integer> indexes = new HashMap<>(members.length * 2);
+        for (int i = 0; i < members.length; i++) {
+            indexes.put(members[i].getId(), i);
+        }
+        final Set<ServiceInstance<T>> up = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        up.addAll(available);
+        final boolean[] isAvailable = new boolean[members.length];
+        for (int i = 0; i < members.length; i++) {
+            isAvailable[i] = up.contains(members[i]);
+        }
+
+        // keep the points and loads of the remaining members, re-indexed
+        final AtomicInteger[] loads = new AtomicInteger[members.length];
+        final int[] remap = new int[previous.members.length];
+        for (int i = 0; i < remap.length; i++) {
+            final Integer index = indexes.get(previous.members[i].getId());
+            if (index == null) {
+                remap[i] = -1;
+                // its calls in flight are no longer reported
+                inFlight.addAndGet(-previous.loads[i].get());
+            } else {
+                remap[i] = index;
+                loads[index] = previous.loads[i];
+            }
+        }
+        for (int i = 0; i < loads.length; i++) {
+            if (loads[i] == null) {
+                loads[i] = new AtomicInteger(0);
+            }
+        }
+        final long[] keptPoints = new long[previous.points.length];
+        final int[] keptOwners = new int[previous.points.length];
+        int kept = 0;
+        for (int i = 0; i < previous.points.length; i++) {
+            final int owner = remap[previous.owners[i]];
+            if (owner >= 0) {
+                keptPoints[kept] = previous.points[i];
+                keptOwners[kept++] = owner;
+            }
+        }
+        final boolean[] onRing = new boolean[members.length];
+        for (final int index : remap) {
+            if (index >= 0) {
+                onRing[index] = true;
+            }
+        }
+        for (int i = 0; i < previous.members.length; i++) {
+            if (remap[i] < 0) {
+                pointsById.remove(previous.members[i].getId());
+            }
+        }
+
+        // hash the points of the members that joined, then merge them in
+        int added = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (!onRing[i]) {
+                added += pointsPerInstance;
+            }
+        }
+        final long[] addedPoints = new long[added];
+        final int[] addedOwners = new int[added];
+        int next = 0;
+        for (int i = 0; i < members.length; i++) {
+            if (onRing[i]) {
+                continue;
+            }
+            final long[] hashes = pointsById.computeIfAbsent(
+                    members[i].getId(), this::pointsOf);
+            for (final long hash : hashes) {
+                addedPoints[next] = hash;
+                addedOwners[next++] = i;
+            }
+        }
+        sort(addedPoints, addedOwners);
+
+        final long[] points = new long[kept + added];
+        final int[] owners = new int[kept + added];
+        int k = 0;
+        int a = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (a == added || (k < kept && keptPoints[k] <= addedPoints[a])) {
+                points[i] = keptPoints[k];
+                owners[i] = keptOwners[k++];
+            } else {
+                points[i] = addedPoints[a];
+                owners[i] = addedOwners[a++];
+            }
+        }
+
+        final Ring<T> current = new Ring<>(source, version, members, indexes,
+                isAvailable, loads, points, owners);
+        ring = current;
+        return current;
+    }
+
+    private long[] pointsOf(final String instanceId) {
+        final long[] hashes = new long[pointsPerInstance];
+        for (int i = 0; i < pointsPerInstance; i++) {
+            hashes[i] = POINT_HASH.newHasher()
+                    .putString(instanceId, StandardCharsets.UTF_8).putInt(i)
+                    .hash().asLong();
+        }
+        return hashes;
+    }
+
+    /**
+     * Sort the points of the members that joined, keeping their owners
+     * alongside.
+     */
+    private static void sort(final long[] points, final int[] owners) {
+        final long[] sortedPoints = new long[points.length];
+        final Integer[] order = new Integer[points.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Long.compare(points[x], points[y]));
+        final int[] sortedOwners = new int[owners.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedPoints[i] = points[order[i]];
+            sortedOwners[i] = owners[order[i]];
+        }
+        System.arraycopy(sortedPoints, 0, points, 0, points.length);
+        System.arraycopy(sortedOwners, 0, owners, 0, owners.length);
+    }
+}
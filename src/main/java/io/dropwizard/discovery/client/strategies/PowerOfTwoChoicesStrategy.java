@@ -0,0 +1,319 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.dropwizard.discovery.client.FeedbackProviderStrategy;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+
+/**
+ * A latency-aware strategy: picks two instances at random and returns the one
+ * with the lower cost, where the cost of an instance is its peak EWMA latency
+ * multiplied by the number of calls in flight to it, plus one.
+ *
+ * <p>
+ * The peak EWMA jumps to any latency above it and otherwise decays over time
+ * towards new samples, so a node that slows down is avoided immediately and is
+ * tried again once its penalty has decayed. Errors count as a call taking
+ * {@code errorPenalty}. Every instance returned by
+ * {@link #getInstance(InstanceProvider)} is counted as in flight until its
+ * outcome is reported to the {@link io.dropwizard.discovery.client.DiscoveryClient}.
+ * The count decays like the latency does, so that calls whose outcome is
+ * never reported stop counting after a few {@code decay} periods.
+ * </p>
+ *
+ * <p>
+ * An instance with no latency recorded yet, such as one that just joined,
+ * costs nothing while idle, so that it gets a first call, but costs
+ * {@code errorPenalty} per call in flight until that call returns, so that
+ * it does not draw every call in the meantime.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class PowerOfTwoChoicesStrategy<T> implements
+        FeedbackProviderStrategy<T> {
+
+    private static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS
+            .toNanos(10);
+    private static final long DEFAULT_ERROR_PENALTY_NANOS = TimeUnit.SECONDS
+            .toNanos(1);
+
+    /**
+     * The peak EWMA latency of an instance, and when it was last updated.
+     */
+    private static final class Ewma {
+        private final double nanos;
+        private final long stampNanos;
+
+        Ewma(final double nanos, final long stampNanos) {
+            this.nanos = nanos;
+            this.stampNanos = stampNanos;
+        }
+
+        double decayed(final long nowNanos, final double decayNanos) {
+            final long elapsed = nowNanos - stampNanos;
+            return nanos == 0 || elapsed <= 0 ? nanos
+                    : nanos * Math.exp(-elapsed / decayNanos);
+        }
+
+        Ewma update(final long latencyNanos, final long nowNanos,
+                final double decayNanos) {
+            if (latencyNanos > decayed(nowNanos, decayNanos)) {
+                return new Ewma(latencyNanos, nowNanos);
+            }
+            final double weight = Math
+                    .exp(-Math.max(0, nowNanos - stampNanos) / decayNanos);
+            return new Ewma(nanos * weight + latencyNanos * (1 - weight),
+                    nowNanos);
+        }
+    }
+
+    /**
+     * The number of calls in flight to an instance, decaying over time.
+     */
+    private static final class Pending {
+        private final double calls;
+        private final long stampNanos;
+
+        Pending(final double calls, final long stampNanos) {
+            this.calls = calls;
+            this.stampNanos = stampNanos;
+        }
+
+        double decayed(final long nowNanos, final double decayNanos) {
+            final long elapsed = nowNanos - stampNanos;
+            return calls == 0 || elapsed <= 0 ? calls
+                    : calls * Math.exp(-elapsed / decayNanos);
+        }
+
+        Pending add(final int delta, final long nowNanos,
+                final double decayNanos) {
+            return new Pending(
+                    Math.max(0, decayed(nowNanos, decayNanos) + delta),
+                    nowNanos);
+        }
+    }
+
+    @ThreadSafe
+    private static final class Stats {
+        private static final AtomicReferenceFieldUpdater<Stats, Ewma> EWMA = AtomicReferenceFieldUpdater
+                .newUpdater(Stats.class, Ewma.class, "ewma");
+        private static final AtomicReferenceFieldUpdater<Stats, Pending> PENDING = AtomicReferenceFieldUpdater
+                .newUpdater(Stats.class, Pending.class, "pending");
+
+        private volatile Pending pending;
+        private volatile Ewma ewma;
+
+        Stats(final long nowNanos) {
+            this.pending = new Pending(0, nowNanos);
+            this.ewma = new Ewma(0, nowNanos);
+        }
+
+        void addInFlight(final int delta, final long nowNanos,
+                final double decayNanos) {
+            while (true) {
+                final Pending current = pending;
+                if (PENDING.compareAndSet(this, current,
+                        current.add(delta, nowNanos, decayNanos))) {
+                    return;
+                }
+            }
+        }
+
+        void update(final long latencyNanos, final long nowNanos,
+                final double decayNanos) {
+            while (true) {
+                final Ewma current = ewma;
+                if (EWMA.compareAndSet(this, current,
+                        current.update(latencyNanos, nowNanos, decayNanos))) {
+                    return;
+                }
+            }
+        }
+
+        double cost(final long nowNanos, final double decayNanos,
+                final long unscoredNanos) {
+            final Ewma current = ewma;
+            final double calls = pending.decayed(nowNanos, decayNanos);
+            if (current.nanos == 0) {
+                // no latency recorded yet
+                return unscoredNanos * calls;
+            }
+            return current.decayed(nowNanos, decayNanos) * (calls + 1);
+        }
+    }
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private final double decayNanos;
+    private final long errorPenaltyNanos;
+    /** Cost of a call in flight to an instance with no latency recorded. */
+    private final long unscoredNanos;
+    private final Ticker ticker;
+
+    /**
+     * Constructor using a 10 second decay and a 1 second error penalty.
+     */
+    public PowerOfTwoChoicesStrategy() {
+        this(DEFAULT_DECAY_NANOS, DEFAULT_ERROR_PENALTY_NANOS,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param decay
+     *            time it takes for a latency sample to lose ~63% of its weight
+     * @param errorPenalty
+     *            latency recorded for a failed call
+     * @param unit
+     *            {@link TimeUnit} of {@code decay} and {@code errorPenalty}
+     */
+    public PowerOfTwoChoicesStrategy(final long decay,
+            final long errorPenalty, @Nonnull final TimeUnit unit) {
+        this(decay, errorPenalty, unit, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    PowerOfTwoChoicesStrategy(final long decay, final long errorPenalty,
+            @Nonnull final TimeUnit unit, @Nonnull final Ticker ticker) {
+        checkArgument(decay > 0, "decay must be positive");
+        checkArgument(errorPenalty >= 0, "errorPenalty cannot be negative");
+        this.decayNanos = unit.toNanos(decay);
+        this.errorPenaltyNanos = unit.toNanos(errorPenalty);
+        this.unscoredNanos = Math.max(1, errorPenaltyNanos);
+        this.ticker = checkNotNull(ticker);
+    }
+
+    @Override
+    @Nullable
+    public ServiceInstance<T> getInstance(
+            final InstanceProvider<T> instanceProvider) throws Exception {
+        if (instanceProvider instanceof InstanceSnapshot) {
+            return choose((InstanceSnapshot<T>) instanceProvider);
+        }
+        return choose(instanceProvider.getInstances());
+    }
+
+    @Override
+    public void noteOutcome(@Nonnull final ServiceInstance<T> instance,
+            final long latencyNanos, final boolean success) {
+        // an instance that has left the service is no longer tracked
+        final Stats current = stats.get(instance.getId());
+        if (current == null) {
+            return;
+        }
+        final long now = ticker.read();
+        current.addInFlight(-1, now, decayNanos);
+        current.update(
+                success ? latencyNanos
+                        : Math.max(latencyNanos, errorPenaltyNanos),
+                now, decayNanos);
+    }
+
+    @Override
+    public void instancesChanged(@Nonnull final InstanceSnapshot<T> snapshot) {
+        final Set<String> ids = new HashSet<>(snapshot.size() * 2);
+        for (int i = 0; i < snapshot.size(); i++) {
+            ids.add(snapshot.get(i).getId());
+        }
+        stats.keySet().retainAll(ids);
+    }
+
+    /**
+     * Return the current cost of an instance, for monitoring.
+     *
+     * @param instanceId
+     *            ID of the instance
+     * @return cost, 0 for an idle instance with no calls recorded
+     */
+    public double getCost(@Nonnull final String instanceId) {
+        final Stats current = stats.get(instanceId);
+        return current == null ? 0
+                : current.cost(ticker.read(), decayNanos, unscoredNanos);
+    }
+
+    @VisibleForTesting
+    int trackedInstances() {
+        return stats.size();
+    }
+
+    @Nullable
+    private ServiceInstance<T> choose(final InstanceSnapshot<T> snapshot) {
+        final int size = snapshot.availableSize();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return acquire(snapshot.getAvailable(0));
+        }
+        final int first = ThreadLocalRandom.current().nextInt(size);
+        return cheapest(snapshot.getAvailable(first),
+                snapshot.getAvailable(other(first, size)));
+    }
+
+    @Nullable
+    private ServiceInstance<T> choose(final List<ServiceInstance<T>> instances) {
+        final int size = instances.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return acquire(instances.get(0));
+        }
+        final int first = ThreadLocalRandom.current().nextInt(size);
+        return cheapest(instances.get(first),
+                instances.get(other(first, size)));
+    }
+
+    /**
+     * Return a random index other than {@code first}.
+     */
+    private static int other(final int first, final int size) {
+        return (first + 1 + ThreadLocalRandom.current().nextInt(size - 1))
+                % size;
+    }
+
+    private ServiceInstance<T> acquire(final ServiceInstance<T> instance) {
+        stats(instance.getId()).addInFlight(1, ticker.read(), decayNanos);
+        return instance;
+    }
+
+    private ServiceInstance<T> cheapest(final ServiceInstance<T> first,
+            final ServiceInstance<T> second) {
+        final long now = ticker.read();
+        final Stats firstStats = stats(first.getId());
+        final Stats secondStats = stats(second.getId());
+        if (firstStats.cost(now, decayNanos, unscoredNanos) <= secondStats
+                .cost(now, decayNanos, unscoredNanos)) {
+            firstStats.addInFlight(1, now, decayNanos);
+            return first;
+        }
+        secondStats.addInFlight(1, now, decayNanos);
+        return second;
+    }
+
+    private Stats stats(final String instanceId) {
+        final Stats current = stats.get(instanceId);
+        if (current != null) {
+            return current;
+        }
+        return stats.computeIfAbsent(instanceId, id -> new Stats(ticker.read()));
+    }
+}
@@ -0,0 +1,177 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+import io.dropwizard.discovery.client.FeedbackProviderStrategy;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+/**
+ * A weighted-random strategy: returns each available instance with a
+ * probability proportional to its weight, so that instances with more spare
+ * capacity receive more of the traffic.
+ *
+ * <p>
+ * The cumulative weights are computed once per {@link InstanceSnapshot}, when
+ * the instances or their advertised load change, so that
+ * {@link #getInstance(InstanceProvider)} only draws a random number and
+ * binary-searches an array. Instances with no positive, finite weight are
+ * only returned when no instance has one. Weighted random was chosen over
+ * smooth weighted round-robin, which needs every selection to update shared
+ * counters under a lock.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class WeightedStrategy<T> implements FeedbackProviderStrategy<T> {
+
+    /**
+     * The share of its capacity an instance is weighted by however loaded it
+     * reports to be, so that it keeps receiving some traffic and can report
+     * that it has recovered.
+     */
+    public static final double MIN_HEADROOM = 0.05;
+
+    @Immutable
+    private static final class Weights<T> {
+        @Nullable
+        private final InstanceProvider<T> source;
+        private final List<ServiceInstance<T>> instances;
+        private final double[] cumulative;
+
+        Weights(@Nullable final InstanceProvider<T> source,
+                final List<ServiceInstance<T>> instances,
+                final double[] cumulative) {
+            this.source = source;
+            this.instances = instances;
+            this.cumulative = cumulative;
+        }
+    }
+
+    private final ToDoubleFunction<ServiceInstance<T>> weightOf;
+    private volatile Weights<T> weights = new Weights<>(null,
+            Collections.emptyList(), new double[0]);
+
+    /**
+     * Constructor
+     *
+     * @param weightOf
+     *            returns the weight of an instance
+     */
+    public WeightedStrategy(
+            @Nonnull final ToDoubleFunction<ServiceInstance<T>> weightOf) {
+        this.weightOf = checkNotNull(weightOf);
+    }
+
+    /**
+     * Build a strategy weighting instances by the capacity and load they
+     * advertise in their {@link InstanceMetadata}: capacity times the share
+     * of it that is free, but no less than {@link #MIN_HEADROOM}. Instances
+     * that do not advertise a capacity count as 1, and those that do not
+     * advertise a load as idle.
+     *
+     * @return {@link WeightedStrategy}
+     */
+    public static WeightedStrategy<InstanceMetadata> forInstanceMetadata() {
+        return new WeightedStrategy<>(WeightedStrategy::weightOf);
+    }
+
+    /**
+     * Return the weight of an instance from its capacity and load.
+     *
+     * @param instance
+     *            {@link ServiceInstance}
+     * @return weight of the instance
+     */
+    static double weightOf(final ServiceInstance<InstanceMetadata> instance) {
+        final InstanceMetadata metadata = instance.getPayload();
+        if (metadata == null) {
+            return 1;
+        }
+        final int capacity = metadata.getCapacity().orElse(1);
+        final double load = metadata.getLoad().orElse(0.0);
+        return capacity * Math.max(MIN_HEADROOM, 1 - load);
+    }
+
+    @Override
+    @Nullable
+    public ServiceInstance<T> getInstance(
+            final InstanceProvider<T> instanceProvider) throws Exception {
+        Weights<T> current = weights;
+        if (current.source != instanceProvider) {
+            current = weigh(instanceProvider);
+        }
+        final int size = current.instances.size();
+        if (size == 0) {
+            return null;
+        }
+        final double[] cumulative = current.cumulative;
+        final double total = cumulative[size - 1];
+        if (!(total > 0)) {
+            return current.instances
+                    .get(ThreadLocalRandom.current().nextInt(size));
+        }
+        final double point = ThreadLocalRandom.current().nextDouble(total);
+        // the first instance whose cumulative weight is above the point
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (cumulative[mid] > point) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return current.instances.get(low);
+    }
+
+    @Override
+    public void noteOutcome(@Nonnull final ServiceInstance<T> instance,
+            final long latencyNanos, final boolean success) {
+        // weights come from the snapshot
+    }
+
+    @Override
+    public void instancesChanged(@Nonnull final InstanceSnapshot<T> snapshot) {
+        weights = weigh(snapshot, snapshot.getInstances());
+    }
+
+    private Weights<T> weigh(final InstanceProvider<T> provider)
+            throws Exception {
+        if (!(provider instanceof InstanceSnapshot)) {
+            // not immutable, so weigh it on every call without caching
+            return weigh(null, provider.getInstances());
+        }
+        final Weights<T> current = weigh(provider,
+                provider.getInstances());
+        weights = current;
+        return current;
+    }
+
+    private Weights<T> weigh(@Nullable final InstanceProvider<T> source,
+            final List<ServiceInstance<T>> instances) {
+        final double[] cumulative = new double[instances.size()];
+        double total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            final double weight = weightOf.applyAsDouble(instances.get(i));
+            // NaN is not positive either
+            if (weight > 0 && !Double.isInfinite(weight)) {
+                total += weight;
+            }
+            cumulative[i] = total;
+        }
+        return new Weights<>(source, instances, cumulative);
+    }
+}
@@ -0,0 +1,230 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+import io.dropwizard.discovery.client.FeedbackProviderStrategy;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+/**
+ * A locality-aware strategy: returns a random instance from the same zone as
+ * the caller, spilling over to the rest of the region, and then to every
+ * instance, once too small a share of the closer instances is healthy.
+ *
+ * <p>
+ * A tier is used when at least {@code minHealthyShare} of the instances it
+ * adds to the previous tier are available, i.e. enabled and not marked down;
+ * the instances of a tier include the available ones of the closer tiers.
+ * The tiers are partitioned once per {@link InstanceSnapshot}, when the
+ * instances change, so that {@link #getInstance(InstanceProvider)} only picks
+ * a random index.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class ZoneAwareStrategy<T> implements FeedbackProviderStrategy<T> {
+
+    public static final double DEFAULT_MIN_HEALTHY_SHARE = 0.5;
+
+    /**
+     * How close the instances returned by the strategy are to the caller.
+     */
+    public enum Tier {
+        ZONE, REGION, ANY
+    }
+
+    @Immutable
+    private static final class Partition<T> {
+        @Nullable
+        private final InstanceProvider<T> source;
+        private final Tier tier;
+        private final List<ServiceInstance<T>> candidates;
+
+        Partition(@Nullable final InstanceProvider<T> source, final Tier tier,
+                final List<ServiceInstance<T>> candidates) {
+            this.source = source;
+            this.tier = tier;
+            this.candidates = candidates;
+        }
+    }
+
+    @Nullable
+    private final String zone;
+    @Nullable
+    private final String region;
+    private final Function<ServiceInstance<T>, String> zoneOf;
+    private final Function<ServiceInstance<T>, String> regionOf;
+    private final double minHealthyShare;
+    private volatile Partition<T> partition = new Partition<>(null, Tier.ANY,
+            Collections.emptyList());
+
+    /**
+     * Constructor
+     *
+     * @param zone
+     *            zone of the caller, or null if unknown
+     * @param region
+     *            region of the caller, or null if unknown
+     * @param zoneOf
+     *            returns the zone of an instance, or null if unknown
+     * @param regionOf
+     *            returns the region of an instance, or null if unknown
+     * @param minHealthyShare
+     *            share of the instances of a tier, between 0 and 1, that must
+     *            be available for the tier to be used
+     */
+    public ZoneAwareStrategy(@Nullable final String zone,
+            @Nullable final String region,
+            @Nonnull final Function<ServiceInstance<T>, String> zoneOf,
+            @Nonnull final Function<ServiceInstance<T>, String> regionOf,
+            final double minHealthyShare) {
+        checkArgument(minHealthyShare >= 0 && minHealthyShare <= 1,
+                "minHealthyShare must be between 0 and 1");
+        this.zone = zone;
+        this.region = region;
+        this.zoneOf = checkNotNull(zoneOf);
+        this.regionOf = checkNotNull(regionOf);
+        this.minHealthyShare = minHealthyShare;
+    }
+
+    /**
+     * Build a strategy reading the zone and region of the instances from
+     * their {@link InstanceMetadata}, using the
+     * {@link #DEFAULT_MIN_HEALTHY_SHARE}.
+     *
+     * @param zone
+     *            zone of the caller, or null if unknown
+     * @param region
+     *            region of the caller, or null if unknown
+     * @return {@link ZoneAwareStrategy}
+     */
+    public static ZoneAwareStrategy<InstanceMetadata> forInstanceMetadata(
+            @Nullable final String zone, @Nullable final String region) {
+        return new ZoneAwareStrategy<>(zone, region,
+                instance -> instance.getPayload() == null ? null
+                        : instance.getPayload().getZone().orElse(null),
+                instance -> instance.getPayload() == null ? null
+                        : instance.getPayload().getRegion().orElse(null),
+                DEFAULT_MIN_HEALTHY_SHARE);
+    }
+
+    @Override
+    @Nullable
+    public ServiceInstance<T> getInstance(
+            final InstanceProvider<T> instanceProvider) throws Exception {
+        Partition<T> current = partition;
+        if (current.source != instanceProvider) {
+            current = partition(instanceProvider);
+        }
+        final List<ServiceInstance<T>> candidates = current.candidates;
+        final int size = candidates.size();
+        if (size == 0) {
+            return null;
+        }
+        return candidates.get(
+                size == 1 ? 0 : ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Override
+    public void noteOutcome(@Nonnull final ServiceInstance<T> instance,
+            final long latencyNanos, final boolean success) {
+        // availability comes from the snapshot
+    }
+
+    @Override
+    public void instancesChanged(@Nonnull final InstanceSnapshot<T> snapshot) {
+        partition(snapshot);
+    }
+
+    /**
+     * Return the tier that instances are currently selected from.
+     *
+     * @return {@link Tier}
+     */
+    public Tier getTier() {
+        return partition.tier;
+    }
+
+    private Partition<T> partition(final InstanceProvider<T> provider)
+            throws Exception {
+        if (!(provider instanceof InstanceSnapshot)) {
+            // not immutable, so partition it on every call without caching
+            final List<ServiceInstance<T>> instances = provider.getInstances();
+            return partition(null, instances, instances);
+        }
+        return partition((InstanceSnapshot<T>) provider);
+    }
+
+    private Partition<T> partition(final InstanceSnapshot<T> snapshot) {
+        final Partition<T> current = partition(snapshot,
+                snapshot.getAllInstances(), snapshot.getInstances());
+        partition = current;
+        return current;
+    }
+
+    private Partition<T> partition(
+            @Nullable final InstanceProvider<T> source,
+            final List<ServiceInstance<T>> all,
+            final List<ServiceInstance<T>> available) {
+        // the health of the region is judged by its other zones, the local
+        // zone having already been found unhealthy
+        int zoneTotal = 0;
+        int regionTotal = 0;
+        for (final ServiceInstance<T> instance : all) {
+            if (inZone(instance)) {
+                zoneTotal++;
+            } else if (inRegion(instance)) {
+                regionTotal++;
+            }
+        }
+        final List<ServiceInstance<T>> zoneAvailable = new ArrayList<>();
+        final List<ServiceInstance<T>> regionAvailable = new ArrayList<>();
+        int regionOnlyAvailable = 0;
+        for (final ServiceInstance<T> instance : available) {
+            final boolean local = inZone(instance);
+            if (local) {
+                zoneAvailable.add(instance);
+            }
+            if (inRegion(instance)) {
+                regionAvailable.add(instance);
+                if (!local) {
+                    regionOnlyAvailable++;
+                }
+            }
+        }
+        if (isHealthy(zoneAvailable.size(), zoneTotal)) {
+            return new Partition<>(source, Tier.ZONE, zoneAvailable);
+        }
+        if (isHealthy(regionOnlyAvailable, regionTotal)) {
+            return new Partition<>(source, Tier.REGION, regionAvailable);
+        }
+        return new Partition<>(source, Tier.ANY, available);
+    }
+
+    private boolean isHealthy(final int available, final int total) {
+        return available > 0 && available >= minHealthyShare * total;
+    }
+
+    private boolean inZone(final ServiceInstance<T> instance) {
+        return zone != null && Objects.equals(zone, zoneOf.apply(instance));
+    }
+
+    private boolean inRegion(final ServiceInstance<T> instance) {
+        return region != null
+                && Objects.equals(region, regionOf.apply(instance));
+    }
+}
@@ -0,0 +1,94 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.api.CompressionProvider;
+import org.apache.curator.framework.imps.GzipCompressionProvider;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+
+/**
+ * An {@link InstanceSerializer} that compresses the instances written by
+ * another serializer once they reach a size threshold.
+ *
+ * <p>
+ * Curator's service discovery reads and writes znodes without going through
+ * the {@link CompressionProvider} configured on the
+ * {@link org.apache.curator.framework.CuratorFramework}, so compression has to
+ * happen here. Compressed data is recognised by its leading bytes, so this
+ * serializer reads GZIP, Snappy and uncompressed instances regardless of the
+ * provider it writes with.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class CompressingInstanceSerializer<T> implements InstanceSerializer<T> {
+
+    private static final CompressionProvider GZIP = new GzipCompressionProvider();
+    private static final CompressionProvider SNAPPY = new SnappyCompressionProvider();
+
+    private final InstanceSerializer<T> delegate;
+    private final CompressionProvider provider;
+    private final int threshold;
+
+    /**
+     * Constructor reading compressed instances, but writing them uncompressed
+     *
+     * @param delegate
+     *            {@link InstanceSerializer} producing the uncompressed data
+     */
+    public CompressingInstanceSerializer(
+            @Nonnull final InstanceSerializer<T> delegate) {
+        this(delegate, new NoCompressionProvider(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate
+     *            {@link InstanceSerializer} producing the uncompressed data
+     * @param provider
+     *            {@link CompressionProvider} to compress with
+     * @param threshold
+     *            size in bytes from which instances are compressed
+     */
+    public CompressingInstanceSerializer(
+            @Nonnull final InstanceSerializer<T> delegate,
+            @Nonnull final CompressionProvider provider, final int threshold) {
+        checkArgument(threshold >= 0, "threshold cannot be negative");
+        this.delegate = checkNotNull(delegate);
+        this.provider = checkNotNull(provider);
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] serialize(final ServiceInstance<T> instance)
+            throws Exception {
+        final byte[] bytes = delegate.serialize(instance);
+        if (bytes.length < threshold) {
+            return bytes;
+        }
+        return provider.compress(instance.getId(), bytes);
+    }
+
+    @Override
+    public ServiceInstance<T> deserialize(final byte[] bytes)
+            throws Exception {
+        if (isGzip(bytes)) {
+            return delegate.deserialize(GZIP.decompress(null, bytes));
+        }
+        if (SnappyCompressionProvider.isCompressed(bytes)) {
+            return delegate.deserialize(SNAPPY.decompress(null, bytes));
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    private static boolean isGzip(final byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == (byte) 0x1f
+                && bytes[1] == (byte) 0x8b;
+    }
+}
@@ -0,0 +1,106 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Publishes the state of the ZooKeeper connection of a
+ * {@link CuratorFramework}: the last {@link ConnectionState}, whether it is
+ * currently connected, how long ago the state last changed and the rate of
+ * state changes.
+ *
+ * <p>
+ * The metrics are named after {@link CuratorFramework} and the service of the
+ * bundle, so that several bundles can each report their connection, shared or
+ * not, in the same {@link MetricRegistry}.
+ * </p>
+ */
+@ThreadSafe
+public class ConnectionStateMetrics implements ConnectionStateListener {
+
+    private final CuratorFramework framework;
+    private final String name;
+    private final Meter changes;
+
+    @Nullable
+    private volatile ConnectionState state;
+    private volatile long lastChangeNanos = System.nanoTime();
+
+    /**
+     * Constructor
+     * 
+     * @param framework
+     *            {@link CuratorFramework}
+     * @param metrics
+     *            {@link MetricRegistry} to register the metrics in
+     * @param name
+     *            name of the service the connection is used by
+     * @throws IllegalArgumentException
+     *             if the metrics of the service are already registered
+     */
+    public ConnectionStateMetrics(@Nonnull final CuratorFramework framework,
+            @Nonnull final MetricRegistry metrics, @Nonnull final String name) {
+        this.framework = checkNotNull(framework);
+        this.name = checkNotNull(name);
+        checkNotNull(metrics);
+        this.changes = metrics.register(name("changes"), new Meter());
+        metrics.register(name("state"), (Gauge<String>) this::getState);
+        metrics.register(name("connected"),
+                (Gauge<Boolean>) this::isConnected);
+        metrics.register(name("time-since-last-change"),
+                (Gauge<Long>) this::getMillisSinceLastChange);
+    }
+
+    /**
+     * Return the name of the last {@link ConnectionState}, or
+     * <code>UNKNOWN</code> before the first change.
+     * 
+     * @return connection state
+     */
+    public String getState() {
+        final ConnectionState current = state;
+        return current == null ? "UNKNOWN" : current.name();
+    }
+
+    /**
+     * Return whether the client is currently connected to ZooKeeper.
+     * 
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return framework.getZookeeperClient().isConnected();
+    }
+
+    /**
+     * Return the time since the connection state last changed, or since this
+     * listener was created if it has not changed yet.
+     * 
+     * @return time in milliseconds
+     */
+    public long getMillisSinceLastChange() {
+        return TimeUnit.NANOSECONDS
+                .toMillis(System.nanoTime() - lastChangeNanos);
+    }
+
+    @Override
+    public void stateChanged(final CuratorFramework client,
+            final ConnectionState newState) {
+        state = newState;
+        lastChangeNanos = System.nanoTime();
+        changes.mark();
+    }
+
+    private String name(final String metric) {
+        return MetricRegistry.name(CuratorFramework.class, "connection", name,
+                metric);
+    }
+}
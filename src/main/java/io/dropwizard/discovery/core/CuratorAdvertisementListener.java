@@ -1,40 +1,209 @@
 package io.dropwizard.discovery.core;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
 import org.eclipse.jetty.server.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.dropwizard.lifecycle.ServerLifecycleListener;
+import io.dropwizard.util.Duration;
 
+/**
+ * Registers the service once the server has started. Registration runs on
+ * its own executor so that a slow or unavailable ensemble does not hold up
+ * startup, and is retried with an exponential back-off a bounded number of
+ * times, until the listener is {@link #stop() stopped}.
+ * 
+ * @see #getRegistration()
+ */
+@ThreadSafe
 public class CuratorAdvertisementListener<T>
         implements ServerLifecycleListener {
 
     private static final Logger LOGGER = LoggerFactory
             .getLogger(CuratorAdvertisementListener.class);
+    private static final int DEFAULT_ATTEMPTS = 3;
+    private static final Duration DEFAULT_BACKOFF = Duration.seconds(1);
+
     private final CuratorAdvertiser<T> advertiser;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final Timer timeToRegister;
+    private final CompletableFuture<ServiceInstance<T>> registration = new CompletableFuture<>();
+    @GuardedBy("this")
+    @Nullable
+    private Future<?> retry;
+    @GuardedBy("this")
+    private boolean stopped = false;
 
     /**
-     * Constructor
+     * Constructor registering on a thread of its own, which is shut down when
+     * the listener is {@link #stop() stopped}
      * 
      * @param advertiser
      *            {@link CuratorAdvertiser}
      */
     public CuratorAdvertisementListener(
             @Nonnull final CuratorAdvertiser<T> advertiser) {
+        this(advertiser, Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("discovery-registration-%d").build()),
+                true, new MetricRegistry(), DEFAULT_ATTEMPTS, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param advertiser
+     *            {@link CuratorAdvertiser}
+     * @param executor
+     *            {@link ScheduledExecutorService} to register on
+     * @param metrics
+     *            {@link MetricRegistry} to record the time to register in
+     * @param maxAttempts
+     *            maximum number of registration attempts
+     * @param backoff
+     *            delay before the first retry, doubled for every subsequent
+     *            retry
+     */
+    public CuratorAdvertisementListener(
+            @Nonnull final CuratorAdvertiser<T> advertiser,
+            @Nonnull final ScheduledExecutorService executor,
+            @Nonnull final MetricRegistry metrics, final int maxAttempts,
+            @Nonnull final Duration backoff) {
+        this(advertiser, executor, false, metrics, maxAttempts, backoff);
+    }
+
+    private CuratorAdvertisementListener(
+            @Nonnull final CuratorAdvertiser<T> advertiser,
+            @Nonnull final ScheduledExecutorService executor,
+            final boolean ownsExecutor, @Nonnull final MetricRegistry metrics,
+            final int maxAttempts, @Nonnull final Duration backoff) {
+        checkArgument(maxAttempts > 0, "maxAttempts must be positive");
         this.advertiser = checkNotNull(advertiser);
+        this.executor = checkNotNull(executor);
+        this.ownsExecutor = ownsExecutor;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = checkNotNull(backoff).toMilliseconds();
+        this.timeToRegister = metrics.timer(MetricRegistry
+                .name(CuratorAdvertisementListener.class, "time-to-register"));
+    }
+
+    /**
+     * Return a future that completes with the registered instance once the
+     * service has been registered, or exceptionally if every attempt failed.
+     * 
+     * @return {@link CompletableFuture}
+     */
+    public CompletableFuture<ServiceInstance<T>> getRegistration() {
+        // a dependent future, so that callers cannot complete ours
+        return registration.thenApply(Function.identity());
     }
 
     @Override
     public void serverStarted(final Server server) {
+        final long startedAt = System.nanoTime();
         final int listenPort = getLocalPort(server);
         final int adminPort = getAdminPort(server);
 
         try {
-            advertiser.initListenInfo(listenPort, adminPort);
-            advertiser.registerAvailability();
-        } catch (final Exception e) {
+            executor.execute(() -> {
+                try {
+                    advertiser.initListenInfo(listenPort, adminPort);
+                } catch (final RuntimeException e) {
+                    LOGGER.error("Unable to register service in ZK", e);
+                    registration.completeExceptionally(e);
+                    return;
+                }
+                register(1, startedAt);
+            });
+        } catch (final RejectedExecutionException e) {
             LOGGER.error("Unable to register service in ZK", e);
+            registration.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stop registering the service: cancel the pending retry, if any. An
+     * attempt in progress is not waited for: it registers under the lock of
+     * the {@link CuratorAdvertiser}, which unregistering takes too, so the
+     * service can be unregistered for good afterwards. The registration
+     * completes exceptionally if it had not completed yet.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+        registration.completeExceptionally(
+                new CancellationException("Registration stopped"));
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void register(final int attempt, final long startedAt) {
+        try {
+            // the advertiser registers and unregisters under its own lock:
+            // checking for stop() under it too means that either this
+            // attempt is skipped or it registers before stop() is followed
+            // by unregistering
+            synchronized (advertiser) {
+                synchronized (this) {
+                    retry = null;
+                    if (stopped) {
+                        return;
+                    }
+                }
+                advertiser.registerAvailability();
+            }
+            timeToRegister.update(System.nanoTime() - startedAt,
+                    TimeUnit.NANOSECONDS);
+            registration.complete(advertiser.getInstance());
+        } catch (final Exception e) {
+            if (attempt >= maxAttempts) {
+                LOGGER.error("Unable to register service in ZK after {} attempts",
+                        attempt, e);
+                registration.completeExceptionally(e);
+                return;
+            }
+            scheduleRetry(attempt, startedAt, e);
+        }
+    }
+
+    private synchronized void scheduleRetry(final int attempt,
+            final long startedAt, final Exception error) {
+        if (stopped) {
+            return;
+        }
+        final long delay = backoffMillis << Math.min(attempt - 1, 16);
+        LOGGER.warn("Unable to register service in ZK, retrying in {}ms",
+                delay, error);
+        try {
+            retry = executor.schedule(() -> register(attempt + 1, startedAt),
+                    delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException rejected) {
+            // the executor is shutting down with the application
+            registration.completeExceptionally(error);
         }
     }
 }
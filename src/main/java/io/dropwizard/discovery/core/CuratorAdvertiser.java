@@ -1,11 +1,18 @@
 package io.dropwizard.discovery.core;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -18,6 +25,8 @@ import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.ServiceInstanceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import io.dropwizard.discovery.DiscoveryFactory;
 
@@ -31,6 +40,12 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
     private final DiscoveryFactory configuration;
     private final ServiceInstanceFactory<T> serviceInstanceFactory;
 
+    @Nullable
+    private final String zone;
+
+    @Nullable
+    private final String region;
+
     @Nullable
     @GuardedBy("this")
     private String listenAddress = null;
@@ -44,7 +59,16 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
 
     @Nullable
     @GuardedBy("this")
-    private ServiceInstance<T> instance;
+    private List<ServiceInstance<T>> instances;
+
+    @GuardedBy("this")
+    private final Map<String, ServiceInstance<T>> registered = new LinkedHashMap<>();
+
+    @GuardedBy("this")
+    private Timer registerTimer = new Timer();
+
+    @GuardedBy("this")
+    private Timer unregisterTimer = new Timer();
 
     /**
      * Constructor
@@ -60,6 +84,62 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
         this.configuration = checkNotNull(configuration);
         this.discovery = checkNotNull(discovery);
         this.serviceInstanceFactory = checkNotNull(serviceInstanceFactory);
+        // only published when configured or detection is enabled: readers
+        // older than the fields reject instances that carry them
+        if (configuration.isDetectLocation()) {
+            this.zone = detect(configuration.getZone(), System::getenv,
+                    "DISCOVERY_ZONE");
+            this.region = detect(configuration.getRegion(), System::getenv,
+                    "DISCOVERY_REGION", "AWS_REGION", "AWS_DEFAULT_REGION");
+        } else {
+            this.zone = Strings.emptyToNull(configuration.getZone());
+            this.region = Strings.emptyToNull(configuration.getRegion());
+        }
+    }
+
+    /**
+     * Return the configured value if there is one, otherwise the value of the
+     * first environment variable that is set.
+     * 
+     * @param configured
+     *            value from the configuration file
+     * @param environment
+     *            lookup of environment variables
+     * @param names
+     *            environment variables to try, in order
+     * @return the detected value, or null if none was found
+     */
+    @Nullable
+    static String detect(@Nullable final String configured,
+            final Function<String, String> environment,
+            final String... names) {
+        if (!Strings.isNullOrEmpty(configured)) {
+            return configured;
+        }
+        for (final String name : names) {
+            final String value = environment.apply(name);
+            if (!Strings.isNullOrEmpty(value)) {
+                LOGGER.info("Using '{}' from {}", value, name);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record the latency of registering and unregistering the instance in the
+     * given {@link MetricRegistry}.
+     * 
+     * @param metrics
+     *            {@link MetricRegistry}
+     */
+    public synchronized void setMetricRegistry(
+            @Nonnull final MetricRegistry metrics) {
+        checkNotNull(metrics);
+        registerTimer = metrics
+                .timer(MetricRegistry.name(CuratorAdvertiser.class, "register"));
+        unregisterTimer = metrics.timer(
+                MetricRegistry.name(CuratorAdvertiser.class, "unregister"));
     }
 
     /**
@@ -110,12 +190,12 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
     }
 
     /**
-     * Register the instance in Zookeeper
+     * Register the instances in Zookeeper
      * 
      * @throws Exception
      */
     public synchronized void registerAvailability() throws Exception {
-        registerAvailability(getInstance());
+        registerAvailability(getInstances());
     }
 
     /**
@@ -127,22 +207,51 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
      */
     public synchronized void registerAvailability(
             @Nonnull final ServiceInstance<T> instance) throws Exception {
+        registerAvailability(Collections.singletonList(instance));
+    }
+
+    /**
+     * Register several instances in Zookeeper. When the
+     * {@link ServiceDiscovery} is a {@link SessionAwareServiceDiscovery}, they
+     * are written in a single transaction, so that either all of them are
+     * registered or none is.
+     * 
+     * @param instances
+     *            Service Instances
+     * @throws Exception
+     */
+    public synchronized void registerAvailability(
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws Exception {
         checkInitialized();
-        LOGGER.info("Registering service ({}) at <{}:{}>",
-                configuration.getServiceName(), listenAddress, listenPort);
+        LOGGER.info("Registering {} instance(s) of service ({}) at <{}:{}>",
+                instances.size(), configuration.getServiceName(),
+                listenAddress, listenPort);
 
-        discovery.registerService(instance);
+        try (Timer.Context context = registerTimer.time()) {
+            if (discovery instanceof SessionAwareServiceDiscovery) {
+                ((SessionAwareServiceDiscovery<T>) discovery)
+                        .registerServices(instances);
+            } else {
+                for (final ServiceInstance<T> instance : instances) {
+                    discovery.registerService(instance);
+                }
+            }
+        }
+        for (final ServiceInstance<T> instance : instances) {
+            registered.put(instance.getId(), instance);
+        }
         LOGGER.debug("Successfully registered service ({}) in ZK",
                 configuration.getServiceName());
     }
 
     /**
-     * Remove the instance from Zookeeper
+     * Remove the instances from Zookeeper
      * 
      * @throws Exception
      */
     public synchronized void unregisterAvailability() throws Exception {
-        unregisterAvailability(getInstance());
+        unregisterAvailability(getInstances());
     }
 
     /**
@@ -154,15 +263,102 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
      */
     public synchronized void unregisterAvailability(
             @Nonnull final ServiceInstance<T> instance) throws Exception {
+        unregisterAvailability(Collections.singletonList(instance));
+    }
+
+    /**
+     * Remove several instances from Zookeeper, in a single transaction when
+     * the {@link ServiceDiscovery} is a {@link SessionAwareServiceDiscovery}.
+     * 
+     * @param instances
+     *            Service Instances
+     * @throws Exception
+     */
+    public synchronized void unregisterAvailability(
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws Exception {
         checkInitialized();
-        LOGGER.info("Unregistering service ({}) at <{}:{}>",
-                configuration.getServiceName(), listenAddress, listenPort);
+        LOGGER.info("Unregistering {} instance(s) of service ({}) at <{}:{}>",
+                instances.size(), configuration.getServiceName(),
+                listenAddress, listenPort);
 
-        discovery.unregisterService(instance);
+        try (Timer.Context context = unregisterTimer.time()) {
+            if (discovery instanceof SessionAwareServiceDiscovery) {
+                ((SessionAwareServiceDiscovery<T>) discovery)
+                        .unregisterServices(instances);
+            } else {
+                for (final ServiceInstance<T> instance : instances) {
+                    discovery.unregisterService(instance);
+                }
+            }
+        }
+        for (final ServiceInstance<T> instance : instances) {
+            registered.remove(instance.getId(), instance);
+        }
         LOGGER.debug("Successfully unregistered service ({}) from ZK",
                 configuration.getServiceName());
     }
 
+    /**
+     * Register the currently registered instances again, for example after
+     * the ZooKeeper session has expired. Does nothing if no instance is
+     * currently registered.
+     * 
+     * @return true if any instance had to be written to ZooKeeper again
+     * @throws Exception
+     */
+    public synchronized boolean reRegister() throws Exception {
+        if (registered.isEmpty()) {
+            return false;
+        }
+        final List<ServiceInstance<T>> instances = new ArrayList<>(
+                registered.values());
+        try (Timer.Context context = registerTimer.time()) {
+            if (discovery instanceof SessionAwareServiceDiscovery) {
+                // reads the nodes first, and only writes the missing or
+                // stale ones
+                return ((SessionAwareServiceDiscovery<T>) discovery)
+                        .ensureRegistered(instances);
+            }
+            for (final ServiceInstance<T> instance : instances) {
+                discovery.registerService(instance);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Publish the load of this application on every instance it advertises.
+     * Registered instances are updated in ZooKeeper through
+     * {@link ServiceDiscovery#updateService}; the others will carry the load
+     * when they are registered.
+     * 
+     * @param load
+     *            share of the capacity of this application in use
+     * @return true if any instance was written to ZooKeeper
+     * @throws Exception
+     */
+    public synchronized boolean reportLoad(final double load)
+            throws Exception {
+        final List<ServiceInstance<T>> current = getInstances();
+        final List<ServiceInstance<T>> updated = new ArrayList<>(
+                current.size());
+        boolean written = false;
+        for (final ServiceInstance<T> instance : current) {
+            final ServiceInstance<T> next = serviceInstanceFactory
+                    .withLoad(instance, load);
+            updated.add(next);
+            if (!next.equals(instance)
+                    && registered.containsKey(next.getId())) {
+                discovery.updateService(next);
+                registered.put(next.getId(), next);
+                written = true;
+            }
+        }
+        instances = Collections.unmodifiableList(updated);
+        return written;
+    }
+
     /**
      * Return the instance ID
      * 
@@ -200,6 +396,39 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
         return listenAddress;
     }
 
+    /**
+     * Return the availability zone of this instance
+     * 
+     * @return zone, or null if unknown
+     */
+    @Nullable
+    public String getZone() {
+        return zone;
+    }
+
+    /**
+     * Return the region of this instance
+     * 
+     * @return region, or null if unknown
+     */
+    @Nullable
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Return the configured capacity of this instance, only published along
+     * with its load
+     * 
+     * @return capacity, or null if not configured or load reporting is
+     *         disabled
+     */
+    @Nullable
+    public Integer getCapacity() {
+        return configuration.getLoadReportInterval() == null ? null
+                : configuration.getCapacity();
+    }
+
     /**
      * Return the {@link ServiceInstance} that will be registered with the
      * {@link ServiceDiscovery} instance.
@@ -208,12 +437,27 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
      * @throws Exception
      */
     public synchronized ServiceInstance<T> getInstance() throws Exception {
-        if (instance != null) {
-            return instance;
+        return getInstances().get(0);
+    }
+
+    /**
+     * Return every {@link ServiceInstance} this application advertises, as
+     * built by {@link ServiceInstanceFactory#buildAll}. The first one is
+     * {@link #getInstance()}.
+     * 
+     * @return {@link ServiceInstance}s
+     * @throws Exception
+     */
+    public synchronized List<ServiceInstance<T>> getInstances()
+            throws Exception {
+        if (instances != null) {
+            return instances;
         }
-        instance = serviceInstanceFactory.build(configuration.getServiceName(),
-                this);
-        return instance;
+        final List<ServiceInstance<T>> built = serviceInstanceFactory
+                .buildAll(configuration.getServiceName(), this);
+        checkState(!built.isEmpty(), "No instances to advertise");
+        instances = Collections.unmodifiableList(new ArrayList<>(built));
+        return instances;
     }
 
     /**
@@ -229,14 +473,17 @@ public class CuratorAdvertiser<T> implements ConnectionStateListener {
     }
 
     /**
-     * TODO - figure out how to register this listener
+     * Re-registers the instance immediately when the connection is
+     * re-established. {@link io.dropwizard.discovery.AbstractDiscoveryBundle}
+     * registers a {@link ReRegistrationListener} instead, which spreads
+     * re-registrations over time.
      */
     @Override
     public void stateChanged(final CuratorFramework client,
             final ConnectionState newState) {
         if (newState == ConnectionState.RECONNECTED) {
             try {
-                registerAvailability();
+                reRegister();
             } catch (final Exception e) {
                 LOGGER.error("Unable to register service", e);
             }
@@ -0,0 +1,171 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.CuratorFramework;
+import io.dropwizard.discovery.DiscoveryFactory;
+
+/**
+ * Shares one ZooKeeper session between every bundle of the process that
+ * connects to the same ensemble with the same session settings, so that the
+ * process holds one session, one set of heartbeat and event threads, and one
+ * connection to the ensemble, instead of one per bundle.
+ *
+ * <p>
+ * Each bundle gets a view of the shared connection using its own namespace.
+ * Connections are reference counted: the first {@link #acquire} starts the
+ * connection and the last {@link #release} closes it. Listeners added to a
+ * view are added to the shared connection, and stay until they are removed
+ * or it is closed, so a bundle must remove its own before releasing it.
+ * </p>
+ */
+@ThreadSafe
+public class CuratorConnectionRegistry {
+
+    private static final CuratorConnectionRegistry DEFAULT = new CuratorConnectionRegistry();
+
+    private static final class Connection {
+        private final CuratorFramework framework;
+        private int references = 0;
+
+        Connection(final CuratorFramework framework) {
+            this.framework = framework;
+        }
+    }
+
+    private final Map<String, Connection> connections = new HashMap<>();
+
+    /**
+     * Return the registry shared by the whole process.
+     *
+     * @return {@link CuratorConnectionRegistry}
+     */
+    public static CuratorConnectionRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Return a started view of the connection matching the given
+     * configuration, using its namespace, starting the connection if no
+     * other bundle is using it. Every call must be matched by a call to
+     * {@link #release(CuratorFramework)}.
+     *
+     * @param config
+     *            {@link DiscoveryFactory}
+     * @return {@link CuratorFramework} using the configured namespace
+     */
+    public CuratorFramework acquire(@Nonnull final DiscoveryFactory config) {
+        return acquire(config, config.getQuorumSpec());
+    }
+
+    /**
+     * Return a started view of the connection to the given quorum with the
+     * session settings of the given configuration, using its namespace,
+     * starting the connection if no other bundle is using it. Every call must
+     * be matched by a call to {@link #release(CuratorFramework)}.
+     *
+     * @param config
+     *            {@link DiscoveryFactory}
+     * @param quorumSpec
+     *            ZooKeeper hosts and ports to connect to
+     * @return {@link CuratorFramework} using the configured namespace
+     */
+    public synchronized CuratorFramework acquire(
+            @Nonnull final DiscoveryFactory config,
+            @Nonnull final String quorumSpec) {
+        final String key = key(config, quorumSpec);
+        Connection connection = connections.get(key);
+        if (connection == null) {
+            final CuratorFramework framework = CuratorFactory
+                    .builder(config, quorumSpec).build();
+            framework.start();
+            connection = new Connection(framework);
+            connections.put(key, connection);
+        }
+        connection.references++;
+        return connection.framework.usingNamespace(config.getNamespace());
+    }
+
+    /**
+     * Release a view obtained from {@link #acquire(DiscoveryFactory)},
+     * closing the connection if no other bundle is using it.
+     *
+     * @param framework
+     *            {@link CuratorFramework} returned by
+     *            {@link #acquire(DiscoveryFactory)}
+     */
+    public synchronized void release(
+            @Nonnull final CuratorFramework framework) {
+        checkNotNull(framework);
+        final Iterator<Connection> it = connections.values().iterator();
+        while (it.hasNext()) {
+            final Connection connection = it.next();
+            // views share the client of the connection
+            if (connection.framework.getZookeeperClient() != framework
+                    .getZookeeperClient()) {
+                continue;
+            }
+            if (--connection.references == 0) {
+                it.remove();
+                connection.framework.close();
+            }
+            return;
+        }
+        throw new IllegalArgumentException(
+                "Connection was not acquired from this registry");
+    }
+
+    /**
+     * Return the number of views of the connection of the given view that
+     * have been acquired and not released yet.
+     *
+     * @param framework
+     *            {@link CuratorFramework} returned by
+     *            {@link #acquire(DiscoveryFactory)}
+     * @return number of views, or 0 if the connection is closed
+     */
+    public synchronized int references(
+            @Nonnull final CuratorFramework framework) {
+        checkNotNull(framework);
+        for (final Connection connection : connections.values()) {
+            if (connection.framework.getZookeeperClient() == framework
+                    .getZookeeperClient()) {
+                return connection.references;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return the number of open connections.
+     *
+     * @return number of connections
+     */
+    public synchronized int size() {
+        return connections.size();
+    }
+
+    /**
+     * Return the settings that must match for two bundles to share a
+     * connection: everything but the namespace.
+     *
+     * @param config
+     *            {@link DiscoveryFactory}
+     * @param quorumSpec
+     *            ZooKeeper hosts and ports to connect to
+     * @return key of the connection
+     */
+    static String key(final DiscoveryFactory config, final String quorumSpec) {
+        return String.join("|", quorumSpec,
+                String.valueOf(config.getSessionTimeout().toMilliseconds()),
+                String.valueOf(config.getConnectionTimeout().toMilliseconds()),
+                String.valueOf(config.getBaseSleepTime().toMilliseconds()),
+                String.valueOf(config.getMaxRetries()),
+                String.valueOf(config.isReadOnly()),
+                config.getCompression().name());
+    }
+}
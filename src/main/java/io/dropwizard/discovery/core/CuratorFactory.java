@@ -2,12 +2,16 @@ package io.dropwizard.discovery.core;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import io.dropwizard.discovery.DiscoveryFactory;
+import io.dropwizard.discovery.EnsembleFactory;
 import io.dropwizard.discovery.health.CuratorHealthCheck;
+import io.dropwizard.discovery.manage.ConnectionStateListenerManager;
 import io.dropwizard.discovery.manage.CuratorManager;
 import io.dropwizard.setup.Environment;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import com.codahale.metrics.MetricRegistry;
 
 public class CuratorFactory {
 
@@ -25,28 +29,95 @@ public class CuratorFactory {
 
     /**
      * Build a new instance of a {@link CuratorFramework} and register a health
-     * check and make sure it's properly managed.
+     * check and connection metrics and make sure it's properly managed. Unless
+     * disabled in the configuration, the ZooKeeper connection is shared with
+     * the other bundles of the process through the default
+     * {@link CuratorConnectionRegistry}, and the returned instance is a view
+     * of it using the configured namespace.
      * 
      * @param config
      *            {@link DiscoveryFactory}
      * @return {@link CuratorFramework}
      */
     public CuratorFramework build(@Nonnull final DiscoveryFactory config) {
-        final CuratorFramework framework = CuratorFrameworkFactory
-                .builder()
+        final CuratorConnectionRegistry connections = config
+                .isSharedConnection() ? CuratorConnectionRegistry.getDefault()
+                        : null;
+        final CuratorFramework framework = connections == null
+                ? builder(config, config.getQuorumSpec())
+                        .namespace(config.getNamespace()).build()
+                : connections.acquire(config, config.getQuorumSpec());
+
+        // listeners are added right away to see the state changes of
+        // startup, and managed after the framework so that they are removed
+        // before a shared connection is released
+        final ConnectionStateListenerManager metrics = new ConnectionStateListenerManager(
+                framework, new ConnectionStateMetrics(framework,
+                        environment.metrics(), config.getServiceName()));
+        final CuratorHealthCheck healthCheck = new CuratorHealthCheck(
+                framework,
+                config.getNamespaceVerifyInterval().toMilliseconds(),
+                TimeUnit.MILLISECONDS);
+        final ConnectionStateListenerManager health = new ConnectionStateListenerManager(
+                framework, healthCheck);
+        environment.lifecycle().manage(new CuratorManager(framework,
+                environment.metrics(), config.getStartupTimeout(),
+                config.isBackgroundStartup(), connections));
+        environment.lifecycle().manage(metrics);
+        environment.lifecycle().manage(health);
+        environment.healthChecks().register("curator", healthCheck);
+        return framework;
+    }
+
+    /**
+     * Build a {@link CuratorFramework} connected to a remote ensemble, with
+     * the session settings and namespace of the given configuration. It
+     * connects in the background, so that an unreachable remote ensemble does
+     * not hold up startup, and has no health check or connection metrics of
+     * its own.
+     * 
+     * @param config
+     *            {@link DiscoveryFactory}
+     * @param ensemble
+     *            {@link EnsembleFactory} of the remote ensemble
+     * @return {@link CuratorFramework}
+     */
+    public CuratorFramework build(@Nonnull final DiscoveryFactory config,
+            @Nonnull final EnsembleFactory ensemble) {
+        final CuratorConnectionRegistry connections = config
+                .isSharedConnection() ? CuratorConnectionRegistry.getDefault()
+                        : null;
+        final CuratorFramework framework = connections == null
+                ? builder(config, ensemble.getQuorumSpec())
+                        .namespace(config.getNamespace()).build()
+                : connections.acquire(config, ensemble.getQuorumSpec());
+        // its startup timings would be mixed with those of the local ensemble
+        environment.lifecycle().manage(new CuratorManager(framework,
+                new MetricRegistry(), null, true, connections));
+        return framework;
+    }
+
+    /**
+     * Return a builder of {@link CuratorFramework} connecting to the given
+     * quorum with the session settings of the given configuration, but no
+     * namespace.
+     * 
+     * @param config
+     *            {@link DiscoveryFactory}
+     * @param quorumSpec
+     *            ZooKeeper hosts and ports to connect to
+     * @return {@link CuratorFrameworkFactory.Builder}
+     */
+    static CuratorFrameworkFactory.Builder builder(
+            final DiscoveryFactory config, final String quorumSpec) {
+        return CuratorFrameworkFactory.builder()
                 .connectionTimeoutMs(
                         (int) config.getConnectionTimeout().toMilliseconds())
                 .sessionTimeoutMs(
                         (int) config.getSessionTimeout().toMilliseconds())
                 .retryPolicy(config.getRetryPolicy())
                 .compressionProvider(config.getCompressionProvider())
-                .connectString(config.getQuorumSpec())
-                .canBeReadOnly(config.isReadOnly())
-                .namespace(config.getNamespace()).build();
-
-        environment.lifecycle().manage(new CuratorManager(framework));
-        environment.healthChecks().register("curator",
-                new CuratorHealthCheck(framework));
-        return framework;
+                .connectString(quorumSpec)
+                .canBeReadOnly(config.isReadOnly());
     }
 }
@@ -10,7 +10,9 @@ public class DefaultServiceInstanceFactory
             CuratorAdvertiser<InstanceMetadata> advertiser) throws Exception {
         final InstanceMetadata metadata = new InstanceMetadata(
                 advertiser.getInstanceId(), advertiser.getListenAddress(),
-                advertiser.getListenPort(), advertiser.getAdminPort());
+                advertiser.getListenPort(), advertiser.getAdminPort(),
+                advertiser.getZone(), advertiser.getRegion(),
+                advertiser.getCapacity(), null);
         return ServiceInstance.<InstanceMetadata>builder().name(serviceName)
                 .address(advertiser.getListenAddress())
                 .port(advertiser.getListenPort())
@@ -18,6 +20,19 @@ public class DefaultServiceInstanceFactory
                 .build();
     }
 
+    @Override
+    public ServiceInstance<InstanceMetadata> withLoad(
+            ServiceInstance<InstanceMetadata> instance, double load) {
+        if (instance.getPayload() == null) {
+            return instance;
+        }
+        return new ServiceInstance<InstanceMetadata>(instance.getName(),
+                instance.getId(), instance.getAddress(), instance.getPort(),
+                instance.getSslPort(), instance.getPayload().withLoad(load),
+                instance.getRegistrationTimeUTC(), instance.getServiceType(),
+                instance.getUriSpec(), instance.isEnabled());
+    }
+
     @Override
     public Class<InstanceMetadata> getPayloadClass() {
         return InstanceMetadata.class;
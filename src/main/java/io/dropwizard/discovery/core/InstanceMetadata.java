@@ -8,11 +8,14 @@ import javax.annotation.concurrent.Immutable;
 import javax.validation.constraints.NotNull;
 import org.hibernate.validator.constraints.NotEmpty;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.MoreObjects;
 import io.dropwizard.validation.PortRange;
 
 @Immutable
+@JsonIgnoreProperties(ignoreUnknown = true)
 public final class InstanceMetadata {
 
     @NotNull
@@ -28,11 +31,39 @@ public final class InstanceMetadata {
     @PortRange
     private final Integer adminPort;
 
+    @Nullable
+    private final String zone;
+
+    @Nullable
+    private final String region;
+
+    @Nullable
+    private final Integer capacity;
+
+    @Nullable
+    private final Double load;
+
+    public InstanceMetadata(final UUID instanceId, final String listenAddress,
+            final int listenPort, final Optional<Integer> adminPort) {
+        this(instanceId, listenAddress, listenPort, adminPort, null, null);
+    }
+
+    public InstanceMetadata(final UUID instanceId, final String listenAddress,
+            final int listenPort, final Optional<Integer> adminPort,
+            @Nullable final String zone, @Nullable final String region) {
+        this(instanceId, listenAddress, listenPort, adminPort, zone, region,
+                null, null);
+    }
+
     @JsonCreator
     public InstanceMetadata(@JsonProperty("instanceId") final UUID instanceId,
             @JsonProperty("listenAddress") final String listenAddress,
             @JsonProperty("listenPort") final int listenPort,
-            @JsonProperty("adminPort") final Optional<Integer> adminPort) {
+            @JsonProperty("adminPort") final Optional<Integer> adminPort,
+            @JsonProperty("zone") @Nullable final String zone,
+            @JsonProperty("region") @Nullable final String region,
+            @JsonProperty("capacity") @Nullable final Integer capacity,
+            @JsonProperty("load") @Nullable final Double load) {
         this.instanceId = instanceId;
         this.listenAddress = listenAddress;
         this.listenPort = listenPort;
@@ -41,6 +72,22 @@ public final class InstanceMetadata {
         } else {
             this.adminPort = adminPort.orElse(null);
         }
+        this.zone = zone;
+        this.region = region;
+        this.capacity = capacity;
+        this.load = load;
+    }
+
+    /**
+     * Return a copy of this metadata with the given load.
+     *
+     * @param load
+     *            load of the instance
+     * @return {@link InstanceMetadata}
+     */
+    public InstanceMetadata withLoad(final double load) {
+        return new InstanceMetadata(instanceId, listenAddress, listenPort,
+                getAdminPort(), zone, region, capacity, load);
     }
 
     @JsonProperty
@@ -63,6 +110,55 @@ public final class InstanceMetadata {
         return Optional.ofNullable(adminPort);
     }
 
+    /**
+     * Return the availability zone of the instance. Left out of the znode
+     * when unknown.
+     *
+     * @return zone of the instance
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_ABSENT)
+    public Optional<String> getZone() {
+        return Optional.ofNullable(zone);
+    }
+
+    /**
+     * Return the region of the instance. Left out of the znode when unknown.
+     *
+     * @return region of the instance
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_ABSENT)
+    public Optional<String> getRegion() {
+        return Optional.ofNullable(region);
+    }
+
+    /**
+     * Return the capacity of the instance relative to the other instances of
+     * the service, such as its number of cores. Left out of the znode when
+     * unknown.
+     *
+     * @return capacity of the instance
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_ABSENT)
+    public Optional<Integer> getCapacity() {
+        return Optional.ofNullable(capacity);
+    }
+
+    /**
+     * Return the last load the instance reported, as the share of its
+     * capacity in use: 0 when idle, 1 or more when saturated. Left out of the
+     * znode when unknown.
+     *
+     * @return load of the instance
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_ABSENT)
+    public Optional<Double> getLoad() {
+        return Optional.ofNullable(load);
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
@@ -76,12 +172,17 @@ public final class InstanceMetadata {
         return Objects.equals(instanceId, other.instanceId)
                 && Objects.equals(listenAddress, other.listenAddress)
                 && Objects.equals(listenPort, other.listenPort)
-                && Objects.equals(adminPort, other.adminPort);
+                && Objects.equals(adminPort, other.adminPort)
+                && Objects.equals(zone, other.zone)
+                && Objects.equals(region, other.region)
+                && Objects.equals(capacity, other.capacity)
+                && Objects.equals(load, other.load);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(instanceId, listenAddress, listenPort, adminPort);
+        return Objects.hash(instanceId, listenAddress, listenPort, adminPort,
+                zone, region, capacity, load);
     }
 
     @Override
@@ -89,6 +190,7 @@ public final class InstanceMetadata {
         return MoreObjects.toStringHelper(this).add("instanceId", instanceId)
                 .add("listenAddress", listenAddress)
                 .add("listenPort", listenPort).add("adminPort", adminPort)
-                .toString();
+                .add("zone", zone).add("region", region)
+                .add("capacity", capacity).add("load", load).toString();
     }
 }
@@ -0,0 +1,514 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.ServiceType;
+import org.apache.curator.x.discovery.UriSpec;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/**
+ * A hand-written, streaming {@link InstanceSerializer} for
+ * {@link InstanceMetadata} payloads.
+ *
+ * <p>
+ * The encoded form is identical to what {@link JacksonInstanceSerializer}
+ * produces for the same {@link PayloadFormat}, so both serializers can read
+ * each other's znodes, but no reflection or data-binding is involved.
+ * </p>
+ */
+@ThreadSafe
+public class InstanceMetadataSerializer
+        implements InstanceSerializer<InstanceMetadata> {
+
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString ADDRESS = new SerializedString(
+            "address");
+    private static final SerializedString PORT = new SerializedString("port");
+    private static final SerializedString SSL_PORT = new SerializedString(
+            "sslPort");
+    private static final SerializedString PAYLOAD = new SerializedString(
+            "payload");
+    private static final SerializedString REGISTRATION_TIME_UTC = new SerializedString(
+            "registrationTimeUTC");
+    private static final SerializedString SERVICE_TYPE = new SerializedString(
+            "serviceType");
+    private static final SerializedString URI_SPEC = new SerializedString(
+            "uriSpec");
+    private static final SerializedString ENABLED = new SerializedString(
+            "enabled");
+    private static final SerializedString INSTANCE_ID = new SerializedString(
+            "instanceId");
+    private static final SerializedString LISTEN_ADDRESS = new SerializedString(
+            "listenAddress");
+    private static final SerializedString LISTEN_PORT = new SerializedString(
+            "listenPort");
+    private static final SerializedString ADMIN_PORT = new SerializedString(
+            "adminPort");
+    private static final SerializedString ZONE = new SerializedString("zone");
+    private static final SerializedString REGION = new SerializedString(
+            "region");
+    private static final SerializedString CAPACITY = new SerializedString(
+            "capacity");
+    private static final SerializedString LOAD = new SerializedString("load");
+    private static final SerializedString PARTS = new SerializedString(
+            "parts");
+    private static final SerializedString VALUE = new SerializedString(
+            "value");
+    private static final SerializedString VARIABLE = new SerializedString(
+            "variable");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int UUID_LENGTH = 36;
+    private static final int UUID_BYTES = 16;
+
+    private final Map<PayloadFormat, JsonFactory> factories = new EnumMap<>(
+            PayloadFormat.class);
+    private final JsonFactory writeFactory;
+
+    /**
+     * Constructor which writes {@link PayloadFormat#JSON}
+     */
+    public InstanceMetadataSerializer() {
+        this(PayloadFormat.JSON);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param format
+     *            {@link PayloadFormat} to write, all formats can be read
+     */
+    public InstanceMetadataSerializer(@Nonnull final PayloadFormat format) {
+        checkNotNull(format);
+        for (final PayloadFormat readFormat : PayloadFormat.values()) {
+            factories.put(readFormat, readFormat.newFactory());
+        }
+        this.writeFactory = factory(format);
+    }
+
+    @Override
+    public byte[] serialize(final ServiceInstance<InstanceMetadata> instance)
+            throws Exception {
+        final ByteArrayBuilder out = new ByteArrayBuilder(
+                writeFactory._getBufferRecycler());
+        try (JsonGenerator gen = writeFactory.createGenerator(out)) {
+            writeInstance(gen, instance);
+        }
+        final byte[] bytes = out.toByteArray();
+        out.release();
+        return bytes;
+    }
+
+    @Override
+    public ServiceInstance<InstanceMetadata> deserialize(final byte[] bytes)
+            throws Exception {
+        final JsonFactory factory = factory(PayloadFormat.detect(bytes));
+        try (JsonParser parser = factory.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser,
+                        "Expected a service instance object");
+            }
+            return readInstance(parser);
+        }
+    }
+
+    private JsonFactory factory(final PayloadFormat format) {
+        final JsonFactory factory = factories.get(format);
+        if (factory == null) {
+            throw new IllegalStateException("No factory for " + format);
+        }
+        return factory;
+    }
+
+    private static void writeInstance(final JsonGenerator gen,
+            final ServiceInstance<InstanceMetadata> instance)
+            throws IOException {
+        gen.writeStartObject();
+        writeStringField(gen, NAME, instance.getName());
+        writeStringField(gen, ID, instance.getId());
+        writeStringField(gen, ADDRESS, instance.getAddress());
+        writeIntegerField(gen, PORT, instance.getPort());
+        writeIntegerField(gen, SSL_PORT, instance.getSslPort());
+        gen.writeFieldName(PAYLOAD);
+        writeMetadata(gen, instance.getPayload());
+        gen.writeFieldName(REGISTRATION_TIME_UTC);
+        gen.writeNumber(instance.getRegistrationTimeUTC());
+        final ServiceType serviceType = instance.getServiceType();
+        writeStringField(gen, SERVICE_TYPE,
+                serviceType == null ? null : serviceType.name());
+        gen.writeFieldName(URI_SPEC);
+        writeUriSpec(gen, instance.getUriSpec());
+        gen.writeFieldName(ENABLED);
+        gen.writeBoolean(instance.isEnabled());
+        gen.writeEndObject();
+    }
+
+    private static void writeMetadata(final JsonGenerator gen,
+            @Nullable final InstanceMetadata metadata) throws IOException {
+        if (metadata == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeFieldName(INSTANCE_ID);
+        writeUuid(gen, metadata.getInstanceId());
+        writeStringField(gen, LISTEN_ADDRESS, metadata.getListenAddress());
+        gen.writeFieldName(LISTEN_PORT);
+        gen.writeNumber(metadata.getListenPort());
+        writeIntegerField(gen, ADMIN_PORT,
+                metadata.getAdminPort().orElse(null));
+        // only written when known, like Jackson's NON_ABSENT
+        if (metadata.getZone().isPresent()) {
+            writeStringField(gen, ZONE, metadata.getZone().get());
+        }
+        if (metadata.getRegion().isPresent()) {
+            writeStringField(gen, REGION, metadata.getRegion().get());
+        }
+        if (metadata.getCapacity().isPresent()) {
+            writeIntegerField(gen, CAPACITY, metadata.getCapacity().get());
+        }
+        if (metadata.getLoad().isPresent()) {
+            gen.writeFieldName(LOAD);
+            gen.writeNumber(metadata.getLoad().get());
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeUriSpec(final JsonGenerator gen,
+            @Nullable final UriSpec uriSpec) throws IOException {
+        if (uriSpec == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeFieldName(PARTS);
+        gen.writeStartArray();
+        for (final UriSpec.Part part : uriSpec) {
+            gen.writeStartObject();
+            writeStringField(gen, VALUE, part.getValue());
+            gen.writeFieldName(VARIABLE);
+            gen.writeBoolean(part.isVariable());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeStringField(final JsonGenerator gen,
+            final SerializedString name, @Nullable final String value)
+            throws IOException {
+        gen.writeFieldName(name);
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(value);
+        }
+    }
+
+    private static void writeIntegerField(final JsonGenerator gen,
+            final SerializedString name, @Nullable final Integer value)
+            throws IOException {
+        gen.writeFieldName(name);
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    /**
+     * Write a {@link UUID} the same way Jackson's <code>UUIDSerializer</code>
+     * does: as 16 raw bytes for binary formats, otherwise in its canonical
+     * form without going through {@link UUID#toString()}.
+     */
+    private static void writeUuid(final JsonGenerator gen,
+            @Nullable final UUID uuid) throws IOException {
+        if (uuid == null) {
+            gen.writeNull();
+            return;
+        }
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        if (gen.canWriteBinaryNatively()) {
+            final byte[] bytes = new byte[UUID_BYTES];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (msb >>> ((7 - i) * 8));
+                bytes[i + 8] = (byte) (lsb >>> ((7 - i) * 8));
+            }
+            gen.writeBinary(bytes);
+            return;
+        }
+        final char[] chars = new char[UUID_LENGTH];
+        appendHex(chars, 0, msb >>> 32, 8);
+        chars[8] = '-';
+        appendHex(chars, 9, msb >>> 16, 4);
+        chars[13] = '-';
+        appendHex(chars, 14, msb, 4);
+        chars[18] = '-';
+        appendHex(chars, 19, lsb >>> 48, 4);
+        chars[23] = '-';
+        appendHex(chars, 24, lsb, 12);
+        gen.writeString(chars, 0, UUID_LENGTH);
+    }
+
+    private static void appendHex(final char[] chars, final int offset,
+            final long value, final int digits) {
+        for (int i = 0; i < digits; i++) {
+            chars[offset + i] = HEX[(int) (value >>> ((digits - 1 - i) * 4))
+                    & 0xf];
+        }
+    }
+
+    private static ServiceInstance<InstanceMetadata> readInstance(
+            final JsonParser parser) throws IOException {
+        String name = null;
+        String id = null;
+        String address = null;
+        Integer port = null;
+        Integer sslPort = null;
+        InstanceMetadata payload = null;
+        long registrationTimeUTC = 0;
+        ServiceType serviceType = ServiceType.DYNAMIC;
+        UriSpec uriSpec = null;
+        boolean enabled = true;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            switch (field) {
+            case "name":
+                name = readString(parser, token);
+                break;
+            case "id":
+                id = readString(parser, token);
+                break;
+            case "address":
+                address = readString(parser, token);
+                break;
+            case "port":
+                port = readInteger(parser, token);
+                break;
+            case "sslPort":
+                sslPort = readInteger(parser, token);
+                break;
+            case "payload":
+                payload = readMetadata(parser, token);
+                break;
+            case "registrationTimeUTC":
+                registrationTimeUTC = parser.getValueAsLong();
+                break;
+            case "serviceType":
+                final String type = readString(parser, token);
+                if (type != null) {
+                    serviceType = ServiceType.valueOf(type);
+                }
+                break;
+            case "uriSpec":
+                uriSpec = readUriSpec(parser, token);
+                break;
+            case "enabled":
+                enabled = token != JsonToken.VALUE_NULL
+                        && parser.getValueAsBoolean(true);
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+        return new ServiceInstance<InstanceMetadata>(name, id, address, port,
+                sslPort, payload, registrationTimeUTC, serviceType, uriSpec,
+                enabled);
+    }
+
+    @Nullable
+    private static InstanceMetadata readMetadata(final JsonParser parser,
+            final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        UUID instanceId = null;
+        String listenAddress = null;
+        int listenPort = 0;
+        Integer adminPort = null;
+        String zone = null;
+        String region = null;
+        Integer capacity = null;
+        Double load = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+            case "instanceId":
+                instanceId = value == JsonToken.VALUE_NULL ? null
+                        : readUuid(parser, value);
+                break;
+            case "listenAddress":
+                listenAddress = readString(parser, value);
+                break;
+            case "listenPort":
+                listenPort = parser.getValueAsInt();
+                break;
+            case "adminPort":
+                adminPort = readInteger(parser, value);
+                break;
+            case "zone":
+                zone = readString(parser, value);
+                break;
+            case "region":
+                region = readString(parser, value);
+                break;
+            case "capacity":
+                capacity = readInteger(parser, value);
+                break;
+            case "load":
+                load = value == JsonToken.VALUE_NULL ? null
+                        : parser.getValueAsDouble();
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+        if (instanceId == null) {
+            throw new JsonParseException(parser, "Missing instanceId");
+        }
+        if (listenAddress == null) {
+            throw new JsonParseException(parser, "Missing listenAddress");
+        }
+        return new InstanceMetadata(instanceId, listenAddress, listenPort,
+                Optional.ofNullable(adminPort), zone, region, capacity, load);
+    }
+
+    @Nullable
+    private static UriSpec readUriSpec(final JsonParser parser,
+            final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        final UriSpec uriSpec = new UriSpec();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if (!"parts".equals(field) || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String partValue = null;
+                boolean variable = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String partField = parser.getCurrentName();
+                    final JsonToken partToken = parser.nextToken();
+                    if ("value".equals(partField)) {
+                        partValue = readString(parser, partToken);
+                    } else if ("variable".equals(partField)) {
+                        variable = parser.getValueAsBoolean();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                uriSpec.add(new UriSpec.Part(partValue, variable));
+            }
+        }
+        return uriSpec;
+    }
+
+    /**
+     * Parse a {@link UUID} from its binary form, or directly from the parser's
+     * text buffer, falling back to {@link UUID#fromString(String)} for
+     * non-canonical forms.
+     */
+    private static UUID readUuid(final JsonParser parser,
+            final JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            final byte[] bytes = parser.getBinaryValue();
+            if (bytes.length != UUID_BYTES) {
+                throw new JsonParseException(parser,
+                        "Invalid UUID length: " + bytes.length);
+            }
+            long msb = 0;
+            long lsb = 0;
+            for (int i = 0; i < 8; i++) {
+                msb = (msb << 8) | (bytes[i] & 0xff);
+                lsb = (lsb << 8) | (bytes[i + 8] & 0xff);
+            }
+            return new UUID(msb, lsb);
+        }
+
+        final char[] chars;
+        final int offset;
+        if (parser.hasTextCharacters()) {
+            chars = parser.getTextCharacters();
+            offset = parser.getTextOffset();
+        } else {
+            // e.g. a Smile back-reference to a previously seen string
+            chars = parser.getText().toCharArray();
+            offset = 0;
+        }
+        if (parser.getTextLength() != UUID_LENGTH
+                || chars[offset + 8] != '-' || chars[offset + 13] != '-'
+                || chars[offset + 18] != '-' || chars[offset + 23] != '-') {
+            return UUID.fromString(parser.getText());
+        }
+        final long msb = (parseHex(parser, chars, offset, 8) << 32)
+                | (parseHex(parser, chars, offset + 9, 4) << 16)
+                | parseHex(parser, chars, offset + 14, 4);
+        final long lsb = (parseHex(parser, chars, offset + 19, 4) << 48)
+                | parseHex(parser, chars, offset + 24, 12);
+        return new UUID(msb, lsb);
+    }
+
+    private static long parseHex(final JsonParser parser, final char[] chars,
+            final int offset, final int digits) throws JsonParseException {
+        long value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            final int digit = Character.digit(chars[i], 16);
+            if (digit < 0) {
+                throw new JsonParseException(parser,
+                        "Invalid UUID character: " + chars[i]);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    @Nullable
+    private static String readString(final JsonParser parser,
+            final JsonToken token) throws IOException {
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    @Nullable
+    private static Integer readInteger(final JsonParser parser,
+            final JsonToken token) throws IOException {
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt();
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual,
+            final JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser,
+                    "Expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package io.dropwizard.discovery.core;
 
-import java.io.ByteArrayOutputStream;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.EnumMap;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.details.InstanceSerializer;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
 public class JacksonInstanceSerializer<T> implements InstanceSerializer<T> {
 
-    private final TypeReference<ServiceInstance<T>> typeRef;
     private final ObjectWriter writer;
-    private final ObjectReader reader;
+    private final Map<PayloadFormat, ObjectReader> readers = new EnumMap<>(
+            PayloadFormat.class);
 
     /**
      * Constructor
@@ -25,20 +28,99 @@ public class JacksonInstanceSerializer<T> implements InstanceSerializer<T> {
      */
     public JacksonInstanceSerializer(@Nonnull final ObjectMapper mapper,
             @Nonnull final TypeReference<ServiceInstance<T>> typeRef) {
-        this.reader = mapper.reader();
-        this.writer = mapper.writer();
-        this.typeRef = typeRef;
+        this(mapper, mapper.getTypeFactory().constructType(typeRef));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            {@link ObjectMapper}
+     * @param type
+     *            {@link JavaType} of the {@link ServiceInstance}, including
+     *            its payload type
+     */
+    public JacksonInstanceSerializer(@Nonnull final ObjectMapper mapper,
+            @Nonnull final JavaType type) {
+        this(mapper, type, PayloadFormat.JSON);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            {@link ObjectMapper}
+     * @param type
+     *            {@link JavaType} of the {@link ServiceInstance}, including
+     *            its payload type
+     * @param format
+     *            {@link PayloadFormat} to write, all formats can be read
+     */
+    public JacksonInstanceSerializer(@Nonnull final ObjectMapper mapper,
+            @Nonnull final JavaType type,
+            @Nonnull final PayloadFormat format) {
+        checkNotNull(type);
+        checkNotNull(format);
+        // resolve the readers and writer once rather than on every call
+        final ObjectReader reader = mapper.readerFor(type);
+        for (final PayloadFormat readFormat : PayloadFormat.values()) {
+            readers.put(readFormat, readFormat == PayloadFormat.JSON ? reader
+                    : reader.with(readFormat.newFactory()));
+        }
+        final ObjectWriter jsonWriter = mapper.writerFor(type);
+        this.writer = format == PayloadFormat.JSON ? jsonWriter
+                : jsonWriter.with(format.newFactory());
+    }
+
+    /**
+     * Build a serializer for instances carrying the given payload class.
+     *
+     * @param mapper
+     *            {@link ObjectMapper}
+     * @param payloadClass
+     *            payload class
+     * @return {@link JacksonInstanceSerializer}
+     */
+    public static <T> JacksonInstanceSerializer<T> forPayload(
+            @Nonnull final ObjectMapper mapper,
+            @Nonnull final Class<T> payloadClass) {
+        return forPayload(mapper, payloadClass, PayloadFormat.JSON);
+    }
+
+    /**
+     * Build a serializer for instances carrying the given payload class.
+     *
+     * @param mapper
+     *            {@link ObjectMapper}
+     * @param payloadClass
+     *            payload class
+     * @param format
+     *            {@link PayloadFormat} to write, all formats can be read
+     * @return {@link JacksonInstanceSerializer}
+     */
+    public static <T> JacksonInstanceSerializer<T> forPayload(
+            @Nonnull final ObjectMapper mapper,
+            @Nonnull final Class<T> payloadClass,
+            @Nonnull final PayloadFormat format) {
+        return new JacksonInstanceSerializer<T>(mapper,
+                mapper.getTypeFactory().constructParametricType(
+                        ServiceInstance.class, payloadClass),
+                format);
     }
 
     @Override
     public ServiceInstance<T> deserialize(final byte[] bytes) throws Exception {
-        return reader.forType(typeRef).readValue(bytes);
+        final PayloadFormat format = PayloadFormat.detect(bytes);
+        final ObjectReader reader = readers.get(format);
+        if (reader == null) {
+            throw new IllegalStateException("No reader for " + format);
+        }
+        return reader.readValue(bytes);
     }
 
     @Override
     public byte[] serialize(final ServiceInstance<T> instance) throws Exception {
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        writer.writeValue(out, instance);
-        return out.toByteArray();
+        // writes into recycled buffers and returns an exactly-sized array
+        return writer.writeValueAsBytes(instance);
     }
 }
@@ -0,0 +1,121 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.function.DoubleSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.dropwizard.util.Duration;
+
+/**
+ * Samples the load of the application and publishes it through
+ * {@link CuratorAdvertiser#reportLoad(double)}, for weighted strategies such
+ * as {@link io.dropwizard.discovery.client.strategies.WeightedStrategy} to
+ * use.
+ *
+ * <p>
+ * Meant to be scheduled at a fixed rate on a single thread. To keep the
+ * ensemble from being flooded with writes, a sample is only published when it
+ * differs from the published load by at least the threshold, and no more
+ * often than the minimum interval.
+ * </p>
+ */
+@NotThreadSafe
+public class LoadReporter implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(LoadReporter.class);
+
+    private final CuratorAdvertiser<?> advertiser;
+    private final DoubleSupplier load;
+    private final double threshold;
+    private final long minIntervalNanos;
+    private final Ticker ticker;
+    private final Meter updates;
+
+    private boolean published = false;
+    private double publishedLoad;
+    private long publishedNanos;
+
+    /**
+     * Constructor
+     *
+     * @param advertiser
+     *            {@link CuratorAdvertiser}
+     * @param load
+     *            returns the share of the capacity of the application in use,
+     *            or a negative value or NaN if it is not known
+     * @param metrics
+     *            {@link MetricRegistry}
+     * @param threshold
+     *            change in load from which the load is published again
+     * @param minInterval
+     *            minimum time between two updates
+     */
+    public LoadReporter(@Nonnull final CuratorAdvertiser<?> advertiser,
+            @Nonnull final DoubleSupplier load,
+            @Nonnull final MetricRegistry metrics, final double threshold,
+            @Nonnull final Duration minInterval) {
+        this(advertiser, load, metrics, threshold, minInterval,
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    LoadReporter(@Nonnull final CuratorAdvertiser<?> advertiser,
+            @Nonnull final DoubleSupplier load,
+            @Nonnull final MetricRegistry metrics, final double threshold,
+            @Nonnull final Duration minInterval,
+            @Nonnull final Ticker ticker) {
+        checkArgument(threshold >= 0, "threshold cannot be negative");
+        this.advertiser = checkNotNull(advertiser);
+        this.load = checkNotNull(load);
+        this.threshold = threshold;
+        this.minIntervalNanos = checkNotNull(minInterval).toNanoseconds();
+        this.ticker = checkNotNull(ticker);
+        this.updates = metrics.meter(
+                MetricRegistry.name(LoadReporter.class, "updates"));
+    }
+
+    /**
+     * Return the system load average over the last minute divided by the
+     * number of processors, which is 1 when every processor is busy.
+     *
+     * @return load source
+     */
+    public static DoubleSupplier systemLoad() {
+        final OperatingSystemMXBean os = ManagementFactory
+                .getOperatingSystemMXBean();
+        return () -> os.getSystemLoadAverage() / os.getAvailableProcessors();
+    }
+
+    @Override
+    public void run() {
+        final double sample = load.getAsDouble();
+        if (Double.isNaN(sample) || sample < 0) {
+            return;
+        }
+        final long now = ticker.read();
+        if (published && (Math.abs(sample - publishedLoad) < threshold
+                || now - publishedNanos < minIntervalNanos)) {
+            return;
+        }
+        try {
+            if (advertiser.reportLoad(sample)) {
+                published = true;
+                publishedLoad = sample;
+                publishedNanos = now;
+                updates.mark();
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to publish load", e);
+        }
+    }
+}
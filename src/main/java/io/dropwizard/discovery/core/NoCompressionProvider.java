@@ -0,0 +1,21 @@
+package io.dropwizard.discovery.core;
+
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.api.CompressionProvider;
+
+/**
+ * A {@link CompressionProvider} that stores data as-is.
+ */
+@ThreadSafe
+public class NoCompressionProvider implements CompressionProvider {
+
+    @Override
+    public byte[] compress(final String path, final byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData) {
+        return compressedData;
+    }
+}
@@ -0,0 +1,68 @@
+package io.dropwizard.discovery.core;
+
+import javax.annotation.Nonnull;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * An enumeration of the encodings that can be used for the data stored in an
+ * instance's znode.
+ *
+ * <p>
+ * Serializers always write the configured format but read every format,
+ * detecting it from the leading bytes of the data. This lets writers switch
+ * formats once all readers have been upgraded, without a flag day.
+ * </p>
+ */
+public enum PayloadFormat {
+
+    /**
+     * Plain JSON, readable by any client.
+     */
+    JSON {
+        @Override
+        public JsonFactory newFactory() {
+            return new JsonFactory();
+        }
+    },
+
+    /**
+     * Binary JSON using the Smile format, which is smaller and faster to
+     * parse. Smile data always starts with the <code>:)\n</code> header.
+     */
+    SMILE {
+        @Override
+        public JsonFactory newFactory() {
+            return new SmileFactory()
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        }
+    };
+
+    /**
+     * Return a new {@link JsonFactory} for this format. A new factory is
+     * returned on every call since Jackson links a codec to the factory it
+     * uses.
+     *
+     * @return {@link JsonFactory}
+     */
+    public abstract JsonFactory newFactory();
+
+    /**
+     * Detect the format of the given data.
+     *
+     * @param bytes
+     *            data read from a znode
+     * @return {@link #SMILE} if the data starts with the Smile header,
+     *         otherwise {@link #JSON}
+     */
+    public static PayloadFormat detect(@Nonnull final byte[] bytes) {
+        if (bytes.length >= 3 && bytes[0] == SmileConstants.HEADER_BYTE_1
+                && bytes[1] == SmileConstants.HEADER_BYTE_2
+                && bytes[2] == SmileConstants.HEADER_BYTE_3) {
+            return SMILE;
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,144 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.util.Duration;
+
+/**
+ * Registers the service again once the connection to ZooKeeper is
+ * re-established, so that it comes back after its session has expired.
+ *
+ * <p>
+ * To keep every instance from writing to the ensemble at the same moment after
+ * an outage, each re-registration is delayed by a random jitter, and failed
+ * attempts are retried with an exponential back-off. Together with
+ * {@link SessionAwareServiceDiscovery}, which reads the nodes first and only
+ * writes the missing, stale or out of date ones, most reconnections cost a
+ * single read per instance.
+ * </p>
+ */
+@ThreadSafe
+public class ReRegistrationListener implements ConnectionStateListener {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ReRegistrationListener.class);
+
+    private final CuratorAdvertiser<?> advertiser;
+    private final ScheduledExecutorService executor;
+    private final long jitterMillis;
+    private final long backoffMillis;
+    private final int maxAttempts;
+    private final Timer timeToReRegister;
+    private final Meter reRegistrations;
+
+    @Nullable
+    @GuardedBy("this")
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Constructor
+     *
+     * @param advertiser
+     *            {@link CuratorAdvertiser}
+     * @param executor
+     *            {@link ScheduledExecutorService} to re-register on
+     * @param metrics
+     *            {@link MetricRegistry}
+     * @param jitter
+     *            maximum random delay before re-registering
+     * @param backoff
+     *            delay before the first retry, doubled for every subsequent
+     *            retry
+     * @param maxAttempts
+     *            maximum number of attempts per reconnection
+     */
+    public ReRegistrationListener(@Nonnull final CuratorAdvertiser<?> advertiser,
+            @Nonnull final ScheduledExecutorService executor,
+            @Nonnull final MetricRegistry metrics,
+            @Nonnull final Duration jitter, @Nonnull final Duration backoff,
+            final int maxAttempts) {
+        checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+        this.advertiser = checkNotNull(advertiser);
+        this.executor = checkNotNull(executor);
+        this.jitterMillis = checkNotNull(jitter).toMilliseconds();
+        this.backoffMillis = checkNotNull(backoff).toMilliseconds();
+        this.maxAttempts = maxAttempts;
+        this.timeToReRegister = metrics.timer(MetricRegistry
+                .name(ReRegistrationListener.class, "time-to-reregister"));
+        this.reRegistrations = metrics.meter(MetricRegistry
+                .name(ReRegistrationListener.class, "reregistrations"));
+    }
+
+    @Override
+    public void stateChanged(final CuratorFramework client,
+            final ConnectionState newState) {
+        if (newState == ConnectionState.RECONNECTED) {
+            final long delay = jitterMillis > 0
+                    ? ThreadLocalRandom.current().nextLong(jitterMillis + 1)
+                    : 0;
+            LOGGER.debug("Reconnected, re-registering in {}ms", delay);
+            schedule(1, System.nanoTime(), delay);
+        } else if (newState == ConnectionState.LOST) {
+            cancel();
+        }
+    }
+
+    private synchronized void schedule(final int attempt,
+            final long reconnectedAt, final long delayMillis) {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        try {
+            pending = executor.schedule(
+                    () -> reRegister(attempt, reconnectedAt), delayMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            // shutting down
+            pending = null;
+        }
+    }
+
+    private synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private void reRegister(final int attempt, final long reconnectedAt) {
+        try {
+            if (advertiser.reRegister()) {
+                reRegistrations.mark();
+                timeToReRegister.update(System.nanoTime() - reconnectedAt,
+                        TimeUnit.NANOSECONDS);
+            }
+        } catch (final Exception e) {
+            if (attempt >= maxAttempts) {
+                LOGGER.error("Unable to re-register service after {} attempts",
+                        attempt, e);
+                return;
+            }
+            final long delay = backoffMillis << Math.min(attempt - 1, 16);
+            LOGGER.warn("Unable to re-register service, retrying in {}ms",
+                    delay, e);
+            schedule(attempt + 1, reconnectedAt, delay);
+        }
+    }
+}
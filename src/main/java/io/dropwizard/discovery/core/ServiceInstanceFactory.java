@@ -1,5 +1,7 @@
 package io.dropwizard.discovery.core;
 
+import java.util.Collections;
+import java.util.List;
 import org.apache.curator.x.discovery.ServiceInstance;
 
 /**
@@ -13,4 +15,42 @@ public interface ServiceInstanceFactory<T> {
 
     public ServiceInstance<T> build(String serviceName,
             CuratorAdvertiser<T> advertiser) throws Exception;
+
+    /**
+     * Build every instance this application advertises, for applications
+     * that expose several logical services or connectors from one JVM. They
+     * are registered and unregistered together, in a single transaction. The
+     * first instance is the one returned by
+     * {@link CuratorAdvertiser#getInstance()}.
+     *
+     * @param serviceName
+     *            configured name of the service
+     * @param advertiser
+     *            {@link CuratorAdvertiser}
+     * @return instances to advertise, the result of {@link #build} by
+     *         default
+     * @throws Exception
+     *             if an instance could not be built
+     */
+    public default List<ServiceInstance<T>> buildAll(String serviceName,
+            CuratorAdvertiser<T> advertiser) throws Exception {
+        return Collections.singletonList(build(serviceName, advertiser));
+    }
+
+    /**
+     * Return a copy of an instance reporting the given load, for
+     * {@link CuratorAdvertiser#reportLoad(double)}. Payloads that cannot
+     * carry a load return the instance unchanged, which is the default.
+     *
+     * @param instance
+     *            instance built by this factory
+     * @param load
+     *            share of the capacity of the instance in use
+     * @return updated instance, or {@code instance} if the load cannot be
+     *         reported
+     */
+    public default ServiceInstance<T> withLoad(ServiceInstance<T> instance,
+            double load) {
+        return instance;
+    }
 }
@@ -0,0 +1,420 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.ServiceProviderBuilder;
+import org.apache.curator.x.discovery.ServiceType;
+import org.apache.curator.x.discovery.details.InstanceSerializer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * A {@link ServiceDiscovery} that writes the znodes of registered instances
+ * itself, and delegates everything else.
+ *
+ * <p>
+ * Curator's implementation deletes and re-creates the node of every registered
+ * instance as soon as the connection is re-established, so after an outage
+ * every instance writes to the ensemble at the same moment. Instances
+ * registered here are unknown to Curator, which leaves re-registration to the
+ * caller (see {@link ReRegistrationListener}), and registering is idempotent:
+ * a node that exists, belongs to the current session and holds the same data
+ * is left untouched, and any change is written with a version check.
+ * </p>
+ *
+ * <p>
+ * {@link #registerServices(Collection)},
+ * {@link #ensureRegistered(Collection)} and
+ * {@link #unregisterServices(Collection)} write several instances in a single
+ * ZooKeeper transaction, so that they are all registered or none is, in one
+ * round trip when nothing is in the way.
+ * </p>
+ *
+ * <p>
+ * Instances of type {@link ServiceType#DYNAMIC_SEQUENTIAL} are passed through
+ * to the delegate, since their path is only known once created.
+ * </p>
+ *
+ * @param <T>
+ *            payload class
+ */
+@ThreadSafe
+public class SessionAwareServiceDiscovery<T> implements ServiceDiscovery<T> {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final ServiceDiscovery<T> delegate;
+    private final CuratorFramework framework;
+    private final String basePath;
+    private final InstanceSerializer<T> serializer;
+
+    /**
+     * Constructor
+     *
+     * @param delegate
+     *            {@link ServiceDiscovery} to delegate queries to
+     * @param framework
+     *            {@link CuratorFramework} used by the delegate
+     * @param basePath
+     *            base path used by the delegate
+     * @param serializer
+     *            {@link InstanceSerializer} used by the delegate
+     */
+    public SessionAwareServiceDiscovery(
+            @Nonnull final ServiceDiscovery<T> delegate,
+            @Nonnull final CuratorFramework framework,
+            @Nonnull final String basePath,
+            @Nonnull final InstanceSerializer<T> serializer) {
+        this.delegate = checkNotNull(delegate);
+        this.framework = checkNotNull(framework);
+        this.basePath = checkNotNull(basePath);
+        this.serializer = checkNotNull(serializer);
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+    }
+
+    /**
+     * Register an instance, or make sure that its node is up to date and
+     * belongs to the current session if it is already registered.
+     *
+     * @param instance
+     *            instance to register
+     * @return true if anything was written to ZooKeeper
+     * @throws Exception
+     *             if the instance could not be registered
+     */
+    public boolean ensureRegistered(@Nonnull final ServiceInstance<T> instance)
+            throws Exception {
+        if (instance.getServiceType() == ServiceType.DYNAMIC_SEQUENTIAL) {
+            delegate.registerService(instance);
+            return true;
+        }
+
+        final String path = pathForInstance(instance);
+        final byte[] bytes = serializer.serialize(instance);
+        final boolean ephemeral = instance.getServiceType().isDynamic();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final Stat stat = new Stat();
+            final byte[] current;
+            try {
+                current = framework.getData().storingStatIn(stat)
+                        .forPath(path);
+            } catch (final KeeperException.NoNodeException e) {
+                if (create(path, bytes, ephemeral)) {
+                    return true;
+                }
+                continue;
+            }
+
+            if (ephemeral && stat.getEphemeralOwner() != sessionId()) {
+                // left behind by a previous session, which would delete it
+                // when it expires: replace it with one owned by this session
+                delete(path, stat.getVersion());
+                continue;
+            }
+            if (Arrays.equals(current, bytes)) {
+                return false;
+            }
+            try {
+                framework.setData().withVersion(stat.getVersion())
+                        .forPath(path, bytes);
+                return true;
+            } catch (final KeeperException.BadVersionException
+                    | KeeperException.NoNodeException e) {
+                // changed concurrently, try again
+            }
+        }
+        throw new IOException("Unable to register " + path
+                + " after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Register several instances atomically, assuming they do not exist yet,
+     * as on their first registration. If that is not the case their nodes are
+     * read and only the missing, stale or changed ones are written, still in
+     * one transaction.
+     *
+     * @param instances
+     *            instances to register
+     * @return true if anything was written to ZooKeeper
+     * @throws Exception
+     *             if the instances could not be registered
+     */
+    public boolean registerServices(
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws Exception {
+        return register(instances, false);
+    }
+
+    /**
+     * Make sure that several registered instances are up to date and belong
+     * to the current session, as after a reconnection. Their nodes are read
+     * first, and only the missing, stale or changed ones are written, in one
+     * transaction: nothing is written if they are all up to date.
+     *
+     * @param instances
+     *            instances to register
+     * @return true if anything was written to ZooKeeper
+     * @throws Exception
+     *             if the instances could not be registered
+     */
+    public boolean ensureRegistered(
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws Exception {
+        return register(instances, true);
+    }
+
+    /**
+     * Unregister several instances in a single transaction. If some of them
+     * are already gone, the others are deleted one by one.
+     *
+     * @param instances
+     *            instances to unregister
+     * @throws Exception
+     *             if the instances could not be unregistered
+     */
+    public void unregisterServices(
+            @Nonnull final Collection<ServiceInstance<T>> instances)
+            throws Exception {
+        final List<String> paths = new ArrayList<>(instances.size());
+        for (final ServiceInstance<T> instance : instances) {
+            if (instance.getServiceType() == ServiceType.DYNAMIC_SEQUENTIAL) {
+                delegate.unregisterService(instance);
+            } else {
+                paths.add(pathForInstance(instance));
+            }
+        }
+        if (paths.isEmpty()) {
+            return;
+        }
+        final List<CuratorOp> ops = new ArrayList<>(paths.size());
+        for (final String path : paths) {
+            ops.add(framework.transactionOp().delete().forPath(path));
+        }
+        try {
+            framework.transaction().forOperations(ops);
+        } catch (final KeeperException.NoNodeException e) {
+            for (final String path : paths) {
+                delete(path);
+            }
+        }
+    }
+
+    private boolean register(final Collection<ServiceInstance<T>> instances,
+            final boolean readFirst) throws Exception {
+        boolean written = false;
+        final List<Node> nodes = new ArrayList<>(instances.size());
+        for (final ServiceInstance<T> instance : instances) {
+            if (instance.getServiceType() == ServiceType.DYNAMIC_SEQUENTIAL) {
+                delegate.registerService(instance);
+                written = true;
+            } else {
+                nodes.add(new Node(pathForInstance(instance),
+                        serializer.serialize(instance),
+                        instance.getServiceType().isDynamic()));
+            }
+        }
+
+        List<CuratorOp> ops;
+        if (readFirst) {
+            ops = plan(nodes);
+        } else {
+            // optimistically, every node is missing
+            ops = new ArrayList<>(nodes.size());
+            for (final Node node : nodes) {
+                ops.add(create(node));
+            }
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (ops.isEmpty()) {
+                return written;
+            }
+            try {
+                framework.transaction().forOperations(ops);
+                return true;
+            } catch (final KeeperException.NoNodeException e) {
+                // a parent, or a node read below, is missing
+                createParents(nodes);
+            } catch (final KeeperException.NodeExistsException
+                    | KeeperException.BadVersionException e) {
+                // look at what is there
+            }
+            ops = plan(nodes);
+        }
+        throw new IOException("Unable to register " + nodes.size()
+                + " instances after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    @Override
+    public void registerService(final ServiceInstance<T> service)
+            throws Exception {
+        ensureRegistered(service);
+    }
+
+    @Override
+    public void updateService(final ServiceInstance<T> service)
+            throws Exception {
+        ensureRegistered(service);
+    }
+
+    @Override
+    public void unregisterService(final ServiceInstance<T> service)
+            throws Exception {
+        if (service.getServiceType() == ServiceType.DYNAMIC_SEQUENTIAL) {
+            delegate.unregisterService(service);
+            return;
+        }
+        delete(pathForInstance(service));
+    }
+
+    @Override
+    public ServiceCacheBuilder<T> serviceCacheBuilder() {
+        return delegate.serviceCacheBuilder();
+    }
+
+    @Override
+    public Collection<String> queryForNames() throws Exception {
+        return delegate.queryForNames();
+    }
+
+    @Override
+    public Collection<ServiceInstance<T>> queryForInstances(final String name)
+            throws Exception {
+        return delegate.queryForInstances(name);
+    }
+
+    @Override
+    public ServiceInstance<T> queryForInstance(final String name,
+            final String id) throws Exception {
+        return delegate.queryForInstance(name, id);
+    }
+
+    @Override
+    public ServiceProviderBuilder<T> serviceProviderBuilder() {
+        return delegate.serviceProviderBuilder();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    String pathForInstance(final ServiceInstance<T> instance) {
+        return ZKPaths.makePath(basePath, instance.getName(), instance.getId());
+    }
+
+    /**
+     * Return the operations that bring the given nodes up to date, reading
+     * their current state.
+     */
+    private List<CuratorOp> plan(final List<Node> nodes) throws Exception {
+        final List<CuratorOp> ops = new ArrayList<>();
+        final long sessionId = sessionId();
+        for (final Node node : nodes) {
+            final Stat stat = new Stat();
+            final byte[] current;
+            try {
+                current = framework.getData().storingStatIn(stat)
+                        .forPath(node.path);
+            } catch (final KeeperException.NoNodeException e) {
+                ops.add(create(node));
+                continue;
+            }
+            if (node.ephemeral && stat.getEphemeralOwner() != sessionId) {
+                ops.add(framework.transactionOp().delete()
+                        .withVersion(stat.getVersion()).forPath(node.path));
+                ops.add(create(node));
+            } else if (!Arrays.equals(current, node.bytes)) {
+                ops.add(framework.transactionOp().setData()
+                        .withVersion(stat.getVersion())
+                        .forPath(node.path, node.bytes));
+            }
+        }
+        return ops;
+    }
+
+    private CuratorOp create(final Node node) throws Exception {
+        return framework.transactionOp().create()
+                .withMode(node.ephemeral ? CreateMode.EPHEMERAL
+                        : CreateMode.PERSISTENT)
+                .forPath(node.path, node.bytes);
+    }
+
+    private void createParents(final List<Node> nodes) throws Exception {
+        final Set<String> parents = new LinkedHashSet<>();
+        for (final Node node : nodes) {
+            parents.add(ZKPaths.getPathAndNode(node.path).getPath());
+        }
+        for (final String parent : parents) {
+            framework.createContainers(parent);
+        }
+    }
+
+    private boolean create(final String path, final byte[] bytes,
+            final boolean ephemeral) throws Exception {
+        try {
+            framework.create().creatingParentContainersIfNeeded()
+                    .withMode(ephemeral ? CreateMode.EPHEMERAL
+                            : CreateMode.PERSISTENT)
+                    .forPath(path, bytes);
+            return true;
+        } catch (final KeeperException.NodeExistsException e) {
+            return false;
+        }
+    }
+
+    private void delete(final String path) throws Exception {
+        try {
+            framework.delete().guaranteed().forPath(path);
+        } catch (final KeeperException.NoNodeException ignore) {
+            // already gone
+        }
+    }
+
+    private void delete(final String path, final int version)
+            throws Exception {
+        try {
+            framework.delete().withVersion(version).forPath(path);
+        } catch (final KeeperException.BadVersionException
+                | KeeperException.NoNodeException e) {
+            // changed concurrently, the caller will look again
+        }
+    }
+
+    private long sessionId() throws Exception {
+        return framework.getZookeeperClient().getZooKeeper().getSessionId();
+    }
+
+    /**
+     * The znode of an instance, as it should be.
+     */
+    private static final class Node {
+        private final String path;
+        private final byte[] bytes;
+        private final boolean ephemeral;
+
+        Node(final String path, final byte[] bytes, final boolean ephemeral) {
+            this.path = path;
+            this.bytes = bytes;
+            this.ephemeral = ephemeral;
+        }
+    }
+}
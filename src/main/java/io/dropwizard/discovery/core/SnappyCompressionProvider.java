@@ -0,0 +1,57 @@
+package io.dropwizard.discovery.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.curator.framework.api.CompressionProvider;
+import org.iq80.snappy.Snappy;
+
+/**
+ * A {@link CompressionProvider} using Snappy, which trades some compression
+ * ratio for being several times faster than GZIP on small payloads.
+ *
+ * <p>
+ * Compressed data is prefixed with a short header so that it can be told apart
+ * from JSON, Smile and GZIP data.
+ * </p>
+ *
+ * @see #isCompressed(byte[])
+ */
+@ThreadSafe
+public class SnappyCompressionProvider implements CompressionProvider {
+
+    private static final byte[] HEADER = { 0, 'S', 'Z' };
+
+    /**
+     * Return whether the given data was compressed by this provider.
+     *
+     * @param data
+     *            data read from ZooKeeper
+     * @return true if the data starts with the Snappy header
+     */
+    public static boolean isCompressed(final byte[] data) {
+        return data.length >= HEADER.length && data[0] == HEADER[0]
+                && data[1] == HEADER[1] && data[2] == HEADER[2];
+    }
+
+    @Override
+    public byte[] compress(final String path, final byte[] data)
+            throws Exception {
+        final byte[] compressed = new byte[HEADER.length
+                + Snappy.maxCompressedLength(data.length)];
+        System.arraycopy(HEADER, 0, compressed, 0, HEADER.length);
+        final int length = Snappy.compress(data, 0, data.length, compressed,
+                HEADER.length);
+        return Arrays.copyOf(compressed, HEADER.length + length);
+    }
+
+    @Override
+    public byte[] decompress(final String path, final byte[] compressedData)
+            throws Exception {
+        if (!isCompressed(compressedData)) {
+            throw new IOException("Missing Snappy header at " + path);
+        }
+        return Snappy.uncompress(compressedData, HEADER.length,
+                compressedData.length - HEADER.length);
+    }
+}
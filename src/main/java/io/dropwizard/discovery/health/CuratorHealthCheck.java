@@ -1,32 +1,106 @@
 package io.dropwizard.discovery.health;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.codahale.metrics.health.HealthCheck;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 
-public class CuratorHealthCheck extends HealthCheck {
+/**
+ * Reports the health of the ZooKeeper connection without a round trip to
+ * ZooKeeper on every poll.
+ *
+ * <p>
+ * The connection is judged from the {@link ConnectionState} events this check
+ * receives as a {@link ConnectionStateListener}. Whether the root of the
+ * namespace exists is verified once synchronously, and from then on in the
+ * background whenever the last verification is older than the verify
+ * interval; polls in between answer from the cached result, and polls made
+ * during the first verification report the namespace as not yet verified.
+ * The result details report how long ago the namespace was verified and
+ * ZooKeeper was last heard from.
+ * </p>
+ */
+@ThreadSafe
+public class CuratorHealthCheck extends HealthCheck
+        implements ConnectionStateListener {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(CuratorHealthCheck.class);
+    private static final long DEFAULT_VERIFY_INTERVAL_NANOS = TimeUnit.SECONDS
+            .toNanos(30);
 
     private final CuratorFramework framework;
+    private final long verifyIntervalNanos;
+    private final Ticker ticker;
+    private final AtomicBoolean verifying = new AtomicBoolean(false);
+
+    @Nullable
+    private volatile ConnectionState state;
+    private volatile long stateChangedNanos;
+    private volatile boolean contacted;
+    private volatile long lastContactNanos;
+    private volatile boolean verified;
+    private volatile boolean namespaceExists;
+    private volatile long verifiedNanos;
 
     /**
-     * Constructor
-     * 
+     * Constructor which verifies the namespace every 30 seconds
+     *
      * @param framework
      *            {@link CuratorFramework}
      */
     public CuratorHealthCheck(@Nonnull final CuratorFramework framework) {
+        this(framework, DEFAULT_VERIFY_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param framework
+     *            {@link CuratorFramework}
+     * @param verifyInterval
+     *            how long the namespace is known to exist after it was last
+     *            verified
+     * @param unit
+     *            {@link TimeUnit} of {@code verifyInterval}
+     */
+    public CuratorHealthCheck(@Nonnull final CuratorFramework framework,
+            final long verifyInterval, @Nonnull final TimeUnit unit) {
+        this(framework, verifyInterval, unit, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CuratorHealthCheck(@Nonnull final CuratorFramework framework,
+            final long verifyInterval, @Nonnull final TimeUnit unit,
+            @Nonnull final Ticker ticker) {
+        checkArgument(verifyInterval > 0, "verifyInterval must be positive");
         this.framework = checkNotNull(framework);
+        this.verifyIntervalNanos = unit.toNanos(verifyInterval);
+        this.ticker = checkNotNull(ticker);
+        this.stateChangedNanos = ticker.read();
     }
 
     /**
-     * Checks that the {@link CuratorFramework} instance is started and that the
-     * configured root namespace exists.
-     * 
+     * Checks that the {@link CuratorFramework} instance is started, that it is
+     * connected and that the configured root namespace exists.
+     *
      * @return {@link Result#unhealthy(String)} if the {@link CuratorFramework}
-     *         is not started or the configured root namespace does not exist;
-     *         otherwise, {@link Result#healthy()}.
+     *         is not started, is not connected or the configured root
+     *         namespace does not exist; otherwise, {@link Result#healthy()}.
      * @throws Exception
      *             if an error occurs checking the health of the ZooKeeper
      *             ensemble.
@@ -35,10 +109,126 @@ public class CuratorHealthCheck extends HealthCheck {
     protected Result check() throws Exception {
         if (framework.getState() != CuratorFrameworkState.STARTED) {
             return Result.unhealthy("Client not started");
-        } else if (framework.checkExists().forPath("/") == null) {
-            return Result.unhealthy("Root for namespace does not exist");
         }
 
-        return Result.healthy();
+        final long now = ticker.read();
+        final ConnectionState current = state;
+        if (current == ConnectionState.SUSPENDED
+                || current == ConnectionState.LOST) {
+            return details(Result.builder().unhealthy(), now)
+                    .withMessage("Connection %s for %d ms", current,
+                            millisSince(stateChangedNanos, now))
+                    .build();
+        }
+        // before the first event, ask the client, which does not block
+        if (current == null
+                && !framework.getZookeeperClient().isConnected()) {
+            return details(Result.builder().unhealthy(), now)
+                    .withMessage("Not connected").build();
+        }
+
+        if (!verified) {
+            verifyNow();
+            // another poll may be running the first verification
+            if (!verified) {
+                return details(Result.builder().unhealthy(), now)
+                        .withMessage("Namespace not yet verified").build();
+            }
+        }
+        // answer from the cached verification, which a background one may
+        // replace while the result is being built
+        final boolean stale = now - verifiedNanos >= verifyIntervalNanos;
+        final Result result = namespaceExists
+                ? details(Result.builder().healthy(), now).build()
+                : details(Result.builder().unhealthy(), now)
+                        .withMessage("Root for namespace does not exist")
+                        .build();
+        if (stale) {
+            verifyInBackground();
+        }
+        return result;
+    }
+
+    @Override
+    public void stateChanged(final CuratorFramework client,
+            final ConnectionState newState) {
+        final long now = ticker.read();
+        state = newState;
+        stateChangedNanos = now;
+        if (newState.isConnected()) {
+            lastContactNanos = now;
+            contacted = true;
+        }
+    }
+
+    private ResultBuilder details(final ResultBuilder builder,
+            final long now) {
+        final ConnectionState current = state;
+        builder.withDetail("connectionState",
+                current == null ? "UNKNOWN" : current.name());
+        if (contacted) {
+            builder.withDetail("lastContactMillis",
+                    millisSince(lastContactNanos, now));
+        }
+        if (verified) {
+            builder.withDetail("namespaceVerifiedMillis",
+                    millisSince(verifiedNanos, now));
+        }
+        return builder;
+    }
+
+    private void verifyNow() throws Exception {
+        if (!verifying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            verified(framework.checkExists().forPath("/") != null);
+        } finally {
+            verifying.set(false);
+        }
+    }
+
+    private void verifyInBackground() throws Exception {
+        if (!verifying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            framework.checkExists()
+                    .inBackground((client, event) -> verified(event))
+                    .forPath("/");
+        } catch (final Exception e) {
+            verifying.set(false);
+            throw e;
+        }
+    }
+
+    private void verified(final CuratorEvent event) {
+        try {
+            final KeeperException.Code code = KeeperException.Code
+                    .get(event.getResultCode());
+            if (code == KeeperException.Code.OK) {
+                verified(true);
+            } else if (code == KeeperException.Code.NONODE) {
+                verified(false);
+            } else {
+                // keep the last result, it is retried on the next poll
+                LOGGER.debug("Unable to verify namespace: {}", code);
+            }
+        } finally {
+            verifying.set(false);
+        }
+    }
+
+    private void verified(final boolean exists) {
+        final long now = ticker.read();
+        namespaceExists = exists;
+        verifiedNanos = now;
+        lastContactNanos = now;
+        contacted = true;
+        verified = true;
+    }
+
+    private static long millisSince(final long nanos, final long now) {
+        return TimeUnit.NANOSECONDS.toMillis(now - nanos);
     }
 }
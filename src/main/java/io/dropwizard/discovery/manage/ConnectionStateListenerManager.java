@@ -0,0 +1,46 @@
+package io.dropwizard.discovery.manage;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import io.dropwizard.lifecycle.Managed;
+import javax.annotation.Nonnull;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionStateListener;
+
+/**
+ * Adds a {@link ConnectionStateListener} to a {@link CuratorFramework} and
+ * removes it on stop. Listeners added to the view of a shared connection are
+ * added to the connection itself, and would otherwise outlive the bundle that
+ * added them.
+ */
+public class ConnectionStateListenerManager implements Managed {
+
+    private final CuratorFramework framework;
+    private final ConnectionStateListener listener;
+
+    /**
+     * Constructor, adding the listener right away so that it sees the state
+     * changes of startup
+     *
+     * @param framework
+     *            {@link CuratorFramework}
+     * @param listener
+     *            {@link ConnectionStateListener}
+     */
+    public ConnectionStateListenerManager(
+            @Nonnull final CuratorFramework framework,
+            @Nonnull final ConnectionStateListener listener) {
+        this.framework = checkNotNull(framework);
+        this.listener = checkNotNull(listener);
+        framework.getConnectionStateListenable().addListener(listener);
+    }
+
+    @Override
+    public void start() throws Exception {
+        // nothing to start
+    }
+
+    @Override
+    public void stop() throws Exception {
+        framework.getConnectionStateListenable().removeListener(listener);
+    }
+}
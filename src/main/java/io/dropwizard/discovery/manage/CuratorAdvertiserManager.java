@@ -1,13 +1,17 @@
 package io.dropwizard.discovery.manage;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import io.dropwizard.discovery.core.CuratorAdvertisementListener;
 import io.dropwizard.discovery.core.CuratorAdvertiser;
 import io.dropwizard.lifecycle.Managed;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class CuratorAdvertiserManager<T> implements Managed {
 
     private final CuratorAdvertiser<T> advertiser;
+    @Nullable
+    private final CuratorAdvertisementListener<T> listener;
 
     /**
      * Constructor
@@ -17,7 +21,24 @@ public class CuratorAdvertiserManager<T> implements Managed {
      */
     public CuratorAdvertiserManager(
             @Nonnull final CuratorAdvertiser<T> advertiser) {
+        this(advertiser, null);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param advertiser
+     *            {@link CuratorAdvertiser}
+     * @param listener
+     *            {@link CuratorAdvertisementListener} registering the
+     *            service, stopped before the service is unregistered, so that
+     *            a retry cannot register it again
+     */
+    public CuratorAdvertiserManager(
+            @Nonnull final CuratorAdvertiser<T> advertiser,
+            @Nullable final CuratorAdvertisementListener<T> listener) {
         this.advertiser = checkNotNull(advertiser);
+        this.listener = listener;
     }
 
     @Override
@@ -27,6 +48,9 @@ public class CuratorAdvertiserManager<T> implements Managed {
 
     @Override
     public void stop() throws Exception {
+        if (listener != null) {
+            listener.stop();
+        }
         advertiser.unregisterAvailability();
     }
 }
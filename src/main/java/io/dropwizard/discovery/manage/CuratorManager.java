@@ -1,24 +1,100 @@
 package io.dropwizard.discovery.manage;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
 import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.discovery.core.CuratorConnectionRegistry;
 import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
 
 public class CuratorManager implements Managed {
 
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(CuratorManager.class);
+
     private final CuratorFramework framework;
+    @Nullable
+    private final Duration startupTimeout;
+    private final boolean background;
+    @Nullable
+    private final CuratorConnectionRegistry connections;
+    private final Timer connectTimer;
+    private final Timer bootstrapTimer;
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    @Nullable
+    private volatile Thread startupThread;
 
     /**
-     * Constructor
-     * 
+     * Constructor waiting for ZooKeeper for as long as it takes on startup
+     *
      * @param framework
      *            {@link CuratorFramework}
      */
     public CuratorManager(@Nonnull final CuratorFramework framework) {
+        this(framework, new MetricRegistry(), null, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param framework
+     *            {@link CuratorFramework}
+     * @param metrics
+     *            {@link MetricRegistry} to report the time spent connecting
+     *            and creating the namespace in
+     * @param startupTimeout
+     *            how long to wait for a connection on startup, or null to
+     *            wait for as long as it takes
+     * @param background
+     *            whether to connect and create the namespace on a background
+     *            thread rather than holding up the startup of the application
+     */
+    public CuratorManager(@Nonnull final CuratorFramework framework,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final Duration startupTimeout, final boolean background) {
+        this(framework, metrics, startupTimeout, background, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param framework
+     *            {@link CuratorFramework}
+     * @param metrics
+     *            {@link MetricRegistry} to report the time spent connecting
+     *            and creating the namespace in
+     * @param startupTimeout
+     *            how long to wait for a connection on startup, or null to
+     *            wait for as long as it takes
+     * @param background
+     *            whether to connect and create the namespace on a background
+     *            thread rather than holding up the startup of the application
+     * @param connections
+     *            {@link CuratorConnectionRegistry} the framework was acquired
+     *            from and is released to on stop, or null to close it on stop
+     */
+    public CuratorManager(@Nonnull final CuratorFramework framework,
+            @Nonnull final MetricRegistry metrics,
+            @Nullable final Duration startupTimeout, final boolean background,
+            @Nullable final CuratorConnectionRegistry connections) {
         this.framework = checkNotNull(framework);
+        this.connections = connections;
+        this.startupTimeout = startupTimeout;
+        this.background = background;
+        this.connectTimer = metrics
+                .timer(MetricRegistry.name(CuratorManager.class, "connect"));
+        this.bootstrapTimer = metrics
+                .timer(MetricRegistry.name(CuratorManager.class, "bootstrap"));
         // start framework directly to allow other bundles to interact with
         // zookeeper during their run() method.
         if (this.framework.getState() != CuratorFrameworkState.STARTED) {
@@ -26,18 +102,76 @@ public class CuratorManager implements Managed {
         }
     }
 
+    /**
+     * Return a future that completes once connected to ZooKeeper with the
+     * namespace created, or exceptionally if that failed on startup.
+     *
+     * @return {@link CompletableFuture}
+     */
+    public CompletableFuture<Void> getStarted() {
+        return started;
+    }
+
     @Override
     public void start() throws Exception {
-        framework.blockUntilConnected();
-        final Stat stat = framework.checkExists().forPath("/");
-        if (stat == null) {
-            // ensure that the root path is available
-            framework.create().creatingParentsIfNeeded().forPath("/");
+        if (!background) {
+            bootstrap();
+            return;
         }
+        final Thread thread = new Thread(() -> {
+            try {
+                bootstrap();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final Exception e) {
+                // Curator keeps reconnecting, and creates the namespace on
+                // first use
+                LOGGER.warn("Unable to start ZooKeeper in the background", e);
+            }
+        }, "curator-startup");
+        thread.setDaemon(true);
+        startupThread = thread;
+        thread.start();
     }
 
     @Override
     public void stop() throws Exception {
-        framework.close();
+        final Thread thread = startupThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (connections == null) {
+            framework.close();
+        } else {
+            connections.release(framework);
+        }
+    }
+
+    private void bootstrap() throws Exception {
+        try {
+            final long start = System.nanoTime();
+            if (startupTimeout == null) {
+                framework.blockUntilConnected();
+            } else if (!framework.blockUntilConnected(
+                    (int) startupTimeout.toMilliseconds(),
+                    TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Unable to connect to ZooKeeper in "
+                        + startupTimeout);
+            }
+            final long connected = System.nanoTime();
+            connectTimer.update(connected - start, TimeUnit.NANOSECONDS);
+
+            final Stat stat = framework.checkExists().forPath("/");
+            if (stat == null) {
+                // ensure that the root path is available
+                framework.create().creatingParentsIfNeeded().forPath("/");
+            }
+            bootstrapTimer.update(System.nanoTime() - connected,
+                    TimeUnit.NANOSECONDS);
+            started.complete(null);
+        } catch (final Exception e) {
+            started.completeExceptionally(e);
+            throw e;
+        }
     }
 }
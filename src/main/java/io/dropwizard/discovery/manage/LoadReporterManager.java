@@ -0,0 +1,53 @@
+package io.dropwizard.discovery.manage;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import io.dropwizard.discovery.core.LoadReporter;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class LoadReporterManager implements Managed {
+
+    private final LoadReporter reporter;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+    @Nullable
+    private ScheduledFuture<?> reports;
+
+    /**
+     * Constructor
+     * 
+     * @param reporter
+     *            {@link LoadReporter}
+     * @param executor
+     *            {@link ScheduledExecutorService} to run the reporter on
+     * @param interval
+     *            time between two samples of the load
+     */
+    public LoadReporterManager(@Nonnull final LoadReporter reporter,
+            @Nonnull final ScheduledExecutorService executor,
+            @Nonnull final Duration interval) {
+        this.reporter = checkNotNull(reporter);
+        this.executor = checkNotNull(executor);
+        this.interval = checkNotNull(interval);
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        reports = executor.scheduleAtFixedRate(reporter,
+                interval.toMilliseconds(), interval.toMilliseconds(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        if (reports != null) {
+            reports.cancel(false);
+            reports = null;
+        }
+    }
+}
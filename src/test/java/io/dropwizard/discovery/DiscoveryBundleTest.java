@@ -0,0 +1,93 @@
+package io.dropwizard.discovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import io.dropwizard.Configuration;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import java.util.Collections;
+import org.apache.curator.test.TestingServer;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+public class DiscoveryBundleTest {
+
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+    private final Environment environment = new Environment("test", mapper,
+            Validators.newValidator(), new MetricRegistry(),
+            DiscoveryBundleTest.class.getClassLoader());
+    private TestingServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final LifecycleEnvironment lifecycle = environment.lifecycle();
+        for (final LifeCycle managed : lifecycle.getManagedObjects()) {
+            managed.stop();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testTwoBundlesShareConnection() throws Exception {
+        final DiscoveryFactory first = newFactory("first");
+        first.setIsSharedConnection(true);
+        final DiscoveryFactory second = newFactory("second");
+        second.setIsSharedConnection(true);
+
+        newBundle(first).run(new Configuration(), environment);
+        newBundle(second).run(new Configuration(), environment);
+
+        assertThat(environment.metrics().getGauges()).containsKeys(
+                "org.apache.curator.framework.CuratorFramework.connection.first.state",
+                "org.apache.curator.framework.CuratorFramework.connection.second.state");
+    }
+
+    @Test
+    public void testTwoBundles() throws Exception {
+        newBundle(newFactory("first")).run(new Configuration(), environment);
+        newBundle(newFactory("second")).run(new Configuration(), environment);
+
+        assertThat(environment.metrics().getGauges()).containsKeys(
+                "org.apache.curator.framework.CuratorFramework.connection.first.state",
+                "org.apache.curator.framework.CuratorFramework.connection.second.state");
+    }
+
+    private DiscoveryFactory newFactory(final String serviceName) {
+        final DiscoveryFactory factory = mapper.convertValue(
+                ImmutableMap.of("hosts",
+                        Collections.singletonList("127.0.0.1"), "port",
+                        server.getPort()),
+                DiscoveryFactory.class);
+        factory.setServiceName(serviceName);
+        return factory;
+    }
+
+    private DiscoveryBundle<Configuration> newBundle(
+            final DiscoveryFactory factory) {
+        final DiscoveryBundle<Configuration> bundle = new DiscoveryBundle<Configuration>() {
+            @Override
+            public DiscoveryFactory getDiscoveryFactory(
+                    final Configuration configuration) {
+                return factory;
+            }
+        };
+        final Bootstrap<?> bootstrap = mock(Bootstrap.class);
+        when(bootstrap.getObjectMapper()).thenReturn(mapper);
+        bundle.initialize(bootstrap);
+        return bundle;
+    }
+}
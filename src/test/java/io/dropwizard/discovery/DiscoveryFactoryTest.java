@@ -0,0 +1,60 @@
+package io.dropwizard.discovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.validation.Validator;
+import org.junit.Test;
+import io.dropwizard.jersey.validation.Validators;
+
+public class DiscoveryFactoryTest {
+
+    private final Validator validator = Validators.newValidator();
+    private final DiscoveryFactory factory = new DiscoveryFactory();
+
+    @Test
+    public void testValidRemoteEnsembles() {
+        factory.setServiceName("test-service");
+        factory.setRemoteEnsembles(
+                Arrays.asList(newEnsemble("east", 1), newEnsemble("west", 1)));
+
+        assertThat(validator.validate(factory)).isEmpty();
+    }
+
+    @Test
+    public void testRejectsDuplicateEnsembleNames() {
+        factory.setServiceName("test-service");
+        factory.setRemoteEnsembles(
+                Arrays.asList(newEnsemble("east", 1), newEnsemble("east", 2)));
+
+        assertThat(validator.validate(factory)).hasSize(1);
+    }
+
+    @Test
+    public void testRejectsLocalEnsembleName() {
+        factory.setServiceName("test-service");
+        factory.setRemoteEnsembles(
+                Collections.singletonList(newEnsemble("local", 1)));
+
+        assertThat(validator.validate(factory)).hasSize(1);
+    }
+
+    @Test
+    public void testRejectsLocalPriority() {
+        assertThat(validator.validate(newEnsemble("east", 0))).hasSize(1);
+    }
+
+    @Test
+    public void testRejectsEmptyName() {
+        assertThat(validator.validate(newEnsemble("", 1))).hasSize(1);
+    }
+
+    private static EnsembleFactory newEnsemble(final String name,
+            final int priority) {
+        final EnsembleFactory ensemble = new EnsembleFactory();
+        ensemble.setName(name);
+        ensemble.setHosts(new String[] { "127.0.0.1" });
+        ensemble.setPriority(priority);
+        return ensemble;
+    }
+}
@@ -0,0 +1,106 @@
+package io.dropwizard.discovery;
+
+import io.dropwizard.discovery.core.InstanceMetadata;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.ServiceInstanceBuilder;
+import org.apache.curator.x.discovery.ServiceType;
+
+/**
+ * Instances of a <code>test-service</code> listening on 127.0.0.1, shared by
+ * the tests.
+ */
+public final class TestInstances {
+
+    public static final String SERVICE_NAME = "test-service";
+    public static final String ADDRESS = "127.0.0.1";
+    public static final int PORT = 8080;
+
+    private TestInstances() {
+    }
+
+    /**
+     * Return an instance with a string payload on the default port.
+     *
+     * @param id
+     *            ID of the instance
+     * @return {@link ServiceInstance}
+     */
+    public static ServiceInstance<String> newInstance(final String id) {
+        return newInstance(id, PORT);
+    }
+
+    /**
+     * Return an instance with a string payload.
+     *
+     * @param id
+     *            ID of the instance
+     * @param port
+     *            port of the instance
+     * @return {@link ServiceInstance}
+     */
+    public static ServiceInstance<String> newInstance(final String id,
+            final int port) {
+        return new ServiceInstance<String>(SERVICE_NAME, id, ADDRESS, port,
+                null, "payload", 0, ServiceType.DYNAMIC, null, true);
+    }
+
+    /**
+     * Return an instance with {@link InstanceMetadata} on the default port and
+     * a random ID.
+     *
+     * @return {@link ServiceInstance}
+     */
+    public static ServiceInstance<InstanceMetadata> newMetadataInstance() {
+        return newMetadataInstance(PORT);
+    }
+
+    /**
+     * Return an instance with {@link InstanceMetadata} and a random ID.
+     *
+     * @param port
+     *            port of the instance
+     * @return {@link ServiceInstance}
+     */
+    public static ServiceInstance<InstanceMetadata> newMetadataInstance(
+            final int port) {
+        return newMetadataInstance(
+                id -> new InstanceMetadata(id, ADDRESS, port, Optional.empty()));
+    }
+
+    /**
+     * Return an instance with a random ID and the given metadata.
+     *
+     * @param metadata
+     *            builds the metadata of the instance from its ID
+     * @return {@link ServiceInstance}
+     */
+    public static ServiceInstance<InstanceMetadata> newMetadataInstance(
+            final Function<UUID, InstanceMetadata> metadata) {
+        return metadataBuilder(metadata).build();
+    }
+
+    /**
+     * Return a builder of an instance with a random ID and the given metadata,
+     * listening on the address and port of the metadata.
+     *
+     * @param metadata
+     *            builds the metadata of the instance from its ID
+     * @return {@link ServiceInstanceBuilder}
+     */
+    public static ServiceInstanceBuilder<InstanceMetadata> metadataBuilder(
+            final Function<UUID, InstanceMetadata> metadata) {
+        final UUID id = UUID.randomUUID();
+        final InstanceMetadata payload = metadata.apply(id);
+        try {
+            return ServiceInstance.<InstanceMetadata>builder()
+                    .name(SERVICE_NAME).id(id.toString())
+                    .address(payload.getListenAddress())
+                    .port(payload.getListenPort()).payload(payload);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.dropwizard.discovery.admin;
+
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.jackson.Jackson;
+
+public class MembershipServletTest {
+
+    private final ObjectMapper mapper = Jackson.newObjectMapper();
+    @SuppressWarnings("unchecked")
+    private final ServiceDiscovery<String> discovery = mock(
+            ServiceDiscovery.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCacheBuilder<String> builder = mock(
+            ServiceCacheBuilder.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCache<String> cache = mock(ServiceCache.class);
+    private final List<ServiceInstance<String>> instances = new ArrayList<>();
+    private DiscoveryClient<String> client;
+    private MembershipServlet servlet;
+    private ServiceCacheListener listener;
+    private Server server;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        when(discovery.serviceCacheBuilder()).thenReturn(builder);
+        when(builder.name(anyString())).thenReturn(builder);
+        when(builder.build()).thenReturn(cache);
+        when(cache.getInstances()).thenAnswer(i -> new ArrayList<>(instances));
+        instances.add(newInstance("first"));
+
+        client = new DiscoveryClient<String>("test-service", discovery,
+                new DownInstancePolicy(), new RoundRobinStrategy<String>());
+        servlet = new MembershipServlet(mapper);
+        servlet.register(client);
+        client.start();
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        Mockito.verify(cache).addListener(captor.capture());
+        listener = captor.getValue();
+
+        server = new Server(0);
+        final ServletContextHandler context = new ServletContextHandler();
+        final ServletHolder holder = new ServletHolder(servlet);
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/membership");
+        server.setHandler(context);
+        server.start();
+        url = "http://127.0.0.1:"
+                + ((ServerConnector) server.getConnectors()[0]).getLocalPort()
+                + "/membership";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        client.close();
+    }
+
+    @Test
+    public void testVersions() throws Exception {
+        final JsonNode versions = get("");
+        assertThat(versions.get("test-service").asLong()).isPositive();
+    }
+
+    @Test
+    public void testUnknownService() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+                url + "?service=other").openConnection();
+        assertThat(connection.getResponseCode()).isEqualTo(404);
+    }
+
+    @Test
+    public void testFullThenDiff() throws Exception {
+        final JsonNode full = get("?service=test-service");
+        assertThat(full.get("reset").asBoolean()).isTrue();
+        assertThat(full.get("instances")).hasSize(1);
+        assertThat(full.get("instances").get(0).get("id").asText())
+                .isEqualTo("first");
+
+        final long version = full.get("version").asLong();
+        instances.add(newInstance("second"));
+        listener.cacheChanged();
+        final JsonNode diff = get("?service=test-service&version=" + version);
+        assertThat(diff.get("reset").asBoolean()).isFalse();
+        assertThat(diff.get("version").asLong()).isEqualTo(version + 1);
+        assertThat(diff.get("instances")).hasSize(1);
+        assertThat(diff.get("instances").get(0).get("id").asText())
+                .isEqualTo("second");
+    }
+
+    @Test
+    public void testLongPoll() throws Exception {
+        final long version = get("?service=test-service").get("version")
+                .asLong();
+        final CompletableFuture<JsonNode> poll = CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return get("?service=test-service&wait=10000&version="
+                                + version);
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+        Thread.sleep(200);
+        assertThat(poll).isNotDone();
+
+        instances.remove(0);
+        listener.cacheChanged();
+        final JsonNode diff = poll.get(5, TimeUnit.SECONDS);
+        assertThat(diff.get("version").asLong()).isEqualTo(version + 1);
+        assertThat(diff.get("removed").get(0).asText()).isEqualTo("first");
+    }
+
+    @Test
+    public void testLongPollTimesOut() throws Exception {
+        final long version = get("?service=test-service").get("version")
+                .asLong();
+        final JsonNode empty = get(
+                "?service=test-service&wait=100&version=" + version);
+        assertThat(empty.get("version").asLong()).isEqualTo(version);
+        assertThat(empty.get("instances")).isEmpty();
+        assertThat(empty.get("removed")).isEmpty();
+    }
+
+    @Test
+    public void testHandsFeedToLiveClient() throws Exception {
+        final DiscoveryClient<String> other = new DiscoveryClient<String>(
+                "test-service", discovery, new DownInstancePolicy(),
+                new RoundRobinStrategy<String>());
+        servlet.register(other);
+        other.start();
+        try {
+            final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                    .forClass(ServiceCacheListener.class);
+            Mockito.verify(cache, Mockito.times(2))
+                    .addListener(captor.capture());
+            final long version = get("?service=test-service").get("version")
+                    .asLong();
+
+            client.close();
+            instances.add(newInstance("second"));
+            captor.getValue().cacheChanged();
+            final JsonNode diff = get(
+                    "?service=test-service&version=" + version);
+            assertThat(diff.get("version").asLong()).isEqualTo(version + 1);
+            assertThat(diff.get("instances").get(0).get("id").asText())
+                    .isEqualTo("second");
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testRemovesServiceOfClosedClient() throws Exception {
+        client.close();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+                url + "?service=test-service").openConnection();
+        assertThat(connection.getResponseCode()).isEqualTo(404);
+    }
+
+    private JsonNode get(final String query) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+                url + query).openConnection();
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).startsWith("application/json");
+        try (InputStream in = connection.getInputStream()) {
+            return mapper.readTree(in);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+
+public class CacheEventExecutorTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final ExecutorService workers = Executors.newFixedThreadPool(2);
+    private final CacheEventExecutor events = new CacheEventExecutor(workers,
+            metrics);
+
+    @After
+    public void tearDown() throws Exception {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void testRunsEventsOfOneCacheInOrder() throws Exception {
+        final ExecutorService executor = events.forCache("test-service");
+        final List<Integer> seen = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final int event = i;
+            executor.execute(() -> seen.add(event));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(seen).hasSize(100).isSorted();
+        assertThat(events.getQueueDepth()).isZero();
+        assertThat(metrics.timer(
+                MetricRegistry.name(CacheEventExecutor.class, "lag"))
+                .getCount()).isEqualTo(100);
+    }
+
+    @Test
+    public void testSlowCacheDoesNotHoldUpOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final ExecutorService slow = events.forCache("slow-service");
+        slow.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        slow.execute(() -> {
+        });
+
+        final CountDownLatch done = new CountDownLatch(1);
+        events.forCache("fast-service").execute(done::countDown);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        started.await();
+        assertThat(events.getQueueDepth()).isEqualTo(1);
+        assertThat(checkNotNull(metrics.getGauges().get(MetricRegistry
+                .name(CacheEventExecutor.class, "queue-depth"))).getValue())
+                        .isEqualTo(1);
+
+        release.countDown();
+        slow.shutdown();
+        assertThat(slow.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(events.getQueueDepth()).isZero();
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = events.forCache("test-service");
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        executor.execute(() -> {
+        });
+        started.await();
+
+        assertThat(executor.shutdownNow()).hasSize(1);
+        assertThat(executor.isTerminated()).isFalse();
+        assertThatThrownBy(() -> executor.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(events.getQueueDepth()).isZero();
+        assertThat(workers.isShutdown()).isFalse();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
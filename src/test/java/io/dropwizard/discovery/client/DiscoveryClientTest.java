@@ -0,0 +1,402 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.discovery.OutlierDetectionFactory;
+import io.dropwizard.discovery.client.strategies.ConsistentHashStrategy;
+import io.dropwizard.discovery.core.InstanceMetadata;
+import io.dropwizard.util.Duration;
+
+public class DiscoveryClientTest {
+
+    @SuppressWarnings("unchecked")
+    private final ServiceDiscovery<InstanceMetadata> discovery = mock(
+            ServiceDiscovery.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCacheBuilder<InstanceMetadata> builder = mock(
+            ServiceCacheBuilder.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCache<InstanceMetadata> cache = mock(
+            ServiceCache.class);
+    private final List<ServiceInstance<InstanceMetadata>> instances = new ArrayList<>();
+    private DiscoveryClient<InstanceMetadata> client;
+    private ServiceCacheListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        when(discovery.serviceCacheBuilder()).thenReturn(builder);
+        when(builder.name(anyString())).thenReturn(builder);
+        when(builder.build()).thenReturn(cache);
+        when(cache.getInstances()).thenAnswer(i -> new ArrayList<>(instances));
+
+        instances.add(newMetadataInstance());
+        instances.add(newMetadataInstance());
+
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                discovery, new DownInstancePolicy(1, TimeUnit.MINUTES, 2),
+                new RoundRobinStrategy<InstanceMetadata>());
+        client.start();
+
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        verify(cache).addListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    public void testSingleCache() throws Exception {
+        client.getInstance();
+        client.noteError(instances.get(0));
+        verify(builder, times(1)).build();
+        verify(discovery, never()).serviceProviderBuilder();
+    }
+
+    @Test
+    public void testInitialLoad() throws Exception {
+        assertThat(client.getInstances()).containsExactlyElementsOf(instances);
+        assertThat(client.getInstance()).isIn(instances);
+    }
+
+    @Test
+    public void testSnapshotOnlyChangesWithCache() throws Exception {
+        final InstanceSnapshot<InstanceMetadata> before = client.getSnapshot();
+        instances.add(newMetadataInstance());
+        assertThat(client.getSnapshot()).isSameAs(before);
+
+        listener.cacheChanged();
+        final InstanceSnapshot<InstanceMetadata> after = client.getSnapshot();
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.size()).isEqualTo(3);
+        assertThat(after.get(2)).isEqualTo(instances.get(2));
+    }
+
+    @Test
+    public void testForEachInstance() throws Exception {
+        final List<ServiceInstance<InstanceMetadata>> seen = new ArrayList<>();
+        client.forEachInstance(seen::add);
+        assertThat(seen).containsExactlyElementsOf(instances);
+    }
+
+    @Test
+    public void testNoteErrorMarksInstanceDown() throws Exception {
+        final ServiceInstance<InstanceMetadata> bad = instances.get(0);
+        client.noteError(bad);
+        assertThat(client.getSnapshot().getInstances()).contains(bad);
+
+        client.noteError(bad);
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactly(instances.get(1));
+        assertThat(client.getInstances()).contains(bad);
+        for (int i = 0; i < 4; i++) {
+            assertThat(client.getInstance()).isEqualTo(instances.get(1));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                new ServiceCacheRegistry<>(discovery, metrics),
+                new DownInstancePolicy(1, TimeUnit.MINUTES, 1),
+                new RoundRobinStrategy<InstanceMetadata>());
+        client.start();
+
+        for (int i = 0; i < 1000; i++) {
+            client.getInstance();
+        }
+        client.noteError(instances.get(0));
+
+        final String prefix = "io.dropwizard.discovery.client.DiscoveryClient.test-service.";
+        assertThat(metrics.timer(prefix + "lookups").getCount())
+                .isBetween(1L, 999L);
+        assertThat(metrics.meter(prefix + "marked-down").getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void testDownInstanceComesBack() throws Exception {
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                discovery, new DownInstancePolicy(1, TimeUnit.MILLISECONDS, 1),
+                new RoundRobinStrategy<InstanceMetadata>());
+        client.start();
+
+        client.noteError(instances.get(0));
+        Thread.sleep(5);
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactlyElementsOf(instances);
+    }
+
+    @Test
+    public void testOutlierDetection() throws Exception {
+        final OutlierDetectionFactory outliers = new OutlierDetectionFactory();
+        outliers.setMinimumRequests(2);
+        outliers.setMaxEjectionPercent(50);
+        outliers.setSlowCallThreshold(Duration.seconds(1));
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                new ServiceCacheRegistry<>(discovery), outliers.build(),
+                new RoundRobinStrategy<InstanceMetadata>());
+        client.start();
+
+        final ServiceInstance<InstanceMetadata> slow = instances.get(0);
+        client.noteSuccess(slow, 2, TimeUnit.SECONDS);
+        assertThat(client.getSnapshot().getInstances()).contains(slow);
+        client.noteError(slow);
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactly(instances.get(1));
+    }
+
+    @Test
+    public void testDisabledInstancesAreNotSelected() throws Exception {
+        final ServiceInstance<InstanceMetadata> disabled = ServiceInstance
+                .<InstanceMetadata>builder().name("test-service")
+                .id(UUID.randomUUID().toString()).enabled(false).build();
+        instances.add(disabled);
+        listener.cacheChanged();
+
+        assertThat(client.getInstances()).contains(disabled);
+        assertThat(client.getSnapshot().getInstances())
+                .doesNotContain(disabled);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        instances.clear();
+        listener.cacheChanged();
+        assertThat(client.getInstance()).isNull();
+        assertThat(client.getInstances()).isEmpty();
+    }
+
+    @Test
+    public void testClientsShareCache() throws Exception {
+        final ServiceCacheRegistry<InstanceMetadata> caches = new ServiceCacheRegistry<>(
+                discovery);
+        final DiscoveryClient<InstanceMetadata> first = new DiscoveryClient<InstanceMetadata>(
+                "other-service", caches, new DownInstancePolicy(),
+                new RoundRobinStrategy<InstanceMetadata>());
+        final DiscoveryClient<InstanceMetadata> second = new DiscoveryClient<InstanceMetadata>(
+                "other-service", caches, new DownInstancePolicy(1,
+                        TimeUnit.MINUTES, 1),
+                new RoundRobinStrategy<InstanceMetadata>());
+        first.start();
+        second.start();
+        verify(builder).name("other-service");
+
+        // each client keeps its own view of which instances are down
+        second.noteError(instances.get(0));
+        assertThat(first.getSnapshot().getInstances())
+                .containsExactlyElementsOf(instances);
+        assertThat(second.getSnapshot().getInstances())
+                .containsExactly(instances.get(1));
+
+        first.close();
+        verify(cache, never()).close();
+        second.close();
+        verify(cache).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFeedback() throws Exception {
+        final FeedbackProviderStrategy<InstanceMetadata> strategy = mock(
+                FeedbackProviderStrategy.class);
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                discovery, new DownInstancePolicy(), strategy);
+        client.start();
+        verify(strategy).instancesChanged(client.getSnapshot());
+
+        final ServiceInstance<InstanceMetadata> instance = instances.get(0);
+        client.noteSuccess(instance, 5, TimeUnit.MILLISECONDS);
+        verify(strategy).noteOutcome(instance,
+                TimeUnit.MILLISECONDS.toNanos(5), true);
+        client.noteError(instance);
+        verify(strategy).noteOutcome(instance, 0, false);
+    }
+
+    @Test
+    public void testGetInstanceByKey() throws Exception {
+        assertThatThrownBy(() -> client.getInstance("user-42"))
+                .isInstanceOf(UnsupportedOperationException.class);
+
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                discovery, new DownInstancePolicy(1, TimeUnit.MINUTES, 1),
+                new ConsistentHashStrategy<InstanceMetadata>());
+        client.start();
+        final ServiceInstance<InstanceMetadata> owner = checkNotNull(
+                client.getInstance("user-42"));
+        assertThat(client.getInstance("user-42")).isSameAs(owner);
+
+        client.noteError(owner);
+        assertThat(client.getInstance("user-42")).isNotNull()
+                .isNotEqualTo(owner);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        client.close();
+        verify(cache).close();
+    }
+
+    @Test
+    public void testPrefersLocalEnsemble() throws Exception {
+        final List<ServiceInstance<InstanceMetadata>> remote = new ArrayList<>();
+        remote.add(newMetadataInstance());
+        final ServiceCacheListener remoteListener = federate(remote);
+
+        assertThat(client.getSnapshot().size()).isEqualTo(3);
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactlyElementsOf(instances);
+        remoteListener.cacheChanged();
+        assertThat(client.getInstance()).isIn(instances);
+    }
+
+    @Test
+    public void testDeduplicatesAcrossEnsembles() throws Exception {
+        final List<ServiceInstance<InstanceMetadata>> remote = new ArrayList<>();
+        remote.add(instances.get(0));
+        remote.add(newMetadataInstance());
+        federate(remote);
+
+        assertThat(client.getSnapshot().size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testFailsOverToRemoteEnsemble() throws Exception {
+        final List<ServiceInstance<InstanceMetadata>> remote = new ArrayList<>();
+        remote.add(newMetadataInstance());
+        federate(remote);
+
+        for (final ServiceInstance<InstanceMetadata> instance : instances) {
+            client.noteError(instance);
+            client.noteError(instance);
+        }
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactlyElementsOf(remote);
+
+        instances.add(newMetadataInstance());
+        listener.cacheChanged();
+        assertThat(client.getSnapshot().getInstances())
+                .containsExactly(instances.get(2));
+
+        instances.clear();
+        listener.cacheChanged();
+        assertThat(client.getInstance()).isEqualTo(remote.get(0));
+    }
+
+    @Test
+    public void testAddEnsembleAfterStart() throws Exception {
+        assertThatThrownBy(() -> client.addEnsemble("remote", 1,
+                new ServiceCacheRegistry<>(discovery)))
+                        .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testStopsRetryingRemoteEnsembleOnClose() throws Exception {
+        @SuppressWarnings("unchecked")
+        final ServiceDiscovery<InstanceMetadata> remoteDiscovery = mock(
+                ServiceDiscovery.class);
+        when(remoteDiscovery.serviceCacheBuilder())
+                .thenThrow(new IllegalStateException("unreachable"));
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1);
+        try {
+            client.close();
+            client = new DiscoveryClient<InstanceMetadata>("test-service",
+                    discovery, new DownInstancePolicy(),
+                    new RoundRobinStrategy<InstanceMetadata>());
+            client.addEnsemble("remote", 1,
+                    new ServiceCacheRegistry<>(remoteDiscovery));
+            client.setEnsembleExecutor(executor);
+            client.start();
+
+            verify(remoteDiscovery, timeout(5000)).serviceCacheBuilder();
+            final long deadline = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(5);
+            while (executor.getQueue().isEmpty()
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // the retry is scheduled
+            assertThat(executor.getQueue()).hasSize(1);
+
+            client.close();
+            executor.purge();
+            assertThat(executor.getQueue()).isEmpty();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Replace the client with one also watching a remote ensemble holding the
+     * given instances, and wait for it to be watched.
+     */
+    private ServiceCacheListener federate(
+            final List<ServiceInstance<InstanceMetadata>> remote)
+            throws Exception {
+        @SuppressWarnings("unchecked")
+        final ServiceDiscovery<InstanceMetadata> remoteDiscovery = mock(
+                ServiceDiscovery.class);
+        @SuppressWarnings("unchecked")
+        final ServiceCacheBuilder<InstanceMetadata> remoteBuilder = mock(
+                ServiceCacheBuilder.class);
+        @SuppressWarnings("unchecked")
+        final ServiceCache<InstanceMetadata> remoteCache = mock(
+                ServiceCache.class);
+        when(remoteDiscovery.serviceCacheBuilder()).thenReturn(remoteBuilder);
+        when(remoteBuilder.name(anyString())).thenReturn(remoteBuilder);
+        when(remoteBuilder.build()).thenReturn(remoteCache);
+        when(remoteCache.getInstances())
+                .thenAnswer(i -> new ArrayList<>(remote));
+
+        client.close();
+        client = new DiscoveryClient<InstanceMetadata>("test-service",
+                discovery, new DownInstancePolicy(1, TimeUnit.MINUTES, 2),
+                new RoundRobinStrategy<InstanceMetadata>());
+        client.addEnsemble("remote", 1,
+                new ServiceCacheRegistry<>(remoteDiscovery));
+        client.start();
+
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        verify(remoteCache, timeout(5000)).addListener(captor.capture());
+        verify(cache, times(2)).addListener(captor.capture());
+        listener = captor.getValue();
+        // the snapshot is rebuilt right after the remote cache is watched
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.getSnapshot().size() == instances.size()
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return captor.getAllValues().get(0);
+    }
+}
@@ -0,0 +1,87 @@
+package io.dropwizard.discovery.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+import io.dropwizard.util.Duration;
+
+public class EventCoalescerTest {
+
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor();
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(r -> new Thread(r, "cache-events"));
+    private final Histogram batchSizes = new Histogram(new UniformReservoir());
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRunsOnceAfterDelay() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        final EventCoalescer.Batch batch = new EventCoalescer(scheduler,
+                Duration.milliseconds(50), 100).newBatch(() -> {
+                    runs.incrementAndGet();
+                    ran.countDown();
+                }, batchSizes, executor);
+        for (int i = 0; i < 10; i++) {
+            batch.run();
+        }
+        assertThat(runs.get()).isZero();
+
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(batchSizes.getSnapshot().getValues()).containsExactly(10);
+    }
+
+    @Test
+    public void testRunsDelayedBatchOnExecutor() throws Exception {
+        final CompletableFuture<String> thread = new CompletableFuture<>();
+        final EventCoalescer.Batch batch = new EventCoalescer(scheduler,
+                Duration.milliseconds(10), 100).newBatch(
+                        () -> thread.complete(Thread.currentThread().getName()),
+                        batchSizes, executor);
+        batch.run();
+
+        assertThat(thread.get(5, TimeUnit.SECONDS)).isEqualTo("cache-events");
+    }
+
+    @Test
+    public void testRunsFullBatchAtOnce() throws Exception {
+        final EventCoalescer.Batch batch = new EventCoalescer(scheduler,
+                Duration.minutes(1), 4).newBatch(runs::incrementAndGet,
+                        batchSizes, executor);
+        for (int i = 0; i < 9; i++) {
+            batch.run();
+        }
+        assertThat(runs.get()).isEqualTo(2);
+        assertThat(batchSizes.getSnapshot().getValues()).containsExactly(4,
+                4);
+    }
+
+    @Test
+    public void testCloseDropsPendingChanges() throws Exception {
+        final EventCoalescer.Batch batch = new EventCoalescer(scheduler,
+                Duration.milliseconds(10), 100).newBatch(runs::incrementAndGet,
+                        batchSizes, executor);
+        batch.run();
+        batch.close();
+        batch.run();
+        Thread.sleep(100);
+        assertThat(runs.get()).isZero();
+        assertThat(batchSizes.getCount()).isZero();
+    }
+}
@@ -0,0 +1,113 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import io.dropwizard.util.Duration;
+
+public class InstanceSnapshotStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private Path directory;
+    private InstanceSnapshotStore<String> store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath().resolve("snapshots");
+        store = new InstanceSnapshotStore<>(directory,
+                new JsonInstanceSerializer<>(String.class));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final List<ServiceInstance<String>> instances = Arrays.asList(
+                newInstance("1"), newInstance("2"));
+        final long writtenAt = store.write("test-service", instances);
+
+        final InstanceSnapshotStore.Entry<String> entry = checkNotNull(
+                store.read("test-service"));
+        assertThat(entry.getInstances()).containsExactlyElementsOf(instances);
+        assertThat(entry.getWrittenAt()).isEqualTo(writtenAt);
+    }
+
+    @Test
+    public void testReplacesSnapshot() throws Exception {
+        store.write("test-service", Arrays.asList(newInstance("1")));
+        store.write("test-service", Collections.emptyList());
+
+        assertThat(checkNotNull(store.read("test-service")).getInstances())
+                .isEmpty();
+        // no temporary files are left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(store.pathFor("test-service"));
+        }
+    }
+
+    @Test
+    public void testWritesLatestSnapshotLater() throws Exception {
+        final ScheduledExecutorService writer = Executors
+                .newSingleThreadScheduledExecutor();
+        try {
+            final InstanceSnapshotStore<String> later = new InstanceSnapshotStore<>(
+                    directory, new JsonInstanceSerializer<>(String.class),
+                    writer, Duration.milliseconds(100));
+            final BlockingQueue<Long> written = new LinkedBlockingQueue<>();
+            later.writeLater("test-service", Arrays.asList(newInstance("1")),
+                    written::add);
+            later.writeLater("test-service", Arrays.asList(newInstance("2")),
+                    written::add);
+            assertThat(later.read("test-service")).isNull();
+
+            assertThat(written.poll(5, TimeUnit.SECONDS)).isNotNull();
+            assertThat(
+                    checkNotNull(later.read("test-service")).getInstances())
+                    .extracting(ServiceInstance::getId).containsExactly("2");
+            // the first snapshot was never written
+            assertThat(written.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMissingSnapshot() throws Exception {
+        assertThat(store.read("test-service")).isNull();
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        store.write("test-service", Arrays.asList(newInstance("1")));
+        final Path path = store.pathFor("test-service");
+        final byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThatThrownBy(() -> store.read("test-service"))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testEncodesServiceName() throws Exception {
+        assertThat(store.pathFor("../other/service").getParent())
+                .isEqualTo(directory);
+    }
+}
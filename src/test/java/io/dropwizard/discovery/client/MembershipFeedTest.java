@@ -0,0 +1,92 @@
+package io.dropwizard.discovery.client;
+
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+import io.dropwizard.discovery.client.MembershipFeed.Delta;
+
+public class MembershipFeedTest {
+
+    private final MembershipFeed<String> feed = new MembershipFeed<>(
+            "test-service", 2);
+    private final ServiceInstance<String> first = newInstance("first", 8080);
+    private final ServiceInstance<String> second = newInstance("second",
+            8080);
+
+    @Test
+    public void testVersionOnlyChangesWithMembership() {
+        final long initial = feed.getVersion();
+        feed.update(Arrays.asList(first, second));
+        assertThat(feed.getVersion()).isEqualTo(initial + 1);
+        feed.update(Arrays.asList(first, second));
+        assertThat(feed.getVersion()).isEqualTo(initial + 1);
+        assertThat(feed.since(initial + 1).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDiffs() {
+        feed.update(Arrays.asList(first, second));
+        final long version = feed.getVersion();
+        final ServiceInstance<String> moved = newInstance("first", 9090);
+        final ServiceInstance<String> third = newInstance("third", 8080);
+        feed.update(Arrays.asList(moved, third));
+
+        final Delta<String> delta = feed.since(version);
+        assertThat(delta.isReset()).isFalse();
+        assertThat(delta.getVersion()).isEqualTo(version + 1);
+        assertThat(delta.getInstances()).containsExactly(moved, third);
+        assertThat(delta.getRemoved()).containsExactly("second");
+    }
+
+    @Test
+    public void testMergesSeveralChanges() {
+        final long version = feed.getVersion();
+        feed.update(Arrays.asList(first));
+        feed.update(Arrays.asList(first, second));
+
+        final Delta<String> delta = feed.since(version);
+        assertThat(delta.isReset()).isFalse();
+        assertThat(delta.getInstances()).containsExactly(first, second);
+        assertThat(delta.getRemoved()).isEmpty();
+    }
+
+    @Test
+    public void testResetWhenTooFarBehind() {
+        final long version = feed.getVersion();
+        feed.update(Arrays.asList(first));
+        feed.update(Arrays.asList(first, second));
+        feed.update(Arrays.asList(second));
+
+        // only two changes are kept
+        final Delta<String> delta = feed.since(version);
+        assertThat(delta.isReset()).isTrue();
+        assertThat(delta.getInstances()).containsExactly(second);
+        assertThat(feed.since(0).isReset()).isTrue();
+        assertThat(feed.since(Long.MAX_VALUE).isReset()).isTrue();
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        final long version = feed.getVersion();
+        final CompletableFuture<Delta<String>> future = feed.await(version);
+        assertThat(future).isNotDone();
+
+        feed.update(Collections.singletonList(first));
+        assertThat(future.get().getInstances()).containsExactly(first);
+        // already behind, so completed immediately
+        assertThat(feed.await(version)).isDone();
+    }
+
+    @Test
+    public void testCancel() {
+        final CompletableFuture<Delta<String>> future = feed
+                .await(feed.getVersion());
+        feed.cancel(future);
+        feed.update(Collections.singletonList(first));
+        assertThat(future).isNotDone();
+    }
+}
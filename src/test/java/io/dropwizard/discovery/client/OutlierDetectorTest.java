@@ -0,0 +1,157 @@
+package io.dropwizard.discovery.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import io.dropwizard.discovery.OutlierDetectionFactory;
+import io.dropwizard.util.Duration;
+
+public class OutlierDetectorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final OutlierDetectionFactory factory = new OutlierDetectionFactory();
+    private OutlierDetector detector;
+    private long now = 1_000 * SECOND;
+
+    @Before
+    public void setUp() {
+        factory.setWindow(Duration.seconds(10));
+        factory.setWindowBuckets(10);
+        factory.setMinimumRequests(4);
+        factory.setFailureRateThreshold(50);
+        factory.setBaseEjectionTime(Duration.seconds(30));
+        factory.setMaxEjectionTime(Duration.seconds(100));
+        factory.setMaxEjectionPercent(50);
+        detector = factory.build();
+    }
+
+    @Test
+    public void testEjectsAboveFailureRate() {
+        assertThat(note("a", true)).isFalse();
+        assertThat(note("a", false)).isFalse();
+        assertThat(note("a", true)).isFalse();
+        // 2 of 4 calls failed
+        assertThat(note("a", false)).isTrue();
+        assertThat(detector.isDown("a", now)).isTrue();
+        assertThat(detector.purge(now)).isEqualTo(now + 30 * SECOND);
+
+        now += 30 * SECOND;
+        assertThat(detector.isDown("a", now)).isFalse();
+        assertThat(detector.purge(now)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testNeedsMinimumRequests() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(note("a", false)).isFalse();
+        }
+        assertThat(detector.isDown("a", now)).isFalse();
+    }
+
+    @Test
+    public void testWindowSlides() {
+        note("a", false);
+        note("a", false);
+        note("a", true);
+        now += 10 * SECOND;
+        // the failures have left the window
+        note("a", true);
+        note("a", true);
+        note("a", true);
+        assertThat(note("a", false)).isFalse();
+    }
+
+    @Test
+    public void testRepeatOffendersAreEjectedLonger() {
+        eject("a");
+        now += 30 * SECOND;
+        // comes back with an empty window
+        assertThat(note("a", false)).isFalse();
+        eject("a");
+        assertThat(detector.purge(now)).isEqualTo(now + 60 * SECOND);
+
+        now += 60 * SECOND;
+        eject("a");
+        assertThat(detector.purge(now)).isEqualTo(now + 100 * SECOND);
+
+        // forgiven after a whole maximum ejection time
+        now += 200 * SECOND;
+        eject("a");
+        assertThat(detector.purge(now)).isEqualTo(now + 30 * SECOND);
+    }
+
+    @Test
+    public void testMaxEjectionPercent() {
+        eject("a");
+        for (int i = 0; i < 4; i++) {
+            assertThat(note("b", false, 2)).isFalse();
+        }
+        assertThat(detector.isDown("b", now)).isFalse();
+        // a larger pool leaves room for a second ejection
+        assertThat(note("b", false, 3)).isTrue();
+    }
+
+    @Test
+    public void testNoEjectionPercentDisablesEjection() {
+        factory.setMaxEjectionPercent(0);
+        detector = factory.build();
+        for (int i = 0; i < 4; i++) {
+            assertThat(note("a", false)).isFalse();
+        }
+        assertThat(detector.isDown("a", now)).isFalse();
+    }
+
+    @Test
+    public void testOneInstanceCanAlwaysBeEjected() {
+        factory.setMaxEjectionPercent(1);
+        detector = factory.build();
+        eject("a");
+        assertThat(detector.isDown("a", now)).isTrue();
+    }
+
+    @Test
+    public void testSlowCallsAreFailures() {
+        factory.setSlowCallThreshold(Duration.milliseconds(100));
+        detector = factory.build();
+        final long slow = TimeUnit.MILLISECONDS.toNanos(150);
+        for (int i = 0; i < 3; i++) {
+            assertThat(detector.noteOutcome("a", slow, true, 4, now))
+                    .isFalse();
+        }
+        assertThat(detector.noteOutcome("a", slow, true, 4, now)).isTrue();
+    }
+
+    @Test
+    public void testPurgeForgetsIdleInstances() {
+        note("a", true);
+        now += 10 * SECOND;
+        detector.purge(now);
+        // the earlier call is forgotten along with the instance
+        for (int i = 0; i < 3; i++) {
+            note("a", false);
+        }
+        assertThat(detector.isDown("a", now)).isFalse();
+        assertThat(note("a", false)).isTrue();
+    }
+
+    private void eject(final String id) {
+        for (int i = 0; i < 4; i++) {
+            if (note(id, false)) {
+                return;
+            }
+        }
+        fail(id + " was not ejected");
+    }
+
+    private boolean note(final String id, final boolean success) {
+        return note(id, success, 4);
+    }
+
+    private boolean note(final String id, final boolean success,
+            final int poolSize) {
+        return detector.noteOutcome(id, 0, success, poolSize, now);
+    }
+}
@@ -0,0 +1,317 @@
+package io.dropwizard.discovery.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+
+public class ServiceCacheRegistryTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("unchecked")
+    private final ServiceDiscovery<String> discovery = mock(
+            ServiceDiscovery.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCacheBuilder<String> builder = mock(
+            ServiceCacheBuilder.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCache<String> cache = mock(ServiceCache.class);
+    private final List<ServiceInstance<String>> instances = new ArrayList<>();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private ServiceCacheRegistry<String> registry;
+
+    @Before
+    public void setUp() throws Exception {
+        when(discovery.serviceCacheBuilder()).thenReturn(builder);
+        when(builder.name(anyString())).thenReturn(builder);
+        when(builder.build()).thenReturn(cache);
+        when(cache.getInstances()).thenAnswer(i -> new ArrayList<>(instances));
+        instances.add(newInstance("1"));
+        registry = new ServiceCacheRegistry<>(discovery, metrics);
+    }
+
+    @Test
+    public void testSharesCacheByName() throws Exception {
+        final SharedServiceCache<String> first = registry
+                .acquire("test-service");
+        final SharedServiceCache<String> second = registry
+                .acquire("test-service");
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getInstances()).isSameAs(first.getInstances())
+                .containsExactlyElementsOf(instances);
+        assertThat(registry.size()).isEqualTo(1);
+        verify(builder, times(1)).build();
+        verify(cache, times(1)).start();
+    }
+
+    @Test
+    public void testClosesOnLastRelease() throws Exception {
+        final SharedServiceCache<String> first = registry
+                .acquire("test-service");
+        final SharedServiceCache<String> second = registry
+                .acquire("test-service");
+
+        registry.release(first);
+        verify(cache, never()).close();
+        registry.release(second);
+        verify(cache).close();
+        assertThat(registry.size()).isZero();
+
+        assertThat(registry.acquire("test-service")).isNotSameAs(first);
+        verify(builder, times(2)).build();
+    }
+
+    @Test
+    public void testNotifiesEveryListener() throws Exception {
+        final SharedServiceCache<String> shared = registry
+                .acquire("test-service");
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        verify(cache).addListener(captor.capture());
+
+        final AtomicInteger calls = new AtomicInteger();
+        shared.addListener(calls::incrementAndGet);
+        shared.addListener(calls::incrementAndGet);
+        instances.add(newInstance("2"));
+        captor.getValue().cacheChanged();
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(shared.getInstances()).hasSize(2);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final SharedServiceCache<String> shared = registry
+                .acquire("test-service");
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        verify(cache).addListener(captor.capture());
+        captor.getValue().cacheChanged();
+
+        final String prefix = "io.dropwizard.discovery.client.DiscoveryClient.test-service.";
+        assertThat(checkNotNull(metrics.getGauges().get(prefix + "instances"))
+                .getValue())
+                .isEqualTo(1);
+        assertThat(metrics.meter(prefix + "events").getCount()).isEqualTo(1);
+        // the initial load is a refresh too
+        assertThat(metrics.timer(prefix + "refresh").getCount()).isEqualTo(2);
+
+        registry.release(shared);
+        assertThat(metrics.getGauges()).doesNotContainKey(prefix + "instances");
+    }
+
+    @Test
+    public void testRemoteEnsembleMetrics() throws Exception {
+        final ServiceCacheRegistry<String> remote = new ServiceCacheRegistry<>(
+                discovery, metrics, null, null, null, "west");
+        final SharedServiceCache<String> local = registry
+                .acquire("test-service");
+        final SharedServiceCache<String> shared = remote
+                .acquire("test-service");
+
+        final String prefix = "io.dropwizard.discovery.client.DiscoveryClient.";
+        assertThat(metrics.getGauges()).containsKeys(
+                prefix + "test-service.instances",
+                prefix + "ensembles.west.test-service.instances");
+
+        remote.release(shared);
+        assertThat(metrics.getGauges())
+                .containsKey(prefix + "test-service.instances")
+                .doesNotContainKey(
+                        prefix + "ensembles.west.test-service.instances");
+        registry.release(local);
+    }
+
+    @Test
+    public void testCoalescesBursts() throws Exception {
+        final ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor();
+        try {
+            registry = new ServiceCacheRegistry<>(discovery, metrics, null,
+                    null, new EventCoalescer(scheduler, Duration.minutes(1), 3));
+            final SharedServiceCache<String> shared = registry
+                    .acquire("test-service");
+            final AtomicInteger notified = new AtomicInteger();
+            shared.addListener(notified::incrementAndGet);
+            final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                    .forClass(ServiceCacheListener.class);
+            verify(cache).addListener(captor.capture());
+
+            for (int i = 0; i < 7; i++) {
+                captor.getValue().cacheChanged();
+            }
+            final String prefix = "io.dropwizard.discovery.client.DiscoveryClient.test-service.";
+            assertThat(metrics.meter(prefix + "events").getCount())
+                    .isEqualTo(7);
+            // two full batches, the last change waits for the delay
+            assertThat(notified.get()).isEqualTo(2);
+            assertThat(metrics.timer(prefix + "refresh").getCount())
+                    .isEqualTo(3);
+            assertThat(metrics.histogram(prefix + "batch-size").getSnapshot()
+                    .getValues()).containsExactly(3, 3);
+
+            registry.release(shared);
+            assertThat(notified.get()).isEqualTo(2);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStartsFromSnapshot() throws Exception {
+        final InstanceSnapshotStore<String> store = new InstanceSnapshotStore<>(
+                folder.getRoot().toPath(),
+                new JsonInstanceSerializer<>(String.class));
+        registry = new ServiceCacheRegistry<>(discovery, metrics, store);
+        registry.release(registry.acquire("test-service"));
+        assertThat(checkNotNull(store.read("test-service")).getInstances())
+                .containsExactlyElementsOf(instances);
+
+        // ZooKeeper cannot be reached on the next start
+        doThrow(new IllegalStateException("connection lost")).when(cache)
+                .start();
+        final SharedServiceCache<String> shared = registry
+                .acquire("test-service");
+        assertThat(shared.getInstances()).containsExactlyElementsOf(instances);
+        assertThat(shared.getSnapshotAge()).isNotNegative();
+
+        final String prefix = "io.dropwizard.discovery.client.DiscoveryClient.test-service.";
+        assertThat(metrics.getGauges()).containsKey(prefix + "snapshot-age");
+        registry.release(shared);
+        assertThat(metrics.getGauges()).doesNotContainKey(
+                prefix + "snapshot-age");
+    }
+
+    @Test
+    public void testFailsWithoutSnapshot() throws Exception {
+        registry = new ServiceCacheRegistry<>(discovery, metrics,
+                new InstanceSnapshotStore<>(folder.getRoot().toPath(),
+                        new JsonInstanceSerializer<>(String.class)));
+        doThrow(new IllegalStateException("connection lost")).when(cache)
+                .start();
+        assertThatThrownBy(() -> registry.acquire("test-service"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    public void testCleansUpFailedStart() throws Exception {
+        final ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor();
+        try {
+            registry = new ServiceCacheRegistry<>(discovery, metrics, null,
+                    null, new EventCoalescer(scheduler, Duration.minutes(1), 3));
+            final AtomicReference<ExecutorService> executor = new AtomicReference<>();
+            when(builder.executorService(any(ExecutorService.class)))
+                    .thenAnswer(i -> {
+                        executor.set(i.getArgument(0));
+                        return builder;
+                    });
+            // the cache hands its first event to the executor, then fails
+            doAnswer(i -> {
+                checkNotNull(executor.get()).execute(() -> {
+                });
+                throw new IllegalStateException("connection lost");
+            }).when(cache).start();
+
+            assertThatThrownBy(() -> registry.acquire("test-service"))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThat(registry.size()).isZero();
+            verify(cache).close();
+            assertThat(checkNotNull(executor.get())
+                    .awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+            for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("discovery-cache-test-service")) {
+                    thread.join(5000);
+                    assertThat(thread.isAlive()).isFalse();
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharesSlowStart() throws Exception {
+        final CountDownLatch starting = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        doAnswer(i -> {
+            starting.countDown();
+            loaded.await();
+            return null;
+        }).when(cache).start();
+        final ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            final Future<SharedServiceCache<String>> first = clients
+                    .submit(() -> registry.acquire("test-service"));
+            assertThat(starting.await(5, TimeUnit.SECONDS)).isTrue();
+            final Future<SharedServiceCache<String>> second = clients
+                    .submit(() -> registry.acquire("test-service"));
+
+            // the registry stays usable while the cache loads
+            assertThat(registry.size()).isZero();
+            loaded.countDown();
+            assertThat(second.get(5, TimeUnit.SECONDS))
+                    .isSameAs(first.get(5, TimeUnit.SECONDS));
+            verify(builder, times(1)).build();
+
+            registry.release(first.get());
+            verify(cache, never()).close();
+            registry.release(second.get());
+            verify(cache).close();
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUsesSharedEventExecutor() throws Exception {
+        registry.acquire("test-service");
+        verify(builder, never()).executorService(any(ExecutorService.class));
+
+        final ExecutorService workers = Executors.newSingleThreadExecutor();
+        try {
+            registry = new ServiceCacheRegistry<>(discovery, metrics, null,
+                    new CacheEventExecutor(workers, metrics));
+            registry.acquire("other-service");
+            verify(builder).executorService(any(ExecutorService.class));
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
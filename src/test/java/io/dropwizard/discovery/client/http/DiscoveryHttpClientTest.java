@@ -0,0 +1,200 @@
+package io.dropwizard.discovery.client.http;
+
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.curator.x.discovery.DownInstancePolicy;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceCacheBuilder;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.discovery.client.DiscoveryClient;
+import io.dropwizard.util.Duration;
+
+public class DiscoveryHttpClientTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    @SuppressWarnings("unchecked")
+    private final ServiceDiscovery<String> discovery = mock(
+            ServiceDiscovery.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCacheBuilder<String> builder = mock(
+            ServiceCacheBuilder.class);
+    @SuppressWarnings("unchecked")
+    private final ServiceCache<String> cache = mock(ServiceCache.class);
+    private final List<ServiceInstance<String>> instances = new ArrayList<>();
+    private Server server;
+    private ServerConnector first;
+    private ServerConnector second;
+    private DiscoveryClient<String> client;
+    private ServiceCacheListener listener;
+    private DiscoveryHttpClient<String> http;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server();
+        first = new ServerConnector(server);
+        second = new ServerConnector(server);
+        server.addConnector(first);
+        server.addConnector(second);
+        final ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new HttpServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void doGet(final HttpServletRequest req,
+                    final HttpServletResponse resp) throws IOException {
+                resp.setStatus(req.getRequestURI().equals("/fail") ? 503
+                        : 200);
+                resp.getWriter().print(req.getLocalPort());
+            }
+        }), "/*");
+        server.setHandler(context);
+        server.start();
+
+        when(discovery.serviceCacheBuilder()).thenReturn(builder);
+        when(builder.name(anyString())).thenReturn(builder);
+        when(builder.build()).thenReturn(cache);
+        when(cache.getInstances()).thenAnswer(i -> new ArrayList<>(instances));
+        instances.add(newInstance("first", first.getLocalPort()));
+        instances.add(newInstance("second", second.getLocalPort()));
+
+        client = new DiscoveryClient<String>("test-service", discovery,
+                new DownInstancePolicy(1, TimeUnit.MINUTES, 1),
+                new RoundRobinStrategy<String>());
+        client.start();
+        final ArgumentCaptor<ServiceCacheListener> captor = ArgumentCaptor
+                .forClass(ServiceCacheListener.class);
+        Mockito.verify(cache).addListener(captor.capture());
+        listener = captor.getValue();
+
+        final HttpClientConfiguration configuration = new HttpClientConfiguration();
+        configuration.setKeepAlive(Duration.minutes(1));
+        http = new DiscoveryHttpClientBuilder(metrics).using(configuration)
+                .warmConnections(2).build("test", client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        http.close();
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testWarmsConnectionsToNewInstances() throws Exception {
+        await(() -> available("first") == 2 && available("second") == 2);
+        await(() -> first.getConnectedEndPoints().size() == 2
+                && second.getConnectedEndPoints().size() == 2);
+    }
+
+    @Test
+    public void testClosesPoolsOfRemovedInstances() throws Exception {
+        await(() -> available("second") == 2);
+        instances.remove(1);
+        listener.cacheChanged();
+
+        await(() -> !metrics.getGauges().containsKey(gaugeName("second")));
+        assertThat(http.getPooledInstances()).containsExactly("first");
+        await(() -> second.getConnectedEndPoints().isEmpty());
+    }
+
+    @Test
+    public void testRoutesRequestsAcrossInstances() throws Exception {
+        final List<String> ports = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ports.add(http.execute(new HttpGet("/ping"),
+                    response -> response.getStatusLine().getStatusCode()
+                            + " " + EntityUtils.toString(response.getEntity())));
+        }
+        assertThat(ports).containsOnly("200 " + first.getLocalPort(),
+                "200 " + second.getLocalPort());
+        assertThat(ports).contains("200 " + first.getLocalPort(),
+                "200 " + second.getLocalPort());
+        assertThat(metrics.getTimers())
+                .containsKey("org.apache.http.client.HttpClient.test.get-requests");
+    }
+
+    @Test
+    public void testReportsErrors() throws Exception {
+        http.execute(new HttpGet("/fail"), response -> null);
+
+        // marked down after one error
+        assertThat(client.getSnapshot().getInstances()).hasSize(1);
+        // but keeps its pool
+        assertThat(http.getPooledInstances()).containsOnly("first", "second");
+    }
+
+    @Test
+    public void testNoInstances() throws Exception {
+        instances.clear();
+        listener.cacheChanged();
+        try {
+            http.execute(new HttpGet("/ping"));
+            fail("expected an IOException");
+        } catch (final IOException e) {
+            assertThat(e).hasMessageContaining("test-service");
+        }
+    }
+
+    @Test
+    public void testHostOf() {
+        assertThat(DiscoveryHttpClient.hostOf(newInstance("plain", 8080)))
+                .isEqualTo(new HttpHost("127.0.0.1", 8080, "http"));
+        assertThat(DiscoveryHttpClient.hostOf(new ServiceInstance<String>(
+                "test-service", "tls", "127.0.0.1", 8080, 8443, "payload", 0,
+                null, null, true)))
+                        .isEqualTo(new HttpHost("127.0.0.1", 8443, "https"));
+    }
+
+    private long available(final String id) {
+        @SuppressWarnings("rawtypes")
+        final Gauge gauge = metrics.getGauges().get(gaugeName(id));
+        return gauge == null ? -1 : ((Number) gauge.getValue()).longValue();
+    }
+
+    private static String gaugeName(final String id) {
+        return "org.apache.http.conn.HttpClientConnectionManager.test." + id
+                + ".available-connections";
+    }
+
+    private static void await(final BooleanSupplier condition)
+            throws InterruptedException {
+        final long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
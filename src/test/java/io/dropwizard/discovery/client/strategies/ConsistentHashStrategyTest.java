@@ -0,0 +1,194 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+
+public class ConsistentHashStrategyTest {
+
+    private static final int KEYS = 10000;
+
+    private final ConsistentHashStrategy<String> strategy = new ConsistentHashStrategy<>();
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertThat(strategy.getInstance(InstanceSnapshot.empty(), "key"))
+                .isNull();
+        assertThat(strategy.getInstance(InstanceSnapshot.empty())).isNull();
+    }
+
+    @Test
+    public void testSameKeySameInstance() throws Exception {
+        final InstanceSnapshot<String> snapshot = snapshot(instances(5));
+        final ServiceInstance<String> first = strategy.getInstance(snapshot,
+                "user-42");
+        for (int i = 0; i < 10; i++) {
+            assertThat(strategy.getInstance(snapshot, "user-42"))
+                    .isSameAs(first);
+        }
+        // and across equivalent snapshots
+        assertThat(strategy.getInstance(snapshot(snapshot.getAllInstances()),
+                "user-42")).isEqualTo(first);
+    }
+
+    @Test
+    public void testSpreadsKeys() throws Exception {
+        final Map<String, String> owners = owners(snapshot(instances(10)));
+        final Map<String, Integer> counts = new HashMap<>();
+        owners.values().forEach(id -> counts.merge(id, 1, Integer::sum));
+        assertThat(counts).hasSize(10);
+        // every instance gets within 50% of its fair share
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count)
+                .isBetween(KEYS / 20, KEYS * 3 / 20));
+    }
+
+    @Test
+    public void testAddingInstanceMovesFewKeys() throws Exception {
+        final List<ServiceInstance<String>> instances = instances(10);
+        final Map<String, String> before = owners(snapshot(instances));
+
+        final List<ServiceInstance<String>> grown = new ArrayList<>(instances);
+        grown.add(newInstance("added"));
+        final Map<String, String> after = owners(snapshot(grown));
+
+        int moved = 0;
+        for (final Map.Entry<String, String> entry : before.entrySet()) {
+            final String owner = after.get(entry.getKey());
+            if (!entry.getValue().equals(owner)) {
+                // keys only ever move to the new instance
+                assertThat(owner).isEqualTo("added");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(KEYS / 22, KEYS * 3 / 22);
+    }
+
+    @Test
+    public void testRemovingInstanceOnlyMovesItsKeys() throws Exception {
+        final List<ServiceInstance<String>> instances = instances(10);
+        final Map<String, String> before = owners(snapshot(instances));
+        final Map<String, String> after = owners(
+                snapshot(instances.subList(1, instances.size())));
+
+        for (final Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(instances.get(0).getId())) {
+                assertThat(after.get(entry.getKey()))
+                        .isEqualTo(entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testCollidingKeysHashApart() throws Exception {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        assertThat(ConsistentHashStrategy.hash("Aa"))
+                .isNotEqualTo(ConsistentHashStrategy.hash("BB"));
+    }
+
+    @Test
+    public void testIgnoresOlderSnapshot() throws Exception {
+        final List<ServiceInstance<String>> instances = instances(10);
+        final InstanceSnapshot<String> older = snapshot(instances);
+        final InstanceSnapshot<String> newer = snapshot(
+                instances.subList(1, instances.size()));
+        strategy.instancesChanged(newer);
+
+        // a caller still holding the older snapshot gets the newer ring
+        for (int i = 0; i < 100; i++) {
+            assertThat(checkNotNull(strategy.getInstance(older, "key-" + i))
+                    .getId()).isNotEqualTo(instances.get(0).getId());
+        }
+        strategy.instancesChanged(older);
+        for (int i = 0; i < 100; i++) {
+            assertThat(checkNotNull(strategy.getInstance(newer, "key-" + i))
+                    .getId()).isNotEqualTo(instances.get(0).getId());
+        }
+    }
+
+    @Test
+    public void testMarkedDownInstanceGetsKeysBack() throws Exception {
+        final List<ServiceInstance<String>> instances = instances(3);
+        final ServiceInstance<String> owner = strategy
+                .getInstance(snapshot(instances), "user-42");
+
+        final InstanceSnapshot<String> down = InstanceSnapshot.of(instances,
+                instance -> !instance.equals(owner), Long.MAX_VALUE);
+        strategy.instancesChanged(down);
+        assertThat(strategy.getInstance(down, "user-42")).isNotNull()
+                .isNotEqualTo(owner);
+        assertThat(strategy.getInstance(down)).isNotEqualTo(owner);
+
+        assertThat(strategy.getInstance(snapshot(instances), "user-42"))
+                .isEqualTo(owner);
+    }
+
+    @Test
+    public void testPlainProvider() throws Exception {
+        final List<ServiceInstance<String>> instances = instances(3);
+        assertThat(strategy.getInstance(() -> instances, "user-42"))
+                .isEqualTo(strategy.getInstance(snapshot(instances),
+                        "user-42"));
+    }
+
+    @Test
+    public void testBoundedLoadSpillsOver() throws Exception {
+        final ConsistentHashStrategy<String> bounded = new ConsistentHashStrategy<>(
+                ConsistentHashStrategy.DEFAULT_POINTS_PER_INSTANCE, 1.0);
+        final InstanceSnapshot<String> snapshot = snapshot(instances(2));
+        bounded.instancesChanged(snapshot);
+
+        final ServiceInstance<String> owner = checkNotNull(
+                bounded.getInstance(snapshot, "user-42"));
+        assertThat(bounded.getLoad(owner.getId())).isEqualTo(1);
+        // the owner already has more than its share
+        final ServiceInstance<String> other = checkNotNull(
+                bounded.getInstance(snapshot, "user-42"));
+        assertThat(other).isNotEqualTo(owner);
+
+        bounded.noteOutcome(owner, 1000, true);
+        bounded.noteOutcome(other, 1000, true);
+        assertThat(bounded.getLoad(owner.getId())).isZero();
+        assertThat(bounded.getInstance(snapshot, "user-42")).isEqualTo(owner);
+    }
+
+    @Test
+    public void testUnboundedLoadIsNotTracked() throws Exception {
+        final InstanceSnapshot<String> snapshot = snapshot(instances(2));
+        final ServiceInstance<String> owner = checkNotNull(
+                strategy.getInstance(snapshot, "user-42"));
+        assertThat(strategy.getInstance(snapshot, "user-42")).isEqualTo(owner);
+        assertThat(strategy.getLoad(owner.getId())).isZero();
+    }
+
+    private Map<String, String> owners(final InstanceSnapshot<String> snapshot)
+            throws Exception {
+        strategy.instancesChanged(snapshot);
+        final Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owners.put("key-" + i, checkNotNull(
+                    strategy.getInstance(snapshot, "key-" + i)).getId());
+        }
+        return owners;
+    }
+
+    private static InstanceSnapshot<String> snapshot(
+            final List<ServiceInstance<String>> instances) {
+        return InstanceSnapshot.of(instances, instance -> true,
+                Long.MAX_VALUE);
+    }
+
+    private static List<ServiceInstance<String>> instances(final int count) {
+        final List<ServiceInstance<String>> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            instances.add(newInstance("instance-" + i));
+        }
+        return instances;
+    }
+}
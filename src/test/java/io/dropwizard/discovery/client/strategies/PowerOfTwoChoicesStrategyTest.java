@@ -0,0 +1,146 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.dropwizard.discovery.TestInstances.newInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+import com.google.common.base.Ticker;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+
+public class PowerOfTwoChoicesStrategyTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    };
+    private final PowerOfTwoChoicesStrategy<String> strategy = new PowerOfTwoChoicesStrategy<>(
+            1, 1, TimeUnit.SECONDS, ticker);
+    private final ServiceInstance<String> fast = newInstance("fast");
+    private final ServiceInstance<String> slow = newInstance("slow");
+    private final InstanceSnapshot<String> snapshot = snapshot(fast, slow);
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertThat(strategy.getInstance(snapshot())).isNull();
+    }
+
+    @Test
+    public void testSingleInstance() throws Exception {
+        assertThat(strategy.getInstance(snapshot(slow))).isEqualTo(slow);
+    }
+
+    @Test
+    public void testAvoidsSlowInstance() throws Exception {
+        call(fast, TimeUnit.MILLISECONDS.toNanos(1), true);
+        call(slow, TimeUnit.MILLISECONDS.toNanos(100), true);
+
+        for (int i = 0; i < 10; i++) {
+            final ServiceInstance<String> instance = checkNotNull(
+                    strategy.getInstance(snapshot));
+            assertThat(instance).isEqualTo(fast);
+            strategy.noteOutcome(instance, TimeUnit.MILLISECONDS.toNanos(1),
+                    true);
+        }
+    }
+
+    @Test
+    public void testSpreadsCallsInFlight() throws Exception {
+        call(fast, TimeUnit.MILLISECONDS.toNanos(10), true);
+        call(slow, TimeUnit.MILLISECONDS.toNanos(10), true);
+
+        final List<ServiceInstance<String>> chosen = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            chosen.add(strategy.getInstance(snapshot));
+        }
+        assertThat(chosen).filteredOn(fast::equals).hasSize(2);
+        assertThat(chosen).filteredOn(slow::equals).hasSize(2);
+    }
+
+    @Test
+    public void testPeakAndDecay() throws Exception {
+        call(slow, TimeUnit.MILLISECONDS.toNanos(100), true);
+        assertThat(strategy.getCost("slow"))
+                .isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(strategy.getCost("slow"))
+                .isLessThan(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testErrorsArePenalized() throws Exception {
+        call(slow, 0, false);
+        assertThat(strategy.getCost("slow"))
+                .isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testForgetsInstancesThatLeave() throws Exception {
+        strategy.getInstance(snapshot(fast));
+        strategy.getInstance(snapshot(slow));
+        assertThat(strategy.trackedInstances()).isEqualTo(2);
+
+        strategy.instancesChanged(snapshot(fast));
+        assertThat(strategy.trackedInstances()).isEqualTo(1);
+        assertThat(strategy.getCost("slow")).isZero();
+    }
+
+    @Test
+    public void testUnscoredInstanceGetsOneCall() throws Exception {
+        call(slow, TimeUnit.MILLISECONDS.toNanos(100), true);
+        assertThat(strategy.getCost("fast")).isZero();
+
+        // idle, so it gets a first call
+        assertThat(strategy.getInstance(snapshot)).isEqualTo(fast);
+        // but not the next one while that call is in flight
+        assertThat(strategy.getCost("fast"))
+                .isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(strategy.getInstance(snapshot)).isEqualTo(slow);
+    }
+
+    @Test
+    public void testUnreportedCallsDecay() throws Exception {
+        // callers that never report an outcome
+        for (int i = 0; i < 1000; i++) {
+            strategy.getInstance(snapshot(fast));
+        }
+        assertThat(strategy.getCost("fast"))
+                .isEqualTo(TimeUnit.SECONDS.toNanos(1000));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        assertThat(strategy.getCost("fast"))
+                .isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testIgnoresOutcomesOfInstancesThatLeft() throws Exception {
+        strategy.getInstance(snapshot(slow));
+        strategy.instancesChanged(snapshot(fast));
+
+        strategy.noteOutcome(slow, TimeUnit.MILLISECONDS.toNanos(100), true);
+        assertThat(strategy.trackedInstances()).isZero();
+    }
+
+    private void call(final ServiceInstance<String> instance,
+            final long latencyNanos, final boolean success) throws Exception {
+        assertThat(strategy.getInstance(snapshot(instance)))
+                .isEqualTo(instance);
+        strategy.noteOutcome(instance, latencyNanos, success);
+    }
+
+    @SafeVarargs
+    private static InstanceSnapshot<String> snapshot(
+            final ServiceInstance<String>... instances) {
+        return InstanceSnapshot.of(Arrays.asList(instances), i -> true,
+                Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,94 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+public class WeightedStrategyTest {
+
+    private final WeightedStrategy<InstanceMetadata> strategy = WeightedStrategy
+            .forInstanceMetadata();
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertThat(strategy.getInstance(InstanceSnapshot.empty())).isNull();
+    }
+
+    @Test
+    public void testWeightOf() {
+        assertThat(WeightedStrategy.weightOf(withLoad(null, null)))
+                .isEqualTo(1.0);
+        assertThat(WeightedStrategy.weightOf(withLoad(8, 0.25)))
+                .isEqualTo(6.0);
+        // never below the minimum headroom
+        assertThat(WeightedStrategy.weightOf(withLoad(8, 3.0)))
+                .isCloseTo(0.4, within(1e-9));
+    }
+
+    @Test
+    public void testProportionalToWeight() throws Exception {
+        final ServiceInstance<InstanceMetadata> small = withLoad(1, 0.0);
+        final ServiceInstance<InstanceMetadata> large = withLoad(4, 0.25);
+        final InstanceSnapshot<InstanceMetadata> snapshot = snapshot(small,
+                large);
+        strategy.instancesChanged(snapshot);
+
+        final Map<ServiceInstance<InstanceMetadata>, Integer> counts = count(
+                snapshot, 40_000);
+        // weighted 1 to 3
+        assertThat(counts.getOrDefault(large, 0)
+                / (double) counts.getOrDefault(small, 0))
+                .isCloseTo(3.0, within(0.3));
+    }
+
+    @Test
+    public void testZeroWeights() throws Exception {
+        final ServiceInstance<InstanceMetadata> first = withLoad(null, null);
+        final ServiceInstance<InstanceMetadata> second = withLoad(null,
+                null);
+        final ServiceInstance<InstanceMetadata> third = withLoad(null, null);
+        final WeightedStrategy<InstanceMetadata> some = new WeightedStrategy<>(
+                instance -> instance.equals(second) ? 1 : 0);
+        final InstanceSnapshot<InstanceMetadata> snapshot = snapshot(first,
+                second, third);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(some.getInstance(snapshot)).isSameAs(second);
+        }
+
+        final WeightedStrategy<InstanceMetadata> none = new WeightedStrategy<>(
+                instance -> Double.NaN);
+        assertThat(none.getInstance(snapshot)).isIn(first, second, third);
+    }
+
+    private Map<ServiceInstance<InstanceMetadata>, Integer> count(
+            final InstanceSnapshot<InstanceMetadata> snapshot, final int draws)
+            throws Exception {
+        final Map<ServiceInstance<InstanceMetadata>, Integer> counts = new HashMap<>();
+        for (int i = 0; i < draws; i++) {
+            counts.merge(strategy.getInstance(snapshot), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @SafeVarargs
+    private static InstanceSnapshot<InstanceMetadata> snapshot(
+            final ServiceInstance<InstanceMetadata>... instances) {
+        return InstanceSnapshot.of(Arrays.asList(instances),
+                instance -> true, Long.MAX_VALUE);
+    }
+
+    private static ServiceInstance<InstanceMetadata> withLoad(
+            @Nullable final Integer capacity, @Nullable final Double load) {
+        return newMetadataInstance(id -> new InstanceMetadata(id, "127.0.0.1",
+                8080, Optional.empty(), null, null, capacity, load));
+    }
+}
@@ -0,0 +1,111 @@
+package io.dropwizard.discovery.client.strategies;
+
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+import io.dropwizard.discovery.client.InstanceSnapshot;
+import io.dropwizard.discovery.client.strategies.ZoneAwareStrategy.Tier;
+import io.dropwizard.discovery.core.InstanceMetadata;
+
+public class ZoneAwareStrategyTest {
+
+    private final ZoneAwareStrategy<InstanceMetadata> strategy = ZoneAwareStrategy
+            .forInstanceMetadata("us-east-1a", "us-east-1");
+    private final ServiceInstance<InstanceMetadata> local1 = inZone(
+            "us-east-1a", "us-east-1");
+    private final ServiceInstance<InstanceMetadata> local2 = inZone(
+            "us-east-1a", "us-east-1");
+    private final ServiceInstance<InstanceMetadata> nearby = inZone(
+            "us-east-1b", "us-east-1");
+    private final ServiceInstance<InstanceMetadata> remote = inZone(
+            "eu-west-1a", "eu-west-1");
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertThat(strategy.getInstance(InstanceSnapshot.empty())).isNull();
+    }
+
+    @Test
+    public void testPrefersLocalZone() throws Exception {
+        final InstanceSnapshot<InstanceMetadata> snapshot = snapshot(
+                new HashSet<>());
+        strategy.instancesChanged(snapshot);
+        assertThat(strategy.getTier()).isEqualTo(Tier.ZONE);
+        assertThat(chosen(snapshot)).containsOnly(local1, local2);
+    }
+
+    @Test
+    public void testSpillsOverToRegion() throws Exception {
+        // half of the zone is still healthy
+        final InstanceSnapshot<InstanceMetadata> halfDown = snapshot(
+                set(local2.getId()));
+        strategy.instancesChanged(halfDown);
+        assertThat(strategy.getTier()).isEqualTo(Tier.ZONE);
+        assertThat(chosen(halfDown)).containsOnly(local1);
+
+        final InstanceSnapshot<InstanceMetadata> zoneDown = snapshot(
+                set(local1.getId(), local2.getId()));
+        strategy.instancesChanged(zoneDown);
+        assertThat(strategy.getTier()).isEqualTo(Tier.REGION);
+        assertThat(chosen(zoneDown)).containsOnly(nearby);
+    }
+
+    @Test
+    public void testSpillsOverToEveryInstance() throws Exception {
+        final InstanceSnapshot<InstanceMetadata> regionDown = snapshot(
+                set(local1.getId(), local2.getId(), nearby.getId()));
+        strategy.instancesChanged(regionDown);
+        assertThat(strategy.getTier()).isEqualTo(Tier.ANY);
+        assertThat(chosen(regionDown)).containsOnly(remote);
+    }
+
+    @Test
+    public void testUnknownLocality() throws Exception {
+        final ZoneAwareStrategy<InstanceMetadata> unknown = ZoneAwareStrategy
+                .forInstanceMetadata(null, null);
+        final InstanceSnapshot<InstanceMetadata> snapshot = snapshot(
+                new HashSet<>());
+        unknown.instancesChanged(snapshot);
+        assertThat(unknown.getTier()).isEqualTo(Tier.ANY);
+        assertThat(chosen(snapshot)).isNotEmpty();
+    }
+
+    @Test
+    public void testPartitionsUnseenProvider() throws Exception {
+        assertThat(strategy.getInstance(() -> Arrays.asList(nearby, remote)))
+                .isEqualTo(nearby);
+    }
+
+    private Set<ServiceInstance<InstanceMetadata>> chosen(
+            final InstanceSnapshot<InstanceMetadata> snapshot)
+            throws Exception {
+        final Set<ServiceInstance<InstanceMetadata>> chosen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            chosen.add(strategy.getInstance(snapshot));
+        }
+        return chosen;
+    }
+
+    private InstanceSnapshot<InstanceMetadata> snapshot(
+            final Set<String> down) {
+        return InstanceSnapshot.of(
+                Arrays.asList(local1, local2, nearby, remote),
+                instance -> !down.contains(instance.getId()), Long.MAX_VALUE);
+    }
+
+    private static Set<String> set(final String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static ServiceInstance<InstanceMetadata> inZone(
+            @Nullable final String zone, @Nullable final String region) {
+        return newMetadataInstance(id -> new InstanceMetadata(id, "127.0.0.1",
+                8080, Optional.empty(), zone, region));
+    }
+}
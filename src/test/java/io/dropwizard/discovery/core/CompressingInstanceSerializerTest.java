@@ -0,0 +1,80 @@
+package io.dropwizard.discovery.core;
+
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Optional;
+import org.apache.curator.framework.imps.GzipCompressionProvider;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.Test;
+
+public class CompressingInstanceSerializerTest {
+
+    private final InstanceMetadataSerializer delegate = new InstanceMetadataSerializer();
+    private final ServiceInstance<InstanceMetadata> instance = newMetadataInstance(
+            id -> new InstanceMetadata(id, "127.0.0.1", 8080,
+                    Optional.of(8081)));
+
+    @Test
+    public void testBelowThreshold() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> serializer = new CompressingInstanceSerializer<>(
+                delegate, new GzipCompressionProvider(), 4096);
+        final byte[] bytes = serializer.serialize(instance);
+        assertThat(bytes).isEqualTo(delegate.serialize(instance));
+        assertThat(serializer.deserialize(bytes)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> serializer = new CompressingInstanceSerializer<>(
+                delegate, new GzipCompressionProvider(), 0);
+        final byte[] bytes = serializer.serialize(instance);
+        assertThat(bytes[0]).isEqualTo((byte) 0x1f);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testSnappy() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> serializer = new CompressingInstanceSerializer<>(
+                delegate, new SnappyCompressionProvider(), 0);
+        final byte[] bytes = serializer.serialize(instance);
+        assertThat(SnappyCompressionProvider.isCompressed(bytes)).isTrue();
+        assertThat(bytes.length)
+                .isLessThan(delegate.serialize(instance).length);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testNone() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> serializer = new CompressingInstanceSerializer<>(
+                delegate, new NoCompressionProvider(), 0);
+        assertThat(serializer.serialize(instance))
+                .isEqualTo(delegate.serialize(instance));
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> serializer = new CompressingInstanceSerializer<>(
+                delegate);
+        assertThat(serializer.serialize(instance))
+                .isEqualTo(delegate.serialize(instance));
+    }
+
+    @Test
+    public void testReadsAllCodecs() throws Exception {
+        final CompressingInstanceSerializer<InstanceMetadata> reader = new CompressingInstanceSerializer<>(
+                delegate);
+        final byte[] gzip = new CompressingInstanceSerializer<>(delegate,
+                new GzipCompressionProvider(), 0).serialize(instance);
+        final byte[] snappy = new CompressingInstanceSerializer<>(delegate,
+                new SnappyCompressionProvider(), 0).serialize(instance);
+        final byte[] smile = new CompressingInstanceSerializer<>(
+                new InstanceMetadataSerializer(PayloadFormat.SMILE),
+                new SnappyCompressionProvider(), 0).serialize(instance);
+
+        assertThat(reader.deserialize(gzip)).isEqualTo(instance);
+        assertThat(reader.deserialize(snappy)).isEqualTo(instance);
+        assertThat(reader.deserialize(smile)).isEqualTo(instance);
+        assertThat(reader.deserialize(delegate.serialize(instance)))
+                .isEqualTo(instance);
+    }
+}
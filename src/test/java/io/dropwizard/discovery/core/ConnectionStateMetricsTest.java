@@ -0,0 +1,65 @@
+package io.dropwizard.discovery.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.apache.curator.CuratorZookeeperClient;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.junit.Before;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+
+public class ConnectionStateMetricsTest {
+
+    private static final String PREFIX = "org.apache.curator.framework.CuratorFramework.connection.test-service.";
+
+    private final CuratorFramework framework = mock(CuratorFramework.class);
+    private final CuratorZookeeperClient zookeeper = mock(
+            CuratorZookeeperClient.class);
+    private final MetricRegistry metrics = new MetricRegistry();
+    private ConnectionStateMetrics listener;
+
+    @Before
+    public void setUp() {
+        when(framework.getZookeeperClient()).thenReturn(zookeeper);
+        listener = new ConnectionStateMetrics(framework, metrics,
+                "test-service");
+    }
+
+    @Test
+    public void testStateChanges() throws Exception {
+        assertThat(gauge(PREFIX + "state")).isEqualTo("UNKNOWN");
+
+        when(zookeeper.isConnected()).thenReturn(true);
+        listener.stateChanged(framework, ConnectionState.CONNECTED);
+
+        assertThat(gauge(PREFIX + "state")).isEqualTo("CONNECTED");
+        assertThat(gauge(PREFIX + "connected")).isEqualTo(true);
+        assertThat(metrics.meter(PREFIX + "changes").getCount()).isEqualTo(1);
+        assertThat((Long) gauge(PREFIX + "time-since-last-change"))
+                .isBetween(0L, 1000L);
+    }
+
+    @Test
+    public void testKeepsOtherServices() throws Exception {
+        final ConnectionStateMetrics other = new ConnectionStateMetrics(
+                framework, metrics, "other-service");
+        other.stateChanged(framework, ConnectionState.LOST);
+
+        assertThat(gauge(PREFIX + "state")).isEqualTo("UNKNOWN");
+        assertThat(gauge(
+                "org.apache.curator.framework.CuratorFramework.connection.other-service.state"))
+                        .isEqualTo("LOST");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSameService() throws Exception {
+        new ConnectionStateMetrics(framework, metrics, "test-service");
+    }
+
+    private Object gauge(final String name) {
+        return checkNotNull(metrics.getGauges().get(name)).getValue();
+    }
+}
@@ -0,0 +1,179 @@
+package io.dropwizard.discovery.core;
+
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.eclipse.jetty.server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+
+public class CuratorAdvertisementListenerTest {
+
+    @SuppressWarnings("unchecked")
+    private final CuratorAdvertiser<InstanceMetadata> advertiser = mock(
+            CuratorAdvertiser.class);
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final CuratorAdvertisementListener<InstanceMetadata> listener = new CuratorAdvertisementListener<>(
+            advertiser, executor, metrics, 3, Duration.milliseconds(1));
+    private final Server server = new Server(0);
+    private ServiceInstance<InstanceMetadata> instance;
+
+    @Before
+    public void setUp() throws Exception {
+        instance = newMetadataInstance();
+        when(advertiser.getInstance()).thenReturn(instance);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRegisters() throws Exception {
+        listener.serverStarted(server);
+
+        assertThat(listener.getRegistration().get(5, TimeUnit.SECONDS))
+                .isEqualTo(instance);
+        verify(advertiser).initListenInfo(anyInt(), anyInt());
+        verify(advertiser).registerAvailability();
+        assertThat(metrics.timer(
+                "io.dropwizard.discovery.core.CuratorAdvertisementListener.time-to-register")
+                .getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        doThrow(new IllegalStateException("not connected"))
+                .doNothing().when(advertiser).registerAvailability();
+        listener.serverStarted(server);
+
+        assertThat(listener.getRegistration().get(5, TimeUnit.SECONDS))
+                .isEqualTo(instance);
+        verify(advertiser, times(2)).registerAvailability();
+    }
+
+    @Test
+    public void testGivesUp() throws Exception {
+        final Exception error = new IllegalStateException("not connected");
+        doThrow(error).when(advertiser).registerAvailability();
+        listener.serverStarted(server);
+
+        try {
+            listener.getRegistration().get(5, TimeUnit.SECONDS);
+            failBecauseExceptionWasNotThrown(ExecutionException.class);
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isSameAs(error);
+        }
+        verify(advertiser, times(3)).registerAvailability();
+    }
+
+    @Test
+    public void testStopCancelsRetry() throws Exception {
+        final CuratorAdvertisementListener<InstanceMetadata> slow = new CuratorAdvertisementListener<>(
+                advertiser, executor, metrics, 3, Duration.minutes(1));
+        final CountDownLatch attempted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            attempted.countDown();
+            throw new IllegalStateException("not connected");
+        }).when(advertiser).registerAvailability();
+        slow.serverStarted(server);
+        assertThat(attempted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        slow.stop();
+
+        try {
+            slow.getRegistration().get(5, TimeUnit.SECONDS);
+            failBecauseExceptionWasNotThrown(ExecutionException.class);
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(CancellationException.class);
+        }
+        // the retry may not have been scheduled before stop()
+        assertThat(executor.shutdownNow())
+                .allMatch(retry -> ((Future<?>) retry).isCancelled());
+        verify(advertiser, times(1)).registerAvailability();
+    }
+
+    @Test
+    public void testStopDoesNotWaitForAttempt() throws Exception {
+        final CountDownLatch attempting = new CountDownLatch(1);
+        final CountDownLatch connected = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            attempting.countDown();
+            connected.await();
+            return null;
+        }).when(advertiser).registerAvailability();
+        listener.serverStarted(server);
+        assertThat(attempting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        final ExecutorService stopper = Executors.newSingleThreadExecutor();
+        try {
+            stopper.submit(listener::stop).get(5, TimeUnit.SECONDS);
+        } finally {
+            connected.countDown();
+            stopper.shutdown();
+        }
+        try {
+            listener.getRegistration().get(5, TimeUnit.SECONDS);
+            failBecauseExceptionWasNotThrown(ExecutionException.class);
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(CancellationException.class);
+        }
+    }
+
+    @Test
+    public void testFailsWithoutListenInfo() throws Exception {
+        final Exception error = new IllegalStateException("no address");
+        doThrow(error).when(advertiser).initListenInfo(anyInt(), anyInt());
+        listener.serverStarted(server);
+
+        try {
+            listener.getRegistration().get(5, TimeUnit.SECONDS);
+            failBecauseExceptionWasNotThrown(ExecutionException.class);
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isSameAs(error);
+        }
+        verify(advertiser, never()).registerAvailability();
+    }
+
+    @Test
+    public void testDoesNotRegisterOnceStopped() throws Exception {
+        listener.stop();
+        listener.serverStarted(server);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        verify(advertiser, never()).registerAvailability();
+    }
+
+    @Test
+    public void testFutureIsReadOnly() throws Exception {
+        listener.getRegistration().complete(null);
+        doNothing().when(advertiser).registerAvailability();
+        listener.serverStarted(server);
+        assertThat(listener.getRegistration().get(5, TimeUnit.SECONDS))
+                .isEqualTo(instance);
+    }
+}
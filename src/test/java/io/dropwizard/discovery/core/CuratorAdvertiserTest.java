@@ -3,13 +3,20 @@ package io.dropwizard.discovery.core;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.junit.Before;
 import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.discovery.DiscoveryFactory;
+import io.dropwizard.util.Duration;
 
 public class CuratorAdvertiserTest {
 
@@ -85,4 +92,126 @@ public class CuratorAdvertiserTest {
         advertiser.unregisterAvailability(instance);
         verify(discovery).unregisterService(instance);
     }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        advertiser.setMetricRegistry(metrics);
+        advertiser.initListenInfo(8080, null);
+        advertiser.registerAvailability();
+        advertiser.unregisterAvailability();
+
+        assertThat(metrics.timer(
+                "io.dropwizard.discovery.core.CuratorAdvertiser.register")
+                .getCount()).isEqualTo(1);
+        assertThat(metrics.timer(
+                "io.dropwizard.discovery.core.CuratorAdvertiser.unregister")
+                .getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReRegister() throws Exception {
+        assertThat(advertiser.reRegister()).isFalse();
+
+        advertiser.initListenInfo(8080, null);
+        advertiser.registerAvailability();
+        assertThat(advertiser.reRegister()).isTrue();
+        verify(discovery, times(2)).registerService(advertiser.getInstance());
+
+        advertiser.unregisterAvailability();
+        assertThat(advertiser.reRegister()).isFalse();
+    }
+
+    @Test
+    public void testSeveralInstances() throws Exception {
+        final ServiceInstance<InstanceMetadata> admin = ServiceInstance
+                .<InstanceMetadata>builder().name("test-service-admin")
+                .address("127.0.0.1").port(8180).build();
+        final CuratorAdvertiser<InstanceMetadata> several = new CuratorAdvertiser<InstanceMetadata>(
+                factory, discovery, new DefaultServiceInstanceFactory() {
+                    @Override
+                    public List<ServiceInstance<InstanceMetadata>> buildAll(
+                            final String serviceName,
+                            final CuratorAdvertiser<InstanceMetadata> advertiser)
+                            throws Exception {
+                        return Arrays.asList(build(serviceName, advertiser),
+                                admin);
+                    }
+                });
+        several.initListenInfo(8080, 8180);
+        assertThat(several.getInstances()).hasSize(2)
+                .startsWith(several.getInstance()).endsWith(admin);
+
+        several.registerAvailability();
+        verify(discovery).registerService(several.getInstance());
+        verify(discovery).registerService(admin);
+
+        several.unregisterAvailability();
+        verify(discovery).unregisterService(several.getInstance());
+        verify(discovery).unregisterService(admin);
+        assertThat(several.reRegister()).isFalse();
+    }
+
+    @Test
+    public void testReportLoad() throws Exception {
+        factory.setCapacity(8);
+        advertiser.initListenInfo(8080, null);
+        // only published along with the load
+        assertThat(advertiser.getInstance().getPayload().getCapacity())
+                .isEmpty();
+        factory.setLoadReportInterval(Duration.seconds(10));
+        final CuratorAdvertiser<InstanceMetadata> reporting = new CuratorAdvertiser<InstanceMetadata>(
+                factory, discovery, new DefaultServiceInstanceFactory());
+        reporting.initListenInfo(8080, null);
+        // not registered yet, carried by the registration
+        assertThat(reporting.reportLoad(0.5)).isFalse();
+        assertThat(reporting.getInstance().getPayload().getLoad())
+                .contains(0.5);
+        assertThat(reporting.getInstance().getPayload().getCapacity())
+                .contains(8);
+
+        reporting.registerAvailability();
+        assertThat(reporting.reportLoad(0.75)).isTrue();
+        final ServiceInstance<InstanceMetadata> updated = reporting
+                .getInstance();
+        assertThat(updated.getPayload().getLoad()).contains(0.75);
+        verify(discovery).updateService(updated);
+        // nothing to write when the load has not changed
+        assertThat(reporting.reportLoad(0.75)).isFalse();
+    }
+
+    @Test
+    public void testZoneAndRegion() throws Exception {
+        factory.setListenAddress("127.0.0.1");
+        factory.setZone("us-east-1a");
+        factory.setRegion("us-east-1");
+        final CuratorAdvertiser<InstanceMetadata> located = new CuratorAdvertiser<InstanceMetadata>(
+                factory, discovery, new DefaultServiceInstanceFactory());
+        located.initListenInfo(8080, null);
+
+        final InstanceMetadata metadata = located.getInstance().getPayload();
+        assertThat(metadata.getZone()).contains("us-east-1a");
+        assertThat(metadata.getRegion()).contains("us-east-1");
+
+        // nothing is published unless configured
+        final DiscoveryFactory unconfigured = new DiscoveryFactory();
+        unconfigured.setListenAddress("127.0.0.1");
+        final CuratorAdvertiser<InstanceMetadata> unlocated = new CuratorAdvertiser<InstanceMetadata>(
+                unconfigured, discovery, new DefaultServiceInstanceFactory());
+        unlocated.initListenInfo(8080, null);
+        assertThat(unlocated.getInstance().getPayload().getZone()).isEmpty();
+        assertThat(unlocated.getInstance().getPayload().getRegion()).isEmpty();
+    }
+
+    @Test
+    public void testDetect() {
+        final Map<String, String> environment = new HashMap<>();
+        environment.put("AWS_REGION", "eu-west-1");
+        assertThat(CuratorAdvertiser.detect("us-east-1", environment::get,
+                "DISCOVERY_REGION", "AWS_REGION")).isEqualTo("us-east-1");
+        assertThat(CuratorAdvertiser.detect(null, environment::get,
+                "DISCOVERY_REGION", "AWS_REGION")).isEqualTo("eu-west-1");
+        assertThat(CuratorAdvertiser.detect("", environment::get,
+                "DISCOVERY_ZONE")).isNull();
+    }
 }
@@ -0,0 +1,96 @@
+package io.dropwizard.discovery.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import java.io.IOException;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.dropwizard.discovery.DiscoveryFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+
+public class CuratorConnectionRegistryTest {
+
+    private final CuratorConnectionRegistry registry = new CuratorConnectionRegistry();
+    private TestingServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void testSharesConnectionAcrossNamespaces() throws Exception {
+        final CuratorFramework first = registry
+                .acquire(newConfig("first"));
+        final CuratorFramework second = registry
+                .acquire(newConfig("second"));
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.references(first)).isEqualTo(2);
+        assertThat(first.getZookeeperClient())
+                .isSameAs(second.getZookeeperClient());
+        assertThat(first.getState()).isEqualTo(CuratorFrameworkState.STARTED);
+
+        first.create().forPath("/node", new byte[] { 1 });
+        assertThat(second.checkExists().forPath("/node")).isNull();
+        assertThat(first.getZookeeperClient().getZooKeeper()
+                .exists("/first/node", false)).isNotNull();
+
+        registry.release(first);
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(second.getState()).isEqualTo(CuratorFrameworkState.STARTED);
+        assertThat(registry.references(second)).isEqualTo(1);
+        registry.release(second);
+        assertThat(registry.size()).isZero();
+        assertThat(registry.references(second)).isZero();
+        assertThat(second.getState()).isEqualTo(CuratorFrameworkState.STOPPED);
+    }
+
+    @Test
+    public void testSeparatesSessionSettings() throws Exception {
+        final DiscoveryFactory other = newConfig("first");
+        other.setSessionTimeout(Duration.seconds(10));
+        final CuratorFramework first = registry
+                .acquire(newConfig("first"));
+        final CuratorFramework second = registry.acquire(other);
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(first.getZookeeperClient())
+                .isNotSameAs(second.getZookeeperClient());
+        registry.release(first);
+        registry.release(second);
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    public void testReleaseUnknown() throws Exception {
+        final CuratorFramework framework = CuratorFrameworkFactory
+                .newClient(server.getConnectString(), new RetryOneTime(1));
+        try {
+            registry.release(framework);
+            fail("expected an IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e).hasMessageContaining("not acquired");
+        }
+    }
+
+    private DiscoveryFactory newConfig(final String namespace)
+            throws IOException {
+        final DiscoveryFactory config = Jackson.newObjectMapper().readValue(
+                "{\"hosts\":[\"127.0.0.1\"],\"port\":" + server.getPort()
+                        + "}",
+                DiscoveryFactory.class);
+        config.setNamespace(namespace);
+        return config;
+    }
+}
@@ -0,0 +1,198 @@
+package io.dropwizard.discovery.core;
+
+import static io.dropwizard.discovery.TestInstances.metadataBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.ServiceType;
+import org.apache.curator.x.discovery.UriSpec;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonParseException;
+import io.dropwizard.jackson.Jackson;
+
+public class InstanceMetadataSerializerTest {
+
+    private final InstanceMetadataSerializer serializer = new InstanceMetadataSerializer();
+    private final JacksonInstanceSerializer<InstanceMetadata> jackson = JacksonInstanceSerializer
+            .forPayload(Jackson.newObjectMapper(), InstanceMetadata.class);
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        assertThat(serializer.deserialize(serializer.serialize(instance)))
+                .isEqualTo(instance);
+    }
+
+    @Test
+    public void testRoundTripWithNulls() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = new ServiceInstance<InstanceMetadata>(
+                "test-service", "id", null, null, null, null, 0,
+                ServiceType.PERMANENT, null, false);
+        assertThat(serializer.deserialize(serializer.serialize(instance)))
+                .isEqualTo(instance);
+    }
+
+    @Test
+    public void testSameEncodingAsJackson() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.empty());
+        assertThat(new String(serializer.serialize(instance),
+                StandardCharsets.UTF_8)).isEqualTo(new String(
+                        jackson.serialize(instance), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadsJackson() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        assertThat(serializer.deserialize(jackson.serialize(instance)))
+                .isEqualTo(instance);
+        assertThat(jackson.deserialize(serializer.serialize(instance)))
+                .isEqualTo(instance);
+    }
+
+    @Test
+    public void testIgnoresUnknownPayloadFields() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        // as written by a newer version
+        final byte[] newer = new String(jackson.serialize(instance),
+                StandardCharsets.UTF_8)
+                        .replace("\"listenPort\"",
+                                "\"future\":{\"a\":[1]},\"listenPort\"")
+                        .getBytes(StandardCharsets.UTF_8);
+        assertThat(jackson.deserialize(newer)).isEqualTo(instance);
+        assertThat(serializer.deserialize(newer)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testSmileRoundTrip() throws Exception {
+        final InstanceMetadataSerializer smile = new InstanceMetadataSerializer(
+                PayloadFormat.SMILE);
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        final byte[] bytes = smile.serialize(instance);
+        assertThat(PayloadFormat.detect(bytes)).isEqualTo(PayloadFormat.SMILE);
+        assertThat(bytes.length)
+                .isLessThan(serializer.serialize(instance).length);
+        assertThat(smile.deserialize(bytes)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testReadsAllFormats() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        final byte[] json = serializer.serialize(instance);
+        final byte[] smile = new InstanceMetadataSerializer(PayloadFormat.SMILE)
+                .serialize(instance);
+        assertThat(PayloadFormat.detect(json)).isEqualTo(PayloadFormat.JSON);
+
+        assertThat(serializer.deserialize(smile)).isEqualTo(instance);
+        assertThat(jackson.deserialize(smile)).isEqualTo(instance);
+        assertThat(JacksonInstanceSerializer
+                .forPayload(Jackson.newObjectMapper(), InstanceMetadata.class,
+                        PayloadFormat.SMILE)
+                .deserialize(json)).isEqualTo(instance);
+    }
+
+    @Test
+    public void testSameSmileEncodingAsJackson() throws Exception {
+        final ServiceInstance<InstanceMetadata> instance = withAdminPort(
+                Optional.of(8081));
+        final JacksonInstanceSerializer<InstanceMetadata> jacksonSmile = JacksonInstanceSerializer
+                .forPayload(Jackson.newObjectMapper(), InstanceMetadata.class,
+                        PayloadFormat.SMILE);
+        assertThat(new InstanceMetadataSerializer(PayloadFormat.SMILE)
+                .deserialize(jacksonSmile.serialize(instance)))
+                        .isEqualTo(instance);
+        assertThat(jacksonSmile.deserialize(
+                new InstanceMetadataSerializer(PayloadFormat.SMILE)
+                        .serialize(instance))).isEqualTo(instance);
+    }
+
+    @Test
+    public void testZoneAndRegion() throws Exception {
+        final UUID id = UUID.randomUUID();
+        final ServiceInstance<InstanceMetadata> instance = ServiceInstance
+                .<InstanceMetadata>builder().name("test-service")
+                .address("127.0.0.1").port(8080).id(id.toString())
+                .payload(new InstanceMetadata(id, "127.0.0.1", 8080,
+                        Optional.empty(), "us-east-1a", "us-east-1"))
+                .build();
+        final byte[] bytes = serializer.serialize(instance);
+        assertThat(new String(bytes, StandardCharsets.UTF_8))
+                .isEqualTo(new String(jackson.serialize(instance),
+                        StandardCharsets.UTF_8))
+                .contains("\"zone\":\"us-east-1a\"");
+        assertThat(serializer.deserialize(bytes)).isEqualTo(instance);
+
+        // left out entirely when unknown
+        assertThat(new String(serializer.serialize(withAdminPort(Optional.empty())),
+                StandardCharsets.UTF_8)).doesNotContain("zone")
+                        .doesNotContain("region");
+    }
+
+    @Test
+    public void testCapacityAndLoad() throws Exception {
+        final UUID id = UUID.randomUUID();
+        final ServiceInstance<InstanceMetadata> instance = ServiceInstance
+                .<InstanceMetadata>builder().name("test-service")
+                .address("127.0.0.1").port(8080).id(id.toString())
+                .payload(new InstanceMetadata(id, "127.0.0.1", 8080,
+                        Optional.empty(), null, null, 8, 0.25))
+                .build();
+        final byte[] bytes = serializer.serialize(instance);
+        assertThat(new String(bytes, StandardCharsets.UTF_8))
+                .isEqualTo(new String(jackson.serialize(instance),
+                        StandardCharsets.UTF_8))
+                .contains("\"capacity\":8").contains("\"load\":0.25");
+        assertThat(serializer.deserialize(bytes)).isEqualTo(instance);
+
+        // left out entirely when unknown
+        assertThat(new String(serializer.serialize(withAdminPort(Optional.empty())),
+                StandardCharsets.UTF_8)).doesNotContain("\"capacity\"")
+                        .doesNotContain("\"load\"");
+    }
+
+    @Test
+    public void testIgnoresUnknownFields() throws Exception {
+        final byte[] bytes = ("{\"name\":\"test-service\",\"extra\":{\"a\":[1,2]},"
+                + "\"id\":\"abc\",\"payload\":{\"instanceId\":\"" + UUID.randomUUID()
+                + "\",\"listenAddress\":\"127.0.0.1\",\"listenPort\":8080,"
+                + "\"other\":true}}")
+                        .getBytes(StandardCharsets.UTF_8);
+        final ServiceInstance<InstanceMetadata> instance = serializer
+                .deserialize(bytes);
+        assertThat(instance.getName()).isEqualTo("test-service");
+        assertThat(instance.getId()).isEqualTo("abc");
+        assertThat(instance.getServiceType()).isEqualTo(ServiceType.DYNAMIC);
+        assertThat(instance.isEnabled()).isTrue();
+        assertThat(instance.getPayload().getListenPort()).isEqualTo(8080);
+    }
+
+    @Test
+    public void testRejectsMissingListenAddress() throws Exception {
+        final byte[] bytes = ("{\"name\":\"test-service\",\"id\":\"abc\","
+                + "\"payload\":{\"instanceId\":\"" + UUID.randomUUID()
+                + "\",\"listenPort\":8080}}").getBytes(StandardCharsets.UTF_8);
+        try {
+            serializer.deserialize(bytes);
+            failBecauseExceptionWasNotThrown(JsonParseException.class);
+        } catch (final JsonParseException e) {
+            assertThat(e.getMessage()).contains("Missing listenAddress");
+        }
+    }
+
+    private static ServiceInstance<InstanceMetadata> withAdminPort(
+            final Optional<Integer> adminPort) {
+        return metadataBuilder(
+                id -> new InstanceMetadata(id, "127.0.0.1", 8080, adminPort))
+                        .sslPort(8443)
+                        .uriSpec(new UriSpec("{scheme}://{address}:{port}"))
+                        .build();
+    }
+}
@@ -0,0 +1,99 @@
+package io.dropwizard.discovery.core;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import io.dropwizard.util.Duration;
+
+public class LoadReporterTest {
+
+    @SuppressWarnings("unchecked")
+    private final CuratorAdvertiser<InstanceMetadata> advertiser = mock(
+            CuratorAdvertiser.class);
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+    private double load;
+    private LoadReporter reporter;
+
+    @Before
+    public void setUp() throws Exception {
+        when(advertiser.reportLoad(anyDouble())).thenReturn(true);
+        reporter = new LoadReporter(advertiser, () -> load,
+                new MetricRegistry(), 0.1, Duration.seconds(30), ticker);
+    }
+
+    @Test
+    public void testPublishesFirstSample() throws Exception {
+        load = 0.5;
+        reporter.run();
+        verify(advertiser).reportLoad(0.5);
+    }
+
+    @Test
+    public void testSkipsSmallChanges() throws Exception {
+        load = 0.5;
+        reporter.run();
+        advance(60);
+        load = 0.55;
+        reporter.run();
+        verify(advertiser, never()).reportLoad(0.55);
+
+        load = 0.7;
+        reporter.run();
+        verify(advertiser).reportLoad(0.7);
+    }
+
+    @Test
+    public void testRateLimited() throws Exception {
+        load = 0.1;
+        reporter.run();
+        advance(10);
+        load = 0.9;
+        reporter.run();
+        verify(advertiser, never()).reportLoad(0.9);
+
+        advance(20);
+        reporter.run();
+        verify(advertiser).reportLoad(0.9);
+    }
+
+    @Test
+    public void testRetriesUntilWritten() throws Exception {
+        when(advertiser.reportLoad(anyDouble())).thenReturn(false)
+                .thenThrow(new IllegalStateException("not connected"))
+                .thenReturn(true);
+        load = 0.5;
+        reporter.run();
+        reporter.run();
+        reporter.run();
+        reporter.run();
+        verify(advertiser, times(3)).reportLoad(0.5);
+    }
+
+    @Test
+    public void testIgnoresUnknownLoad() throws Exception {
+        load = Double.NaN;
+        reporter.run();
+        load = -1;
+        reporter.run();
+        verify(advertiser, never()).reportLoad(anyDouble());
+    }
+
+    private void advance(final long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,88 @@
+package io.dropwizard.discovery.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.junit.After;
+import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+
+public class ReRegistrationListenerTest {
+
+    private static final String PREFIX = "io.dropwizard.discovery.core.ReRegistrationListener.";
+
+    private final CuratorAdvertiser<?> advertiser = mock(
+            CuratorAdvertiser.class);
+    private final CuratorFramework framework = mock(CuratorFramework.class);
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+            1);
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReRegistersOnReconnect() throws Exception {
+        when(advertiser.reRegister()).thenReturn(true);
+        newListener(Duration.milliseconds(0)).stateChanged(framework,
+                ConnectionState.RECONNECTED);
+
+        verify(advertiser, timeout(5000)).reRegister();
+        executor.submit(() -> null).get();
+        assertThat(metrics.meter(PREFIX + "reregistrations").getCount())
+                .isEqualTo(1);
+        assertThat(metrics.timer(PREFIX + "time-to-reregister").getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        when(advertiser.reRegister())
+                .thenThrow(new IllegalStateException("not connected"))
+                .thenReturn(false);
+        newListener(Duration.milliseconds(1)).stateChanged(framework,
+                ConnectionState.RECONNECTED);
+
+        verify(advertiser, timeout(5000).times(2)).reRegister();
+        executor.submit(() -> null).get();
+        // the node was still there, nothing was written
+        assertThat(metrics.meter(PREFIX + "reregistrations").getCount())
+                .isZero();
+    }
+
+    @Test
+    public void testIgnoresOtherStates() throws Exception {
+        final ReRegistrationListener listener = newListener(
+                Duration.milliseconds(0));
+        listener.stateChanged(framework, ConnectionState.CONNECTED);
+        listener.stateChanged(framework, ConnectionState.SUSPENDED);
+        executor.submit(() -> null).get();
+        verify(advertiser, never()).reRegister();
+    }
+
+    @Test
+    public void testLostCancelsPendingReRegistration() throws Exception {
+        executor.setRemoveOnCancelPolicy(true);
+        final ReRegistrationListener listener = newListener(
+                Duration.minutes(10));
+        listener.stateChanged(framework, ConnectionState.RECONNECTED);
+        assertThat(executor.getQueue()).hasSize(1);
+        listener.stateChanged(framework, ConnectionState.LOST);
+        assertThat(executor.shutdownNow()).isEmpty();
+        verify(advertiser, never()).reRegister();
+    }
+
+    private ReRegistrationListener newListener(final Duration jitter) {
+        return new ReRegistrationListener(advertiser, executor, metrics,
+                jitter, Duration.milliseconds(1), 3);
+    }
+}
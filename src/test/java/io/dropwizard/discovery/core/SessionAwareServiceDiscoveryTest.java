@@ -0,0 +1,208 @@
+package io.dropwizard.discovery.core;
+
+import static io.dropwizard.discovery.TestInstances.newMetadataInstance;
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionAwareServiceDiscoveryTest {
+
+    private final InstanceMetadataSerializer serializer = new InstanceMetadataSerializer();
+    private TestingServer server;
+    private CuratorFramework framework;
+    private ServiceDiscovery<InstanceMetadata> delegate;
+    private SessionAwareServiceDiscovery<InstanceMetadata> discovery;
+    private ServiceInstance<InstanceMetadata> instance;
+    private String path;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer();
+        framework = newFramework();
+        delegate = ServiceDiscoveryBuilder.builder(InstanceMetadata.class)
+                .basePath("service").client(framework).serializer(serializer)
+                .build();
+        delegate.start();
+        discovery = new SessionAwareServiceDiscovery<>(delegate, framework,
+                "service", serializer);
+        instance = newMetadataInstance(8080);
+        path = discovery.pathForInstance(instance);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CloseableUtils.closeQuietly(delegate);
+        CloseableUtils.closeQuietly(framework);
+        server.close();
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        assertThat(discovery.ensureRegistered(instance)).isTrue();
+        assertThat(delegate.queryForInstance("test-service", instance.getId()))
+                .isEqualTo(instance);
+        assertThat(framework.checkExists().forPath(path).getEphemeralOwner())
+                .isEqualTo(sessionId(framework));
+    }
+
+    @Test
+    public void testSkipsRedundantWrites() throws Exception {
+        discovery.registerService(instance);
+        final Stat before = framework.checkExists().forPath(path);
+
+        assertThat(discovery.ensureRegistered(instance)).isFalse();
+        assertThat(framework.checkExists().forPath(path).getMzxid())
+                .isEqualTo(before.getMzxid());
+    }
+
+    @Test
+    public void testUpdatesChangedInstance() throws Exception {
+        discovery.registerService(instance);
+        final ServiceInstance<InstanceMetadata> updated = new ServiceInstance<>(
+                instance.getName(), instance.getId(), instance.getAddress(),
+                instance.getPort(), null, instance.getPayload(),
+                instance.getRegistrationTimeUTC(), instance.getServiceType(),
+                null, false);
+
+        assertThat(discovery.ensureRegistered(updated)).isTrue();
+        assertThat(delegate.queryForInstance("test-service", instance.getId())
+                .isEnabled()).isFalse();
+        assertThat(framework.checkExists().forPath(path).getVersion())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void testReplacesNodeOfOtherSession() throws Exception {
+        final CuratorFramework other = newFramework();
+        try {
+            other.create().creatingParentContainersIfNeeded()
+                    .withMode(CreateMode.EPHEMERAL)
+                    .forPath(path, serializer.serialize(instance));
+
+            assertThat(discovery.ensureRegistered(instance)).isTrue();
+            assertThat(framework.checkExists().forPath(path)
+                    .getEphemeralOwner()).isEqualTo(sessionId(framework));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testUnregister() throws Exception {
+        discovery.registerService(instance);
+        discovery.unregisterService(instance);
+        assertThat(framework.checkExists().forPath(path)).isNull();
+        // unregistering twice is harmless
+        discovery.unregisterService(instance);
+    }
+
+    @Test
+    public void testRegisterServices() throws Exception {
+        final ServiceInstance<InstanceMetadata> second = newMetadataInstance(8081);
+        final List<ServiceInstance<InstanceMetadata>> instances = Arrays
+                .asList(instance, second);
+
+        assertThat(discovery.registerServices(instances)).isTrue();
+        final Stat first = framework.checkExists().forPath(path);
+        final Stat other = framework.checkExists()
+                .forPath(discovery.pathForInstance(second));
+        // written by the same transaction
+        assertThat(first.getCzxid()).isEqualTo(other.getCzxid());
+
+        assertThat(discovery.registerServices(instances)).isFalse();
+        assertThat(framework.checkExists().forPath(path).getMzxid())
+                .isEqualTo(first.getMzxid());
+    }
+
+    @Test
+    public void testRegisterServicesReplacesNodeOfOtherSession()
+            throws Exception {
+        final ServiceInstance<InstanceMetadata> second = newMetadataInstance(8081);
+        final String secondPath = discovery.pathForInstance(second);
+        final CuratorFramework other = newFramework();
+        try {
+            other.create().creatingParentContainersIfNeeded()
+                    .withMode(CreateMode.EPHEMERAL)
+                    .forPath(path, serializer.serialize(instance));
+
+            assertThat(discovery.registerServices(Arrays.asList(instance, second)))
+                    .isTrue();
+            final Stat first = framework.checkExists().forPath(path);
+            assertThat(first.getEphemeralOwner())
+                    .isEqualTo(sessionId(framework));
+            assertThat(framework.checkExists().forPath(secondPath).getCzxid())
+                    .isEqualTo(first.getCzxid());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testEnsureRegisteredServices() throws Exception {
+        final ServiceInstance<InstanceMetadata> second = newMetadataInstance(8081);
+        final String secondPath = discovery.pathForInstance(second);
+        final List<ServiceInstance<InstanceMetadata>> instances = Arrays
+                .asList(instance, second);
+
+        assertThat(discovery.ensureRegistered(instances)).isTrue();
+        final Stat first = framework.checkExists().forPath(path);
+        assertThat(framework.checkExists().forPath(secondPath)).isNotNull();
+
+        // nothing to write
+        assertThat(discovery.ensureRegistered(instances)).isFalse();
+
+        // only the missing node is written
+        framework.delete().forPath(secondPath);
+        assertThat(discovery.ensureRegistered(instances)).isTrue();
+        assertThat(framework.checkExists().forPath(path).getMzxid())
+                .isEqualTo(first.getMzxid());
+        assertThat(framework.checkExists().forPath(secondPath)).isNotNull();
+    }
+
+    @Test
+    public void testUnregisterServices() throws Exception {
+        final ServiceInstance<InstanceMetadata> second = newMetadataInstance(8081);
+        final String secondPath = discovery.pathForInstance(second);
+        final List<ServiceInstance<InstanceMetadata>> instances = Arrays
+                .asList(instance, second);
+        discovery.registerServices(instances);
+
+        discovery.unregisterServices(instances);
+        assertThat(framework.checkExists().forPath(path)).isNull();
+        assertThat(framework.checkExists().forPath(secondPath)).isNull();
+
+        // some already gone
+        discovery.registerServices(instances);
+        framework.delete().forPath(path);
+        discovery.unregisterServices(instances);
+        assertThat(framework.checkExists().forPath(secondPath)).isNull();
+    }
+
+    private CuratorFramework newFramework() throws Exception {
+        final CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(server.getConnectString())
+                .retryPolicy(new RetryOneTime(100)).namespace("dropwizard")
+                .build();
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+    private static long sessionId(final CuratorFramework client)
+            throws Exception {
+        return client.getZookeeperClient().getZooKeeper().getSessionId();
+    }
+}
@@ -3,23 +3,48 @@ package io.dropwizard.discovery.health;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.curator.CuratorZookeeperClient;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.api.ExistsBuilder;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
 import org.apache.zookeeper.data.Stat;
 import org.junit.Before;
 import org.junit.Test;
+import com.codahale.metrics.health.HealthCheck.Result;
+import com.google.common.base.Ticker;
 
 public class CuratorHealthCheckTest {
 
     private final CuratorFramework framework = mock(CuratorFramework.class);
+    private final CuratorZookeeperClient client = mock(
+            CuratorZookeeperClient.class);
     private final ExistsBuilder exists = mock(ExistsBuilder.class);
-    private final CuratorHealthCheck health = new CuratorHealthCheck(framework);
+    private final AtomicLong now = new AtomicLong(0);
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    };
+    private final CuratorHealthCheck health = new CuratorHealthCheck(framework,
+            30, TimeUnit.SECONDS, ticker);
 
     @Before
     public void setUp() {
         when(framework.checkExists()).thenReturn(exists);
+        when(framework.getZookeeperClient()).thenReturn(client);
+        when(client.isConnected()).thenReturn(true);
     }
 
     @Test
@@ -40,4 +65,102 @@ public class CuratorHealthCheckTest {
         when(exists.forPath(anyString())).thenReturn(null);
         assertThat(health.check().isHealthy()).isFalse();
     }
+
+    @Test
+    public void testCheckNotConnected() throws Exception {
+        when(framework.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        when(client.isConnected()).thenReturn(false);
+        assertThat(health.check().isHealthy()).isFalse();
+    }
+
+    @Test
+    public void testConcurrentFirstCheck() throws Exception {
+        when(framework.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        final CountDownLatch verifying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(exists.forPath(anyString())).thenAnswer(invocation -> {
+            verifying.countDown();
+            release.await();
+            return new Stat();
+        });
+        final CompletableFuture<Result> first = CompletableFuture
+                .supplyAsync(health::execute);
+        verifying.await();
+
+        final Result second = health.check();
+        assertThat(second.isHealthy()).isFalse();
+        assertThat(second.getMessage()).isEqualTo("Namespace not yet verified");
+
+        release.countDown();
+        assertThat(first.get().isHealthy()).isTrue();
+        assertThat(health.check().isHealthy()).isTrue();
+    }
+
+    @Test
+    public void testAnswersFromLastVerification() throws Exception {
+        when(framework.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        when(exists.forPath(anyString())).thenReturn(new Stat());
+        health.check();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        final Result result = health.check();
+        assertThat(result.isHealthy()).isTrue();
+        assertThat(result.getDetails()).containsEntry("namespaceVerifiedMillis",
+                10000L);
+        verify(exists, times(1)).forPath("/");
+    }
+
+    @Test
+    public void testCheckFollowsConnectionState() throws Exception {
+        when(framework.getState()).thenReturn(CuratorFrameworkState.STARTED);
+        when(exists.forPath(anyString())).thenReturn(new Stat());
+        health.stateChanged(framework, ConnectionState.CONNECTED);
+        assertThat(health.check().isHealthy()).isTrue();
+
+        health.stateChanged(framework, ConnectionState.SUSPENDED);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        final Result suspended = health.check();
+        assertThat(suspended.isHealthy()).isFalse();
+        assertThat(suspended.getMessage())
+                .isEqualTo("Connection SUSPENDED for 2000 ms");
+        assertThat(suspended.getDetails())
+                .containsEntry("connectionState", "SUSPENDED")
+                .containsEntry("lastContactMillis", 2000L);
+
+        health.stateChanged(framework, ConnectionState.RECONNECTED);
+        assertThat(health.check().isHealthy()).isTrue();
+        verify(exists, times(1)).forPath("/");
+    }
+
+    @Test
+    public void testVerifiesInBackground() throws Exception {
+        try (TestingServer server = new TestingServer();
+                CuratorFramework real = CuratorFrameworkFactory.builder()
+                        .connectString(server.getConnectString())
+                        .retryPolicy(new RetryOneTime(100))
+                        .namespace("dropwizard").build()) {
+            real.start();
+            real.blockUntilConnected();
+            // any operation creates the namespace
+            real.checkExists().forPath("/");
+            final CuratorHealthCheck check = new CuratorHealthCheck(real, 30,
+                    TimeUnit.SECONDS, ticker);
+            assertThat(check.check().isHealthy()).isTrue();
+
+            now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+            final Result stale = check.check();
+            assertThat(stale.isHealthy()).isTrue();
+            assertThat(stale.getDetails())
+                    .containsEntry("namespaceVerifiedMillis", 31000L);
+
+            // the background verification refreshes the cached result
+            final long deadline = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(5);
+            while (!Long.valueOf(0).equals(check.check().getDetails()
+                    .get("namespaceVerifiedMillis"))) {
+                assertThat(System.nanoTime()).isLessThan(deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package io.dropwizard.discovery.manage;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionStateListenerManagerTest {
+
+    private final CuratorFramework framework = mock(CuratorFramework.class);
+    @SuppressWarnings("unchecked")
+    private final Listenable<ConnectionStateListener> listenable = mock(
+            Listenable.class);
+    private final ConnectionStateListener listener = mock(
+            ConnectionStateListener.class);
+    private ConnectionStateListenerManager manager;
+
+    @Before
+    public void setUp() {
+        when(framework.getConnectionStateListenable()).thenReturn(listenable);
+        manager = new ConnectionStateListenerManager(framework, listener);
+    }
+
+    @Test
+    public void testAddsListener() throws Exception {
+        verify(listenable).addListener(listener);
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        manager.start();
+        manager.stop();
+        verify(listenable).removeListener(listener);
+    }
+}
@@ -1,10 +1,13 @@
 package io.dropwizard.discovery.manage;
 
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import io.dropwizard.discovery.core.CuratorAdvertisementListener;
 import io.dropwizard.discovery.core.CuratorAdvertiser;
 import io.dropwizard.discovery.core.InstanceMetadata;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 public class CuratorAdvertiserManagerTest {
 
@@ -17,4 +20,16 @@ public class CuratorAdvertiserManagerTest {
         manager.stop();
         verify(advertiser).unregisterAvailability();
     }
+
+    @Test
+    public void testStopsListenerBeforeUnregistering() throws Exception {
+        @SuppressWarnings("unchecked")
+        final CuratorAdvertisementListener<InstanceMetadata> listener = mock(
+                CuratorAdvertisementListener.class);
+        new CuratorAdvertiserManager<>(advertiser, listener).stop();
+
+        final InOrder inOrder = inOrder(listener, advertiser);
+        inOrder.verify(listener).stop();
+        inOrder.verify(advertiser).unregisterAvailability();
+    }
 }
@@ -1,10 +1,17 @@
 package io.dropwizard.discovery.manage;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.CreateBuilder;
 import org.apache.curator.framework.api.ExistsBuilder;
@@ -13,6 +20,9 @@ import org.apache.zookeeper.data.Stat;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.discovery.core.CuratorConnectionRegistry;
+import io.dropwizard.util.Duration;
 
 public class CuratorManagerTest {
 
@@ -50,9 +60,72 @@ public class CuratorManagerTest {
         verify(framework).create();
     }
 
+    @Test
+    public void testStartTimesOut() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final CuratorManager bounded = new CuratorManager(framework, metrics,
+                Duration.seconds(1), false);
+        when(framework.blockUntilConnected(1000, TimeUnit.MILLISECONDS))
+                .thenReturn(false);
+        try {
+            bounded.start();
+            fail("expected a TimeoutException");
+        } catch (final TimeoutException e) {
+            assertThat(bounded.getStarted()).isCompletedExceptionally();
+        }
+        verify(framework, never()).checkExists();
+        assertThat(metrics.timer(MetricRegistry.name(CuratorManager.class, "connect"))
+                .getCount()).isZero();
+    }
+
+    @Test
+    public void testStartInBackground() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final CuratorManager background = new CuratorManager(framework,
+                metrics, Duration.seconds(1), true);
+        when(framework.blockUntilConnected(anyInt(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(true);
+        when(exists.forPath("/")).thenReturn(null);
+
+        background.start();
+        background.getStarted().get(5, TimeUnit.SECONDS);
+        verify(framework).create();
+        assertThat(metrics.timer(MetricRegistry.name(CuratorManager.class, "connect"))
+                .getCount()).isEqualTo(1);
+        assertThat(metrics.timer(MetricRegistry.name(CuratorManager.class, "bootstrap"))
+                .getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStartInBackgroundTimesOut() throws Exception {
+        final CuratorManager background = new CuratorManager(framework,
+                new MetricRegistry(), Duration.seconds(1), true);
+        when(framework.blockUntilConnected(anyInt(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(false);
+
+        // does not throw
+        background.start();
+        try {
+            background.getStarted().get(5, TimeUnit.SECONDS);
+            fail("expected an ExecutionException");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+    }
+
     @Test
     public void testStop() throws Exception {
         manager.stop();
         verify(framework).close();
     }
+
+    @Test
+    public void testStopReleasesSharedConnection() throws Exception {
+        final CuratorConnectionRegistry connections = mock(
+                CuratorConnectionRegistry.class);
+        new CuratorManager(framework, new MetricRegistry(), null, false,
+                connections).stop();
+        verify(connections).release(framework);
+        verify(framework, never()).close();
+    }
 }
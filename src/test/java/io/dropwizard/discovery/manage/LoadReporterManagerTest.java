@@ -0,0 +1,34 @@
+package io.dropwizard.discovery.manage;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import io.dropwizard.discovery.core.LoadReporter;
+import io.dropwizard.util.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LoadReporterManagerTest {
+
+    private final LoadReporter reporter = mock(LoadReporter.class);
+    private final ScheduledExecutorService executor = mock(
+            ScheduledExecutorService.class);
+    private final ScheduledFuture<?> reports = mock(ScheduledFuture.class);
+    private final LoadReporterManager manager = new LoadReporterManager(
+            reporter, executor, Duration.seconds(10));
+
+    @Test
+    public void testCancelsReportsOnStop() throws Exception {
+        doReturn(reports).when(executor).scheduleAtFixedRate(any(Runnable.class),
+                eq(10000L), eq(10000L), eq(TimeUnit.MILLISECONDS));
+        manager.start();
+        verify(executor).scheduleAtFixedRate(reporter, 10000L, 10000L,
+                TimeUnit.MILLISECONDS);
+        manager.stop();
+        verify(reports).cancel(false);
+    }
+}